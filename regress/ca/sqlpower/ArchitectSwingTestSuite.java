@@ -21,6 +21,7 @@ package ca.sqlpower;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import ca.sqlpower.architect.layout.TestBarnesHutForceLayout;
 import ca.sqlpower.architect.layout.TestFruchtermanReingoldForceLayout;
 import ca.sqlpower.architect.swingui.ArchitectSwingSessionImplTest;
 import ca.sqlpower.architect.swingui.BasicTablePaneUITest;
@@ -76,6 +77,7 @@ public class ArchitectSwingTestSuite extends TestCase {
 		suite.addTestSuite(TestDeleteSelectedAction.class);
 		suite.addTestSuite(TestEditColumnAction.class);
 		suite.addTestSuite(TestFruchtermanReingoldForceLayout.class);
+		suite.addTestSuite(TestBarnesHutForceLayout.class);
 		suite.addTestSuite(TestPlayPen.class);
 		suite.addTestSuite(TestPlayPenContentPane.class);
 		suite.addTestSuite(TestRelationship.class);
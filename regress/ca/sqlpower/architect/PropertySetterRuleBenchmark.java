@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.digester.Digester;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Times loading the tables of a large project fixture with the Digester's
+ * SetPropertiesRule and with the {@link PropertySetterRule}. This is run by
+ * hand rather than in the test suites, since it takes a while and the
+ * timings vary too much between machines to assert on.
+ */
+public class PropertySetterRuleBenchmark {
+
+    static final int COLUMNS = 8;
+
+    /**
+     * Makes a project fixture with the given number of tables, each with
+     * {@value #COLUMNS} columns.
+     */
+    static String createFixture(int tableCount) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<architect-project><target-database>");
+        int id = 0;
+        for (int t = 0; t < tableCount; t++) {
+            sb.append("<table id=\"TAB").append(id++).append("\" populated=\"true\" UUID=\"table-").append(t)
+                .append("\" name=\"table_").append(t).append("\" objectType=\"TABLE\" physicalName=\"TABLE_")
+                .append(t).append("\" >");
+            for (int c = 0; c < COLUMNS; c++) {
+                sb.append("<column id=\"COL").append(id++).append("\" populated=\"true\" UUID=\"column-")
+                    .append(t).append('-').append(c).append("\" autoIncrement=\"false\" defaultValue=\"\" name=\"col_")
+                    .append(c).append("\" nullable=\"1\" physicalName=\"COL_").append(c)
+                    .append("\" precision=\"10\" referenceCount=\"1\" scale=\"0\" type=\"4\" />");
+            }
+            sb.append("</table>");
+        }
+        sb.append("</target-database></architect-project>");
+        return sb.toString();
+    }
+
+    /**
+     * Loads the tables in the fixture with either the Digester's
+     * SetPropertiesRule or the PropertySetterRule.
+     */
+    static List<SQLTable> load(String fixture, boolean precomputedSetters) throws Exception {
+        Digester d = new Digester();
+        d.setValidating(false);
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        d.push(tables);
+
+        d.addObjectCreate("*/table", SQLTable.class);
+        if (precomputedSetters) {
+            d.addRule("*/table", new PropertySetterRule());
+        } else {
+            d.addSetProperties("*/table");
+        }
+        d.addSetNext("*/table", "add");
+
+        d.addObjectCreate("*/column", SQLColumn.class);
+        if (precomputedSetters) {
+            d.addRule("*/column", new PropertySetterRule());
+        } else {
+            d.addSetProperties("*/column");
+        }
+        d.addSetNext("*/column", "addChild");
+
+        d.parse(new StringReader(fixture));
+        return tables;
+    }
+
+    /**
+     * Loads a fixture with the given number of tables (10000 by default) a
+     * few times with each rule and prints the best time of each.
+     */
+    public static void main(String[] args) throws Exception {
+        int tableCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        String fixture = createFixture(tableCount);
+
+        // the first rounds warm up both paths so class loading and JIT
+        // aren't measured
+        long setPropertiesTime = Long.MAX_VALUE;
+        long propertySetterTime = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            load(fixture, false);
+            setPropertiesTime = Math.min(setPropertiesTime, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            load(fixture, true);
+            propertySetterTime = Math.min(propertySetterTime, System.nanoTime() - start);
+        }
+
+        System.out.println("Loading " + tableCount + " tables: SetPropertiesRule " +
+                (setPropertiesTime / 1000000) + "ms, PropertySetterRule " + (propertySetterTime / 1000000) +
+                "ms, speedup " + ((double) setPropertiesTime / propertySetterTime));
+    }
+}
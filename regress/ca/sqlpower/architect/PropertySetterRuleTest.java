@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.beanutils.ConversionException;
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.Converter;
+import org.apache.commons.beanutils.converters.IntegerConverter;
+import org.xml.sax.helpers.AttributesImpl;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+
+public class PropertySetterRuleTest extends TestCase {
+
+    /**
+     * The number of tables in the fixture loaded with both rules.
+     */
+    private static final int TABLES = 20;
+
+    private static void addAttribute(AttributesImpl attributes, String name, String value) {
+        attributes.addAttribute("", "", name, "CDATA", value);
+    }
+
+    public void testSetsColumnProperties() throws Exception {
+        AttributesImpl attributes = new AttributesImpl();
+        addAttribute(attributes, "id", "COL1");
+        addAttribute(attributes, "populated", "true");
+        addAttribute(attributes, "UUID", "column-uuid");
+        addAttribute(attributes, "autoIncrement", "true");
+        addAttribute(attributes, "autoIncrementSequenceName", "col_seq");
+        addAttribute(attributes, "defaultValue", "'x'");
+        addAttribute(attributes, "name", "col");
+        addAttribute(attributes, "nullable", "1");
+        addAttribute(attributes, "physicalName", "COL");
+        addAttribute(attributes, "precision", "20");
+        addAttribute(attributes, "scale", "3");
+        addAttribute(attributes, "source-column-ref", "COL0");
+        addAttribute(attributes, "type", "12");
+
+        SQLColumn col = new SQLColumn();
+        PropertySetterRule.setProperties(col, attributes, Collections.<String>emptySet());
+
+        assertEquals("column-uuid", col.getUUID());
+        assertTrue(col.isAutoIncrement());
+        assertEquals("col_seq", col.getAutoIncrementSequenceName());
+        assertEquals("'x'", col.getDefaultValue());
+        assertEquals("col", col.getName());
+        assertEquals(1, col.getNullable());
+        assertEquals("COL", col.getPhysicalName());
+        assertEquals(20, col.getPrecision());
+        assertEquals(3, col.getScale());
+        assertEquals(12, col.getType());
+    }
+
+    /**
+     * Properties with their own Converter, like the ones the ProjectLoader
+     * registers, must go through it just like they did with BeanUtils.
+     */
+    public void testUsesRegisteredConverters() throws Exception {
+        Converter old = ConvertUtils.lookup(AscendDescend.class);
+        ConvertUtils.register(new AscendDescendConverter(), AscendDescend.class);
+        try {
+            AttributesImpl attributes = new AttributesImpl();
+            addAttribute(attributes, "ascendingOrDescending", "DESCENDING");
+
+            SQLIndex.Column col = new SQLIndex.Column();
+            PropertySetterRule.setProperties(col, attributes, Collections.<String>emptySet());
+            assertEquals(AscendDescend.DESCENDING, col.getAscendingOrDescending());
+        } finally {
+            restoreConverter(old, AscendDescend.class);
+        }
+    }
+
+    /**
+     * A Converter registered after a property was first set is used for it
+     * from then on, the way BeanUtils would, so a converter that rejects bad
+     * values still gets to reject them.
+     */
+    public void testUsesConvertersRegisteredLater() throws Exception {
+        AttributesImpl attributes = new AttributesImpl();
+        addAttribute(attributes, "precision", "not a number");
+        SQLColumn col = new SQLColumn();
+
+        Converter old = ConvertUtils.lookup(Integer.TYPE);
+        try {
+            ConvertUtils.register(new IntegerConverter(Integer.valueOf(0)), Integer.TYPE);
+            PropertySetterRule.setProperties(col, attributes, Collections.<String>emptySet());
+            assertEquals(0, col.getPrecision());
+
+            ConvertUtils.register(new IntegerConverter(), Integer.TYPE);
+            PropertySetterRule.setProperties(col, attributes, Collections.<String>emptySet());
+            fail("The throwing converter registered later wasn't used");
+        } catch (ConversionException ex) {
+            // expected
+        } finally {
+            restoreConverter(old, Integer.TYPE);
+        }
+    }
+
+    /**
+     * Puts back the Converter a test replaced, so later tests see the same
+     * converters they would have without it.
+     */
+    private static void restoreConverter(Converter old, Class<?> type) {
+        if (old == null) {
+            ConvertUtils.deregister(type);
+        } else {
+            ConvertUtils.register(old, type);
+        }
+    }
+
+    public void testIgnoredAttributes() throws Exception {
+        AttributesImpl attributes = new AttributesImpl();
+        addAttribute(attributes, "name", "new name");
+        addAttribute(attributes, "physicalName", "new physical name");
+
+        SQLTable table = new SQLTable(null, "old name", null, "TABLE", true);
+        PropertySetterRule.setProperties(table, attributes, Collections.singleton("name"));
+        assertEquals("old name", table.getName());
+        assertEquals("new physical name", table.getPhysicalName());
+    }
+
+    /**
+     * Loads a small project fixture with both the Digester's
+     * SetPropertiesRule and this rule, and checks they produced the same
+     * tables. {@link PropertySetterRuleBenchmark} times the two on a large
+     * fixture.
+     */
+    public void testLoadsSameTablesAsSetPropertiesRule() throws Exception {
+        String fixture = PropertySetterRuleBenchmark.createFixture(TABLES);
+        List<SQLTable> oldTables = PropertySetterRuleBenchmark.load(fixture, false);
+        List<SQLTable> newTables = PropertySetterRuleBenchmark.load(fixture, true);
+
+        assertEquals(TABLES, newTables.size());
+        assertEquals(oldTables.size(), newTables.size());
+        for (int t = 0; t < oldTables.size(); t++) {
+            SQLTable oldTable = oldTables.get(t);
+            SQLTable newTable = newTables.get(t);
+            assertEquals(oldTable.getUUID(), newTable.getUUID());
+            assertEquals(oldTable.getName(), newTable.getName());
+            assertEquals(oldTable.getPhysicalName(), newTable.getPhysicalName());
+            assertEquals(PropertySetterRuleBenchmark.COLUMNS, newTable.getColumnsWithoutPopulating().size());
+            for (int c = 0; c < PropertySetterRuleBenchmark.COLUMNS; c++) {
+                SQLColumn oldCol = oldTable.getColumnsWithoutPopulating().get(c);
+                SQLColumn newCol = newTable.getColumnsWithoutPopulating().get(c);
+                assertEquals(oldCol.getUUID(), newCol.getUUID());
+                assertEquals(oldCol.getName(), newCol.getName());
+                assertEquals(oldCol.getType(), newCol.getType());
+                assertEquals(oldCol.getPrecision(), newCol.getPrecision());
+                assertEquals(oldCol.getNullable(), newCol.getNullable());
+            }
+        }
+    }
+}
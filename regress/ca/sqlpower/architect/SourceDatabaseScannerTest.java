@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SourceDatabaseScannerTest extends TestCase {
+
+    private static final String PROJECT =
+        "<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?>\n" +
+        "<architect-project version=\"1.0\">\n" +
+        " <!-- <database id=\"NOT_A_DB\"> -->\n" +
+        " <source-databases>\n" +
+        "  <database id=\"DB0\" name=\"unused &gt; db\">" +
+        "<catalog id=\"CAT1\" name=\"a > b\"><table id=\"TAB2\" ><remarks>x</remarks></table></catalog>" +
+        "</database>\n" +
+        "  <database id=\"DB3\" populated=\"false\" />\n" +
+        "  <database id=\"DB4\"><table id=\"TAB5\"><folder type=\"1\"><column id=\"COL6\" /></folder></table></database>\n" +
+        "  <database id=\"DB7\"><table id=\"TAB8\" /></database>\n" +
+        "  <database id=\"DB9\"><table id=\"TAB10\" /><relationship id=\"REL11\" pk-table-ref=\"TAB10\" fk-table-ref=\"TAB10\" /></database>\n" +
+        " </source-databases>\n" +
+        " <target-database id=\"ppdb\">\n" +
+        "  <table id=\"TAB12\"><folder type=\"1\"><column id=\"COL13\" source-column-ref=\"COL6\" /></folder></table>\n" +
+        " </target-database>\n" +
+        " <olap><olap-session db-ref=\"DB7\" /></olap>\n" +
+        "</architect-project>\n";
+
+    private byte[] bytes;
+
+    private List<SourceDatabaseScanner.Range> ranges;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        bytes = PROJECT.getBytes("ISO-8859-1");
+        SourceDatabaseScanner scanner = SourceDatabaseScanner.scan(new ByteArrayInputStream(bytes));
+        assertEquals("ISO-8859-1", scanner.getEncoding());
+        ranges = scanner.getRanges();
+    }
+
+    private String children(SourceDatabaseScanner.Range range) throws Exception {
+        return new String(bytes, (int) range.getChildrenStart(),
+                (int) (range.getChildrenEnd() - range.getChildrenStart()), "ISO-8859-1");
+    }
+
+    public void testFindsSourceDatabases() throws Exception {
+        assertEquals(5, ranges.size());
+        assertEquals("<catalog id=\"CAT1\" name=\"a > b\"><table id=\"TAB2\" ><remarks>x</remarks></table></catalog>",
+                children(ranges.get(0)));
+        assertEquals("", children(ranges.get(1)));
+        assertEquals("<table id=\"TAB8\" />", children(ranges.get(3)));
+    }
+
+    /**
+     * Only databases with contents that nothing outside them refers to can be
+     * left in the file.
+     */
+    public void testDeferrable() throws Exception {
+        assertTrue(ranges.get(0).isDeferrable());
+        assertFalse("empty", ranges.get(1).isDeferrable());
+        assertFalse("column used by the play pen", ranges.get(2).isDeferrable());
+        assertFalse("database used by an OLAP session", ranges.get(3).isDeferrable());
+        assertTrue("only refers to itself", ranges.get(4).isDeferrable());
+    }
+
+    public void testSkippingStream() throws Exception {
+        SourceDatabaseScanner.Range range = ranges.get(0);
+        InputStream in = new RangeSkippingInputStream(new ByteArrayInputStream(bytes),
+                new long[] { range.getChildrenStart() }, new long[] { range.getChildrenEnd() });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        String expected = PROJECT.replace(children(range), "");
+        assertEquals(expected, out.toString("ISO-8859-1"));
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLSequence;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ConflictResolverTest extends TestCase {
+
+    /**
+     * The conflicts the script made in {@link #setUp()} has with the fake
+     * database, as {@link ConflictResolver#toConflictTree()} formats them.
+     */
+    private static final String EXPECTED_CONFLICTS =
+        " TABLE s.customer\n" +
+        "  FOREIGN KEY s.fk_customer_region\n" +
+        "  FOREIGN KEY s.fk_orders_customer\n" +
+        " INDEX s.orders_idx\n" +
+        " SEQUENCE s.customer_seq\n";
+
+    private List<DDLStatement> statements;
+
+    private List<Map<String, String>> tables;
+    private List<Map<String, String>> keys;
+    private List<Map<String, String>> indices;
+
+    /**
+     * The metadata methods the fake database was asked, with the table
+     * they were asked about.
+     */
+    private List<String> calls;
+
+    /**
+     * Whether the fake database refuses to read the keys of a whole schema
+     * at once, like some drivers do.
+     */
+    private boolean keysPerTableOnly;
+
+    /**
+     * Whether the fake database takes a null table name as the name of a
+     * table, so it finds no keys or indices for it instead of failing.
+     */
+    private boolean nullTableBound;
+
+    @Override
+    protected void setUp() throws Exception {
+        SQLDatabase db = new SQLDatabase();
+        SQLTable customer = new SQLTable(db, "customer", "", "TABLE", true);
+        customer.setPhysicalName("customer");
+        db.addChild(customer);
+        SQLColumn name = new SQLColumn(customer, "name", Types.VARCHAR, 10, 0);
+        customer.addColumn(name);
+
+        SQLIndex customerIndex = new SQLIndex("customer_idx", false, null, null, null);
+        customerIndex.setPhysicalName("customer_idx");
+        customerIndex.addIndexColumn(name, AscendDescend.UNSPECIFIED);
+        customer.addChild(customerIndex);
+        SQLIndex ordersIndex = new SQLIndex("orders_idx", false, null, null, null);
+        ordersIndex.setPhysicalName("orders_idx");
+        ordersIndex.addIndexColumn(name, AscendDescend.UNSPECIFIED);
+        customer.addChild(ordersIndex);
+
+        statements = new ArrayList<DDLStatement>();
+        statements.add(create(customer));
+        statements.add(create(customerIndex));
+        statements.add(create(ordersIndex));
+        statements.add(create(new SQLSequence("customer_seq")));
+        statements.add(create(new SQLSequence("new_seq")));
+
+        tables = new ArrayList<Map<String, String>>();
+        tables.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "customer", "TABLE_TYPE", "TABLE"));
+        tables.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "orders", "TABLE_TYPE", "TABLE"));
+        tables.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "region", "TABLE_TYPE", "TABLE"));
+        tables.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "customer_seq", "TABLE_TYPE", "SEQUENCE"));
+
+        // one row per key column, and the customer key has two
+        keys = new ArrayList<Map<String, String>>();
+        keys.add(key("fk_customer_region", "customer", "region"));
+        keys.add(key("fk_customer_region", "customer", "region"));
+        keys.add(key("fk_orders_customer", "orders", "customer"));
+
+        // the customer index goes away with its table
+        indices = new ArrayList<Map<String, String>>();
+        indices.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "customer", "INDEX_NAME", "customer_idx"));
+        indices.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "orders", "INDEX_NAME", "orders_idx"));
+        indices.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "orders", "INDEX_NAME", "orders_idx"));
+        indices.add(row("TABLE_SCHEM", "s", "TABLE_NAME", "orders", "INDEX_NAME", null));
+
+        calls = new ArrayList<String>();
+    }
+
+    private static DDLStatement create(SQLObject object) {
+        return new DDLStatement(object, StatementType.CREATE, "", ";", null, "s");
+    }
+
+    private static Map<String, String> row(String... namesAndValues) {
+        Map<String, String> row = new HashMap<String, String>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            row.put(namesAndValues[i], namesAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    private static Map<String, String> key(String name, String fkTable, String pkTable) {
+        return row("FK_NAME", name,
+                "FKTABLE_SCHEM", "s", "FKTABLE_NAME", fkTable,
+                "PKTABLE_SCHEM", "s", "PKTABLE_NAME", pkTable);
+    }
+
+    /**
+     * Makes a result set over the given rows whose column is equal to the
+     * given value, or over all of them if the value is null.
+     */
+    private static ResultSet makeResultSet(List<Map<String, String>> rows, String column, String value) {
+        final List<Map<String, String>> matching = new ArrayList<Map<String, String>>();
+        for (Map<String, String> row : rows) {
+            if (value == null || value.equals(row.get(column))) {
+                matching.add(row);
+            }
+        }
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class[] { ResultSet.class }, new InvocationHandler() {
+            private final Iterator<Map<String, String>> it = matching.iterator();
+            private Map<String, String> current;
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("next")) {
+                    current = it.hasNext() ? it.next() : null;
+                    return current != null;
+                }
+                if (method.getName().equals("getString")) return current.get(args[0]);
+                if (method.getName().equals("close")) return null;
+                throw new SQLException("Not supported: " + method.getName());
+            }
+        });
+    }
+
+    private DatabaseMetaData makeMetaData() {
+        return (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+                new Class[] { DatabaseMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                String name = method.getName();
+                if (name.equals("getTables")) {
+                    calls.add(name);
+                    return makeResultSet(tables, "TABLE_SCHEM", (String) args[1]);
+                }
+                if (name.equals("getImportedKeys") || name.equals("getExportedKeys")) {
+                    String table = (String) args[2];
+                    calls.add(name + " " + table);
+                    if (table == null && keysPerTableOnly) {
+                        throw new SQLException("A table name is required");
+                    }
+                    if (table == null && nullTableBound) {
+                        return makeResultSet(keys, "FK_NAME", "no such key");
+                    }
+                    String column = name.equals("getImportedKeys") ? "FKTABLE_NAME" : "PKTABLE_NAME";
+                    return makeResultSet(keys, column, table);
+                }
+                if (name.equals("getIndexInfo")) {
+                    String table = (String) args[2];
+                    calls.add(name + " " + table);
+                    if (table == null && nullTableBound) {
+                        return makeResultSet(indices, "INDEX_NAME", "no such index");
+                    }
+                    return makeResultSet(indices, "TABLE_NAME", table);
+                }
+                throw new SQLException("Not supported: " + name);
+            }
+        });
+    }
+
+    /**
+     * Finds the conflicts with the script in the fake database using the
+     * given generator.
+     */
+    private ConflictResolver findConflicts(DDLGenerator ddlg) throws Exception {
+        ConflictResolver cr = new ConflictResolver(new SQLDatabase(), ddlg, statements);
+        cr.findConflicting(makeMetaData());
+        return cr;
+    }
+
+    /**
+     * The tables, sequences and keys of the schema are each read once, no
+     * matter how many objects the script creates in it.
+     */
+    public void testConflictsFoundWithSchemaWideQueries() throws Exception {
+        ConflictResolver cr = findConflicts(new GenericDDLGenerator(false));
+        assertEquals(EXPECTED_CONFLICTS, cr.toConflictTree());
+        assertEquals("[getTables, getImportedKeys null, getExportedKeys null, getIndexInfo null]",
+                calls.toString());
+    }
+
+    /**
+     * Drivers that can't read the keys of a whole schema get asked about
+     * each conflicting table instead, and the same conflicts are found.
+     */
+    public void testKeysReadPerTableWhenSchemaWideReadFails() throws Exception {
+        keysPerTableOnly = true;
+        ConflictResolver cr = findConflicts(new GenericDDLGenerator(false));
+        assertEquals(EXPECTED_CONFLICTS, cr.toConflictTree());
+        assertEquals("[getTables, getImportedKeys null, getImportedKeys customer, " +
+                "getExportedKeys customer, getIndexInfo null]", calls.toString());
+    }
+
+    /**
+     * Drivers that take a null table name as a name find nothing for the
+     * whole schema without failing. The keys of the conflicting tables and
+     * the indices of every table are then read table by table, and the
+     * same conflicts are found.
+     */
+    public void testReadPerTableWhenSchemaWideReadFindsNothing() throws Exception {
+        nullTableBound = true;
+        ConflictResolver cr = findConflicts(new GenericDDLGenerator(false));
+        assertEquals(EXPECTED_CONFLICTS, cr.toConflictTree());
+        assertEquals("[getTables, getImportedKeys null, getExportedKeys null, " +
+                "getImportedKeys customer, getExportedKeys customer, " +
+                "getIndexInfo null, getTables, " +
+                "getIndexInfo customer, getIndexInfo orders, getIndexInfo region]",
+                calls.toString());
+    }
+
+    /**
+     * Index conflicts are not looked for on platforms where index names only
+     * have to be unique within their tables.
+     */
+    public void testNoIndexConflictsWithoutSchemaWideIndexNames() throws Exception {
+        ConflictResolver cr = findConflicts(new GenericDDLGenerator(false) {
+            @Override
+            public String makeDropIndexSQL(String table, String index) {
+                return null;
+            }
+        });
+        assertEquals(
+                " TABLE s.customer\n" +
+                "  FOREIGN KEY s.fk_customer_region\n" +
+                "  FOREIGN KEY s.fk_orders_customer\n" +
+                " SEQUENCE s.customer_seq\n",
+                cr.toConflictTree());
+        assertFalse(calls.contains("getIndexInfo null"));
+    }
+
+    /**
+     * The generator's target catalog and schema are put back after the
+     * conflicts are found.
+     */
+    public void testTargetSchemaRestored() throws Exception {
+        GenericDDLGenerator ddlg = new GenericDDLGenerator(false);
+        ddlg.setTargetCatalog("cat");
+        ddlg.setTargetSchema("original");
+        findConflicts(ddlg);
+        assertEquals("cat", ddlg.getTargetCatalog());
+        assertEquals("original", ddlg.getTargetSchema());
+    }
+}
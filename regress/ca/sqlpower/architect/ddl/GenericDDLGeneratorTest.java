@@ -19,11 +19,19 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.StringWriter;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import junit.framework.TestCase;
+import ca.sqlpower.architect.DepthFirstSearch;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLType;
 import ca.sqlpower.sqlobject.SQLTypePhysicalPropertiesProvider.PropertyType;
@@ -87,4 +95,145 @@ public class GenericDDLGeneratorTest extends TestCase {
 		assertEquals("NCLOB", ddl.columnType(col3));
 
 	}
+
+	private static List<String> sqlText(List<DDLStatement> statements) {
+	    List<String> text = new ArrayList<String>();
+	    for (DDLStatement s : statements) {
+	        text.add(s.getSQLText());
+	    }
+	    return text;
+	}
+
+	/**
+	 * Statements kept from an earlier run have to be the same as the ones a
+	 * new generator makes, before and after the tables change.
+	 */
+	public void testCachedStatementsMatchNewGenerator() throws Exception {
+	    SQLDatabase db = new SQLDatabase();
+	    db.setPlayPenDatabase(true);
+	    SQLTable parent = new SQLTable(db, true);
+	    parent.setName("parent");
+	    db.addChild(parent);
+	    SQLColumn parentId = new SQLColumn(parent, "parent_id", Types.INTEGER, 10, 0);
+	    parent.addColumn(parentId);
+	    parent.addToPK(parentId);
+	    SQLTable child = new SQLTable(db, true);
+	    child.setName("child");
+	    child.setRemarks("The child table");
+	    db.addChild(child);
+	    child.addColumn(new SQLColumn(child, "name", Types.VARCHAR, 20, 0));
+	    SQLRelationship r = new SQLRelationship();
+	    r.setName("parent_child_fk");
+	    r.attachRelationship(parent, child, true);
+	    List<SQLTable> tables = Arrays.asList(child, parent);
+
+	    GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+	    List<DDLStatement> first = ddl.generateDDLStatements(tables);
+	    List<String> firstText = sqlText(first);
+	    List<DDLStatement> second = ddl.generateDDLStatements(tables);
+	    assertEquals(firstText, sqlText(second));
+	    assertNotSame(first.get(0), second.get(0));
+	    assertSame(parent, second.get(0).getObject());
+
+	    child.getColumnByName("parent_id").setPhysicalName("parent_ref");
+	    List<String> changed = sqlText(ddl.generateDDLStatements(tables));
+	    assertFalse(firstText.equals(changed));
+	    assertEquals(sqlText(new GenericDDLGenerator(false).generateDDLStatements(tables)), changed);
+	}
+
+	/**
+	 * Statements made for many tables at once, on several threads if there
+	 * are several processors, have to be the same ones the generator makes
+	 * one table at a time.
+	 */
+	public void testManyTablesMatchOneAtATime() throws Exception {
+	    SQLDatabase db = new SQLDatabase();
+	    db.setPlayPenDatabase(true);
+	    List<SQLTable> tables = new ArrayList<SQLTable>();
+	    for (int i = 0; i < 40; i++) {
+	        SQLTable t = new SQLTable(db, true);
+	        t.setName("table " + i);
+	        t.setRemarks("Table number " + i);
+	        db.addChild(t);
+	        SQLColumn id = new SQLColumn(t, "id " + i, Types.INTEGER, 10, 0);
+	        t.addColumn(id);
+	        t.addToPK(id);
+	        SQLColumn name = new SQLColumn(t, "name", Types.VARCHAR, 20, 0);
+	        name.setRemarks("The name");
+	        t.addColumn(name);
+	        SQLIndex index = new SQLIndex("name index " + i, false, null, null, null);
+	        t.addChild(index);
+	        index.addChild(new SQLIndex.Column("name", AscendDescend.DESCENDING));
+	        if (i > 0) {
+	            SQLRelationship r = new SQLRelationship();
+	            r.setName("fk " + i);
+	            r.attachRelationship(tables.get(i - 1), t, true);
+	        }
+	        tables.add(t);
+	    }
+
+	    List<Class<? extends GenericDDLGenerator>> generators = new ArrayList<Class<? extends GenericDDLGenerator>>();
+	    generators.add(GenericDDLGenerator.class);
+	    generators.add(DB2DDLGenerator.class);
+	    generators.add(H2DDLGenerator.class);
+	    generators.add(HSQLDBDDLGenerator.class);
+	    generators.add(MySqlDDLGenerator.class);
+	    generators.add(OracleDDLGenerator.class);
+	    generators.add(PostgresDDLGenerator.class);
+	    generators.add(SQLServerDDLGenerator.class);
+	    for (Class<? extends GenericDDLGenerator> generatorClass : generators) {
+	        List<String> all = sqlText(generatorClass.newInstance().generateDDLStatements(tables));
+
+	        GenericDDLGenerator oneAtATime = generatorClass.newInstance();
+	        List<SQLTable> order = new DepthFirstSearch(tables).getFinishOrder();
+	        for (SQLTable t : order) {
+	            oneAtATime.addTable(t);
+	            for (SQLIndex index : t.getIndices()) {
+	                if (index.isPrimaryKeyIndex()) continue;
+	                oneAtATime.addIndex(index);
+	            }
+	        }
+	        for (SQLTable t : order) {
+	            oneAtATime.writeExportedRelationships(t);
+	        }
+	        List<String> expected = sqlText(oneAtATime.getDdlStatements());
+
+	        // a new generator's buffer starts with a line separator
+	        expected.set(0, expected.get(0).substring(GenericDDLGenerator.EOL.length()));
+	        assertEquals(generatorClass.getName(), expected, all);
+	    }
+	}
+
+	public void testWriteScript() throws Exception {
+	    SQLDatabase db = new SQLDatabase();
+	    db.setPlayPenDatabase(true);
+	    SQLTable t = new SQLTable(db, true);
+	    t.setName("written");
+	    db.addChild(t);
+	    t.addColumn(new SQLColumn(t, "id", Types.INTEGER, 10, 0));
+	    t.addColumn(new SQLColumn(t, "name", Types.VARCHAR, 20, 0));
+
+	    GenericDDLGenerator ddl = new GenericDDLGenerator(false);
+	    StringWriter out = new StringWriter();
+	    ddl.writeDDLScript(null, Arrays.asList(t), out);
+
+	    StringBuilder expected = new StringBuilder();
+	    expected.append("-- Created by SQLPower Generic DDL Generator ").append(GenericDDLGenerator.GENERATOR_VERSION)
+	        .append(" --").append(GenericDDLGenerator.EOL);
+	    for (DDLStatement s : ddl.getDdlStatements()) {
+	        expected.append(s.getSQLText()).append(";").append(GenericDDLGenerator.EOL);
+	    }
+	    assertEquals(expected.toString(), out.toString());
+	    assertEquals(out.toString(), ddl.generateDDLScript(null, Arrays.asList(t)));
+	}
+
+	public void testDropIndexAndSequenceSQL() throws Exception {
+	    GenericDDLGenerator ddl = new GenericDDLGenerator();
+	    ddl.setTargetSchema("s");
+	    assertEquals("DROP INDEX s.idx", ddl.makeDropIndexSQL("t", "idx").trim());
+	    assertEquals("DROP SEQUENCE s.seq", ddl.makeDropSequenceSQL("seq").trim());
+
+	    // index names are per table on MySQL, so they never conflict by themselves
+	    assertNull(new MySqlDDLGenerator().makeDropIndexSQL("t", "idx"));
+	}
 }
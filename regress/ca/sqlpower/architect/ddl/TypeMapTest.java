@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ca.sqlpower.architect.ddl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.beanutils.BeanUtils;
+
+import ca.sqlpower.architect.ddl.TypeMap.MappingRule;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TypeMapTest extends TestCase {
+
+    private static final String DB_TYPE = "Test DB";
+
+    private TypeMap typeMap;
+
+    /**
+     * The rules added to {@link #typeMap}, in order.
+     */
+    private List<MappingRule> rules;
+
+    private SQLTable table;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // there is no mappingrules.properties in the working directory, so
+        // the map only has the rules the tests add
+        typeMap = new TypeMap();
+        rules = new ArrayList<MappingRule>();
+
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setPlDbType(DB_TYPE);
+        SQLDatabase db = new SQLDatabase(ds);
+        table = new SQLTable(db, "table", "", "TABLE", true);
+        db.addChild(table);
+    }
+
+    private MappingRule addRule(String nativeType, String compField, String compCondition,
+            String compValue, String modifyField, String modifyValue) {
+        MappingRule rule = typeMap.new MappingRule();
+        rule.setDatabase(typeMap.translateDatabaseName(DB_TYPE));
+        rule.setNativeType(nativeType);
+        rule.setCompField(compField);
+        rule.setCompCondition(compCondition);
+        rule.setCompValue(compValue);
+        rule.setModifyField(modifyField);
+        rule.setModifyValue(modifyValue);
+        typeMap.addRule(rule);
+        rules.add(rule);
+        return rule;
+    }
+
+    private SQLColumn createColumn(String name, String nativeType, int precision) throws Exception {
+        SQLColumn col = new SQLColumn(table, name, Types.INTEGER, precision, 0);
+        col.setSourceDataTypeName(nativeType);
+        table.addColumn(col);
+        return col;
+    }
+
+    /**
+     * Applies the rules the way TypeMap did before they were compiled: every
+     * property is read and set through BeanUtils, and values are compared as
+     * integers when both sides parse as one.
+     */
+    private boolean applyRulesReflectively(SQLColumn col) throws Exception {
+        List<MappingRule> applicable = new ArrayList<MappingRule>();
+        for (MappingRule rule : rules) {
+            if (!rule.getNativeType().equals(col.getSourceDataTypeName())) continue;
+            if (rule.getCompCondition().equals("*")) {
+                applicable.add(rule);
+                continue;
+            }
+            String propertyVal = BeanUtils.getProperty(col, rule.getCompField());
+            try {
+                Integer iPropertyVal = new Integer(propertyVal);
+                Integer iCompValue = new Integer(rule.getCompValue());
+                if (typeMap.satisfiesComparison(iPropertyVal, iCompValue, rule.getCompCondition())) {
+                    applicable.add(rule);
+                }
+            } catch (NumberFormatException nfe) {
+                if (typeMap.satisfiesComparison(propertyVal, rule.getCompValue(), rule.getCompCondition())) {
+                    applicable.add(rule);
+                }
+            }
+        }
+        for (MappingRule rule : applicable) {
+            try {
+                BeanUtils.setProperty(col, rule.getModifyField(), rule.getModifyValue());
+            } catch (Exception e) {
+                // the old code logged these and went on to the next rule
+            }
+        }
+        return applicable.size() > 0;
+    }
+
+    private static String describe(SQLColumn col) {
+        return "precision=" + col.getPrecision() + ", scale=" + col.getScale() +
+            ", type=" + col.getType() + ", nullable=" + col.getNullable() +
+            ", remarks=" + col.getRemarks() + ", native=" + col.getSourceDataTypeName();
+    }
+
+    /**
+     * The compiled rules pick the same rules, change the columns the same
+     * way and return the same value as the old reflective code, for int and
+     * string properties, every condition, and values that are not integers.
+     */
+    public void testSameResultsAsReflectiveRules() throws Exception {
+        addRule("TEXT", "precision", "=", "-1", "precision", "65535");
+        addRule("TEXT", "precision", "<", "0", "scale", "2");
+        addRule("TEXT", "precision", ">", "100", "precision", "100");
+        addRule("TEXT", "*", "*", "*", "nullable", "1");
+        addRule("TEXT", "name", "=", "notes", "remarks", "long text");
+        addRule("TEXT", "precision", "=", "abc", "type", "12");
+        addRule("TEXT", "precision", "=", "50", "precision", "not a number");
+        addRule("CHAR", "name", ">", "m", "type", "1");
+        addRule("CHAR", "scale", "=", "0", "sourceDataTypeName", "CHARACTER");
+
+        String[] names = { "notes", "code", "zip" };
+        String[] nativeTypes = { "TEXT", "CHAR", "BLOB" };
+        int[] precisions = { -1, 0, 50, 200 };
+        for (String name : names) {
+            for (String nativeType : nativeTypes) {
+                for (int precision : precisions) {
+                    SQLColumn compiled = createColumn(name, nativeType, precision);
+                    SQLColumn reflective = createColumn(name, nativeType, precision);
+                    boolean compiledApplied = typeMap.applyRules(compiled);
+                    boolean reflectiveApplied = applyRulesReflectively(reflective);
+                    String context = name + " " + nativeType + "(" + precision + ")";
+                    assertEquals(context, reflectiveApplied, compiledApplied);
+                    assertEquals(context, describe(reflective), describe(compiled));
+                }
+            }
+        }
+    }
+
+    /**
+     * Which rules apply is decided on the column as it was before any of
+     * them changed it, and when two rules change the same property the later
+     * one wins.
+     */
+    public void testRulesAppliedInOrderToOriginalColumn() throws Exception {
+        addRule("TEXT", "precision", "=", "-1", "precision", "65535");
+        addRule("TEXT", "precision", ">", "100", "precision", "100");
+        addRule("TEXT", "precision", "<", "0", "scale", "2");
+        addRule("TEXT", "*", "*", "*", "scale", "3");
+
+        SQLColumn col = createColumn("notes", "TEXT", -1);
+        assertTrue(typeMap.applyRules(col));
+        assertEquals(65535, col.getPrecision());
+        assertEquals(3, col.getScale());
+    }
+
+    /**
+     * applyRules tells whether any rule applied to the column, even one
+     * whose value could not be set.
+     */
+    public void testApplyRulesReturnsWhetherAnyRuleApplied() throws Exception {
+        addRule("TEXT", "precision", "=", "-1", "precision", "65535");
+        addRule("TEXT", "precision", "=", "50", "precision", "not a number");
+
+        assertFalse(typeMap.applyRules(createColumn("a", "BLOB", -1)));
+        assertFalse(typeMap.applyRules(createColumn("b", "TEXT", 10)));
+        assertTrue(typeMap.applyRules(createColumn("c", "TEXT", -1)));
+
+        SQLColumn unconvertible = createColumn("d", "TEXT", 50);
+        assertTrue(typeMap.applyRules(unconvertible));
+        assertEquals(50, unconvertible.getPrecision());
+    }
+
+    /**
+     * Adding or removing a rule after the rules were compiled takes effect
+     * on the next column.
+     */
+    public void testAddAndRemoveRuleRecompiles() throws Exception {
+        assertFalse(typeMap.applyRules(createColumn("a", "TEXT", -1)));
+
+        MappingRule rule = addRule("TEXT", "precision", "=", "-1", "precision", "65535");
+        SQLColumn col = createColumn("b", "TEXT", -1);
+        assertTrue(typeMap.applyRules(col));
+        assertEquals(65535, col.getPrecision());
+
+        assertTrue(typeMap.removeRule(rule));
+        col = createColumn("c", "TEXT", -1);
+        assertFalse(typeMap.applyRules(col));
+        assertEquals(-1, col.getPrecision());
+    }
+
+    /**
+     * The rules compare values as integers exactly when new Integer(String)
+     * would parse them.
+     */
+    public void testParseIntegerMatchesIntegerConstructor() {
+        String[] values = { "0", "-1", "255", "-0", "2147483647", "-2147483648",
+                "2147483648", "-2147483649", "", "-", "1.5", "abc", " 1", "99999999999" };
+        for (String value : values) {
+            long expected;
+            try {
+                expected = new Integer(value).intValue();
+            } catch (NumberFormatException e) {
+                expected = Long.MIN_VALUE;
+            }
+            assertEquals("Parsing \"" + value + "\"", expected, TypeMap.parseInteger(value));
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers shared by the critic tests.
+ */
+class CriticTestUtils {
+
+    private CriticTestUtils() {
+        // static helpers only
+    }
+
+    /**
+     * Describes the criticisms so lists made by different runs can be
+     * compared.
+     */
+    static List<String> describe(List<Criticism> criticisms) {
+        List<String> descriptions = new ArrayList<String>();
+        for (Criticism c : criticisms) {
+            descriptions.add(System.identityHashCode(c.getSubject()) + " " + c.getSubject() + ": "
+                    + c.getDescription());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
+import ca.sqlpower.architect.ddl.critic.impl.DuplicateNameCritic;
+import ca.sqlpower.architect.ddl.critic.impl.EmptyRelationshipCritic;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class CriticizerTest extends TestCase {
+
+    /**
+     * Gives every object to the critic it wraps. The criticizer does not
+     * know what this critic looks at, so it walks everything on one thread
+     * when it is used.
+     */
+    private static class SerialCritic implements Critic {
+        private final Critic delegate;
+
+        SerialCritic(Critic delegate) {
+            this.delegate = delegate;
+        }
+
+        public void start() {
+            delegate.start();
+        }
+
+        public List<Criticism> criticize(Object subject) {
+            return delegate.criticize(subject);
+        }
+
+        public void end() {
+            delegate.end();
+        }
+
+        public Severity getSeverity() {
+            return delegate.getSeverity();
+        }
+    }
+
+    private SQLDatabase db;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        db.setPlayPenDatabase(true);
+        SQLTable previous = null;
+        for (int i = 0; i < 100; i++) {
+            SQLTable table = new SQLTable(db, true);
+            String name = "table_" + (i % 7);
+            table.setName(name);
+            table.setPhysicalName(name);
+            db.addChild(table);
+            SQLColumn id = new SQLColumn(table, "id", Types.INTEGER, 10, 0);
+            id.setPhysicalName("id");
+            table.addColumn(id);
+            if (i % 3 != 0) {
+                table.addToPK(id);
+            }
+            if (previous != null && i % 5 == 0) {
+                SQLRelationship r = new SQLRelationship();
+                r.setName("fk_" + i);
+                r.setPhysicalName("fk_" + (i % 4));
+                r.attachRelationship(previous, table, false);
+            }
+            previous = table;
+        }
+    }
+
+    /**
+     * The criticisms of a large database have to be the same, in the same
+     * order, whether its tables were criticized on one thread or several.
+     * Several threads are used even on a machine with one processor.
+     */
+    public void testSameCriticismsOnAnyNumberOfThreads() throws Exception {
+        List<Critic> critics = Arrays.<Critic>asList(new PrimaryKeyCritic(), new DuplicateNameCritic(),
+                new EmptyRelationshipCritic());
+        List<Critic> serialCritics = new ArrayList<Critic>();
+        for (Critic c : critics) {
+            serialCritics.add(new SerialCritic(c));
+        }
+
+        List<Criticism> parallel = new Criticizer(critics, 4).criticize(db);
+        List<Criticism> serial = new Criticizer(serialCritics).criticize(db);
+        assertFalse(serial.isEmpty());
+        assertEquals(CriticTestUtils.describe(serial), CriticTestUtils.describe(parallel));
+    }
+
+    /**
+     * Critics are only given the types of object they say they criticize.
+     */
+    public void testCriticsOnlyGivenTheirSubjectTypes() throws Exception {
+        final List<Object> subjects = new ArrayList<Object>();
+        Critic tableCritic = new PrimaryKeyCritic() {
+            @Override
+            public List<Criticism> criticize(Object so) {
+                synchronized (subjects) {
+                    subjects.add(so);
+                }
+                return super.criticize(so);
+            }
+        };
+        new Criticizer(Arrays.asList(tableCritic)).criticize(db);
+        assertEquals(db.getChildren().size(), subjects.size());
+        for (Object subject : subjects) {
+            assertTrue(subject instanceof SQLTable);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.impl.DuplicateNameCritic;
+import ca.sqlpower.architect.ddl.critic.impl.EmptyRelationshipCritic;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class IncrementalCriticizerTest extends TestCase {
+
+    /**
+     * Counts the objects it is given.
+     */
+    private static class CountingDuplicateNameCritic extends DuplicateNameCritic {
+        private int count;
+
+        @Override
+        public List<Criticism> criticize(Object subject) {
+            count++;
+            return super.criticize(subject);
+        }
+    }
+
+    private SQLDatabase db;
+    private SQLTable parent;
+    private SQLTable child;
+    private CountingDuplicateNameCritic duplicateNameCritic;
+    private List<Critic> critics;
+    private CriticismBucket bucket;
+    private IncrementalCriticizer criticizer;
+    private int events;
+
+    @Override
+    protected void setUp() throws Exception {
+        db = new SQLDatabase();
+        db.setPlayPenDatabase(true);
+        parent = new SQLTable(db, true);
+        parent.setName("parent");
+        parent.setPhysicalName("parent");
+        db.addChild(parent);
+        child = new SQLTable(db, true);
+        child.setName("child");
+        child.setPhysicalName("child");
+        db.addChild(child);
+        SQLColumn id = new SQLColumn(child, "id", Types.INTEGER, 10, 0);
+        id.setPhysicalName("id");
+        child.addColumn(id);
+        child.addToPK(id);
+
+        duplicateNameCritic = new CountingDuplicateNameCritic();
+        critics = Arrays.<Critic>asList(new PrimaryKeyCritic(), duplicateNameCritic,
+                new EmptyRelationshipCritic());
+        bucket = new CriticismBucket();
+        bucket.addCriticismListener(new CriticismListener() {
+            public void criticismRemoved(CriticismEvent e) {
+                events++;
+            }
+            public void criticismAdded(CriticismEvent e) {
+                events++;
+            }
+        });
+        criticizer = new IncrementalCriticizer(critics, Collections.singletonList(db), bucket);
+        criticizer.setAutoRefresh(true);
+        criticizer.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        criticizer.stop();
+    }
+
+    private void assertMatchesFullRun() {
+        List<Criticism> full = new Criticizer(critics).criticize(db);
+        assertEquals(CriticTestUtils.describe(full), CriticTestUtils.describe(bucket.getCriticisms()));
+    }
+
+    public void testMatchesFullRunAfterChanges() throws Exception {
+        assertMatchesFullRun();
+        assertFalse(bucket.getCriticisms().isEmpty());
+
+        SQLColumn parentId = new SQLColumn(parent, "parent_id", Types.INTEGER, 10, 0);
+        parentId.setPhysicalName("parent_id");
+        parent.addColumn(parentId);
+        parent.addToPK(parentId);
+        assertMatchesFullRun();
+
+        SQLRelationship r = new SQLRelationship();
+        r.setName("parent_child_fk");
+        r.setPhysicalName("parent_child_fk");
+        r.attachRelationship(parent, child, true);
+        assertMatchesFullRun();
+
+        child.setPhysicalName("parent");
+        assertMatchesFullRun();
+
+        child.setPhysicalName("child");
+        child.removeColumn(child.getColumnByName("id"));
+        assertMatchesFullRun();
+
+        db.removeChild(parent);
+        assertMatchesFullRun();
+    }
+
+    /**
+     * Renaming an object only gives the name critic the objects that had or
+     * now have the same names, and the criticisms still match a full run.
+     */
+    public void testNameCriticOnlySeesObjectsWithChangedNames() throws Exception {
+        List<SQLTable> tables = new ArrayList<SQLTable>();
+        for (int i = 0; i < 20; i++) {
+            SQLTable table = new SQLTable(db, true);
+            table.setName("table" + i);
+            table.setPhysicalName("table" + i);
+            db.addChild(table);
+            SQLColumn col = new SQLColumn(table, "col", Types.INTEGER, 10, 0);
+            col.setPhysicalName("col");
+            table.addColumn(col);
+            tables.add(table);
+        }
+        assertMatchesFullRun();
+
+        duplicateNameCritic.count = 0;
+        tables.get(3).setPhysicalName("table7");
+        assertTrue("Criticized " + duplicateNameCritic.count + " objects",
+                duplicateNameCritic.count < tables.size());
+        assertMatchesFullRun();
+
+        duplicateNameCritic.count = 0;
+        tables.get(3).setPhysicalName("table3");
+        assertTrue("Criticized " + duplicateNameCritic.count + " objects",
+                duplicateNameCritic.count < tables.size());
+        assertMatchesFullRun();
+    }
+
+    /**
+     * Removing the first of two objects with the same name takes the
+     * criticism of the second one away.
+     */
+    public void testRemovingDuplicateClearsCriticism() throws Exception {
+        child.setPhysicalName("parent");
+        assertMatchesFullRun();
+        db.removeChild(parent);
+        assertMatchesFullRun();
+    }
+
+    /**
+     * Criticisms are only refreshed automatically when asked to.
+     */
+    public void testNoAutoRefreshByDefault() throws Exception {
+        IncrementalCriticizer manual = new IncrementalCriticizer(critics,
+                Collections.singletonList(db), new CriticismBucket());
+        assertFalse(manual.isAutoRefresh());
+    }
+
+    /**
+     * Changes made while a snapshot is being criticized are left for the
+     * next snapshot, and the two runs together match a full run.
+     */
+    public void testChangesDuringSnapshotRunAreKept() throws Exception {
+        criticizer.setAutoRefresh(false);
+        child.setPhysicalName("parent");
+        assertTrue(criticizer.isDirty());
+
+        IncrementalCriticizer.Snapshot snapshot = criticizer.takeSnapshot();
+        assertFalse(criticizer.isDirty());
+        child.setPhysicalName("child");
+        assertTrue(criticizer.isDirty());
+        bucket.updateCriticismsToMatch(criticizer.criticize(snapshot));
+
+        bucket.updateCriticismsToMatch(criticizer.criticize(criticizer.takeSnapshot()));
+        assertMatchesFullRun();
+    }
+
+    /**
+     * A change that doesn't change any criticisms should not tell the
+     * bucket's listeners about anything.
+     */
+    public void testUnrelatedChangeFiresNoEvents() throws Exception {
+        events = 0;
+        child.setRemarks("No criticisms here");
+        assertEquals(0, events);
+        assertMatchesFullRun();
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.MySqlDDLGenerator;
+import ca.sqlpower.architect.ddl.OracleDDLGenerator;
+
+public class NameCheckerTest extends TestCase {
+
+    public void testReservedWordsOfEachPlatform() throws Exception {
+        NameChecker.ReservedWords oracle = NameChecker.getReservedWords(OracleDDLGenerator.RESERVED_WORDS);
+        NameChecker.ReservedWords mySql = NameChecker.getReservedWords(MySqlDDLGenerator.RESERVED_WORDS);
+        assertSame(oracle, NameChecker.getReservedWords(OracleDDLGenerator.RESERVED_WORDS));
+
+        assertTrue(oracle.isReserved("ARRAYLEN"));
+        assertTrue(oracle.isReserved("arrayLen"));
+        assertFalse(mySql.isReserved("arraylen"));
+        assertTrue(oracle.isReserved("select"));
+        assertTrue(mySql.isReserved("select"));
+        assertFalse(oracle.isReserved("customer"));
+        assertFalse(oracle.isReserved(null));
+    }
+
+    /**
+     * A set of words added after names have been checked has to be seen by
+     * the next check of the same names.
+     */
+    public void testNewWordsSeenByCheckedNames() throws Exception {
+        NameChecker.ReservedWords oracle = NameChecker.getReservedWords(OracleDDLGenerator.RESERVED_WORDS);
+        assertFalse(oracle.isReserved("name_checker_test"));
+        Set<String> words = new HashSet<String>(Arrays.asList("name_checker_test"));
+        NameChecker.ReservedWords added = NameChecker.getReservedWords(words);
+        assertTrue(added.isReserved("NAME_CHECKER_TEST"));
+        assertFalse(oracle.isReserved("name_checker_test"));
+    }
+
+    public void testLegalNamesSharedByPattern() throws Exception {
+        NameChecker.LegalNames names = NameChecker.getLegalNames(
+                Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE));
+        assertSame(names, NameChecker.getLegalNames(
+                Pattern.compile("^[a-z_][a-z0-9_]*$", Pattern.CASE_INSENSITIVE)));
+        assertTrue(names.isLegal("Customer_1"));
+        assertTrue(names.isLegal("Customer_1"));
+        assertFalse(names.isLegal("1customer"));
+        assertFalse(names.isLegal("customer name"));
+    }
+}
@@ -865,6 +865,75 @@ public class CompareSQLTest extends TestCase {
 		return t;
 	}
 
+	/**
+	 * Matching tables are compared on several threads, but their chunks must
+	 * still come back in the order the tables sort in, each table followed by
+	 * its own columns.
+	 */
+	public void testManyTablesKeepOrder() throws SQLObjectException {
+		List<SQLTable> sourceTables = new ArrayList<SQLTable>();
+		List<SQLTable> targetTables = new ArrayList<SQLTable>();
+		for (int i = 100; i < 400; i++) {
+			if (i % 3 != 2) sourceTables.add(makeTable(i, 4));
+			if (i % 3 != 1) {
+				SQLTable t = makeTable(i, 4);
+				if (i % 5 == 0) t.setRemarks("changed");
+				targetTables.add(t);
+			}
+		}
+		CompareSQL compare = new CompareSQL(sourceTables, targetTables, false);
+		List<DiffChunk<SQLObject>> diffs = compare.generateTableDiffs();
+
+		int index = 0;
+		for (int i = 100; i < 400; i++) {
+			DiffChunk<SQLObject> chunk = diffs.get(index++);
+			assertEquals("table_" + i, chunk.getData().getName());
+			if (i % 3 == 1) {
+				assertEquals(DiffType.LEFTONLY, chunk.getType());
+			} else if (i % 3 == 2) {
+				assertEquals(DiffType.RIGHTONLY, chunk.getType());
+			} else {
+				assertEquals(i % 5 == 0 ? DiffType.SQL_MODIFIED : DiffType.SAME, chunk.getType());
+				for (int j = 0; j < 4; j++) {
+					chunk = diffs.get(index++);
+					assertEquals(DiffType.SAME, chunk.getType());
+					assertEquals("column_" + j, chunk.getData().getName());
+				}
+			}
+		}
+		assertEquals(index, diffs.size());
+		assertTrue(compare.isFinished());
+	}
+
+	/**
+	 * A listener is given the same chunks the list has, in the same order,
+	 * with each table and its columns in one batch.
+	 */
+	public void testListenerGetsChunksInOrder() throws SQLObjectException {
+		List<SQLTable> sourceTables = new ArrayList<SQLTable>();
+		List<SQLTable> targetTables = new ArrayList<SQLTable>();
+		for (int i = 100; i < 150; i++) {
+			if (i % 4 != 1) sourceTables.add(makeTable(i, 3));
+			if (i % 4 != 2) targetTables.add(makeTable(i, i % 3 == 0 ? 2 : 3));
+		}
+		List<DiffChunk<SQLObject>> expected =
+			new CompareSQL(sourceTables, targetTables, false).generateTableDiffs();
+
+		final List<DiffChunk<SQLObject>> streamed = new ArrayList<DiffChunk<SQLObject>>();
+		new CompareSQL(sourceTables, targetTables, false).generateTableDiffs(null, new DiffChunkListener() {
+			public void chunksGenerated(List<DiffChunk<SQLObject>> chunks) {
+				assertTrue(chunks.get(0).getData() instanceof SQLTable);
+				streamed.addAll(chunks);
+			}
+		});
+
+		assertEquals(expected.size(), streamed.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i).getData(), streamed.get(i).getData());
+			assertEquals(expected.get(i).getType(), streamed.get(i).getType());
+		}
+	}
+
 	/*
 	 * Test method for 'ca.sqlpower.architect.swingui.CompareSchemaWorker.isFinished()'
 	 */
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class PropertyDifferTest extends TestCase {
+
+    /**
+     * Checks the differ finds exactly the changes a comparison of the full
+     * property maps finds, in the same order.
+     */
+    private void assertSameChanges(SQLObject source, SQLObject target) throws Exception {
+        List<PropertyChange> expected = PropertyDiffer.compareAllProperties(source, target);
+        List<PropertyChange> actual = PropertyDiffer.generatePropertyChanges(source, target);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getPropertyName(), actual.get(i).getPropertyName());
+            assertEquals(expected.get(i).getOldValue(), actual.get(i).getOldValue());
+            assertEquals(expected.get(i).getNewValue(), actual.get(i).getNewValue());
+        }
+    }
+
+    public void testSameColumns() throws Exception {
+        SQLColumn source = new SQLColumn(null, "col", Types.VARCHAR, 20, 0);
+        SQLColumn target = new SQLColumn(null, "col", Types.VARCHAR, 20, 0);
+        assertTrue(PropertyDiffer.generatePropertyChanges(source, target).isEmpty());
+        assertSameChanges(source, target);
+    }
+
+    public void testChangedColumns() throws Exception {
+        SQLColumn source = new SQLColumn(null, "col", Types.VARCHAR, 20, 0);
+        SQLColumn target = new SQLColumn(null, "col", Types.DECIMAL, 10, 2);
+        target.setRemarks("changed");
+        target.setNullable(SQLColumn.columnNoNulls);
+        target.setDefaultValue("0");
+        assertFalse(PropertyDiffer.generatePropertyChanges(source, target).isEmpty());
+        assertSameChanges(source, target);
+        assertSameChanges(target, source);
+    }
+
+    /**
+     * An empty string and null are the same value to the comparison.
+     */
+    public void testEmptyAndNullRemarks() throws Exception {
+        SQLTable source = new SQLTable(null, "table", "", "TABLE", true);
+        SQLTable target = new SQLTable(null, "table", null, "TABLE", true);
+        assertTrue(PropertyDiffer.generatePropertyChanges(source, target).isEmpty());
+        assertSameChanges(source, target);
+    }
+
+    public void testChangedTables() throws Exception {
+        SQLTable source = new SQLTable(null, "table", "remarks", "TABLE", true);
+        SQLTable target = new SQLTable(null, "table2", "other remarks", "TABLE", true);
+        target.setPhysicalName("TABLE_2");
+        assertSameChanges(source, target);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.sql.Types;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.SwingUIProjectLoader;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class TableDigestTest extends TestCase {
+
+    private SQLTable makeTable() throws SQLObjectException {
+        SQLTable t = new SQLTable(null, "table", "remarks", "TABLE", true);
+        t.addColumn(new SQLColumn(t, "id", Types.INTEGER, 10, 0));
+        t.addColumn(new SQLColumn(t, "name", Types.VARCHAR, 50, 0));
+        t.addToPK(t.getColumn(0));
+        return t;
+    }
+
+    public void testSameTablesSameDigest() throws Exception {
+        assertTrue(TableDigest.isSame(makeTable(), makeTable()));
+    }
+
+    public void testColumnChangeClearsDigest() throws Exception {
+        SQLTable source = makeTable();
+        SQLTable target = makeTable();
+        String digest = TableDigest.getDigest(target);
+        assertEquals(digest, TableDigest.getCachedDigest(target));
+
+        target.getColumn(1).setPrecision(60);
+        assertNull(TableDigest.getCachedDigest(target));
+        assertFalse(TableDigest.isSame(source, target));
+    }
+
+    public void testPrimaryKeyChangeClearsDigest() throws Exception {
+        SQLTable source = makeTable();
+        SQLTable target = makeTable();
+        assertTrue(TableDigest.isSame(source, target));
+        target.addToPK(target.getColumn(1));
+        assertFalse(TableDigest.isSame(source, target));
+    }
+
+    public void testAddedColumnClearsDigest() throws Exception {
+        SQLTable source = makeTable();
+        SQLTable target = makeTable();
+        assertTrue(TableDigest.isSame(source, target));
+        target.addColumn(new SQLColumn(target, "extra", Types.INTEGER, 10, 0));
+        assertFalse(TableDigest.isSame(source, target));
+    }
+
+    /**
+     * A digest given to a table, the way the project loader does, is kept
+     * until the table changes.
+     */
+    public void testSavedDigest() throws Exception {
+        SQLTable table = makeTable();
+        TableDigest.setDigest(table, "saved");
+        assertEquals("saved", TableDigest.getDigest(table));
+        table.setRemarks("changed");
+        assertEquals(TableDigest.computeDigest(table), TableDigest.getDigest(table));
+    }
+
+    /**
+     * A digest is saved with a play pen table. Whatever the loader's fixups
+     * do to the loaded table, the digest it ends up with has to match its
+     * contents.
+     */
+    public void testSaveAndLoadRoundTrip() throws Exception {
+        TestingArchitectSwingSessionContext context = new TestingArchitectSwingSessionContext();
+        ArchitectSwingSession session = context.createSession();
+        SQLTable table = makeTable();
+        session.getTargetDatabase().addChild(table);
+        String digest = TableDigest.getDigest(table);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new SwingUIProjectLoader(session).save(out, "UTF-8");
+        assertTrue(out.toString("UTF-8").contains("content-digest=\"" + digest + "\""));
+
+        ArchitectSwingSession session2 = context.createSession();
+        new SwingUIProjectLoader(session2).load(new ByteArrayInputStream(out.toByteArray()), new PlDotIni());
+        SQLTable loaded = session2.getTargetDatabase().getTableByName("table");
+        assertEquals(TableDigest.computeDigest(loaded), TableDigest.getDigest(loaded));
+    }
+
+    /**
+     * A comparison that leaves out similarities skips tables with the same
+     * digest, and still finds the ones that differ.
+     */
+    public void testCompareSkipsSameTables() throws Exception {
+        SQLTable source = makeTable();
+        SQLTable target = makeTable();
+        CompareSQL compare = new CompareSQL(Collections.singletonList(source),
+                Collections.singletonList(target), true);
+        assertTrue(compare.generateTableDiffs().isEmpty());
+
+        target.getColumn(1).setType(Types.CHAR);
+        compare = new CompareSQL(Collections.singletonList(source), Collections.singletonList(target), true);
+        assertFalse(compare.generateTableDiffs().isEmpty());
+    }
+}
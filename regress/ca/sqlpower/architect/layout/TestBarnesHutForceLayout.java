@@ -0,0 +1,194 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.layout;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class TestBarnesHutForceLayout extends TestCase {
+
+    private static class Node extends AbstractLayoutNode {
+        private final Rectangle bounds;
+        private final List<LayoutEdge> inbound = new ArrayList<LayoutEdge>();
+        private final List<LayoutEdge> outbound = new ArrayList<LayoutEdge>();
+
+        Node(int x, int y) {
+            bounds = new Rectangle(x, y, 120, 80);
+        }
+
+        @Override
+        public Rectangle getBounds(Rectangle b) {
+            b.setBounds(bounds);
+            return b;
+        }
+
+        @Override
+        public List<LayoutEdge> getInboundEdges() {
+            return inbound;
+        }
+
+        @Override
+        public List<LayoutEdge> getOutboundEdges() {
+            return outbound;
+        }
+
+        @Override
+        public String getNodeName() {
+            return "Node at " + bounds.getLocation();
+        }
+
+        @Override
+        public void setBounds(int x, int y, int width, int height) {
+            bounds.setBounds(x, y, width, height);
+        }
+    }
+
+    private static class Edge implements LayoutEdge {
+        private final Node tail;
+        private final Node head;
+
+        Edge(Node tail, Node head) {
+            this.tail = tail;
+            this.head = head;
+            tail.outbound.add(this);
+            head.inbound.add(this);
+        }
+
+        public LayoutNode getTailNode() {
+            return tail;
+        }
+
+        public LayoutNode getHeadNode() {
+            return head;
+        }
+    }
+
+    private BarnesHutForceLayout layout;
+    private List<Node> nodes;
+    private List<Edge> edges;
+
+    @Override
+    protected void setUp() throws Exception {
+        layout = new BarnesHutForceLayout(new Random(2147));
+        nodes = new ArrayList<Node>();
+        edges = new ArrayList<Edge>();
+    }
+
+    /**
+     * Makes the given number of nodes piled on top of each other near the
+     * origin, each related to one of the nodes before it.
+     */
+    private void makeRelatedNodes(int count) {
+        for (int i = 0; i < count; i++) {
+            Node node = new Node((i * 7) % 50, (i * 13) % 50);
+            if (i > 0) {
+                edges.add(new Edge(node, nodes.get((i * 31) % i)));
+            }
+            nodes.add(node);
+        }
+    }
+
+    private Rectangle runLayout() {
+        Rectangle frame = new Rectangle(new Point(), layout.getNewArea(nodes));
+        layout.setup(nodes, edges, frame);
+        int frames = 0;
+        while (!layout.isDone()) {
+            layout.nextFrame();
+            frames++;
+            assertTrue("Layout never finished", frames < 1000);
+        }
+        layout.done();
+        return frame;
+    }
+
+    public void testIsDoneNoElem() {
+        layout.setup(nodes, edges, new Rectangle(0, 0, 100, 100));
+        assertTrue(layout.isDone());
+    }
+
+    public void testIsDoneOneElem() {
+        nodes.add(new Node(10, 10));
+        layout.setup(nodes, edges, new Rectangle(0, 0, 100, 100));
+        assertTrue(layout.isDone());
+    }
+
+    public void testDone() {
+        makeRelatedNodes(2);
+        layout.setup(nodes, edges, new Rectangle(0, 0, 1000, 1000));
+        assertFalse(layout.isDone());
+        layout.done();
+        assertTrue(layout.isDone());
+    }
+
+    /**
+     * The nodes start piled up and get pushed apart. A force layout doesn't
+     * promise that no two nodes overlap, so this only checks that their
+     * centres end up well apart.
+     */
+    public void testSeparatesRelatedNodes() {
+        makeRelatedNodes(10);
+        Rectangle frame = runLayout();
+        for (int i = 0; i < nodes.size(); i++) {
+            Rectangle bounds = nodes.get(i).getBounds();
+            assertTrue(frame.contains(bounds));
+            for (int j = i + 1; j < nodes.size(); j++) {
+                Rectangle other = nodes.get(j).getBounds();
+                double distance = Math.hypot(bounds.getCenterX() - other.getCenterX(),
+                        bounds.getCenterY() - other.getCenterY());
+                assertTrue("Nodes " + i + " and " + j + " are only " + distance + " apart",
+                        distance >= bounds.height / 2.0);
+            }
+        }
+    }
+
+    /**
+     * Large layouts take the path that adds up the pushes on several
+     * threads when there is more than one processor.
+     */
+    public void testLargeLayoutStaysInFrame() {
+        makeRelatedNodes(300);
+        Rectangle frame = runLayout();
+        List<Point> locations = new ArrayList<Point>();
+        for (Node node : nodes) {
+            assertTrue(frame.contains(node.getBounds()));
+            locations.add(node.getLocation());
+        }
+        assertEquals(nodes.size(), new HashSet<Point>(locations).size());
+    }
+
+    public void testOrphansLaidOutAlongTheBottom() {
+        makeRelatedNodes(3);
+        Node orphan = new Node(0, 0);
+        nodes.add(orphan);
+        Rectangle frame = runLayout();
+        for (Node node : nodes) {
+            if (node != orphan) {
+                assertTrue(node.getY() + node.getHeight() <= orphan.getY());
+            }
+        }
+        assertTrue(orphan.getY() + orphan.getHeight() <= frame.y + frame.height);
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.sql.Types;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ColumnProfileAccumulatorTest extends TestCase {
+
+    private SQLColumn column;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        SQLTable table = new SQLTable(null, "table", null, "TABLE", true);
+        column = new SQLColumn(table, "id", Types.INTEGER, 10, 0);
+        table.addColumn(column);
+    }
+
+    public void testPopulateExact() throws Exception {
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator();
+        acc.add("aa");
+        acc.add("b");
+        acc.add(null);
+        acc.add("aa");
+
+        TableProfileResult tpr = new TableProfileResult(column.getParent(), new ProfileSettings());
+        tpr.setRowCount(acc.getRowCount());
+        ColumnProfileResult cpr = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(cpr);
+        acc.populate(cpr, 10);
+
+        assertEquals(3, cpr.getDistinctValueCount());
+        assertEquals(1, cpr.getNullCount());
+        assertEquals(1, cpr.getMinLength());
+        assertEquals(2, cpr.getMaxLength());
+        assertEquals("aa", cpr.getMinValue());
+        assertEquals("b", cpr.getMaxValue());
+        assertFalse(cpr.isApproximate());
+        assertEquals("aa", cpr.getValueCount().get(0).getValue());
+        assertEquals(2, cpr.getValueCount().get(0).getCount());
+    }
+
+    /**
+     * An exact accumulator stops counting values individually once a column
+     * has more distinct values than it can hold, and reports the error of
+     * its estimates from then on.
+     */
+    public void testExactBoundedByTrackedValues() throws Exception {
+        ColumnProfileAccumulator acc = new ColumnProfileAccumulator();
+        int distinct = ColumnProfileAccumulator.EXACT_TRACKED_VALUES * 2;
+        for (int i = 0; i < distinct; i++) {
+            acc.add(Integer.valueOf(i));
+        }
+
+        TableProfileResult tpr = new TableProfileResult(column.getParent(), new ProfileSettings());
+        tpr.setRowCount(acc.getRowCount());
+        ColumnProfileResult cpr = new ColumnProfileResult(column);
+        tpr.addColumnProfileResult(cpr);
+        acc.populate(cpr, 10);
+
+        assertTrue(cpr.isApproximate());
+        assertTrue(cpr.getDistinctValueCountError() > 0);
+        assertEquals(distinct, cpr.getDistinctValueCount(), distinct * 0.05);
+    }
+
+    /**
+     * Merging the profile of newly added rows into an earlier profile must
+     * give the statistics of all the rows together.
+     */
+    public void testPopulateMerged() throws Exception {
+        ColumnProfileAccumulator first = new ColumnProfileAccumulator(
+                Integer.MAX_VALUE, IncrementalProfileCreator.SKETCH_PRECISION);
+        for (int i = 1; i <= 100; i++) {
+            first.add(Integer.valueOf(i));
+        }
+        for (int i = 0; i < 20; i++) {
+            first.add(Integer.valueOf(7));
+        }
+        TableProfileResult baseTPR = new TableProfileResult(column.getParent(), new ProfileSettings());
+        baseTPR.setRowCount(first.getRowCount());
+        ColumnProfileResult baseCPR = new ColumnProfileResult(column);
+        baseTPR.addColumnProfileResult(baseCPR);
+        first.populate(baseCPR, 5);
+        baseCPR.setDistinctValueSketch(first.getDistinctValueSketch().encode());
+
+        ColumnProfileAccumulator second = new ColumnProfileAccumulator(
+                Integer.MAX_VALUE, IncrementalProfileCreator.SKETCH_PRECISION);
+        for (int i = 101; i <= 150; i++) {
+            second.add(Integer.valueOf(i));
+        }
+        for (int i = 0; i < 5; i++) {
+            second.add(Integer.valueOf(7));
+        }
+        second.add(null);
+        TableProfileResult mergedTPR = new TableProfileResult(column.getParent(), new ProfileSettings());
+        mergedTPR.setRowCount(baseTPR.getRowCount() + second.getRowCount());
+        ColumnProfileResult merged = new ColumnProfileResult(column);
+        mergedTPR.addColumnProfileResult(merged);
+        second.populateMerged(merged, baseCPR, 5);
+
+        assertEquals(176, mergedTPR.getRowCount());
+        assertEquals(1, merged.getNullCount());
+        assertEquals(Integer.valueOf(1), merged.getMinValue());
+        assertEquals(Integer.valueOf(150), merged.getMaxValue());
+        assertEquals(1, merged.getMinLength());
+        assertEquals(3, merged.getMaxLength());
+        double expectedSum = 150 * 151 / 2 + 7 * 25;
+        assertEquals(expectedSum / 176, ((Number) merged.getAvgValue()).doubleValue(), 0.0001);
+        assertEquals(151, merged.getDistinctValueCount(), 5);
+        assertTrue(merged.getDistinctValueCountError() > 0);
+        assertNotNull(merged.getDistinctValueSketch());
+
+        ColumnValueCount top = merged.getValueCount().get(0);
+        assertEquals(new BigDecimal("7"), top.getValue());
+        assertEquals(26, top.getCount());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import junit.framework.TestCase;
+
+public class HyperLogLogTest extends TestCase {
+
+    public void testSmallCardinalityIsNearlyExact() throws Exception {
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000; i++) {
+            hll.offer("value " + (i % 100));
+        }
+        hll.offer(null);
+        assertEquals(101, hll.cardinality(), 2);
+    }
+
+    /**
+     * The estimate must be within a few standard errors of the true count.
+     */
+    public void testLargeCardinalityWithinErrorBound() throws Exception {
+        HyperLogLog hll = new HyperLogLog(12);
+        int distinct = 200000;
+        for (int i = 0; i < distinct; i++) {
+            hll.offer(Integer.valueOf(i));
+            hll.offer(Integer.valueOf(i));
+        }
+        double error = Math.abs(hll.cardinality() - distinct) / (double) distinct;
+        assertTrue("Error " + error + " exceeds bound", error < 4 * hll.getRelativeError());
+    }
+
+    public void testMergeEqualsCombinedStream() throws Exception {
+        HyperLogLog a = new HyperLogLog(10);
+        HyperLogLog b = new HyperLogLog(10);
+        HyperLogLog both = new HyperLogLog(10);
+        for (int i = 0; i < 5000; i++) {
+            a.offer(Long.valueOf(i));
+            both.offer(Long.valueOf(i));
+        }
+        for (int i = 2500; i < 9000; i++) {
+            b.offer(Long.valueOf(i));
+            both.offer(Long.valueOf(i));
+        }
+        a.merge(b);
+        assertEquals(both.cardinality(), a.cardinality());
+    }
+
+    public void testMergeRejectsDifferentPrecision() throws Exception {
+        try {
+            new HyperLogLog(10).merge(new HyperLogLog(11));
+            fail("Merging sketches of different precision should fail");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+
+    public void testEncodeDecodeRoundTrip() throws Exception {
+        HyperLogLog hll = new HyperLogLog(11);
+        for (int i = 0; i < 3000; i++) {
+            hll.offer("row " + i);
+        }
+        String encoded = hll.encode();
+        assertEquals(2048, encoded.length());
+        for (int i = 0; i < encoded.length(); i++) {
+            char c = encoded.charAt(i);
+            assertTrue("Character " + (int) c + " is not XML safe", c >= '@' && c <= '}');
+        }
+        HyperLogLog decoded = HyperLogLog.decode(encoded);
+        assertEquals(11, decoded.getPrecision());
+        assertEquals(hll.cardinality(), decoded.cardinality());
+        assertEquals(encoded, decoded.encode());
+    }
+
+    public void testDecodeRejectsBadLength() throws Exception {
+        try {
+            HyperLogLog.decode("@@@");
+            fail("A sketch must have a power of 2 registers");
+        } catch (IllegalArgumentException ex) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProfileResultStoreTest extends TestCase {
+
+    private SQLTable table;
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        table = new SQLTable(null, "table", null, "TABLE", true);
+        table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+        table.addColumn(new SQLColumn(table, "name", Types.VARCHAR, 20, 0));
+        file = File.createTempFile("profileStoreTest", ProfileResultStore.FILE_EXTENSION);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    private TableProfileResult createResult() throws Exception {
+        TableProfileResult tpr = new TableProfileResult(table, new ProfileSettings());
+        tpr.setRowCount(10);
+
+        ColumnProfileResult id = new ColumnProfileResult(table.getColumn(0));
+        tpr.addColumnProfileResult(id);
+        id.setCreateStartTime(1000);
+        id.setCreateEndTime(2000);
+        id.setDistinctValueCount(10);
+        id.setMinValue(new BigDecimal("1"));
+        id.setMaxValue(new BigDecimal("10"));
+        id.setAvgValue(new BigDecimal("5.5"));
+        id.addValueCount(new BigDecimal("3"), 2);
+        id.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, 8);
+
+        ColumnProfileResult name = new ColumnProfileResult(table.getColumn(1));
+        tpr.addColumnProfileResult(name);
+        name.setNullCount(3);
+        name.setMinLength(1);
+        name.setMaxLength(12);
+        name.setAvgLength(4.5);
+        name.setMinValue("a");
+        name.setMaxValue(new Timestamp(123456789000L));
+        name.setDistinctValueCountError(0.02);
+        name.setValueCountError(4);
+        name.setDistinctValueSketch("@@AB");
+        name.addValueCount(null, 3);
+        return tpr;
+    }
+
+    public void testRoundTrip() throws Exception {
+        TableProfileResult tpr = createResult();
+        ProfileResultStore.Writer writer = new ProfileResultStore.Writer(file);
+        writer.write(tpr);
+        writer.close();
+
+        ProfileResultStore store = new ProfileResultStore(file);
+        assertTrue(store.contains(tpr.getUUID()));
+        assertFalse(store.contains("no such result"));
+
+        List<ColumnProfileResult> cprs = store.read(tpr);
+        assertEquals(2, cprs.size());
+
+        ColumnProfileResult id = cprs.get(0);
+        assertSame(table.getColumn(0), id.getProfiledObject());
+        assertEquals(tpr.getColumnProfileResults().get(0).getUUID(), id.getUUID());
+        assertEquals(1000, id.getCreateStartTime());
+        assertEquals(2000, id.getCreateEndTime());
+        assertEquals(10, id.getDistinctValueCount());
+        assertEquals(new BigDecimal("10"), id.getMaxValue());
+        assertEquals(new BigDecimal("5.5"), id.getAvgValue());
+        assertEquals(2, id.getValueCount().size());
+        assertEquals(new BigDecimal("3"), id.getValueCount().get(0).getValue());
+        assertEquals(0.2, id.getValueCount().get(0).getPercent(), 0.0001);
+        assertTrue(id.getValueCount().get(1).isOtherValues());
+
+        ColumnProfileResult name = cprs.get(1);
+        assertEquals(3, name.getNullCount());
+        assertEquals(12, name.getMaxLength());
+        assertEquals(4.5, name.getAvgLength(), 0);
+        assertEquals("a", name.getMinValue());
+        assertEquals(new Timestamp(123456789000L), name.getMaxValue());
+        assertNull(name.getAvgValue());
+        assertEquals(0.02, name.getDistinctValueCountError(), 0);
+        assertEquals(4, name.getValueCountError());
+        assertEquals("@@AB", name.getDistinctValueSketch());
+        assertNull(name.getValueCount().get(0).getValue());
+    }
+
+    /**
+     * A result that was never loaded from the store must come out of a
+     * second save unchanged, and load lazily from the new store.
+     */
+    public void testLazyLoadAndCopy() throws Exception {
+        TableProfileResult tpr = createResult();
+        ProfileResultStore.Writer writer = new ProfileResultStore.Writer(file);
+        writer.write(tpr);
+        writer.close();
+
+        TableProfileResult stub = new TableProfileResult(table, new ProfileSettings());
+        stub.setUUID(tpr.getUUID());
+        stub.setColumnProfileResultStore(new ProfileResultStore(file));
+        assertFalse(stub.isColumnProfileResultsLoaded());
+        assertTrue(stub.getColumnProfileResults().isEmpty());
+
+        File copyFile = File.createTempFile("profileStoreTest", ProfileResultStore.FILE_EXTENSION);
+        try {
+            writer = new ProfileResultStore.Writer(copyFile);
+            writer.write(stub);
+            writer.close();
+            assertFalse(stub.isColumnProfileResultsLoaded());
+
+            stub.setColumnProfileResultStore(new ProfileResultStore(copyFile));
+            stub.loadColumnProfileResults();
+            assertTrue(stub.isColumnProfileResultsLoaded());
+            assertEquals(2, stub.getColumnProfileResults().size());
+            assertEquals(3, stub.getColumnProfileResults().get(1).getNullCount());
+        } finally {
+            copyFile.delete();
+        }
+    }
+
+    /**
+     * Asking for the column results or the children of a result whose
+     * column results are still in the store does not read them in. Only
+     * {@link TableProfileResult#loadColumnProfileResults()} does.
+     */
+    public void testGettersDoNotLoad() throws Exception {
+        TableProfileResult tpr = createResult();
+        ProfileResultStore.Writer writer = new ProfileResultStore.Writer(file);
+        writer.write(tpr);
+        writer.close();
+
+        TableProfileResult stub = new TableProfileResult(table, new ProfileSettings());
+        stub.setUUID(tpr.getUUID());
+        stub.setColumnProfileResultStore(new ProfileResultStore(file));
+        assertTrue(stub.getColumnProfileResults().isEmpty());
+        assertTrue(stub.getChildren().isEmpty());
+        assertTrue(stub.getColumnProfileResult(table.getColumn(0)).isEmpty());
+        assertFalse(stub.isColumnProfileResultsLoaded());
+
+        stub.loadColumnProfileResults();
+        assertEquals(2, stub.getChildren().size());
+        assertEquals(1, stub.getColumnProfileResult(table.getColumn(0)).size());
+    }
+
+    /**
+     * Results for columns that were removed from the table since the profile
+     * was saved are dropped, and renamed columns still match by UUID.
+     */
+    public void testColumnsMatchedToTable() throws Exception {
+        TableProfileResult tpr = createResult();
+        ProfileResultStore.Writer writer = new ProfileResultStore.Writer(file);
+        writer.write(tpr);
+        writer.close();
+
+        table.getColumn(0).setName("renamed");
+        table.removeColumn(1);
+
+        List<ColumnProfileResult> cprs = new ProfileResultStore(file).read(tpr);
+        assertEquals(1, cprs.size());
+        assertSame(table.getColumn(0), cprs.get(0).getProfiledObject());
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class ProfileSchedulerTest extends TestCase {
+
+    private ProfileScheduler scheduler;
+
+    /**
+     * The names of the tables whose jobs have run, in the order they ran.
+     */
+    private List<String> runOrder;
+
+    @Override
+    protected void setUp() throws Exception {
+        runOrder = Collections.synchronizedList(new ArrayList<String>());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    private static SQLDatabase makeDatabase(String dataSourceName) {
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setName(dataSourceName);
+        return new SQLDatabase(ds);
+    }
+
+    private static SQLTable makeTable(SQLDatabase db, String name) throws Exception {
+        SQLTable table = new SQLTable(db, name, "", "TABLE", true);
+        db.addChild(table);
+        return table;
+    }
+
+    /**
+     * Makes a job that records its table in {@link #runOrder}, first waiting
+     * for the given latch if it is not null.
+     */
+    private ProfileScheduler.ProfileJob makeJob(final SQLTable table, final CountDownLatch release,
+            final AtomicInteger started) {
+        return new ProfileScheduler.ProfileJob(new Callable<TableProfileResult>() {
+            public TableProfileResult call() throws Exception {
+                if (started != null) {
+                    started.incrementAndGet();
+                }
+                if (release != null) {
+                    assertTrue(release.await(10, TimeUnit.SECONDS));
+                }
+                runOrder.add(table.getName());
+                return null;
+            }
+        }, table);
+    }
+
+    private static void waitFor(AtomicInteger counter, int value) throws Exception {
+        for (int i = 0; i < 500 && counter.get() < value; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(value, counter.get());
+    }
+
+    /**
+     * Only the per-data source number of jobs run against one data source
+     * at once, while jobs from other data sources still get the free
+     * threads.
+     */
+    public void testPerDataSourceCap() throws Exception {
+        scheduler = new ProfileScheduler(4, 2);
+        scheduler.setOrderingBySize(false);
+        SQLDatabase busy = makeDatabase("busy");
+        SQLDatabase quiet = makeDatabase("quiet");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger busyStarted = new AtomicInteger();
+
+        List<ProfileScheduler.ProfileJob> jobs = new ArrayList<ProfileScheduler.ProfileJob>();
+        for (int i = 0; i < 5; i++) {
+            jobs.add(makeJob(makeTable(busy, "busy" + i), release, busyStarted));
+        }
+        ProfileScheduler.ProfileJob quietJob = makeJob(makeTable(quiet, "quiet"), null, null);
+        jobs.add(quietJob);
+        List<Future<TableProfileResult>> futures = scheduler.schedule(jobs);
+
+        quietJob.get(10, TimeUnit.SECONDS);
+        waitFor(busyStarted, 2);
+        Thread.sleep(100);
+        assertEquals(2, busyStarted.get());
+
+        release.countDown();
+        for (Future<TableProfileResult> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(5, busyStarted.get());
+        assertEquals(6, runOrder.size());
+    }
+
+    /**
+     * Jobs scheduled together run largest table first, with the tables of
+     * unknown size last in the order they were scheduled.
+     */
+    public void testLargestFirst() throws Exception {
+        scheduler = new ProfileScheduler(1, 1);
+        scheduler.setOrderingBySize(false);
+        SQLDatabase db = makeDatabase("db");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger blockerStarted = new AtomicInteger();
+        ProfileScheduler.ProfileJob blocker = makeJob(makeTable(db, "blocker"), release, blockerStarted);
+        scheduler.schedule(Collections.singletonList(blocker));
+        waitFor(blockerStarted, 1);
+
+        long[] estimates = { 10, -1, 1000, 50, -1 };
+        String[] names = { "small", "unknown1", "large", "medium", "unknown2" };
+        List<ProfileScheduler.ProfileJob> jobs = new ArrayList<ProfileScheduler.ProfileJob>();
+        for (int i = 0; i < names.length; i++) {
+            ProfileScheduler.ProfileJob job = makeJob(makeTable(db, names[i]), null, null);
+            job.setRowCountEstimate(estimates[i]);
+            jobs.add(job);
+        }
+        List<Future<TableProfileResult>> futures = scheduler.schedule(jobs);
+
+        release.countDown();
+        for (Future<TableProfileResult> f : futures) {
+            f.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals(Arrays.asList("blocker", "large", "medium", "small", "unknown1", "unknown2"), runOrder);
+    }
+
+    /**
+     * A job cancelled while it waits for its data source never runs and
+     * gives its turn to the next job.
+     */
+    public void testCancelWaitingJob() throws Exception {
+        scheduler = new ProfileScheduler(1, 1);
+        scheduler.setOrderingBySize(false);
+        SQLDatabase db = makeDatabase("db");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger blockerStarted = new AtomicInteger();
+        ProfileScheduler.ProfileJob blocker = makeJob(makeTable(db, "blocker"), release, blockerStarted);
+        ProfileScheduler.ProfileJob cancelled = makeJob(makeTable(db, "cancelled"), null, null);
+        ProfileScheduler.ProfileJob next = makeJob(makeTable(db, "next"), null, null);
+        scheduler.schedule(Arrays.asList(blocker, cancelled, next));
+        waitFor(blockerStarted, 1);
+
+        assertTrue(cancelled.cancel(false));
+        release.countDown();
+        next.get(10, TimeUnit.SECONDS);
+
+        assertTrue(cancelled.isCancelled());
+        assertEquals(Arrays.asList("blocker", "next"), runOrder);
+    }
+
+    /**
+     * Shutting down lets the running job finish and cancels the ones still
+     * waiting, without the workers rejecting anything.
+     */
+    public void testShutdownCancelsWaitingJobs() throws Exception {
+        scheduler = new ProfileScheduler(1, 1);
+        scheduler.setOrderingBySize(false);
+        SQLDatabase db = makeDatabase("db");
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger blockerStarted = new AtomicInteger();
+        ProfileScheduler.ProfileJob blocker = makeJob(makeTable(db, "blocker"), release, blockerStarted);
+        ProfileScheduler.ProfileJob waiting = makeJob(makeTable(db, "waiting"), null, null);
+        scheduler.schedule(Arrays.asList(blocker, waiting));
+        waitFor(blockerStarted, 1);
+
+        scheduler.shutdown();
+        assertTrue(waiting.isCancelled());
+        release.countDown();
+        blocker.get(10, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList("blocker"), runOrder);
+    }
+}
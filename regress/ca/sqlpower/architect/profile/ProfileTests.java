@@ -30,6 +30,11 @@ public class ProfileTests {
         suite.addTestSuite(TableProfileManagerTest.class);
         suite.addTestSuite(AbstractProfileResultTest.class);
         suite.addTestSuite(TestProfileManager.class);
+        suite.addTestSuite(SpaceSavingSketchTest.class);
+        suite.addTestSuite(HyperLogLogTest.class);
+        suite.addTestSuite(ColumnProfileAccumulatorTest.class);
+        suite.addTestSuite(RemoteSampleProfileCreatorTest.class);
+        suite.addTestSuite(ProfileResultStoreTest.class);
         //$JUnit-END$
         return suite;
     }
@@ -33,9 +33,18 @@
 package ca.sqlpower.architect.profile;
 
 import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 import junit.framework.TestCase;
 import ca.sqlpower.architect.ArchitectProject;
@@ -45,6 +54,7 @@ import ca.sqlpower.sql.JDBCDataSource;
 import ca.sqlpower.sql.JDBCDataSourceType;
 import ca.sqlpower.sql.PlDotIni;
 import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLTable;
 
@@ -134,6 +144,107 @@ public class RemoteDatabateProfileCreatorTest extends TestCase {
         
     }
 
+    /**
+     * Returns metadata that only knows the given product name and version.
+     */
+    private static DatabaseMetaData makeMetaData(final String product, final int major, final int minor) {
+        return (DatabaseMetaData) Proxy.newProxyInstance(DatabaseMetaData.class.getClassLoader(),
+                new Class[] { DatabaseMetaData.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("getDatabaseProductName")) return product;
+                if (method.getName().equals("getDatabaseMajorVersion")) return major;
+                if (method.getName().equals("getDatabaseMinorVersion")) return minor;
+                throw new SQLException("Not supported: " + method.getName());
+            }
+        });
+    }
+
+    public void testGroupingSetsTopNQuery() throws Exception {
+        SQLTable table = new SQLTable(new SQLDatabase(), true);
+        List<SQLColumn> columns = Arrays.asList(
+                new SQLColumn(table, "a", Types.INTEGER, 10, 0),
+                new SQLColumn(table, "b", Types.VARCHAR, 10, 0));
+        assertEquals(
+                "SELECT * FROM (\n" +
+                " SELECT \"a\" AS V_0, GROUPING(\"a\") AS G_0, \"b\" AS V_1, GROUPING(\"b\") AS G_1, COUNT(*) AS COUNT1,\n" +
+                " ROW_NUMBER() OVER (PARTITION BY GROUPING(\"a\"), GROUPING(\"b\") ORDER BY COUNT(*) DESC) AS RN\n" +
+                " FROM s.t\n" +
+                " GROUP BY GROUPING SETS ((\"a\"), (\"b\"))\n" +
+                ") TOPN WHERE RN <= 10",
+                RemoteDatabaseProfileCreator.createGroupingSetsTopNQuery(columns, "\"", "s.t", 10));
+    }
+
+    /**
+     * Only the platforms known to have both GROUPING SETS and ROW_NUMBER()
+     * get the single scan top N query; the rest fall back to a query per
+     * column.
+     */
+    public void testGroupingSetsTopNSupportPerPlatform() throws Exception {
+        JDBCDataSourceType dsType = new JDBCDataSourceType();
+        assertTrue(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("Oracle", 9, 2)));
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("Oracle", 8, 1)));
+        assertTrue(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, 
+                makeMetaData("Microsoft SQL Server", 10, 0)));
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, 
+                makeMetaData("Microsoft SQL Server", 9, 0)));
+        assertTrue(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("DB2/LINUX", 9, 7)));
+        assertTrue(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("PostgreSQL", 9, 5)));
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("PostgreSQL", 9, 4)));
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("MySQL", 8, 0)));
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData(null, 0, 0)));
+    }
+
+    /**
+     * The data source type property wins over the platform guess.
+     */
+    public void testGroupingSetsTopNSupportFromDataSourceType() throws Exception {
+        JDBCDataSourceType dsType = new JDBCDataSourceType();
+        dsType.putProperty(RemoteDatabaseProfileCreator.GROUPING_SETS_TOP_N_PROPERTY, "true");
+        assertTrue(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("MySQL", 8, 0)));
+        dsType.putProperty(RemoteDatabaseProfileCreator.GROUPING_SETS_TOP_N_PROPERTY, "false");
+        assertFalse(RemoteDatabaseProfileCreator.supportsGroupingSetsTopN(dsType, makeMetaData("Oracle", 11, 2)));
+    }
+
+    /**
+     * Columns are split into batches that fit the select list limit, and
+     * the columns of every batch whose query fails are handed back to be
+     * profiled one at a time.
+     */
+    public void testGroupingSetsTopNBatchesAndFallback() throws Exception {
+        final List<String> queries = new ArrayList<String>();
+        final Statement stmt = (Statement) Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                new Class[] { Statement.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("executeQuery")) {
+                    queries.add((String) args[0]);
+                    throw new SQLException("GROUPING SETS not supported");
+                }
+                return null;
+            }
+        });
+        Connection con = (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class[] { Connection.class }, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                if (method.getName().equals("createStatement")) return stmt;
+                throw new SQLException("Not supported: " + method.getName());
+            }
+        });
+
+        SQLTable table = new SQLTable(new SQLDatabase(), true);
+        List<ColumnProfileResult> cprs = new ArrayList<ColumnProfileResult>();
+        for (String name : new String[] { "a", "b", "c" }) {
+            cprs.add(new ColumnProfileResult(new SQLColumn(table, name, Types.INTEGER, 10, 0)));
+        }
+        RemoteDatabaseProfileCreator rdpc = new RemoteDatabaseProfileCreator(new ProfileSettings());
+        // room for two columns per query
+        List<ColumnProfileResult> failed = rdpc.execGroupingSetsTopN(cprs, con, "", "t", 6);
+
+        assertEquals(cprs, failed);
+        assertEquals(2, queries.size());
+        assertTrue(queries.get(0).contains("GROUPING SETS ((a), (b))"));
+        assertTrue(queries.get(1).contains("GROUPING SETS ((c))"));
+    }
+
     /**
      * Removes all ProfileFunctionDescriptor entries from the given database type.
      */
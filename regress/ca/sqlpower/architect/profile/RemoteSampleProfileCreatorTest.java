@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import junit.framework.TestCase;
+import ca.sqlpower.sql.JDBCDataSourceType;
+
+public class RemoteSampleProfileCreatorTest extends TestCase {
+
+    public void testFormatSampleClause() throws Exception {
+        assertEquals(" TABLESAMPLE SYSTEM (0.0055)",
+                RemoteSampleProfileCreator.formatSampleClause(" TABLESAMPLE SYSTEM ({percent})", 0.000055));
+        assertEquals(" WHERE RAND() < 0.055",
+                RemoteSampleProfileCreator.formatSampleClause(" WHERE RAND() < {fraction}", 0.055));
+        assertEquals(" WHERE ABS(CAST(CHECKSUM(NEWID()) AS BIGINT)) % 100000000 < 0.055 * 100000000",
+                RemoteSampleProfileCreator.formatSampleClause(
+                        RemoteSampleProfileCreator.SQL_SERVER_RANDOM_FILTER_CLAUSE, 0.055));
+    }
+
+    public void testFormatSampleClauseWholeTable() throws Exception {
+        assertEquals("", RemoteSampleProfileCreator.formatSampleClause(" SAMPLE ({percent})", 1.0));
+        assertEquals("", RemoteSampleProfileCreator.formatSampleClause(null, 0.5));
+    }
+
+    /**
+     * A sample clause set on the data source type wins over the built in
+     * platform detection, which is never consulted.
+     */
+    public void testSampleClauseFromDataSourceType() throws Exception {
+        JDBCDataSourceType dsType = new JDBCDataSourceType();
+        dsType.putProperty(RemoteSampleProfileCreator.SAMPLE_CLAUSE_PROPERTY, "SAMPLE ({percent}) SEED (1)");
+        assertEquals(" SAMPLE ({percent}) SEED (1)", 
+                RemoteSampleProfileCreator.getSampleClause(dsType, null, false));
+    }
+
+    /**
+     * The random filters have to pick a new number for every row, which
+     * RAND() does not do on Oracle or SQL Server.
+     */
+    public void testRandomFilterPerPlatform() throws Exception {
+        assertEquals(" WHERE DBMS_RANDOM.VALUE < {fraction}",
+                RemoteSampleProfileCreator.getRandomFilterClause("Oracle"));
+        assertEquals(RemoteSampleProfileCreator.SQL_SERVER_RANDOM_FILTER_CLAUSE,
+                RemoteSampleProfileCreator.getRandomFilterClause("Microsoft SQL Server"));
+        assertEquals(" WHERE RANDOM() < {fraction}",
+                RemoteSampleProfileCreator.getRandomFilterClause("PostgreSQL"));
+        assertEquals(" WHERE RAND() < {fraction}",
+                RemoteSampleProfileCreator.getRandomFilterClause("MySQL"));
+    }
+
+    /**
+     * Platforms without a known random filter are not sampled at all rather
+     * than being sent a query they may not understand.
+     */
+    public void testNoRandomFilterForUnknownPlatform() throws Exception {
+        assertNull(RemoteSampleProfileCreator.getRandomFilterClause("Some Database"));
+        assertNull(RemoteSampleProfileCreator.getRandomFilterClause(null));
+    }
+
+    public void testMarginOfError() throws Exception {
+        assertEquals(0.0, TableProfileResult.marginOfError(0, 1000), 0);
+        assertEquals(0.0, TableProfileResult.marginOfError(1000, 1000), 0);
+        // the textbook figure for a sample of 1000 from a very large population
+        assertEquals(0.031, TableProfileResult.marginOfError(1000, Integer.MAX_VALUE), 0.0005);
+        assertTrue(TableProfileResult.marginOfError(1000, 2000) < TableProfileResult.marginOfError(1000, 1000000));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpaceSavingSketchTest extends TestCase {
+
+    public void testExactBelowCapacity() throws Exception {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(10);
+        sketch.offer("a");
+        sketch.offer("b");
+        sketch.offer("a");
+        sketch.offer(null);
+        sketch.offer("a");
+
+        assertTrue(sketch.isExact());
+        assertEquals(3, sketch.size());
+        assertEquals(5, sketch.getTotal());
+
+        List<SpaceSavingSketch.Entry> top = sketch.getTopEntries(2);
+        assertEquals(2, top.size());
+        assertEquals("a", top.get(0).getValue());
+        assertEquals(3, top.get(0).getCount());
+        assertEquals(0, top.get(0).getError());
+        assertEquals(1, top.get(1).getCount());
+    }
+
+    /**
+     * A value that makes up a large fraction of the stream must survive
+     * even when many more distinct values than the capacity are offered.
+     */
+    public void testHeavyHitterSurvivesOverflow() throws Exception {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(20);
+        for (int i = 0; i < 10000; i++) {
+            sketch.offer(Integer.valueOf(i));
+            if (i % 3 == 0) {
+                sketch.offer("frequent");
+            }
+        }
+
+        assertFalse(sketch.isExact());
+        assertEquals(20, sketch.size());
+
+        SpaceSavingSketch.Entry top = sketch.getTopEntries(1).get(0);
+        assertEquals("frequent", top.getValue());
+        assertTrue(top.getCount() >= 3334);
+        assertTrue(top.getCount() - top.getError() <= 3334);
+    }
+
+    public void testWeightedOffer() throws Exception {
+        SpaceSavingSketch sketch = new SpaceSavingSketch(2);
+        sketch.offer("x", 5);
+        sketch.offer("y", 2);
+        sketch.offer("z", 1);
+
+        assertEquals(8, sketch.getTotal());
+        assertEquals(3, sketch.getMaxError());
+        List<SpaceSavingSketch.Entry> top = sketch.getTopEntries(5);
+        assertEquals("x", top.get(0).getValue());
+        assertEquals("z", top.get(1).getValue());
+        assertEquals(3, top.get(1).getCount());
+        assertEquals(2, top.get(1).getError());
+    }
+}
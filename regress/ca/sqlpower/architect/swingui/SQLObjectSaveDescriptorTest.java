@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sql.PlDotIni;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Regression harness for the SQLObject save descriptors: the attributes they
+ * write must be identical to what the per-object sorted map the project
+ * loader used to build produced, for every type of object, and they should
+ * be faster to write.
+ */
+public class SQLObjectSaveDescriptorTest extends TestCase {
+
+    private static final Logger logger = Logger.getLogger(SQLObjectSaveDescriptorTest.class);
+
+    private static final int TABLE_COUNT = 200;
+
+    private SQLDatabase db;
+
+    /**
+     * Every object in {@link #db} in the order the project loader would save
+     * them.
+     */
+    private List<SQLObject> objects;
+
+    private Map<SQLObject, String> sqlObjectSaveIdMap;
+
+    private Map<SPDataSource, String> dbcsSaveIdMap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        JDBCDataSource ds = new JDBCDataSource(new PlDotIni());
+        ds.setName("harness <ds>");
+        db = new SQLDatabase(ds);
+        SQLCatalog catalog = new SQLCatalog(db, "cat", true);
+        db.addChild(catalog);
+        SQLSchema schema = new SQLSchema(catalog, "sch", true);
+        catalog.addChild(schema);
+
+        SQLTable previous = null;
+        for (int i = 0; i < TABLE_COUNT; i++) {
+            SQLTable table = new SQLTable(schema, "table_" + i, "remarks & \"quotes\"", "TABLE", true);
+            schema.addChild(table);
+            SQLColumn id = new SQLColumn(table, "id", Types.INTEGER, 10, 0);
+            table.addColumn(id);
+            table.addToPK(id);
+            SQLColumn name = new SQLColumn(table, "name<" + i + ">", Types.VARCHAR, 50, 0);
+            name.setDefaultValue(i % 2 == 0 ? "'x'" : null);
+            name.setAutoIncrementSequenceName("seq_" + i);
+            table.addColumn(name);
+            SQLIndex index = new SQLIndex("idx_" + i, i % 3 == 0, null, "BTREE", null);
+            index.addIndexColumn(name, AscendDescend.DESCENDING);
+            table.addChild(index);
+            if (previous != null) {
+                SQLRelationship rel = new SQLRelationship();
+                rel.setName("rel_" + i);
+                rel.attachRelationship(previous, table, true);
+            }
+            previous = table;
+        }
+
+        dbcsSaveIdMap = new HashMap<SPDataSource, String>();
+        dbcsSaveIdMap.put(ds, "DS0");
+        objects = new ArrayList<SQLObject>();
+        addObjects(db);
+        for (SQLTable table : schema.getChildren(SQLTable.class)) {
+            for (SQLRelationship rel : table.getExportedKeys()) {
+                objects.add(rel);
+                objects.addAll(rel.getChildren());
+            }
+        }
+    }
+
+    private void addObjects(SQLObject o) throws Exception {
+        if (o instanceof SQLRelationship.SQLImportedKey
+                || o instanceof SQLRelationship
+                || o instanceof UserDefinedSQLType) {
+            return;
+        }
+        objects.add(o);
+        if (o.allowsChildren()) {
+            for (SQLObject child : o.getChildrenWithoutPopulating()) {
+                addObjects(child);
+            }
+        }
+    }
+
+    /**
+     * Assigns save ids the way the project loader does, so references
+     * between objects are filled in.
+     */
+    private void assignIds() {
+        sqlObjectSaveIdMap = new IdentityHashMap<SQLObject, String>();
+        for (SQLObject o : objects) {
+            sqlObjectSaveIdMap.put(o, SQLObjectSaveDescriptor.getDescriptor(o).createId(sqlObjectSaveIdMap.size()));
+        }
+    }
+
+    public void testAttributesMatchLegacyWriter() throws Exception {
+        assignIds();
+        for (SQLObject o : objects) {
+            StringBuilder sb = new StringBuilder();
+            SQLObjectSaveDescriptor.getDescriptor(o).appendAttributes(sb, o, sqlObjectSaveIdMap, dbcsSaveIdMap);
+            assertEquals("Attributes differ for " + o, legacyAttributes(o), sb.toString());
+        }
+    }
+
+    public void testElementNames() throws Exception {
+        assertEquals("database", SQLObjectSaveDescriptor.getDescriptor(db).getElementName());
+        assertEquals("DB0", SQLObjectSaveDescriptor.getDescriptor(db).createId(0));
+        SQLTable table = db.getTables().get(0);
+        assertEquals("table", SQLObjectSaveDescriptor.getDescriptor(table).getElementName());
+        assertEquals("column", SQLObjectSaveDescriptor.getDescriptor(table.getColumn(0)).getElementName());
+        assertEquals("index-column", SQLObjectSaveDescriptor.getDescriptor(
+                table.getIndices().get(0).getChild(0)).getElementName());
+    }
+
+    /**
+     * Compares the time taken to write the attributes of the whole model with
+     * the descriptors and with the legacy sorted maps. This doesn't fail on
+     * timing, since the test machines vary too much, but it logs both at
+     * debug level.
+     */
+    public void testSpeedAgainstLegacyWriter() throws Exception {
+        assignIds();
+        int rounds = 20;
+        long legacyLength = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (SQLObject o : objects) {
+                legacyLength += legacyAttributes(o).length();
+            }
+        }
+        long legacyTime = System.nanoTime() - start;
+
+        long descriptorLength = 0;
+        StringBuilder sb = new StringBuilder();
+        start = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (SQLObject o : objects) {
+                sb.setLength(0);
+                SQLObjectSaveDescriptor.getDescriptor(o).appendAttributes(sb, o, sqlObjectSaveIdMap, dbcsSaveIdMap);
+                descriptorLength += sb.length();
+            }
+        }
+        long descriptorTime = System.nanoTime() - start;
+
+        assertEquals(legacyLength, descriptorLength);
+        if (logger.isDebugEnabled()) {
+            logger.debug("Attributes of " + objects.size() + " objects x " + rounds + ": legacy " +
+                    (legacyTime / 1000000) + "ms, descriptors " + (descriptorTime / 1000000) + "ms");
+        }
+    }
+
+    /**
+     * The attribute writing code of SwingUIProjectLoader.saveSQLObject as it
+     * was before the descriptors, kept here as the reference.
+     */
+    private String legacyAttributes(SQLObject o) {
+        Map<String,Object> propNames = new TreeMap<String,Object>();
+
+        propNames.put("physicalName", o.getPhysicalName());
+        propNames.put("name", o.getName());
+        propNames.put("UUID", o.getUUID());
+
+        if (!o.getChildrenInaccessibleReasons().isEmpty()) {
+            Throwable topException = o.getChildrenInaccessibleReason(SQLObject.class);
+            propNames.put("sql-exception", topException);
+        }
+
+        if (o instanceof SQLDatabase) {
+            propNames.put("dbcs-ref", dbcsSaveIdMap.get(((SQLDatabase) o).getDataSource()));
+        } else if (o instanceof SQLCatalog) {
+            propNames.put("nativeTerm", ((SQLCatalog) o).getNativeTerm());
+        } else if (o instanceof SQLSchema) {
+            propNames.put("nativeTerm", ((SQLSchema) o).getNativeTerm());
+        } else if (o instanceof SQLTable) {
+            propNames.put("objectType", ((SQLTable) o).getObjectType());
+        } else if (o instanceof SQLColumn) {
+            SQLColumn sourceCol = ((SQLColumn) o).getSourceColumn();
+            if (sourceCol != null) {
+                propNames.put("source-column-ref", sqlObjectSaveIdMap.get(sourceCol));
+            }
+            UserDefinedSQLType userDefinedSQLType = ((SQLColumn) o).getUserDefinedSQLType();
+            if (userDefinedSQLType.getUpstreamType() != null) {
+                propNames.put("userDefinedTypeUUID", userDefinedSQLType.getUpstreamType().getUUID());
+            }
+            propNames.put("type", new Integer(((SQLColumn) o).getType()));
+            propNames.put("sourceDataTypeName", ((SQLColumn) o).getSourceDataTypeName());
+            propNames.put("scale", new Integer(((SQLColumn) o).getScale()));
+            propNames.put("precision", new Integer(((SQLColumn) o).getPrecision()));
+            propNames.put("nullable", new Integer(((SQLColumn) o).getNullable()));
+            propNames.put("defaultValue", ((SQLColumn) o).getDefaultValue());
+            propNames.put("primaryKeySeq", ((SQLColumn) o).isPrimaryKey() ? ((SQLColumn) o).getParent().getChildrenWithoutPopulating(SQLColumn.class).indexOf(o) : null);
+            propNames.put("autoIncrement", Boolean.valueOf(((SQLColumn) o).isAutoIncrement()));
+            propNames.put("referenceCount", new Integer(((SQLColumn)o).getReferenceCount()));
+            if (((SQLColumn) o).isAutoIncrementSequenceNameSet()) {
+                propNames.put("autoIncrementSequenceName", ((SQLColumn) o).getAutoIncrementSequenceName());
+            }
+        } else if (o instanceof SQLRelationship) {
+            propNames.put("pk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getPkTable()));
+            propNames.put("fk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getFkTable()));
+            propNames.put("updateRule", new Integer(((SQLRelationship) o).getUpdateRule().getCode()));
+            propNames.put("deleteRule", new Integer(((SQLRelationship) o).getDeleteRule().getCode()));
+            propNames.put("deferrability", new Integer(((SQLRelationship) o).getDeferrability().getCode()));
+            propNames.put("pkCardinality", new Integer(((SQLRelationship) o).getPkCardinality()));
+            propNames.put("fkCardinality", new Integer(((SQLRelationship) o).getFkCardinality()));
+            propNames.put("identifying", Boolean.valueOf(((SQLRelationship) o).isIdentifying()));
+        } else if (o instanceof SQLRelationship.ColumnMapping) {
+            propNames.put("pk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getPkColumn()));
+            propNames.put("fk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkColumn()));
+            propNames.put("fk-col-name", ((SQLRelationship.ColumnMapping) o).getFkColName());
+            propNames.put("fk-table", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkTable()));
+        } else if (o instanceof SQLIndex) {
+            SQLIndex index = (SQLIndex) o;
+            propNames.put("unique", index.isUnique());
+            propNames.put("qualifier", index.getQualifier());
+            propNames.put("clustered", index.isClustered());
+            propNames.put("index-type", index.getType());
+            propNames.put("primaryKeyIndex", index.isPrimaryKeyIndex());
+            propNames.put("filterCondition", index.getFilterCondition());
+        } else if (o instanceof SQLIndex.Column) {
+            SQLIndex.Column col = (SQLIndex.Column) o;
+            if (col.getColumn() != null) {
+                propNames.put("column-ref", sqlObjectSaveIdMap.get(col.getColumn()));
+            }
+            propNames.put("ascendingOrDescending", col.getAscendingOrDescending().name());
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Object> entry : propNames.entrySet()) {
+            if (entry.getValue() != null) {
+                sb.append(entry.getKey() + "=" + "\"" + SQLPowerUtils.escapeXML(entry.getValue().toString()) + "\"" + " ");
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.sql.Types;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLIndex.AscendDescend;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class SQLScriptDialogTest extends TestCase {
+
+    private SQLTable parent;
+    private SQLTable child;
+    private SQLTable other;
+    private SQLIndex childIndex;
+    private SQLRelationship relationship;
+
+    /**
+     * The tables with an index being created, as the script worker would
+     * have them after starting the child's index.
+     */
+    private Set<SQLTable> pending;
+
+    @Override
+    protected void setUp() throws Exception {
+        SQLDatabase db = new SQLDatabase();
+        parent = new SQLTable(db, "parent", "", "TABLE", true);
+        child = new SQLTable(db, "child", "", "TABLE", true);
+        other = new SQLTable(db, "other", "", "TABLE", true);
+        db.addChild(parent);
+        db.addChild(child);
+        db.addChild(other);
+        SQLColumn id = new SQLColumn(parent, "id", Types.INTEGER, 10, 0);
+        parent.addColumn(id);
+        parent.addToPK(id);
+        child.addColumn(new SQLColumn(child, "name", Types.VARCHAR, 10, 0));
+
+        childIndex = new SQLIndex("child_name_idx", false, null, null, null);
+        childIndex.addIndexColumn(child.getColumn(0), AscendDescend.UNSPECIFIED);
+        child.addChild(childIndex);
+
+        relationship = new SQLRelationship();
+        relationship.attachRelationship(parent, child, true);
+
+        pending = new HashSet<SQLTable>();
+        pending.add(child);
+    }
+
+    private static DDLStatement statement(SQLObject object, StatementType type) {
+        return new DDLStatement(object, type, "", ";", null, null);
+    }
+
+    public void testIndexCreation() throws Exception {
+        assertTrue(SQLScriptDialog.isIndexCreation(statement(childIndex, StatementType.CREATE)));
+        assertFalse(SQLScriptDialog.isIndexCreation(statement(childIndex, StatementType.DROP)));
+        assertFalse(SQLScriptDialog.isIndexCreation(statement(child, StatementType.CREATE)));
+        assertEquals(Collections.singletonList(child),
+                SQLScriptDialog.getTables(statement(childIndex, StatementType.CREATE)));
+    }
+
+    /**
+     * Foreign keys are generated as creates, but lock both of their tables,
+     * so they have to wait for the indices of either table.
+     */
+    public void testRelationshipWaitsForIndexOfEitherTable() throws Exception {
+        DDLStatement fk = statement(relationship, StatementType.CREATE);
+        assertTrue(SQLScriptDialog.mustWaitForIndices(fk, pending));
+
+        Set<SQLTable> parentPending = Collections.singleton(parent);
+        assertTrue(SQLScriptDialog.mustWaitForIndices(fk, parentPending));
+
+        Set<SQLTable> otherPending = Collections.singleton(other);
+        assertFalse(SQLScriptDialog.mustWaitForIndices(fk, otherPending));
+    }
+
+    public void testStatementsOnOtherTablesAreBatched() throws Exception {
+        assertFalse(SQLScriptDialog.mustWaitForIndices(statement(other, StatementType.CREATE), pending));
+        assertFalse(SQLScriptDialog.mustWaitForIndices(statement(other, StatementType.ADD_PK), pending));
+        assertFalse(SQLScriptDialog.mustWaitForIndices(statement(other, StatementType.COMMENT), pending));
+    }
+
+    public void testStatementsOnIndexedTableWait() throws Exception {
+        assertTrue(SQLScriptDialog.mustWaitForIndices(statement(child, StatementType.ADD_PK), pending));
+        assertTrue(SQLScriptDialog.mustWaitForIndices(statement(child.getColumn(0), StatementType.COMMENT), pending));
+    }
+
+    public void testDropsAndAltersWaitWhileIndicesArePending() throws Exception {
+        assertTrue(SQLScriptDialog.mustWaitForIndices(statement(other, StatementType.DROP), pending));
+        assertTrue(SQLScriptDialog.mustWaitForIndices(statement(other, StatementType.ALTER), pending));
+        assertTrue(SQLScriptDialog.mustWaitForIndices(statement(null, StatementType.MODIFY), pending));
+    }
+
+    public void testNothingWaitsWithoutPendingIndices() throws Exception {
+        Set<SQLTable> none = Collections.emptySet();
+        assertFalse(SQLScriptDialog.mustWaitForIndices(statement(relationship, StatementType.CREATE), none));
+        assertFalse(SQLScriptDialog.mustWaitForIndices(statement(child, StatementType.DROP), none));
+    }
+}
@@ -24,6 +24,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.PrintWriter;
 import java.sql.Connection;
@@ -53,6 +54,7 @@ import ca.sqlpower.architect.olap.MondrianModel;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeModel;
 import ca.sqlpower.object.SPObject;
@@ -1308,6 +1310,87 @@ public class TestSwingUIProject extends ArchitectTestCase {
         System.out.println(out.toString());
     }
     
+    public void testSaveAndLoadCoversProfileSettings() throws Exception {
+        ArchitectSwingSession session = new ArchitectSwingSessionImpl(context, "Test session");
+        ProfileSettings settings = session.getProfileManager().getDefaultProfileSettings();
+        settings.setTopNCount(17);
+        settings.setApproximate(true);
+        settings.setWatermarkColumnName("last_modified");
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        session.getProjectLoader().save(byteArrayOutputStream, ENCODING);
+
+        ArchitectSwingSession session2 = new ArchitectSwingSessionImpl(context, "Load session");
+        SwingUIProjectLoader project2 = new SwingUIProjectLoader(session2);
+        project2.load(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), plIni);
+
+        ProfileSettings loaded = session2.getProfileManager().getDefaultProfileSettings();
+        assertEquals(17, loaded.getTopNCount());
+        assertTrue(loaded.isApproximate());
+        assertEquals("last_modified", loaded.getWatermarkColumnName());
+    }
+
+    public void testLoadWithoutWatermarkColumnClearsIt() throws Exception {
+        ArchitectSwingSession session = new ArchitectSwingSessionImpl(context, "Test session");
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        session.getProjectLoader().save(byteArrayOutputStream, ENCODING);
+
+        ArchitectSwingSession session2 = new ArchitectSwingSessionImpl(context, "Load session");
+        session2.getProfileManager().getDefaultProfileSettings().setWatermarkColumnName("stale");
+        SwingUIProjectLoader project2 = new SwingUIProjectLoader(session2);
+        project2.load(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()), plIni);
+
+        ProfileSettings loaded = session2.getProfileManager().getDefaultProfileSettings();
+        assertFalse(loaded.isApproximate());
+        assertNull(loaded.getWatermarkColumnName());
+    }
+
+    /**
+     * A source database that nothing else in the project refers to is left in
+     * the project file until it is expanded. Expanding it in the DB tree and
+     * saving again must give back exactly what was loaded.
+     */
+    public void testDeferredSourceDatabaseExpandAndSaveRoundTrip() throws Exception {
+        testLoad();
+        DBTreeModel dbTreeModel = (DBTreeModel) session.getDBTree().getModel();
+
+        SQLDatabase db = new SQLDatabase();
+        db.setDataSource(new JDBCDataSource(new PlDotIni()));
+        db.setPopulated(true);
+        ((SQLObject) dbTreeModel.getRoot()).addChild(db);
+        SQLTable table = new SQLTable(db, true);
+        table.setName("deferred_table");
+        db.addChild(table);
+        table.addColumn(new SQLColumn(table, "id", Types.INTEGER, 10, 0));
+
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        project.save(saved, ENCODING);
+        File tmp = File.createTempFile("test", ".architect");
+        if (deleteOnExit) {
+            tmp.deleteOnExit();
+        }
+        FileOutputStream fileOut = new FileOutputStream(tmp);
+        fileOut.write(saved.toByteArray());
+        fileOut.close();
+
+        ArchitectSwingSession session2 = context.createSession();
+        SwingUIProjectLoader project2 = session2.getProjectLoader();
+        project2.setLoadingFile(tmp);
+        project2.load(new BufferedInputStream(new FileInputStream(tmp)), plIni);
+
+        DBTree tree2 = session2.getDBTree();
+        SQLDatabase db2 = (SQLDatabase) tree2.getDatabaseList().get(1);
+        assertEquals(0, db2.getChildrenWithoutPopulating().size());
+
+        tree2.expandPath(tree2.getTreePathForNode(db2));
+        assertEquals(1, db2.getChildrenWithoutPopulating().size());
+        assertEquals("deferred_table", db2.getChild(0).getName());
+
+        ByteArrayOutputStream resaved = new ByteArrayOutputStream();
+        project2.save(resaved, ENCODING);
+        assertEquals(saved.toString(ENCODING), resaved.toString(ENCODING));
+    }
+
     /**
      * Regression testing for a bug on the forum 2147. When a project with olap
      * sessions is saved and loaded the loaded session will have twice the number
@@ -47,6 +47,7 @@ import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.profile.ProfileManager;
+import ca.sqlpower.architect.swingui.critic.LiveCriticService;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.undo.ArchitectUndoManager;
 import ca.sqlpower.object.SPObjectSnapshot;
@@ -532,6 +533,10 @@ public class TestingArchitectSwingSession implements ArchitectSwingSession {
         return null;
     }
 
+    public LiveCriticService getLiveCriticService() {
+        return null;
+    }
+
     @Override
     public void setSaveBehaviour(Saver saveBehaviour) {
         // TODO Auto-generated method stub
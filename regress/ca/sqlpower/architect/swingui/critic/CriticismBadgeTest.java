@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.critic;
+
+import java.awt.Point;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.impl.PrimaryKeyCritic;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.PlayPen;
+import ca.sqlpower.architect.swingui.TablePane;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class CriticismBadgeTest extends TestCase {
+
+    private SQLTable table;
+    private TablePane tablePane;
+    private CriticismBadge badge;
+
+    @Override
+    protected void setUp() throws Exception {
+        ArchitectSwingSession session = new TestingArchitectSwingSessionContext().createSession();
+        table = new SQLTable(session.getTargetDatabase(), true);
+        table.setName("table");
+        session.getTargetDatabase().addChild(table);
+        PlayPen pp = session.getPlayPen();
+        tablePane = new TablePane(table, pp.getContentPane());
+        pp.addTablePane(tablePane, new Point(100, 100));
+        badge = new CriticismBadge(table, tablePane);
+    }
+
+    /**
+     * The tool tip lists every criticism, escaped for the HTML it is in.
+     */
+    public void testToolTipListsCriticisms() throws Exception {
+        PrimaryKeyCritic critic = new PrimaryKeyCritic();
+        badge.setCriticisms(Arrays.asList(
+                new Criticism(table, "No primary key", critic),
+                new Criticism(table, "a < b & c", critic)));
+        assertEquals("<html>No primary key<br>a &lt; b &amp; c</html>", badge.getToolTipText());
+    }
+
+    /**
+     * The badge sits just to the left of its subject and follows the table
+     * when it moves, until it is told to stop.
+     */
+    public void testFollowsMarkedComponent() throws Exception {
+        badge.updateLocation();
+        Point start = badge.getLocation();
+        assertEquals(tablePane.getPointForModelObject(table).x - badge.getWidth(), start.x);
+
+        tablePane.setLocation(tablePane.getX() + 50, tablePane.getY());
+        assertEquals(start.x + 50, badge.getX());
+
+        badge.stopFollowing();
+        tablePane.setLocation(tablePane.getX() + 50, tablePane.getY());
+        assertEquals(start.x + 50, badge.getX());
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.critic;
+
+import java.awt.Point;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
+import ca.sqlpower.architect.ddl.critic.CriticManager;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.PlayPen;
+import ca.sqlpower.architect.swingui.TablePane;
+import ca.sqlpower.architect.swingui.TestingArchitectSwingSessionContext;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLTable;
+
+public class LiveCriticServiceTest extends TestCase {
+
+    /**
+     * Criticizes tables whose names start with "bad". It counts how often
+     * it looks at one table, and can be told to pause there until the test
+     * has queued an edit, then take long enough for the edit to land before
+     * the next slice. It can also be told to fail when it looks at another
+     * table after the watched one's remarks were edited, like a critic that
+     * tripped over an edit made during a run.
+     */
+    private static class BadNameCritic extends CriticAndSettings {
+
+        private volatile SQLTable watched;
+        private volatile int watchedCount;
+        private volatile CountDownLatch reached;
+        private volatile CountDownLatch resume;
+        private volatile boolean failAfterEdit;
+
+        BadNameCritic() {
+            super("Live critic test", "Bad names");
+        }
+
+        @Override
+        public List<Class<?>> getSubjectTypes() {
+            return Collections.<Class<?>>singletonList(SQLTable.class);
+        }
+
+        public List<Criticism> criticize(Object subject) {
+            if (!(subject instanceof SQLTable)) return Collections.emptyList();
+            SQLTable table = (SQLTable) subject;
+            if (table == watched) {
+                watchedCount++;
+                if (reached != null && reached.getCount() > 0) {
+                    pauseForEdit();
+                }
+            } else if (failAfterEdit && watched != null && EDITED_REMARKS.equals(watched.getRemarks())) {
+                failAfterEdit = false;
+                throw new RuntimeException("Tripped over an edit");
+            }
+            if (table.getName().startsWith("bad")) {
+                return Collections.singletonList(new Criticism(table, "Bad table name", this));
+            }
+            return Collections.emptyList();
+        }
+
+        private void pauseForEdit() {
+            reached.countDown();
+            try {
+                if (!resume.await(10, TimeUnit.SECONDS)) {
+                    throw new RuntimeException("The test never queued its edit");
+                }
+                Thread.sleep(LiveCriticService.SLICE_MILLIS * 2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static final String EDITED_REMARKS = "Edited during a run";
+
+    /**
+     * The number of tables besides the watched one, so a run takes more
+     * than one slice.
+     */
+    private static final int OTHER_TABLES = 20;
+
+    private ArchitectSwingSession session;
+    private BadNameCritic critic;
+    private LiveCriticService service;
+    private SQLTable table;
+
+    /**
+     * The table the critics look at last in a run.
+     */
+    private SQLTable lastTable;
+
+    @Override
+    protected void setUp() throws Exception {
+        session = new TestingArchitectSwingSessionContext().createSession();
+        CriticManager criticManager = session.getWorkspace().getCriticManager();
+        criticManager.clear();
+        critic = new BadNameCritic();
+        criticManager.registerCritic(critic);
+
+        table = new SQLTable(session.getTargetDatabase(), true);
+        table.setName("good_table");
+        SQLColumn id = new SQLColumn(table, "id", Types.INTEGER, 10, 0);
+        table.addColumn(id);
+        table.addToPK(id);
+        session.getTargetDatabase().addChild(table);
+        for (int i = 0; i < OTHER_TABLES; i++) {
+            SQLTable other = new SQLTable(session.getTargetDatabase(), true);
+            other.setName("other_table_" + i);
+            other.addColumn(new SQLColumn(other, "id", Types.INTEGER, 10, 0));
+            session.getTargetDatabase().addChild(other);
+            lastTable = other;
+        }
+        PlayPen pp = session.getPlayPen();
+        pp.addTablePane(new TablePane(table, pp.getContentPane()), new Point(100, 100));
+
+        service = new LiveCriticService(session);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                service.stop();
+            }
+        });
+    }
+
+    private void startService() throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                service.start();
+            }
+        });
+        for (int i = 0; i < 1000 && getLastLatency() < 0; i++) {
+            Thread.sleep(10);
+        }
+        assertTrue("The first run never finished", getLastLatency() >= 0);
+    }
+
+    private void rename(final String name) throws Exception {
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                table.setName(name);
+            }
+        });
+    }
+
+    /**
+     * Makes the critic pause at the watched table the next time it looks at
+     * it.
+     */
+    private void pauseAtWatchedTable() {
+        critic.reached = new CountDownLatch(1);
+        critic.resume = new CountDownLatch(1);
+    }
+
+    /**
+     * Waits for the critic to pause at the watched table on the event
+     * dispatch thread, and queues the edit so it is made before the next
+     * slice of the run.
+     */
+    private void editDuringRun(Runnable edit) throws Exception {
+        assertTrue("The critic never reached the watched table",
+                critic.reached.await(10, TimeUnit.SECONDS));
+        SwingUtilities.invokeLater(edit);
+        critic.resume.countDown();
+    }
+
+    private void waitForWatchedCount(int count) throws Exception {
+        for (int i = 0; i < 1000 && critic.watchedCount < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, critic.watchedCount);
+    }
+
+    private long getLastLatency() throws Exception {
+        final long[] latency = new long[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                latency[0] = service.getLastLatency();
+            }
+        });
+        return latency[0];
+    }
+
+    /**
+     * Returns the test critic's criticisms in the service's bucket, read on
+     * the event dispatch thread.
+     */
+    private List<Criticism> getCriticisms() throws Exception {
+        final List<Criticism> criticisms = new ArrayList<Criticism>();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                for (Criticism c : service.getBucket().getCriticisms()) {
+                    if (c.getCritic() == critic) {
+                        criticisms.add(c);
+                    }
+                }
+            }
+        });
+        return criticisms;
+    }
+
+    private List<Criticism> waitForCriticisms(int count) throws Exception {
+        List<Criticism> criticisms = getCriticisms();
+        for (int i = 0; i < 1000 && criticisms.size() != count; i++) {
+            Thread.sleep(10);
+            criticisms = getCriticisms();
+        }
+        assertEquals(count, criticisms.size());
+        return criticisms;
+    }
+
+    private ModelBadge getBadge() throws Exception {
+        final ModelBadge[] badge = new ModelBadge[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                badge[0] = session.getPlayPen().getContentPane().getBadge(table);
+            }
+        });
+        return badge[0];
+    }
+
+    /**
+     * Edits closer together than the debounce delay are criticized together
+     * in one run once they stop.
+     */
+    public void testEditsAreDebounced() throws Exception {
+        startService();
+        critic.watched = table;
+
+        for (int i = 0; i < 5; i++) {
+            rename("bad_table_" + i);
+            Thread.sleep(LiveCriticService.DEBOUNCE_MILLIS / 4);
+        }
+        assertEquals(0, critic.watchedCount);
+        assertTrue(getCriticisms().isEmpty());
+
+        List<Criticism> criticisms = waitForCriticisms(1);
+        assertSame(table, criticisms.get(0).getSubject());
+        assertEquals(1, critic.watchedCount);
+        assertTrue(getLastLatency() >= LiveCriticService.DEBOUNCE_MILLIS);
+    }
+
+    /**
+     * An edit made between two slices of a run is criticized again in the
+     * next run, so the criticism made before it does not stay.
+     */
+    public void testEditDuringRunCriticizedAgain() throws Exception {
+        startService();
+        critic.watched = table;
+        pauseAtWatchedTable();
+
+        rename("bad_table");
+        editDuringRun(new Runnable() {
+            public void run() {
+                table.setName("good_table");
+            }
+        });
+        waitForWatchedCount(2);
+        waitForCriticisms(0);
+    }
+
+    /**
+     * A run that fails after the model changed under it is thrown away and
+     * tried again, instead of leaving the edit uncriticized.
+     */
+    public void testFailedRunRetriedWhenModelChanged() throws Exception {
+        startService();
+        critic.watched = table;
+        critic.failAfterEdit = true;
+        pauseAtWatchedTable();
+
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                table.setName("bad_table");
+                lastTable.setName("other_table_last");
+            }
+        });
+        editDuringRun(new Runnable() {
+            public void run() {
+                table.setRemarks(EDITED_REMARKS);
+            }
+        });
+        List<Criticism> criticisms = waitForCriticisms(1);
+        assertSame(table, criticisms.get(0).getSubject());
+        assertFalse(critic.failAfterEdit);
+        assertEquals(2, critic.watchedCount);
+    }
+
+    /**
+     * A cancelled run keeps its edits, which are criticized in the next
+     * run.
+     */
+    public void testCancelledRunCriticizedAgain() throws Exception {
+        startService();
+        critic.watched = table;
+        pauseAtWatchedTable();
+
+        rename("bad_table");
+        editDuringRun(new Runnable() {
+            public void run() {
+                service.cancelRun();
+            }
+        });
+        List<Criticism> criticisms = waitForCriticisms(1);
+        assertSame(table, criticisms.get(0).getSubject());
+        assertEquals(2, critic.watchedCount);
+    }
+
+    /**
+     * A criticized table gets a badge in the play pen, which goes away when
+     * the criticism does or the service stops.
+     */
+    public void testBadgesAddedAndRemoved() throws Exception {
+        startService();
+        assertNull(getBadge());
+
+        rename("bad_table");
+        waitForCriticisms(1);
+        ModelBadge badge = getBadge();
+        assertTrue(badge instanceof CriticismBadge);
+        assertEquals("<html>Bad table name</html>", badge.getToolTipText());
+
+        rename("good_table");
+        waitForCriticisms(0);
+        assertNull(getBadge());
+
+        rename("bad_table");
+        waitForCriticisms(1);
+        assertNotNull(getBadge());
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+                service.stop();
+            }
+        });
+        assertNull(getBadge());
+    }
+}
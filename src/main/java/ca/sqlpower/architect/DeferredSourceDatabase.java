@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * A source database whose catalogs, schemas and tables were left in the
+ * project file when the project was opened. The database itself is in the
+ * session with the rest of the project, but it has no children until
+ * {@link #loadNow()} reads them from the file.
+ * <p>
+ * Nothing outside the database refers to its contents, since the
+ * {@link ProjectLoader} loads those databases right away, so the only
+ * things that need to load a deferred database are the ones that look at
+ * its children: the DB trees, search, profiling, refresh and saving. Those
+ * go through {@link #loadIfDeferred(SQLObject)}.
+ */
+public class DeferredSourceDatabase implements DeferredLoadable {
+
+    private static final Logger logger = Logger.getLogger(DeferredSourceDatabase.class);
+
+    /**
+     * Every database that has not been loaded yet. The values are weak so a
+     * closed session's databases can be collected; the project loader that
+     * created them holds them until then.
+     */
+    private static final Map<SQLDatabase, WeakReference<DeferredSourceDatabase>> deferredDatabases =
+        new WeakHashMap<SQLDatabase, WeakReference<DeferredSourceDatabase>>();
+
+    /**
+     * Loads the contents of the given object from the project file if it is
+     * a source database that has not been loaded yet. Does nothing for any
+     * other object.
+     */
+    public static void loadIfDeferred(SQLObject o) throws SQLObjectException {
+        if (!(o instanceof SQLDatabase)) return;
+        DeferredSourceDatabase deferred = null;
+        synchronized (deferredDatabases) {
+            WeakReference<DeferredSourceDatabase> ref = deferredDatabases.get(o);
+            if (ref != null) {
+                deferred = ref.get();
+            }
+        }
+        if (deferred != null) {
+            deferred.loadNow();
+        }
+    }
+
+    private final ProjectLoader loader;
+
+    private final SQLDatabase database;
+
+    private final File file;
+
+    private final long childrenStart;
+
+    private final long childrenEnd;
+
+    private final String encoding;
+
+    /**
+     * The length and modification time of the file when it was scanned, to
+     * catch the offsets going stale.
+     */
+    private final long fileLength;
+
+    private final long fileLastModified;
+
+    private boolean loaded;
+
+    /**
+     * @param loader
+     *            The project loader that loads the children.
+     * @param database
+     *            The database the children belong to.
+     * @param file
+     *            The project file the database was saved in.
+     * @param childrenStart
+     *            The offset of the first byte after the database start tag.
+     * @param childrenEnd
+     *            The offset of the database end tag.
+     * @param encoding
+     *            The encoding of the project file.
+     */
+    DeferredSourceDatabase(ProjectLoader loader, SQLDatabase database, File file,
+            long childrenStart, long childrenEnd, String encoding) {
+        this.loader = loader;
+        this.database = database;
+        this.file = file;
+        this.childrenStart = childrenStart;
+        this.childrenEnd = childrenEnd;
+        this.encoding = encoding;
+        fileLength = file.length();
+        fileLastModified = file.lastModified();
+        synchronized (deferredDatabases) {
+            deferredDatabases.put(database, new WeakReference<DeferredSourceDatabase>(this));
+        }
+    }
+
+    public SQLDatabase getDatabase() {
+        return database;
+    }
+
+    public synchronized void loadNow() throws SQLObjectException {
+        if (loaded) return;
+        if (file.length() != fileLength || file.lastModified() != fileLastModified) {
+            throw new SQLObjectException("The project file " + file + " has changed since it was opened, " +
+                    "so the contents of " + database.getName() + " cannot be read from it.");
+        }
+        logger.debug("Loading deferred source database " + database.getName());
+
+        byte[] children = new byte[(int) (childrenEnd - childrenStart)];
+        try {
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek(childrenStart);
+                raf.readFully(children);
+            } finally {
+                raf.close();
+            }
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not read the contents of " + database.getName() +
+                    " from " + file, e);
+        }
+
+        loader.loadDeferredSourceDatabase(database, children, encoding);
+        loaded = true;
+        synchronized (deferredDatabases) {
+            deferredDatabases.remove(database);
+        }
+    }
+
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+}
@@ -19,15 +19,20 @@
 
 package ca.sqlpower.architect;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
 import java.io.PrintWriter;
+import java.io.SequenceInputStream;
 import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -39,14 +44,16 @@ import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.digester.AbstractObjectCreationFactory;
 import org.apache.commons.digester.Digester;
 import org.apache.commons.digester.Rule;
-import org.apache.commons.digester.SetPropertiesRule;
 import org.apache.log4j.Logger;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 import ca.sqlpower.architect.ddl.GenericDDLGenerator;
+import ca.sqlpower.architect.diff.TableDigest;
 import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
+import ca.sqlpower.architect.profile.ProfileResultStore;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.JDBCDataSource;
@@ -112,6 +119,43 @@ public class ProjectLoader {
 
     protected File file;
 
+    /**
+     * The store the column profile results of the loaded project are waiting
+     * in, or null if the project file holds them inline. The store's file is
+     * relative until {@link #setFile(File)} tells us where the project is.
+     */
+    protected ProfileResultStore profileStore;
+
+    /**
+     * The file the next {@link #load} reads, or null if it isn't known. See
+     * {@link #setLoadingFile(File)}.
+     */
+    private File loadingFile;
+
+    /**
+     * The source databases of the loading file, in the order they appear in
+     * it. This is only set while a file is being loaded.
+     */
+    private List<SourceDatabaseScanner.Range> sourceDatabaseRanges;
+
+    /**
+     * The encoding of the file being loaded.
+     */
+    private String loadingEncoding;
+
+    /**
+     * The content digests the tables read so far were saved with. They are
+     * given to the tables once loading is done, since setting up the loaded
+     * tables changes them and would throw the digests away.
+     */
+    private final Map<SQLTable, String> savedTableDigests = new LinkedHashMap<SQLTable, String>();
+
+    /**
+     * The source databases of the last load whose contents are still in its
+     * file.
+     */
+    private final List<DeferredSourceDatabase> deferredSourceDatabases = new ArrayList<DeferredSourceDatabase>();
+
     // ------------------ load and save support -------------------
 
     private static final Logger logger = Logger.getLogger(ProjectLoader.class);
@@ -213,13 +257,19 @@ public class ProjectLoader {
         try {
             dbcsLoadIdMap = new HashMap<String, JDBCDataSource>();
             sqlObjectLoadIdMap = new HashMap<String, SQLObject>();
+            profileStore = null;
+            deferredSourceDatabases.clear();
 
             Digester digester = null;
 
             // use digester to read from file
             try {
+                InputStream parseIn = uin;
+                if (loadingFile != null) {
+                    parseIn = skipDeferrableSourceDatabases(uin);
+                }
                 digester = setupDigester();
-                digester.parse(uin);
+                digester.parse(parseIn);
             } catch (SAXException ex) {
                 //The digester likes to wrap the cancelled exception in a SAXException.
                 if (ex.getException() instanceof DigesterCancelledException) {
@@ -244,6 +294,10 @@ public class ProjectLoader {
                 throw new SQLObjectException("Unexpected Exception", ex);
             }
 
+            // before the fixups below, so a table they change loses the
+            // digest it was saved with
+            restoreTableDigests();
+
             SQLObject dbConnectionContainer = ((SQLObject) getSession().getRootObject());
 
             // hook up data source parent types
@@ -333,10 +387,121 @@ public class ProjectLoader {
 
             setModified(false);
         } finally {
+            loadingFile = null;
+            sourceDatabaseRanges = null;
+            savedTableDigests.clear();
             uin.forceClose();
         }
     }
 
+    /**
+     * Scans the {@link #loadingFile} for source databases that nothing else
+     * in the project refers to, and returns a stream that leaves their
+     * contents out. The {@link SQLDatabaseFactory} creates a
+     * {@link DeferredSourceDatabase} for each of them.
+     */
+    private InputStream skipDeferrableSourceDatabases(InputStream in) throws IOException {
+        InputStream scanIn = new FileInputStream(loadingFile);
+        SourceDatabaseScanner scanner;
+        try {
+            scanner = SourceDatabaseScanner.scan(scanIn);
+        } finally {
+            scanIn.close();
+        }
+        sourceDatabaseRanges = scanner.getRanges();
+        loadingEncoding = scanner.getEncoding();
+
+        List<SourceDatabaseScanner.Range> deferrable = new ArrayList<SourceDatabaseScanner.Range>();
+        for (SourceDatabaseScanner.Range range : sourceDatabaseRanges) {
+            if (range.isDeferrable()) {
+                deferrable.add(range);
+            }
+        }
+        logger.debug("Deferring " + deferrable.size() + " of " + sourceDatabaseRanges.size() + " source databases");
+        long[] starts = new long[deferrable.size()];
+        long[] ends = new long[deferrable.size()];
+        for (int i = 0; i < deferrable.size(); i++) {
+            starts[i] = deferrable.get(i).getChildrenStart();
+            ends[i] = deferrable.get(i).getChildrenEnd();
+        }
+        return new RangeSkippingInputStream(in, starts, ends);
+    }
+
+    /**
+     * Tells the next {@link #load} which file its input stream reads from
+     * the beginning. Source databases that nothing else in the project
+     * refers to are then left in the file until they are first expanded or
+     * the project is saved, which makes large projects saved with their
+     * entire source open much faster. If this is not set, which is the
+     * default, everything in the file is loaded up front.
+     */
+    public void setLoadingFile(File loadingFile) {
+        this.loadingFile = loadingFile;
+    }
+
+    /**
+     * Loads the contents of every source database the last load left in the
+     * project file.
+     */
+    public void loadDeferredSourceDatabases() throws SQLObjectException {
+        for (DeferredSourceDatabase deferred : new ArrayList<DeferredSourceDatabase>(deferredSourceDatabases)) {
+            deferred.loadNow();
+        }
+        deferredSourceDatabases.clear();
+    }
+
+    /**
+     * Adds the catalogs, schemas and tables saved in the given bytes of the
+     * project file to a source database that was left unloaded. The ids in
+     * the bytes are resolved against the objects loaded with the rest of the
+     * project.
+     *
+     * @param db
+     *            The database to add the children to.
+     * @param children
+     *            The bytes between the database's start and end tags.
+     * @param encoding
+     *            The encoding of the project file.
+     */
+    protected void loadDeferredSourceDatabase(SQLDatabase db, byte[] children, String encoding) throws SQLObjectException {
+        boolean wasModified = isModified();
+        try {
+            Digester d = new Digester(new UnescapingSaxParser());
+            d.setValidating(false);
+            d.push(db);
+            addSQLObjectRules(d, "database");
+            InputStream in = new SequenceInputStream(
+                    new SequenceInputStream(
+                            new ByteArrayInputStream(("<?xml version=\"1.0\" encoding=\"" + encoding + "\"?><database>").getBytes(encoding)),
+                            new ByteArrayInputStream(children)),
+                    new ByteArrayInputStream("</database>".getBytes(encoding)));
+            d.parse(in);
+            restoreTableDigests();
+        } catch (SAXException ex) {
+            logger.error("SAX Exception in deferred source database parse!", ex);
+            throw new SQLObjectException("There is an XML parsing error in the contents of " + db.getName(), ex);
+        } catch (IOException ex) {
+            logger.error("IO Exception in deferred source database parse!", ex);
+            throw new SQLObjectException("There was an I/O error while reading the contents of " + db.getName(), ex);
+        } catch (Exception ex) {
+            logger.error("General Exception in deferred source database parse!", ex);
+            throw new SQLObjectException("Unexpected Exception", ex);
+        } finally {
+            savedTableDigests.clear();
+            setModified(wasModified);
+        }
+    }
+
+    /**
+     * Gives the tables just loaded the content digests they were saved with.
+     */
+    private void restoreTableDigests() {
+        for (Map.Entry<SQLTable, String> entry : savedTableDigests.entrySet()) {
+            TableDigest.setDigest(entry.getKey(), entry.getValue());
+        }
+        savedTableDigests.clear();
+    }
+
     protected Digester setupDigester() throws ParserConfigurationException, SAXException {
         Digester d = new Digester(new UnescapingSaxParser());
         final ArchitectSession messageOwner = (siblingSession == null ? session : siblingSession);
@@ -431,66 +596,10 @@ public class ProjectLoader {
 
         SQLDatabaseFactory dbFactory = new SQLDatabaseFactory();
         d.addFactoryCreate("architect-project/source-databases/database", dbFactory);
-        d.addSetProperties("architect-project/source-databases/database");
+        d.addRule("architect-project/source-databases/database", new PropertySetterRule());
         d.addSetNext("architect-project/source-databases/database", "add");
 
-        d.addObjectCreate("architect-project/source-databases/database/catalog", SQLCatalog.class);
-        d.addSetProperties("architect-project/source-databases/database/catalog");
-        d.addSetNext("architect-project/source-databases/database/catalog", "addChild");
-
-        SQLSchemaFactory schemaFactory = new SQLSchemaFactory();
-        d.addFactoryCreate("*/schema", schemaFactory);
-        d.addSetProperties("*/schema");
-        d.addSetNext("*/schema", "addChild");
-
-        SQLTableFactory tableFactory = new SQLTableFactory();
-        d.addFactoryCreate("*/table", tableFactory);
-        d.addSetProperties("*/table");
-        d.addCallMethod("*/remarks", "setRemarks", 0);
-        d.addSetNext("*/table", "addChild");
-
-        d.addFactoryCreate("*/folder", new SQLFolderFactory());
-
-        SQLColumnFactory columnFactory = new SQLColumnFactory();
-        d.addFactoryCreate("*/column", columnFactory);
-        d.addSetProperties("*/column");
-        d.addCallMethod("*/remarks", "setRemarks", 0);
-        // this needs to be manually set last to prevent generic types
-        // from overwriting database specific types
-
-        // Old name (it has been updated to sourceDataTypeName)
-        d.addCallMethod("*/column","setSourceDataTypeName",1);
-        d.addCallParam("*/column",0,"sourceDBTypeName");
-
-        // new name
-        d.addCallMethod("*/column","setSourceDataTypeName",1);
-        d.addCallParam("*/column",0,"sourceDataTypeName");
-        d.addSetNext("*/column", "addChild");
-
-        SQLRelationshipFactory relationshipFactory = new SQLRelationshipFactory();
-        d.addFactoryCreate("*/relationship", relationshipFactory);
-        d.addSetProperties("*/relationship");
-        // the factory adds the relationships to the correct PK and FK tables
-
-        ColumnMappingFactory columnMappingFactory = new ColumnMappingFactory();
-        d.addFactoryCreate("*/column-mapping", columnMappingFactory);
-        d.addSetProperties("*/column-mapping");
-        d.addSetNext("*/column-mapping", "addChild");
-
-        SQLIndexFactory indexFactory = new SQLIndexFactory();
-        d.addFactoryCreate("*/index", indexFactory);
-        d.addSetProperties("*/index");
-        d.addSetNext("*/index", "addChild");
-
-        SQLIndexColumnFactory indexColumnFactory = new SQLIndexColumnFactory();
-        d.addFactoryCreate("*/index-column", indexColumnFactory);
-        d.addSetProperties("*/index-column");
-        d.addSetNext("*/index-column", "addChild");
-
-        SQLExceptionFactory exceptionFactory = new SQLExceptionFactory();
-        d.addFactoryCreate("*/sql-exception", exceptionFactory);
-        d.addSetProperties("*/sql-exception");
-        d.addSetNext("*/sql-exception", "setChildrenInaccessibleReason");
+        addSQLObjectRules(d, "architect-project/source-databases/database");
 
         TargetDBFactory targetDBFactory = new TargetDBFactory();
         // target database hierarchy
@@ -510,6 +619,28 @@ public class ProjectLoader {
         ProfileManagerFactory profileManagerFactory = new ProfileManagerFactory();
         d.addFactoryCreate("*/profiles", profileManagerFactory);
         d.addSetProperties("*/profiles");
+        d.addRule("*/profiles", new Rule() {
+            @Override
+            public void begin(String namespace, String name, Attributes attributes) throws Exception {
+                String storeName = attributes.getValue("store");
+                if (storeName != null) {
+                    profileStore = new ProfileResultStore(new File(storeName));
+                }
+
+                // the settings are on the profile manager's default settings,
+                // not on the manager the property rule sets them on
+                ProfileSettings settings = session.getProfileManager().getDefaultProfileSettings();
+                String topNCount = attributes.getValue("topNCount");
+                if (topNCount != null) {
+                    settings.setTopNCount(topNCount);
+                }
+                String approximate = attributes.getValue("approximate");
+                if (approximate != null) {
+                    settings.setApproximate(Boolean.valueOf(approximate).booleanValue());
+                }
+                settings.setWatermarkColumnName(attributes.getValue("watermarkColumnName"));
+            }
+        });
 
         /*
          * Backward compatibility: the table and column profiles used to be
@@ -523,15 +654,15 @@ public class ProjectLoader {
          * this causes an IllegalArgumentException when parsing old files.
          * this workaround tells the digester not to auto-map the exception property.
          */
-        d.addRule("*/profiles/profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
+        d.addRule("*/profiles/profile-result", new PropertySetterRule("exception"));
         d.addSetNext("*/profiles/profile-result", "loadResult");
         
         d.addFactoryCreate("*/profiles/table-profile-result", new TableProfileResultFactory());
-        d.addRule("*/profiles/table-profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
+        d.addRule("*/profiles/table-profile-result", new PropertySetterRule("exception"));
         d.addSetNext("*/profiles/table-profile-result", "addTableProfileResult");
         
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result", new ColumnProfileResultFactory());
-        d.addRule("*/profiles/table-profile-result/column-profile-result", new SetPropertiesRule(new String[] {"exception"}, new String[] {}));
+        d.addRule("*/profiles/table-profile-result/column-profile-result", new PropertySetterRule("exception"));
         d.addSetNext("*/profiles/table-profile-result/column-profile-result", "addColumnProfileResult");
 
         ProfileResultValueFactory profileResultValueFactory = new ProfileResultValueFactory();
@@ -541,6 +672,8 @@ public class ProjectLoader {
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/minValue", "setMinValue");
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/maxValue", profileResultValueFactory);
         d.addSetNext("*/profiles/table-profile-result/column-profile-result/maxValue", "setMaxValue");
+        d.addFactoryCreate("*/profiles/table-profile-result/watermark", profileResultValueFactory);
+        d.addSetNext("*/profiles/table-profile-result/watermark", "setWatermark");
 
         ProfileResultTopNValueFactory topNValueFactory = new ProfileResultTopNValueFactory();
         d.addFactoryCreate("*/profiles/table-profile-result/column-profile-result/topNvalue", topNValueFactory );
@@ -555,6 +688,85 @@ public class ProjectLoader {
         return d;
     }
 
+    /**
+     * Adds the rules for the catalogs, schemas, tables and everything under
+     * them to the given digester.
+     *
+     * @param d
+     *            The digester to add the rules to.
+     * @param databasePattern
+     *            The pattern of the source database elements the catalogs
+     *            are in.
+     */
+    private void addSQLObjectRules(Digester d, String databasePattern) {
+        d.addObjectCreate(databasePattern + "/catalog", SQLCatalog.class);
+        d.addRule(databasePattern + "/catalog", new PropertySetterRule());
+        d.addSetNext(databasePattern + "/catalog", "addChild");
+
+        SQLSchemaFactory schemaFactory = new SQLSchemaFactory();
+        d.addFactoryCreate("*/schema", schemaFactory);
+        d.addRule("*/schema", new PropertySetterRule());
+        d.addSetNext("*/schema", "addChild");
+
+        SQLTableFactory tableFactory = new SQLTableFactory();
+        d.addFactoryCreate("*/table", tableFactory);
+        d.addRule("*/table", new PropertySetterRule());
+        d.addRule("*/table", new Rule() {
+            @Override
+            public void begin(String namespace, String name, Attributes attributes) {
+                String digest = attributes.getValue("content-digest");
+                if (digest != null) {
+                    savedTableDigests.put((SQLTable) digester.peek(), digest);
+                }
+            }
+        });
+        d.addCallMethod("*/remarks", "setRemarks", 0);
+        d.addSetNext("*/table", "addChild");
+
+        d.addFactoryCreate("*/folder", new SQLFolderFactory());
+
+        SQLColumnFactory columnFactory = new SQLColumnFactory();
+        d.addFactoryCreate("*/column", columnFactory);
+        d.addRule("*/column", new PropertySetterRule());
+        d.addCallMethod("*/remarks", "setRemarks", 0);
+        // this needs to be manually set last to prevent generic types
+        // from overwriting database specific types
+
+        // Old name (it has been updated to sourceDataTypeName)
+        d.addCallMethod("*/column","setSourceDataTypeName",1);
+        d.addCallParam("*/column",0,"sourceDBTypeName");
+
+        // new name
+        d.addCallMethod("*/column","setSourceDataTypeName",1);
+        d.addCallParam("*/column",0,"sourceDataTypeName");
+        d.addSetNext("*/column", "addChild");
+
+        SQLRelationshipFactory relationshipFactory = new SQLRelationshipFactory();
+        d.addFactoryCreate("*/relationship", relationshipFactory);
+        d.addRule("*/relationship", new PropertySetterRule());
+        // the factory adds the relationships to the correct PK and FK tables
+
+        ColumnMappingFactory columnMappingFactory = new ColumnMappingFactory();
+        d.addFactoryCreate("*/column-mapping", columnMappingFactory);
+        d.addRule("*/column-mapping", new PropertySetterRule());
+        d.addSetNext("*/column-mapping", "addChild");
+
+        SQLIndexFactory indexFactory = new SQLIndexFactory();
+        d.addFactoryCreate("*/index", indexFactory);
+        d.addRule("*/index", new PropertySetterRule());
+        d.addSetNext("*/index", "addChild");
+
+        SQLIndexColumnFactory indexColumnFactory = new SQLIndexColumnFactory();
+        d.addFactoryCreate("*/index-column", indexColumnFactory);
+        d.addRule("*/index-column", new PropertySetterRule());
+        d.addSetNext("*/index-column", "addChild");
+
+        SQLExceptionFactory exceptionFactory = new SQLExceptionFactory();
+        d.addFactoryCreate("*/sql-exception", exceptionFactory);
+        d.addSetProperties("*/sql-exception");
+        d.addSetNext("*/sql-exception", "setChildrenInaccessibleReason");
+    }
+
     /**
      * Creates a SPDataSource object and puts a mapping from its
      * id (in the attributes) to the new instance into the dbcsIdMap.
@@ -611,9 +823,24 @@ public class ProjectLoader {
      * there is such an attribute.
      */
     private class SQLDatabaseFactory extends AbstractObjectCreationFactory {
+
+        /**
+         * The number of source databases created so far in this load.
+         */
+        private int count;
+
         public Object createObject(Attributes attributes) {
             SQLDatabase db = new SQLDatabase();
 
+            if (sourceDatabaseRanges != null && count < sourceDatabaseRanges.size()) {
+                SourceDatabaseScanner.Range range = sourceDatabaseRanges.get(count);
+                if (range.isDeferrable()) {
+                    deferredSourceDatabases.add(new DeferredSourceDatabase(ProjectLoader.this, db, loadingFile,
+                            range.getChildrenStart(), range.getChildrenEnd(), loadingEncoding));
+                }
+            }
+            count++;
+
             String id = attributes.getValue("id");
             if (id != null) {
                 sqlObjectLoadIdMap.put(id, db);
@@ -1042,7 +1269,12 @@ public class ProjectLoader {
             
             SQLTable t = (SQLTable) sqlObjectLoadIdMap.get(refid);
             
-            return new TableProfileResult(t, session.getProfileManager().getDefaultProfileSettings());
+            TableProfileResult tpr = new TableProfileResult(t, session.getProfileManager().getDefaultProfileSettings());
+            if (profileStore != null) {
+                // the column results are read from the store when they are first viewed
+                tpr.setColumnProfileResultStore(profileStore);
+            }
+            return tpr;
         }
     }
     
@@ -1066,7 +1298,7 @@ public class ProjectLoader {
         public Object createObject(Attributes attributes) throws SQLObjectException, ClassNotFoundException, InstantiationException, IllegalAccessException {
             String className = attributes.getValue("type");
             if (className == null) {
-                throw new SQLObjectException("Missing mandatory attribute \"type\" in <avgValue> or <minValue> or <maxValue> element");
+                throw new SQLObjectException("Missing mandatory attribute \"type\" in <avgValue> or <minValue> or <maxValue> or <watermark> element");
             } else if (className.equals(BigDecimal.class.getName()) ) {
                 return new BigDecimal(attributes.getValue("value"));
             } else if (className.equals(Timestamp.class.getName()) ) {
@@ -1146,6 +1378,9 @@ public class ProjectLoader {
      */
     public void setFile(File argFile) {
         this.file = argFile;
+        if (profileStore != null && argFile != null && !profileStore.getFile().isAbsolute()) {
+            profileStore.setFile(new File(argFile.getAbsoluteFile().getParentFile(), profileStore.getFile().getPath()));
+        }
     }
 
     /**
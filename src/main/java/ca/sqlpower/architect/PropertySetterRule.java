@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.beans.BeanInfo;
+import java.beans.IndexedPropertyDescriptor;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.Converter;
+import org.apache.commons.digester.Rule;
+import org.apache.log4j.Logger;
+import org.xml.sax.Attributes;
+
+/**
+ * A replacement for the Digester's SetPropertiesRule on the elements a
+ * project has thousands of. The SetPropertiesRule copies every attribute
+ * into a map and hands it to BeanUtils, which looks up the property
+ * descriptor again for each attribute of each element. This rule looks up
+ * the setter once per class and attribute name and reuses it for the rest
+ * of the load.
+ * <p>
+ * Attributes are converted exactly the way BeanUtils would convert them. The
+ * Converter is looked up in {@link ConvertUtils} for every value, so the
+ * Converters registered in {@link ProjectLoader}, or registered later, still
+ * apply. Attributes with no matching writable property are ignored the same
+ * way.
+ */
+public class PropertySetterRule extends Rule {
+
+    private static final Logger logger = Logger.getLogger(PropertySetterRule.class);
+
+    /**
+     * Sets one property of a bean from an attribute value.
+     */
+    private static interface PropertySetter {
+        void set(Object bean, String value) throws Exception;
+    }
+
+    /**
+     * Marks attribute names that have no writable property on a class, so
+     * they are skipped without looking them up again.
+     */
+    private static final PropertySetter NO_PROPERTY = new PropertySetter() {
+        public void set(Object bean, String value) {
+            // nothing to set
+        }
+    };
+
+    /**
+     * The setters found so far, by bean class and then attribute name.
+     */
+    private static final Map<Class<?>, Map<String, PropertySetter>> setters =
+        new HashMap<Class<?>, Map<String, PropertySetter>>();
+
+    /**
+     * Attribute names this rule leaves alone even if the bean has a property
+     * by that name.
+     */
+    private final Set<String> ignoredAttributes;
+
+    /**
+     * Creates a rule that sets a property for every attribute that has one,
+     * except for the given attribute names.
+     */
+    public PropertySetterRule(String ... ignoredAttributes) {
+        this.ignoredAttributes = new HashSet<String>(Arrays.asList(ignoredAttributes));
+    }
+
+    @Override
+    public void begin(String namespace, String name, Attributes attributes) throws Exception {
+        setProperties(digester.peek(), attributes, ignoredAttributes);
+    }
+
+    /**
+     * Sets the properties of the given bean from the attributes, the same way
+     * {@link BeanUtils#populate(Object, Map)} would.
+     */
+    static void setProperties(Object bean, Attributes attributes, Set<String> ignoredAttributes) throws Exception {
+        Map<String, PropertySetter> beanSetters = getSetters(bean.getClass());
+        for (int i = 0; i < attributes.getLength(); i++) {
+            String name = attributes.getLocalName(i);
+            if ("".equals(name)) {
+                name = attributes.getQName(i);
+            }
+            if (name == null || ignoredAttributes.contains(name)) continue;
+
+            PropertySetter setter;
+            synchronized (beanSetters) {
+                setter = beanSetters.get(name);
+                if (setter == null) {
+                    setter = createSetter(bean.getClass(), name);
+                    beanSetters.put(name, setter);
+                }
+            }
+            setter.set(bean, attributes.getValue(i));
+        }
+    }
+
+    private static Map<String, PropertySetter> getSetters(Class<?> beanClass) {
+        synchronized (setters) {
+            Map<String, PropertySetter> beanSetters = setters.get(beanClass);
+            if (beanSetters == null) {
+                beanSetters = new HashMap<String, PropertySetter>();
+                setters.put(beanClass, beanSetters);
+            }
+            return beanSetters;
+        }
+    }
+
+    /**
+     * Finds the setter for the named property. Anything this rule does not
+     * handle itself, such as indexed or array properties, is passed on to
+     * BeanUtils.
+     */
+    private static PropertySetter createSetter(Class<?> beanClass, final String name) throws IntrospectionException {
+        BeanInfo info = Introspector.getBeanInfo(beanClass);
+        PropertyDescriptor descriptor = null;
+        for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+            if (pd.getName().equals(name)) {
+                descriptor = pd;
+                break;
+            }
+        }
+        if (descriptor == null) {
+            return NO_PROPERTY;
+        }
+        final Method writeMethod = descriptor.getWriteMethod();
+        if (descriptor instanceof IndexedPropertyDescriptor || descriptor.getPropertyType().isArray()
+                || (writeMethod != null && !Modifier.isPublic(writeMethod.getDeclaringClass().getModifiers()))) {
+            return new PropertySetter() {
+                public void set(Object bean, String value) throws Exception {
+                    BeanUtils.setProperty(bean, name, value);
+                }
+            };
+        }
+        if (writeMethod == null) {
+            logger.debug("Skipping read-only property " + name + " of " + beanClass.getName());
+            return NO_PROPERTY;
+        }
+
+        final Class<?> type = descriptor.getPropertyType();
+        return new PropertySetter() {
+            public void set(Object bean, String value) throws Exception {
+                Converter converter = ConvertUtils.lookup(type);
+                if (converter == null) {
+                    converter = ConvertUtils.lookup(String.class);
+                }
+                writeMethod.invoke(bean, converter.convert(type, value));
+            }
+        };
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Wrapper class around InputStream that leaves out some ranges of its bytes.
+ * The ranges are given as offsets from where the stream is when it is
+ * wrapped, and must be in order and not overlap.
+ */
+class RangeSkippingInputStream extends FilterInputStream {
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    /**
+     * The index of the next range to skip.
+     */
+    private int nextRange;
+
+    /**
+     * The offset of the next byte of the wrapped stream.
+     */
+    private long pos;
+
+    /**
+     * @param in
+     *            The stream to read from.
+     * @param starts
+     *            The offsets of the first byte of each range to leave out.
+     * @param ends
+     *            The offsets of the first byte after each range.
+     */
+    RangeSkippingInputStream(InputStream in, long[] starts, long[] ends) {
+        super(in);
+        this.starts = starts;
+        this.ends = ends;
+    }
+
+    /**
+     * Skips the next range if the stream is at its start, and returns how
+     * many bytes can be read before the range after it.
+     */
+    private long skipRange() throws IOException {
+        while (nextRange < starts.length && pos >= starts[nextRange]) {
+            while (pos < ends[nextRange]) {
+                long skipped = in.skip(ends[nextRange] - pos);
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        throw new IOException("The stream ended before offset " + ends[nextRange]);
+                    }
+                    skipped = 1;
+                }
+                pos += skipped;
+            }
+            nextRange++;
+        }
+        if (nextRange < starts.length) {
+            return starts[nextRange] - pos;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int read() throws IOException {
+        skipRange();
+        int b = in.read();
+        if (b != -1) pos++;
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        long available = skipRange();
+        int count = in.read(b, off, (int) Math.min(len, available));
+        if (count > 0) pos += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long available = skipRange();
+        long skipped = in.skip(Math.min(n, available));
+        if (skipped > 0) pos += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        if (nextRange < starts.length) {
+            return (int) Math.max(0, Math.min(in.available(), starts[nextRange] - pos));
+        }
+        return in.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+}
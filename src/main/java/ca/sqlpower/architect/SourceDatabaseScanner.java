@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Makes a quick pass over the bytes of a project file to find where the
+ * contents of each source database start and end, and which of them are
+ * referred to from elsewhere in the file. Nothing is built from the file and
+ * entities are not decoded; only the markup is looked at, which is plain
+ * ASCII in every encoding the project files are saved in.
+ */
+class SourceDatabaseScanner {
+
+    /**
+     * The position of one source database element in the file.
+     */
+    static class Range {
+
+        /**
+         * The offset of the first byte after the database start tag.
+         */
+        private long childrenStart;
+
+        /**
+         * The offset of the database end tag. This is the same as
+         * {@link #childrenStart} if the database is empty.
+         */
+        private long childrenEnd;
+
+        /**
+         * True if an element outside this database refers to the database or
+         * to something in it by id. Those databases have to be loaded with
+         * the rest of the project so the references can be resolved.
+         */
+        private boolean referenced;
+
+        long getChildrenStart() {
+            return childrenStart;
+        }
+
+        long getChildrenEnd() {
+            return childrenEnd;
+        }
+
+        /**
+         * Returns true if this database has contents that can be left in the
+         * file until they are needed.
+         */
+        boolean isDeferrable() {
+            return !referenced && childrenEnd > childrenStart;
+        }
+    }
+
+    /**
+     * The marker stored in {@link #references} for an id that is referred to
+     * from more than one place.
+     */
+    private static final int MANY_PLACES = -2;
+
+    /**
+     * The marker for an id referred to from outside all source databases.
+     */
+    private static final int OUTSIDE = -1;
+
+    private final InputStream in;
+
+    private final byte[] buffer = new byte[64 * 1024];
+
+    private int bufferLength;
+
+    private int bufferPos;
+
+    /**
+     * The offset in the file of the next byte {@link #next()} returns.
+     */
+    private long pos;
+
+    private String encoding = "UTF-8";
+
+    private final List<Range> ranges = new ArrayList<Range>();
+
+    /**
+     * Maps the ids defined in source databases to the index of their database
+     * in {@link #ranges}.
+     */
+    private final Map<String, Integer> definitions = new HashMap<String, Integer>();
+
+    /**
+     * Maps every id that is referred to to the index of the database the
+     * reference is in, {@link #OUTSIDE} or {@link #MANY_PLACES}.
+     */
+    private final Map<String, Integer> references = new HashMap<String, Integer>();
+
+    private SourceDatabaseScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Scans the project file in the given stream, which is not closed.
+     */
+    static SourceDatabaseScanner scan(InputStream in) throws IOException {
+        SourceDatabaseScanner scanner = new SourceDatabaseScanner(in);
+        scanner.scan();
+        return scanner;
+    }
+
+    /**
+     * Returns the source databases in the order they appear in the file.
+     */
+    List<Range> getRanges() {
+        return ranges;
+    }
+
+    /**
+     * Returns the encoding from the XML declaration of the file.
+     */
+    String getEncoding() {
+        return encoding;
+    }
+
+    private int next() throws IOException {
+        if (bufferPos == bufferLength) {
+            bufferLength = in.read(buffer);
+            bufferPos = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        pos++;
+        return buffer[bufferPos++] & 0xff;
+    }
+
+    /**
+     * Skips past the given terminator, which must be ASCII.
+     */
+    private void skipPast(String terminator) throws IOException {
+        int matched = 0;
+        int c;
+        while (matched < terminator.length() && (c = next()) != -1) {
+            if (c == terminator.charAt(matched)) {
+                matched++;
+            } else {
+                matched = (c == terminator.charAt(0)) ? 1 : 0;
+            }
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+    }
+
+    private void scan() throws IOException {
+        int depth = 0;
+        int sourceDatabasesDepth = -1;
+        int databaseDepth = -1;
+        int currentRange = OUTSIDE;
+        boolean firstMarkup = true;
+
+        int c;
+        while ((c = next()) != -1) {
+            if (c != '<') continue;
+            long tagStart = pos - 1;
+            c = next();
+
+            if (c == '?') {
+                StringBuilder pi = new StringBuilder();
+                int prev = 0;
+                while ((c = next()) != -1 && !(prev == '?' && c == '>')) {
+                    pi.append((char) c);
+                    prev = c;
+                }
+                if (firstMarkup && pi.toString().startsWith("xml")) {
+                    readEncoding(pi.toString());
+                }
+                firstMarkup = false;
+                continue;
+            }
+            firstMarkup = false;
+            if (c == '!') {
+                c = next();
+                if (c == '-') {
+                    skipPast("-->");
+                } else if (c == '[') {
+                    skipPast("]]>");
+                } else {
+                    skipPast(">");
+                }
+                continue;
+            }
+
+            boolean endTag = (c == '/');
+            if (endTag) c = next();
+            StringBuilder nameBuilder = new StringBuilder();
+            while (c != -1 && c != '>' && c != '/' && !isWhitespace(c)) {
+                nameBuilder.append((char) c);
+                c = next();
+            }
+            String name = nameBuilder.toString();
+
+            if (endTag) {
+                if (c != '>') skipPast(">");
+                if (depth == databaseDepth && currentRange >= 0) {
+                    ranges.get(currentRange).childrenEnd = tagStart;
+                    currentRange = OUTSIDE;
+                    databaseDepth = -1;
+                } else if (depth == sourceDatabasesDepth) {
+                    sourceDatabasesDepth = -1;
+                }
+                depth--;
+                continue;
+            }
+
+            if (name.equals("database") && sourceDatabasesDepth >= 0 && depth == sourceDatabasesDepth) {
+                ranges.add(new Range());
+                currentRange = ranges.size() - 1;
+                databaseDepth = depth + 1;
+            } else if (name.equals("source-databases") && depth == 1) {
+                sourceDatabasesDepth = depth + 1;
+            }
+
+            boolean emptyElement = false;
+            while (c != -1) {
+                while (isWhitespace(c)) c = next();
+                if (c == '>') break;
+                if (c == '/') {
+                    emptyElement = true;
+                    skipPast(">");
+                    break;
+                }
+                StringBuilder attrName = new StringBuilder();
+                while (c != -1 && c != '=' && !isWhitespace(c)) {
+                    attrName.append((char) c);
+                    c = next();
+                }
+                while (c != -1 && c != '"' && c != '\'') c = next();
+                int quote = c;
+                StringBuilder value = new StringBuilder();
+                while ((c = next()) != -1 && c != quote) {
+                    value.append((char) c);
+                }
+                attribute(attrName.toString(), value.toString(), currentRange);
+                c = next();
+            }
+
+            if (currentRange >= 0 && databaseDepth == depth + 1) {
+                Range range = ranges.get(currentRange);
+                range.childrenStart = pos;
+                range.childrenEnd = pos;
+                if (emptyElement) {
+                    currentRange = OUTSIDE;
+                    databaseDepth = -1;
+                }
+            }
+            if (!emptyElement) {
+                depth++;
+            }
+        }
+
+        for (Map.Entry<String, Integer> reference : references.entrySet()) {
+            Integer definedIn = definitions.get(reference.getKey());
+            if (definedIn != null && !definedIn.equals(reference.getValue())) {
+                ranges.get(definedIn).referenced = true;
+            }
+        }
+    }
+
+    /**
+     * Records the ids defined and referred to by an attribute. Attribute
+     * values are compared as they appear in the file, without decoding.
+     */
+    private void attribute(String name, String value, int currentRange) {
+        if (currentRange >= 0 && name.equals("id")) {
+            definitions.put(value, currentRange);
+        } else if (name.endsWith("-ref") || name.equals("ref-id") || name.equals("fk-table")) {
+            Integer previous = references.get(value);
+            if (previous == null) {
+                references.put(value, currentRange);
+            } else if (previous.intValue() != currentRange) {
+                references.put(value, MANY_PLACES);
+            }
+        }
+    }
+
+    private void readEncoding(String declaration) {
+        int start = declaration.indexOf("encoding");
+        if (start < 0) return;
+        start = declaration.indexOf('=', start);
+        if (start < 0) return;
+        int quoteStart = start + 1;
+        while (quoteStart < declaration.length() && isWhitespace(declaration.charAt(quoteStart))) quoteStart++;
+        if (quoteStart >= declaration.length()) return;
+        char quote = declaration.charAt(quoteStart);
+        int end = declaration.indexOf(quote, quoteStart + 1);
+        if (end > quoteStart) {
+            encoding = declaration.substring(quoteStart + 1, end);
+        }
+    }
+}
@@ -25,9 +25,14 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.apache.log4j.Logger;
@@ -212,9 +217,36 @@ public class ConflictResolver implements Monitorable {
     		dropConflictingStarted = true;
     }
     
+    /**
+     * The names of the objects the DDL script creates in one catalog and
+     * schema of the target database, so the conflicts with all of them can be
+     * found with a few metadata queries about the whole schema.
+     */
+    private static class TargetSchema {
+        private final String catalog;
+        private final String schema;
+        private final Set<String> tables = new LinkedHashSet<String>();
+        private final Set<String> sequences = new LinkedHashSet<String>();
+
+        /**
+         * The name of each index the script creates and the name of its
+         * table.
+         */
+        private final Map<String, String> indices = new LinkedHashMap<String, String>();
+
+        TargetSchema(String catalog, String schema) {
+            this.catalog = catalog;
+            this.schema = schema;
+        }
+    }
+
     /**
      * Searches for objects in the database pointed to by con that would
      * conflict with the execution of any of the given DDL statements.
+     * <p>
+     * The tables, sequences and foreign keys of each target schema are read
+     * with one metadata query each rather than one per statement, and the
+     * conflicts are found by comparing names in memory.
      * 
      * @return a list of object names that need to be removed before ddlStmt
      *         will succeed.
@@ -223,6 +255,29 @@ public class ConflictResolver implements Monitorable {
     public void findConflicting() throws SQLException, SQLObjectException {
    		doingFindConflicting = true;
    		Connection con = null;
+   		try {
+   			con = targetDatabase.getConnection();
+   			findConflicting(con.getMetaData());
+   		} finally {    			
+   			findConflictingFinished = true;
+   			doingFindConflicting = false;
+   			try {
+   				if (con != null) con.close();
+   			} catch (SQLException ex) {
+   				logger.error("Couldn't close connection");
+   			}
+   		}
+    }
+
+    /**
+     * Finds the conflicts with the DDL statements in the database described by
+     * the given metadata. This is the part of {@link #findConflicting()} which
+     * does not need a connection of its own, so the tests can use it on a fake
+     * database.
+     */
+    void findConflicting(DatabaseMetaData dbmd) throws SQLException {
+   		String oldCatalog = ddlg.getTargetCatalog();
+   		String oldSchema = ddlg.getTargetSchema();
    		try {
    			conflicts = new ArrayList<Conflict>();
    			monitorableProgress = 0;
@@ -231,9 +286,7 @@ public class ConflictResolver implements Monitorable {
    				logger.debug("About to find conflicting objects for DDL Script: "+ddlStatements);
    			}
    			
-   			con = targetDatabase.getConnection();
-   			DatabaseMetaData dbmd = con.getMetaData();
-   			
+   			Map<List<String>, TargetSchema> schemas = new LinkedHashMap<List<String>, TargetSchema>();
    			Iterator<DDLStatement> it = ddlStatements.iterator();
    			while (it.hasNext()) {
    			    DDLStatement ddlStmt = (DDLStatement) it.next();
@@ -242,60 +295,301 @@ public class ConflictResolver implements Monitorable {
    			    SQLObject so = ddlStmt.getObject();
    			    Class<? extends SQLObject> clazz = so.getClass();
    			    
+   			    String cat = ddlg.toIdentifier(ddlStmt.getTargetCatalog());
+   			    String sch = ddlg.toIdentifier(ddlStmt.getTargetSchema());
+   			    List<String> key = Arrays.asList(cat, sch);
+   			    TargetSchema target = schemas.get(key);
+   			    if (target == null) {
+   			        target = new TargetSchema(cat, sch);
+   			        schemas.put(key, target);
+   			    }
+   			    
    			    if (clazz.equals(SQLTable.class)) {
-   			        SQLTable t = (SQLTable) so;
-   			        String cat = ddlStmt.getTargetCatalog();
-   			        String sch = ddlStmt.getTargetSchema();
-   			        if (logger.isDebugEnabled()) {
-   			            logger.debug("Finding conflicts for TABLE '" + cat + "'.'"
-   			                    + sch + "'.'" + t.getPhysicalName() + "'");
-   			        }
-   			        
-   			        ResultSet rs = dbmd.getTables(
-   			                ddlg.toIdentifier(cat),
-   			                ddlg.toIdentifier(sch),
-   			                ddlg.toIdentifier(t.getPhysicalName()),
-   			                null);
-   			        while (rs.next()) {
-   			            Conflict c = new Conflict(
-   			                    rs.getString("TABLE_TYPE"),
-   			                    rs.getString("TABLE_CAT"),
-   			                    rs.getString("TABLE_SCHEM"),
-   			                    rs.getString("TABLE_NAME"));
-   			            ddlg.setTargetCatalog(c.getCatalog());
-   			            ddlg.setTargetSchema(c.getSchema());
-   			            c.setSqlDropStatement(ddlg.makeDropTableSQL(c.getName()));
-   			            c.addTableDependants(dbmd);
-   			            conflicts.add(c);
-   			        }
-   			        rs.close();
-   			        
+   			        target.tables.add(ddlg.toIdentifier(so.getPhysicalName()));
    				} else if (clazz.equals(SQLRelationship.class)) {
    					logger.error("Relationship conflicts are not supported yet!");
                 } else if (clazz.equals(SQLIndex.class)) {
-                    logger.error("Index conflicts not supported.");
+                    if (so.getPhysicalName() == null) continue;
+                    target.indices.put(ddlg.toIdentifier(so.getPhysicalName()),
+                            ddlg.toIdentifier(so.getParent().getPhysicalName()));
                 } else if (clazz.equals(SQLSequence.class)) {
-                    logger.error("Sequence conflicts not supported.");
+                    target.sequences.add(ddlg.toIdentifier(so.getName()));
    				} else {
    					throw new IllegalArgumentException(
    							"Unknown subclass of SQLObject: " + clazz.getName());
    				}
    			}
    			
+   			List<Conflict> indexConflicts = new ArrayList<Conflict>();
+   			List<Conflict> sequenceConflicts = new ArrayList<Conflict>();
+   			for (TargetSchema target : schemas.values()) {
+   			    findConflicts(dbmd, target, conflicts, indexConflicts, sequenceConflicts);
+   			}
+   			// indices on conflicting tables go away with their tables, and
+   			// sequences owned by a table may too
+   			conflicts.addAll(indexConflicts);
+   			conflicts.addAll(sequenceConflicts);
+   			
    			if (logger.isDebugEnabled()) {
    				logger.debug("Found conflicts: " + conflicts);
    			}
-   		} finally {    			
-   			findConflictingFinished = true;
-   			doingFindConflicting = false;
-   			try {
-   				if (con != null) con.close();
-   			} catch (SQLException ex) {
-   				logger.error("Couldn't close connection");
-   			}
+   		} finally {
+   			ddlg.setTargetCatalog(oldCatalog);
+   			ddlg.setTargetSchema(oldSchema);
    		}
     }
 
+    /**
+     * Finds the objects in one schema of the target database that conflict
+     * with the objects the script creates there, and adds them to the given
+     * lists.
+     */
+    private void findConflicts(DatabaseMetaData dbmd, TargetSchema target, List<Conflict> tableConflicts,
+            List<Conflict> indexConflicts, List<Conflict> sequenceConflicts) throws SQLException {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Finding conflicts in '" + target.catalog + "'.'" + target.schema + "'");
+        }
+        
+        Set<String> conflictingTables = new HashSet<String>();
+        if (!target.tables.isEmpty() || !target.sequences.isEmpty()) {
+            Map<String, List<Conflict>> existingTables = new HashMap<String, List<Conflict>>();
+            Map<String, List<Conflict>> existingSequences = new HashMap<String, List<Conflict>>();
+            ResultSet rs = dbmd.getTables(target.catalog, target.schema, "%", null);
+            try {
+                while (rs.next()) {
+                    String type = rs.getString("TABLE_TYPE");
+                    Conflict c = new Conflict(
+                            type,
+                            rs.getString("TABLE_CAT"),
+                            rs.getString("TABLE_SCHEM"),
+                            rs.getString("TABLE_NAME"));
+                    String upperType = type == null ? "" : type.toUpperCase();
+                    if (upperType.indexOf("SEQUENCE") >= 0) {
+                        addToMap(existingSequences, c.getName(), c);
+                    } else if (upperType.indexOf("INDEX") < 0) {
+                        addToMap(existingTables, c.getName(), c);
+                    }
+                }
+            } finally {
+                rs.close();
+            }
+            
+            List<Conflict> newTableConflicts = new ArrayList<Conflict>();
+            for (String name : target.tables) {
+                List<Conflict> existing = existingTables.get(name);
+                if (existing == null) continue;
+                for (Conflict c : existing) {
+                    ddlg.setTargetCatalog(c.getCatalog());
+                    ddlg.setTargetSchema(c.getSchema());
+                    c.setSqlDropStatement(ddlg.makeDropTableSQL(c.getName()));
+                    conflictingTables.add(DDLUtils.toQualifiedName(c.getCatalog(), c.getSchema(), c.getName()));
+                    newTableConflicts.add(c);
+                }
+            }
+            if (!newTableConflicts.isEmpty()) {
+                addTableDependants(dbmd, target, newTableConflicts);
+                tableConflicts.addAll(newTableConflicts);
+            }
+            
+            for (String name : target.sequences) {
+                List<Conflict> existing = existingSequences.get(name);
+                if (existing == null) continue;
+                for (Conflict c : existing) {
+                    ddlg.setTargetCatalog(c.getCatalog());
+                    ddlg.setTargetSchema(c.getSchema());
+                    c.setSqlDropStatement(ddlg.makeDropSequenceSQL(c.getName()));
+                    sequenceConflicts.add(c);
+                }
+            }
+        }
+        
+        if (!target.indices.isEmpty()) {
+            findIndexConflicts(dbmd, target, conflictingTables, indexConflicts);
+        }
+    }
+
+    /**
+     * Adds the foreign keys which must be dropped before the given table
+     * conflicts can be dropped. The imported and exported keys of the whole
+     * schema are read at once if the driver allows it, otherwise the keys of
+     * each table are read on their own.
+     * <p>
+     * JDBC doesn't define what a null table name means to these methods.
+     * Some drivers bind it like any other name and return no rows instead of
+     * failing, so an empty result for the whole schema is not trusted
+     * either, and the keys are read for each table.
+     */
+    private void addTableDependants(DatabaseMetaData dbmd, TargetSchema target, List<Conflict> tables)
+    throws SQLException {
+        Map<String, List<Conflict>> importedKeys = null;
+        Map<String, List<Conflict>> exportedKeys = null;
+        try {
+            importedKeys = readKeys(dbmd.getImportedKeys(target.catalog, target.schema, null), "FKTABLE_");
+            exportedKeys = readKeys(dbmd.getExportedKeys(target.catalog, target.schema, null), "PKTABLE_");
+        } catch (SQLException ex) {
+            logger.info("Couldn't read the keys of the whole schema, reading them for each table instead", ex);
+        }
+        if (importedKeys == null || exportedKeys == null
+                || (importedKeys.isEmpty() && exportedKeys.isEmpty())) {
+            for (Conflict c : tables) {
+                c.addTableDependants(dbmd);
+            }
+            return;
+        }
+        for (Conflict c : tables) {
+            String name = DDLUtils.toQualifiedName(c.getCatalog(), c.getSchema(), c.getName());
+            if (importedKeys.containsKey(name)) {
+                c.getDependants().addAll(importedKeys.get(name));
+            }
+            if (exportedKeys.containsKey(name)) {
+                c.getDependants().addAll(exportedKeys.get(name));
+            }
+        }
+    }
+
+    /**
+     * Reads a DatabaseMetaData imported keys or exported keys result set into
+     * a map of foreign key conflicts, keyed by the qualified name of the table
+     * whose columns start with the given prefix.
+     */
+    private Map<String, List<Conflict>> readKeys(ResultSet rs, String tablePrefix) throws SQLException {
+        Map<String, List<Conflict>> keys = new HashMap<String, List<Conflict>>();
+        try {
+            while (rs.next()) {
+                Conflict c = new Conflict("FOREIGN KEY",
+                        rs.getString("FKTABLE_CAT"),
+                        rs.getString("FKTABLE_SCHEM"),
+                        rs.getString("FK_NAME"));
+                String table = DDLUtils.toQualifiedName(
+                        rs.getString(tablePrefix + "CAT"),
+                        rs.getString(tablePrefix + "SCHEM"),
+                        rs.getString(tablePrefix + "NAME"));
+                
+                // multi-column keys get multiple rows in this result set.  We need to skip 'em.
+                List<Conflict> tableKeys = keys.get(table);
+                if (tableKeys != null && tableKeys.contains(c)) continue;
+                
+                ddlg.setTargetCatalog(c.getCatalog());
+                ddlg.setTargetSchema(c.getSchema());
+                c.setSqlDropStatement(
+                        ddlg.makeDropForeignKeySQL(rs.getString("FKTABLE_NAME"), c.getName()));
+                addToMap(keys, table, c);
+            }
+        } finally {
+            rs.close();
+        }
+        return keys;
+    }
+
+    /**
+     * Finds the existing indices in the schema with the same names as the
+     * indices the script creates. Indices on tables that are being dropped
+     * are left out, as they go away with their tables.
+     * <p>
+     * The indices of the whole schema are read at once if the driver returns
+     * any for a null table name. Otherwise they are read for each table in
+     * the schema, for the same reason as in
+     * {@link #addTableDependants(DatabaseMetaData, TargetSchema, List)}.
+     */
+    private void findIndexConflicts(DatabaseMetaData dbmd, TargetSchema target, Set<String> conflictingTables,
+            List<Conflict> indexConflicts) {
+        ddlg.setTargetCatalog(target.catalog);
+        ddlg.setTargetSchema(target.schema);
+        Map.Entry<String, String> first = target.indices.entrySet().iterator().next();
+        if (ddlg.makeDropIndexSQL(first.getValue(), first.getKey()) == null) {
+            // index names only have to be unique within their tables here
+            return;
+        }
+        
+        try {
+            Set<Conflict> found = new HashSet<Conflict>();
+            boolean anyRows;
+            try {
+                anyRows = readIndexConflicts(dbmd.getIndexInfo(target.catalog, target.schema, null, false, true),
+                        target, conflictingTables, found, indexConflicts);
+            } catch (SQLException ex) {
+                logger.info("Couldn't read the indices of the whole schema, reading them for each table instead", ex);
+                anyRows = false;
+            }
+            if (!anyRows) {
+                for (String table : readTableNames(dbmd, target)) {
+                    readIndexConflicts(dbmd.getIndexInfo(target.catalog, target.schema, table, false, true),
+                            target, conflictingTables, found, indexConflicts);
+                }
+            }
+        } catch (SQLException ex) {
+            logger.warn("Couldn't read the indices of " +
+                    DDLUtils.toQualifiedName(target.catalog, target.schema, "") +
+                    ", index conflicts will not be found", ex);
+        }
+    }
+
+    /**
+     * Adds the indices in a DatabaseMetaData index info result set which
+     * conflict with the indices the script creates to the given list, and
+     * closes the result set.
+     * 
+     * @return true if the result set had any rows
+     */
+    private boolean readIndexConflicts(ResultSet rs, TargetSchema target, Set<String> conflictingTables,
+            Set<Conflict> found, List<Conflict> indexConflicts) throws SQLException {
+        boolean anyRows = false;
+        try {
+            while (rs.next()) {
+                anyRows = true;
+                String indexName = rs.getString("INDEX_NAME");
+                if (indexName == null || !target.indices.containsKey(indexName)) continue;
+                String tableCatalog = rs.getString("TABLE_CAT");
+                String tableSchema = rs.getString("TABLE_SCHEM");
+                String tableName = rs.getString("TABLE_NAME");
+                if (conflictingTables.contains(DDLUtils.toQualifiedName(tableCatalog, tableSchema, tableName))) {
+                    continue;
+                }
+                Conflict c = new Conflict("INDEX", tableCatalog, tableSchema, indexName);
+                
+                // multi-column indices get multiple rows in this result set
+                if (!found.add(c)) continue;
+                
+                ddlg.setTargetCatalog(c.getCatalog());
+                ddlg.setTargetSchema(c.getSchema());
+                c.setSqlDropStatement(ddlg.makeDropIndexSQL(tableName, indexName));
+                indexConflicts.add(c);
+            }
+        } finally {
+            rs.close();
+        }
+        return anyRows;
+    }
+
+    /**
+     * Returns the names of the tables in one schema of the target database.
+     */
+    private List<String> readTableNames(DatabaseMetaData dbmd, TargetSchema target) throws SQLException {
+        List<String> names = new ArrayList<String>();
+        ResultSet rs = dbmd.getTables(target.catalog, target.schema, "%", null);
+        try {
+            while (rs.next()) {
+                String type = rs.getString("TABLE_TYPE");
+                String upperType = type == null ? "" : type.toUpperCase();
+                if (upperType.indexOf("SEQUENCE") < 0 && upperType.indexOf("INDEX") < 0) {
+                    names.add(rs.getString("TABLE_NAME"));
+                }
+            }
+        } finally {
+            rs.close();
+        }
+        return names;
+    }
+
+    private static void addToMap(Map<String, List<Conflict>> map, String key, Conflict c) {
+        List<Conflict> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<Conflict>();
+            map.put(key, list);
+        }
+        list.add(c);
+    }
+
     /**
      * Drops the conflicting objects which findConflicting() found in the target database.
      * 
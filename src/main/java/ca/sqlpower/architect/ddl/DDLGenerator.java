@@ -19,6 +19,8 @@
 
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.Collection;
 import java.util.List;
@@ -80,6 +82,36 @@ public interface DDLGenerator {
      */
     public String generateDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables) throws SQLException, SQLObjectException;
 
+    /**
+     * Generates the same script as
+     * {@link #generateDDLScript(ArchitectSwingSession, Collection)}, but writes
+     * it to the given writer a statement at a time instead of building it up
+     * in memory. To write to a channel, wrap it with
+     * {@link java.nio.channels.Channels#newWriter(java.nio.channels.WritableByteChannel, String)}.
+     * The writer is flushed but not closed.
+     *
+     * @param architectSwingSession
+     *            The session the script is for.
+     * @param tables
+     *            The collection of tables the generated script should create.
+     * @param out
+     *            The writer to write the script to.
+     * @throws SQLException If there is a problem getting type info from the target DB.
+     * @throws SQLObjectException If there are problems with the Architect objects.
+     * @throws IOException If writing to the writer fails.
+     */
+    public void writeDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables, Writer out)
+    throws SQLException, SQLObjectException, IOException;
+
+    /**
+     * Generates the series of DDL Statements as in
+     * {@link #generateDDLStatements(Collection)}, for the given session. This
+     * is the way to get the statements of a script without generating the
+     * script itself.
+     */
+    public List<DDLStatement> generateDDLStatements(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables)
+    throws SQLException, SQLObjectException;
+
 
     /**
      * Adds a comment (remark) to the passed object (table, column, view, ...)
@@ -240,6 +272,28 @@ public interface DDLGenerator {
      */
     public String makeDropForeignKeySQL(String fkTable, String fkName);
 
+    /**
+     * Creates and returns a DDL statement which will drop an index in this DDL
+     * Generator's current catalog and schema.
+     *
+     * @param table The name of the table the index is on.
+     * @param index The name of the index to drop.
+     * @return A SQL statement which will drop the index, or null if index
+     * names on this platform only have to be unique within their table. An
+     * index like that can't get in the way of a new index unless its table
+     * does too, and it goes away with its table.
+     */
+    public String makeDropIndexSQL(String table, String index);
+
+    /**
+     * Creates and returns a DDL statement which will drop a sequence in this
+     * DDL Generator's current catalog and schema.
+     *
+     * @param sequence The name of the sequence to drop.
+     * @return A SQL statement which will drop the sequence.
+     */
+    public String makeDropSequenceSQL(String sequence);
+
 
     // ---------------------- accessors and mutators ----------------------
 
@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ca.sqlpower.architect.DepthFirstSearch;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * The statements a {@link GenericDDLGenerator} made for each table the last
+ * time it generated a script, and the order it put the tables in. A table's
+ * statements are used again as long as neither the table nor anything in it
+ * has fired an event since, and the generator's settings are the same.
+ * <p>
+ * Every table that has been generated gets a listener that counts its
+ * changes. The listeners are shared by all the caches, and each cache
+ * remembers the counts its statements were made at.
+ */
+class DDLStatementCache {
+
+    /**
+     * The change counter of each table that has one. The counters do not
+     * refer to the tables, so a table can be collected once nothing else
+     * refers to it.
+     */
+    private static final Map<SQLTable, ChangeCounter> counters = new WeakHashMap<SQLTable, ChangeCounter>();
+
+    /**
+     * Counts the events from one table and everything in it.
+     */
+    private static class ChangeCounter extends AbstractSPListener {
+
+        private int changeCount;
+
+        /**
+         * Counts only the changes that can move the table in the
+         * topological order: relationships being added, removed or changed.
+         */
+        private int relationshipChangeCount;
+
+        private synchronized void changed(boolean relationship) {
+            changeCount++;
+            if (relationship) {
+                relationshipChangeCount++;
+            }
+        }
+
+        private synchronized int getChangeCount() {
+            return changeCount;
+        }
+
+        private synchronized int getRelationshipChangeCount() {
+            return relationshipChangeCount;
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            changed(evt.getSource() instanceof SQLRelationship);
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            changed(isRelationship(e.getChild()) || e.getSource() instanceof SQLRelationship);
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            changed(isRelationship(e.getChild()) || e.getSource() instanceof SQLRelationship);
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+        }
+
+        private static boolean isRelationship(SPObject o) {
+            return o instanceof SQLRelationship || o instanceof SQLRelationship.SQLImportedKey;
+        }
+    }
+
+    /**
+     * Returns the change counter of the given table, creating it and starting
+     * to listen to the table if it has none.
+     */
+    private static ChangeCounter getCounter(SQLTable table) {
+        synchronized (counters) {
+            ChangeCounter counter = counters.get(table);
+            if (counter == null) {
+                counter = new ChangeCounter();
+                counters.put(table, counter);
+                SQLPowerUtils.listenToHierarchy(table, counter);
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * Some statements made for one table from a fresh statement buffer, and
+     * the text left in the buffer after the last of them.
+     */
+    static class CachedStatements {
+
+        private final List<DDLStatement> statements;
+
+        private final String leftover;
+
+        /**
+         * The counters of the tables the statements depend on, and their
+         * counts when the statements were made.
+         */
+        private final ChangeCounter[] dependencies;
+
+        private final int[] changeCounts;
+
+        private CachedStatements(List<DDLStatement> statements, String leftover, Collection<SQLTable> dependsOn) {
+            this.statements = copy(statements);
+            this.leftover = leftover;
+            dependencies = new ChangeCounter[dependsOn.size()];
+            changeCounts = new int[dependsOn.size()];
+            int i = 0;
+            for (SQLTable table : dependsOn) {
+                dependencies[i] = getCounter(table);
+                changeCounts[i] = dependencies[i].getChangeCount();
+                i++;
+            }
+        }
+
+        private boolean isCurrent() {
+            for (int i = 0; i < dependencies.length; i++) {
+                if (dependencies[i].getChangeCount() != changeCounts[i]) return false;
+            }
+            return true;
+        }
+
+        String getLeftover() {
+            return leftover;
+        }
+
+        /**
+         * Returns new copies of the statements, so changes made to the
+         * statements in one script do not show up in the next.
+         */
+        List<DDLStatement> getStatements() {
+            return copy(statements);
+        }
+
+        private static List<DDLStatement> copy(List<DDLStatement> statements) {
+            List<DDLStatement> copies = new ArrayList<DDLStatement>(statements.size());
+            for (DDLStatement s : statements) {
+                copies.add(new DDLStatement(s.getObject(), s.getType(), s.getSQLText(),
+                        s.getSqlTerminator(), s.getTargetCatalog(), s.getTargetSchema()));
+            }
+            return copies;
+        }
+    }
+
+    /**
+     * The CREATE TABLE, comment and index statements of each table.
+     */
+    private final Map<SQLTable, CachedStatements> tableStatements = new HashMap<SQLTable, CachedStatements>();
+
+    /**
+     * The statements creating the relationships each table exports.
+     */
+    private final Map<SQLTable, CachedStatements> relationshipStatements = new HashMap<SQLTable, CachedStatements>();
+
+    /**
+     * The generator settings the statements were made with.
+     */
+    private List<Object> settings;
+
+    /**
+     * The tables the last topological order was found for, in the order
+     * they were given, and the order that was found.
+     */
+    private List<SQLTable> orderedTables;
+
+    private List<SQLTable> finishOrder;
+
+    /**
+     * The counters of {@link #orderedTables} and their relationship change
+     * counts when the order was found.
+     */
+    private ChangeCounter[] orderCounters;
+
+    private int[] orderCounts;
+
+    /**
+     * Throws away every cached statement if the given settings are not the
+     * ones the statements were made with. The settings are compared with
+     * equals().
+     */
+    void setSettings(List<Object> settings) {
+        if (!settings.equals(this.settings)) {
+            clear();
+            this.settings = new ArrayList<Object>(settings);
+        }
+    }
+
+    /**
+     * Throws away every cached statement.
+     */
+    void clear() {
+        tableStatements.clear();
+        relationshipStatements.clear();
+        settings = null;
+    }
+
+    /**
+     * Throws away the statements of every table that is not in the given
+     * collection.
+     */
+    void retain(Collection<SQLTable> tables) {
+        tableStatements.keySet().retainAll(tables);
+        relationshipStatements.keySet().retainAll(tables);
+    }
+
+    /**
+     * Returns the statements for the given table if they are still current,
+     * or null if they have to be made again.
+     *
+     * @param relationships
+     *            True for the statements creating the relationships the
+     *            table exports, false for the ones creating the table itself.
+     */
+    CachedStatements get(SQLTable table, boolean relationships) {
+        Map<SQLTable, CachedStatements> map = relationships ? relationshipStatements : tableStatements;
+        CachedStatements cached = map.get(table);
+        if (cached == null) return null;
+        if (!cached.isCurrent()) {
+            map.remove(table);
+            return null;
+        }
+        return cached;
+    }
+
+    /**
+     * Keeps the statements that were just made for the given table.
+     *
+     * @param dependsOn
+     *            The tables the statements were made from. The statements
+     *            are thrown away when any of them changes.
+     */
+    void put(SQLTable table, boolean relationships, List<DDLStatement> statements, String leftover,
+            Collection<SQLTable> dependsOn) {
+        Map<SQLTable, CachedStatements> map = relationships ? relationshipStatements : tableStatements;
+        map.put(table, new CachedStatements(statements, leftover, dependsOn));
+    }
+
+    /**
+     * Returns the given tables in topological order, with parent tables
+     * before their children. The last order found is given again if the
+     * tables are the same ones in the same order and none of their
+     * relationships have changed since.
+     */
+    List<SQLTable> getFinishOrder(Collection<SQLTable> tables) throws SQLObjectException {
+        List<SQLTable> tableList = new ArrayList<SQLTable>(tables);
+        if (tableList.equals(orderedTables) && isOrderCurrent()) {
+            return new ArrayList<SQLTable>(finishOrder);
+        }
+
+        ChangeCounter[] newCounters = new ChangeCounter[tableList.size()];
+        int[] newCounts = new int[tableList.size()];
+        for (int i = 0; i < tableList.size(); i++) {
+            newCounters[i] = getCounter(tableList.get(i));
+            newCounts[i] = newCounters[i].getRelationshipChangeCount();
+        }
+        DepthFirstSearch dfs = new DepthFirstSearch(tableList);
+        orderedTables = tableList;
+        finishOrder = new ArrayList<SQLTable>(dfs.getFinishOrder());
+        orderCounters = newCounters;
+        orderCounts = newCounts;
+        return new ArrayList<SQLTable>(finishOrder);
+    }
+
+    private boolean isOrderCurrent() {
+        for (int i = 0; i < orderCounters.length; i++) {
+            if (orderCounters[i].getRelationshipChangeCount() != orderCounts[i]) return false;
+        }
+        return true;
+    }
+}
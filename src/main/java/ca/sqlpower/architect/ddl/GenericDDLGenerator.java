@@ -18,6 +18,9 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
@@ -26,15 +29,22 @@ import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ArchitectUtils;
-import ca.sqlpower.architect.DepthFirstSearch;
 import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
 import ca.sqlpower.architect.profile.ProfileFunctionDescriptor;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
@@ -73,6 +83,16 @@ public class GenericDDLGenerator implements DDLGenerator {
 
 	private static final Logger logger = Logger.getLogger(GenericDDLGenerator.class);
 
+    /**
+     * The number of threads statements for different tables are made on.
+     */
+    private static final int GENERATOR_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The fewest tables whose statements are worth making on several threads.
+     */
+    private static final int MIN_PARALLEL_TABLES = 16;
+
 	public String getName() {
 	    return "Generic SQL-92";
 	}
@@ -96,7 +116,7 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 * This is where each DDL statement gets accumulated while it is
 	 * being generated.
 	 */
-	private StringBuffer ddl;
+	private StringBuilder ddl;
 
 	/**
 	 * Complete DDL statements (of type DDLStatement) are accumulated in this list.
@@ -164,14 +184,29 @@ public class GenericDDLGenerator implements DDLGenerator {
     protected boolean isComparingDMForPostgres = false;
     
     private ArchitectSwingSession session;
-    
+
+    /**
+     * The statements made for each table by earlier calls to
+     * {@link #generateDDLStatements(Collection)}, so tables that have not
+     * changed since are not generated again.
+     */
+    private final DDLStatementCache statementCache = new DDLStatementCache();
+
+    /**
+     * The type map {@link #createTypeMap()} made while there was no
+     * connection. It is used again until there is a connection or the type
+     * map is replaced.
+     */
+    private Map<Integer, GenericTypeDescriptor> offlineTypeMap;
+
     public GenericDDLGenerator(boolean allowConnection) throws SQLException {
         this.allowConnection = allowConnection;
         ddlStatements = new ArrayList<DDLStatement>();
-        ddl = new StringBuffer(500);
+        ddl = new StringBuilder(500);
         println("");
         topLevelNames = new CaseInsensitiveHashMap();  // for tracking dup table/relationship names
         createTypeMap();
+        offlineTypeMap = typeMap;
     }
 
     /**
@@ -182,24 +217,42 @@ public class GenericDDLGenerator implements DDLGenerator {
 	}
 
     public String generateDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables) throws SQLException, SQLObjectException {
-        session = architectSwingSession;
-        List<DDLStatement> statements = generateDDLStatements(tables);
+        StringWriter script = new StringWriter();
+        try {
+            writeDDLScript(architectSwingSession, tables, script);
+        } catch (IOException e) {
+            throw new RuntimeException("Can't happen: StringWriter threw an IOException", e);
+        }
+        return script.toString();
+	}
+
+    public void writeDDLScript(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables, Writer out)
+    throws SQLException, SQLObjectException, IOException {
+        List<DDLStatement> statements = generateDDLStatements(architectSwingSession, tables);
 
-		ddl = new StringBuffer(4000);
+		ddl = new StringBuilder(4000);
 		writeHeader();
 		writeDDLTransactionBegin();
+		out.write(ddl.toString());
 
-		Iterator<DDLStatement> it = statements.iterator();
-		while (it.hasNext()) {
-			DDLStatement ddlStmt = (DDLStatement) it.next();
-			ddl.append(ddlStmt.getSQLText());
-			println(getStatementTerminator());
+		String terminator = getStatementTerminator() + EOL;
+		for (DDLStatement ddlStmt : statements) {
+		    out.write(ddlStmt.getSQLText());
+		    out.write(terminator);
 		}
 
+		ddl = new StringBuilder(500);
 		writeDDLTransactionEnd();
-		return ddl.toString();
+		out.write(ddl.toString());
+		out.flush();
 	}
 
+    public List<DDLStatement> generateDDLStatements(ArchitectSwingSession architectSwingSession, Collection<SQLTable> tables)
+    throws SQLException, SQLObjectException {
+        session = architectSwingSession;
+        return generateDDLStatements(tables);
+    }
+
 
 	/**
      * Creates a series of SQL DDL statements which will create the given list of
@@ -213,7 +266,7 @@ public class GenericDDLGenerator implements DDLGenerator {
 	 */
 	public final List<DDLStatement> generateDDLStatements(Collection<SQLTable> tables) throws SQLException, SQLObjectException {
 		ddlStatements = new ArrayList<DDLStatement>();
-		ddl = new StringBuffer(500);
+		ddl = new StringBuilder(500);
         topLevelNames = new CaseInsensitiveHashMap();
 
         /*
@@ -221,9 +274,7 @@ public class GenericDDLGenerator implements DDLGenerator {
          * children. This is not strictly necessary, but apparently all the
          * cool tools do it this way. :)
          */
-        List<SQLTable> tableList = new ArrayList<SQLTable>(tables);
-        DepthFirstSearch dfs = new DepthFirstSearch(tableList);
-        tableList = dfs.getFinishOrder();
+        List<SQLTable> tableList = statementCache.getFinishOrder(tables);
 
 		try {
 			if (allowConnection && tableList.size() > 0) {
@@ -237,20 +288,27 @@ public class GenericDDLGenerator implements DDLGenerator {
 				con = null;
 			}
 
-			createTypeMap();
-
-			for (SQLTable t : tableList) {
-
-				addTable(t);
-
-                for (SQLIndex index : t.getIndices()) {
-                   if (index.isPrimaryKeyIndex()) continue;
-                    addIndex(index);
-                }
+			if (con != null || typeMap == null || typeMap != offlineTypeMap) {
+			    createTypeMap();
+			    offlineTypeMap = (con == null ? typeMap : null);
+			    statementCache.clear();
 			}
 
-            for (SQLTable t : tableList) {
-				writeExportedRelationships(t);
+			// a type map read from a connection can differ from one run to the next
+			if (con == null && canCacheStatements()) {
+			    statementCache.setSettings(Arrays.<Object>asList(getTargetCatalog(), getTargetSchema(),
+			            getStatementTerminator(), isComparingDMForPostgres, session));
+			    addIndependentStatements(tableList, false);
+			    addIndependentStatements(tableList, true);
+			    statementCache.retain(tableList);
+			} else {
+			    statementCache.clear();
+			    for (SQLTable t : tableList) {
+			        addTableStatements(t);
+			    }
+			    for (SQLTable t : tableList) {
+			        writeExportedRelationships(t);
+			    }
 			}
 
 		} finally {
@@ -263,6 +321,258 @@ public class GenericDDLGenerator implements DDLGenerator {
 		return ddlStatements;
 	}
 
+    /**
+     * Adds the statements creating the given table and its indices.
+     */
+	private void addTableStatements(SQLTable t) throws SQLException, SQLObjectException {
+	    addTable(t);
+
+	    for (SQLIndex index : t.getIndices()) {
+	        if (index.isPrimaryKeyIndex()) continue;
+	        addIndex(index);
+	    }
+	}
+
+    /**
+     * Adds the statements for each of the given tables, in order, for a
+     * generator whose statements depend only on the table they are for.
+     * Statements are taken from the cache where it has them, and the rest are
+     * made on several threads if there are enough of them.
+     *
+     * @param relationships
+     *            True to add the statements creating the relationships the
+     *            tables export, false to add the ones creating the tables.
+     */
+	private void addIndependentStatements(List<SQLTable> tableList, boolean relationships)
+	throws SQLException, SQLObjectException {
+	    TableStatements[] results = new TableStatements[tableList.size()];
+	    List<Integer> toMake = new ArrayList<Integer>();
+	    boolean[] made = new boolean[tableList.size()];
+	    for (int i = 0; i < tableList.size(); i++) {
+	        DDLStatementCache.CachedStatements cached = statementCache.get(tableList.get(i), relationships);
+	        if (cached != null) {
+	            results[i] = new TableStatements(cached.getStatements(), cached.getLeftover());
+	        } else {
+	            toMake.add(i);
+	            made[i] = true;
+	        }
+	    }
+
+	    List<GenericDDLGenerator> workers = Collections.emptyList();
+	    if (toMake.size() >= MIN_PARALLEL_TABLES) {
+	        workers = createWorkers(Math.min(GENERATOR_THREADS, toMake.size()));
+	    }
+	    if (workers.size() > 1) {
+	        for (int i : toMake) {
+	            // names are filled in here so no events are fired on the workers
+	            assignPhysicalNames(tableList.get(i), relationships);
+	        }
+	        makeStatementsInParallel(workers, tableList, relationships, toMake, results);
+	    } else {
+	        for (int i : toMake) {
+	            results[i] = makeStatements(tableList.get(i), relationships);
+	        }
+	    }
+
+	    for (int i = 0; i < tableList.size(); i++) {
+	        SQLTable t = tableList.get(i);
+	        if (made[i]) {
+	            Collection<SQLTable> dependsOn = Collections.singletonList(t);
+	            if (relationships) {
+	                // the statements also name the child tables and their columns
+	                Set<SQLTable> tablesUsed = new LinkedHashSet<SQLTable>();
+	                tablesUsed.add(t);
+	                for (SQLRelationship r : t.getExportedKeys()) {
+	                    tablesUsed.add(r.getFkTable());
+	                }
+	                dependsOn = tablesUsed;
+	            }
+	            statementCache.put(t, relationships, results[i].statements, results[i].leftover, dependsOn);
+	        }
+	        addMadeStatements(results[i]);
+	    }
+	}
+
+    /**
+     * The statements made for one table from a fresh statement buffer, and
+     * the text left in the buffer after the last of them.
+     */
+	private static class TableStatements {
+
+	    private final List<DDLStatement> statements;
+
+	    private final String leftover;
+
+	    TableStatements(List<DDLStatement> statements, String leftover) {
+	        this.statements = statements;
+	        this.leftover = leftover;
+	    }
+	}
+
+    /**
+     * Makes the statements for one table on their own, starting from the
+     * buffer {@link #endStatement(StatementType, SQLObject)} leaves, without
+     * adding them to the statements made so far.
+     */
+	private TableStatements makeStatements(SQLTable t, boolean relationships)
+	throws SQLException, SQLObjectException {
+	    StringBuilder savedDdl = ddl;
+	    List<DDLStatement> savedStatements = ddlStatements;
+	    ddl = new StringBuilder(500);
+	    println("");
+	    ddlStatements = new ArrayList<DDLStatement>();
+	    try {
+	        if (relationships) {
+	            writeExportedRelationships(t);
+	        } else {
+	            addTableStatements(t);
+	        }
+	        return new TableStatements(ddlStatements, ddl.toString());
+	    } finally {
+	        ddl = savedDdl;
+	        ddlStatements = savedStatements;
+	    }
+	}
+
+    /**
+     * Adds statements made by {@link #makeStatements(SQLTable, boolean)} as
+     * if they had been made here. Statements are made from the buffer
+     * {@link #endStatement(StatementType, SQLObject)} leaves, but whatever
+     * text is really in the buffer goes in front of the next statement, so
+     * the start of the first statement is replaced with it.
+     */
+	private void addMadeStatements(TableStatements made) {
+	    int freshLength = EOL.length();
+	    if (made.statements.isEmpty()) {
+	        ddl.append(made.leftover.substring(freshLength));
+	        return;
+	    }
+	    for (int i = 0; i < made.statements.size(); i++) {
+	        DDLStatement s = made.statements.get(i);
+	        String sqlText = s.getSQLText();
+	        if (i == 0) {
+	            sqlText = ddl.toString() + sqlText.substring(freshLength);
+	        }
+	        ddlStatements.add(new DDLStatement(s.getObject(), s.getType(), sqlText,
+	                s.getSqlTerminator(), s.getTargetCatalog(), s.getTargetSchema()));
+	    }
+	    ddl = new StringBuilder(500);
+	    ddl.append(made.leftover);
+	}
+
+    /**
+     * Gives the given table and the objects whose statements are made with
+     * it the physical names the statements would give them. Generators only
+     * set names that are missing, so doing it first means making the
+     * statements does not change the tables.
+     */
+	private void assignPhysicalNames(SQLTable t, boolean relationships) throws SQLObjectException {
+	    if (relationships) {
+	        for (SQLRelationship r : t.getExportedKeys()) {
+	            createPhysicalName(topLevelNames, r);
+	            for (ColumnMapping cm : r.getChildren(ColumnMapping.class)) {
+	                createPhysicalName(new HashMap<String, SQLObject>(), cm.getPkColumn());
+	                createPhysicalName(new HashMap<String, SQLObject>(), cm.getFkColumn());
+	            }
+	        }
+	    } else {
+	        createPhysicalName(topLevelNames, t);
+	        for (SQLColumn c : t.getColumns()) {
+	            createPhysicalName(new HashMap<String, SQLObject>(), c);
+	        }
+	        for (SQLIndex index : t.getIndices()) {
+	            createPhysicalName(topLevelNames, index);
+	        }
+	    }
+	}
+
+    /**
+     * Returns new generators of this class with the same settings as this
+     * one, one for each thread making statements, or an empty list if this
+     * class can't be created that way.
+     */
+	private List<GenericDDLGenerator> createWorkers(int count) {
+	    List<GenericDDLGenerator> workers = new ArrayList<GenericDDLGenerator>();
+	    try {
+	        for (int i = 0; i < count; i++) {
+	            GenericDDLGenerator worker = getClass().newInstance();
+	            worker.allowConnection = allowConnection;
+	            worker.con = null;
+	            worker.typeMap = typeMap;
+	            worker.profileFunctionMap = profileFunctionMap;
+	            worker.targetCatalog = targetCatalog;
+	            worker.targetSchema = targetSchema;
+	            worker.isComparingDMForPostgres = isComparingDMForPostgres;
+	            worker.session = session;
+	            worker.topLevelNames = new CaseInsensitiveHashMap();
+	            workers.add(worker);
+	        }
+	    } catch (Exception e) {
+	        logger.debug("Could not create another " + getClass().getName() +
+	                ", generating statements on one thread", e);
+	        return Collections.emptyList();
+	    }
+	    return workers;
+	}
+
+    /**
+     * Makes the statements for the tables at the given positions, giving
+     * each worker every n'th table, and puts them in the results at the same
+     * positions.
+     */
+	private void makeStatementsInParallel(List<GenericDDLGenerator> workers, final List<SQLTable> tableList,
+	        final boolean relationships, final List<Integer> toMake, final TableStatements[] results)
+	throws SQLException, SQLObjectException {
+	    final int workerCount = workers.size();
+	    ExecutorService executor = Executors.newFixedThreadPool(workerCount);
+	    try {
+	        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+	        for (int w = 0; w < workerCount; w++) {
+	            final GenericDDLGenerator worker = workers.get(w);
+	            final int firstIndex = w;
+	            futures.add(executor.submit(new Callable<Object>() {
+	                public Object call() throws Exception {
+	                    for (int j = firstIndex; j < toMake.size(); j += workerCount) {
+	                        int i = toMake.get(j);
+	                        results[i] = worker.makeStatements(tableList.get(i), relationships);
+	                    }
+	                    return null;
+	                }
+	            }));
+	        }
+	        for (Future<Object> future : futures) {
+	            try {
+	                future.get();
+	            } catch (InterruptedException e) {
+	                Thread.currentThread().interrupt();
+	                throw new SQLObjectException("Interrupted while generating DDL", e);
+	            } catch (ExecutionException e) {
+	                Throwable cause = e.getCause();
+	                if (cause instanceof SQLException) throw (SQLException) cause;
+	                if (cause instanceof SQLObjectException) throw (SQLObjectException) cause;
+	                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+	                if (cause instanceof Error) throw (Error) cause;
+	                throw new SQLObjectException("Error generating DDL", cause);
+	            }
+	        }
+	    } finally {
+	        executor.shutdownNow();
+	    }
+	}
+
+    /**
+     * Returns true if the statements this generator makes for a table depend
+     * only on the table and the generator's target catalog and schema, so
+     * they can be used again until the table changes, and can be made by
+     * another generator of the same class created with its no-args
+     * constructor. Generators whose statements also depend on other state,
+     * such as a count of the statements made so far, have to override this
+     * to return false.
+     */
+	protected boolean canCacheStatements() {
+	    return true;
+	}
+
 	/**
 	 * Stores all the ddl since the last call to endStatement as a SQL
 	 * statement. You have to call this at the end of each statement.
@@ -276,7 +586,7 @@ public class GenericDDLGenerator implements DDLGenerator {
 		}
 
 		ddlStatements.add(new DDLStatement(sqlObject, type, ddl.toString(), getStatementTerminator(), getTargetCatalog(), getTargetSchema()));
-		ddl = new StringBuffer(500);
+		ddl = new StringBuilder(500);
 		println("");
 	}
 
@@ -1295,7 +1605,10 @@ public class GenericDDLGenerator implements DDLGenerator {
 		    String physicalName = so.getPhysicalName();
 		    logger.debug("The physical name for this SQLObject is: " + physicalName);
 		} else {
-		    so.setPhysicalName(toIdentifier(so.getName()));
+		    String physicalName = toIdentifier(so.getName());
+		    if (physicalName == null ? so.getPhysicalName() != null : !physicalName.equals(so.getPhysicalName())) {
+		        so.setPhysicalName(physicalName);
+		    }
 		}
         logger.debug("The logical name field now is: " + so.getName());
 
@@ -1320,6 +1633,21 @@ public class GenericDDLGenerator implements DDLGenerator {
             +fkName;
     }
 
+    /**
+     * Generates a standard <code>DROP INDEX $indexname</code> command, which
+     * works on the platforms where index names are unique within a schema.
+     */
+    public String makeDropIndexSQL(String table, String index) {
+        return "\nDROP INDEX "+toQualifiedName(index);
+    }
+
+    /**
+     * Generates a standard <code>DROP SEQUENCE $sequencename</code> command.
+     */
+    public String makeDropSequenceSQL(String sequence) {
+        return "\nDROP SEQUENCE "+toQualifiedName(sequence);
+    }
+
 	public List<DDLStatement> getDdlStatements() {
 		return ddlStatements;
 	}
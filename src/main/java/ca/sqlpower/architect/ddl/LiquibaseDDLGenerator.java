@@ -75,6 +75,15 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 		return "";
 	}
 
+	/**
+	 * Returns false, since the ids of the change sets are numbered in the
+	 * order the statements are made.
+	 */
+	@Override
+	protected boolean canCacheStatements() {
+	    return false;
+	}
+
 	public void applySettings(LiquibaseSettings options) {
 		setUseSeparateChangeSets(options.getUseSeparateChangeSets());
 		setAuthor(options.getAuthor());
@@ -825,6 +834,22 @@ public class LiquibaseDDLGenerator extends GenericDDLGenerator implements DDLGen
 		  + "\"/>";
     }
 
+    /**
+     * Generates a <dropIndex> tag
+     */
+    @Override
+    public String makeDropIndexSQL(String table, String index) {
+        return "<dropIndex indexName=\"" + index + "\" " + getTableQualifier(table) + "/>";
+    }
+
+    /**
+     * Generates a <dropSequence> tag
+     */
+    @Override
+    public String makeDropSequenceSQL(String sequence) {
+        return "<dropSequence sequenceName=\"" + sequence + "\"/>";
+    }
+
 	public void dropPrimaryKey(SQLTable t) throws SQLObjectException {
 	    SQLIndex pk = t.getPrimaryKeyIndex();
 		startOfStatement();
@@ -374,6 +374,15 @@ public class MySqlDDLGenerator extends GenericDDLGenerator {
         return null;
     }
 
+    /**
+     * Returns null because MySQL index names only have to be unique within
+     * their table.
+     */
+    @Override
+    public String makeDropIndexSQL(String table, String index) {
+        return null;
+    }
+
 	@Override
     public void renameTable(SQLTable oldTable, SQLTable newTable) {
 		Map<String, SQLObject> colNameMap = new HashMap<String, SQLObject>(0);
@@ -276,6 +276,19 @@ public class PostgresDDLGenerator extends GenericDDLGenerator {
             + fkName;
     }
 
+    /**
+     * Generates a command for dropping a sequence. A sequence owned by a
+     * column goes away with the column's table, so the sequence may already
+     * be gone when this runs.
+     * The statement looks like <code>DROP SEQUENCE IF EXISTS $sequence CASCADE</code>.
+     */
+    @Override
+    public String makeDropSequenceSQL(String sequence) {
+        return "\nDROP SEQUENCE IF EXISTS "
+            + toQualifiedName(sequence)
+            + " CASCADE";
+    }
+
     @Override
     public void modifyColumn(SQLColumn c, DiffChunk<SQLObject> diffChunk) {
         Map<String, SQLObject> colNameMap = new HashMap<String, SQLObject>();
@@ -534,6 +534,15 @@ public abstract class SQLServerDDLGenerator extends GenericDDLGenerator {
         +fkName;
     }
 
+    /**
+     * Returns null because SQL Server index names only have to be unique
+     * within their table.
+     */
+    @Override
+    public String makeDropIndexSQL(String table, String index) {
+        return null;
+    }
+
 	@Override
 	public void renameColumn(SQLColumn oldCol, SQLColumn newCol) {
 		Map<String, SQLObject> empty = new HashMap<String, SQLObject>(0);
@@ -18,14 +18,21 @@
  */
 package ca.sqlpower.architect.ddl;
 
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -56,6 +63,17 @@ import ca.sqlpower.sqlobject.SQLDatabase;
  * TODO: Eventually, these mapping rules should most likely be added to the 
  * User Settings to allow users to add their own custom rules.  
  * 
+ * The rules are compiled the first time they are applied, into an index
+ * by database and native type of rules whose getters are resolved and whose
+ * comparison values are parsed already. Applying the compiled rules to a
+ * column does not allocate anything for the common SQLColumn properties.
+ * Adding or removing a rule throws the compiled rules away.
+ * 
+ * Nothing in the Architect calls {@link #applyRules(SQLColumn)} at the moment:
+ * SQLColumn moved to the sqlpower library, which does not know about this
+ * class, and the DDL generators map types with their own type maps. The
+ * rules only run for code that calls this class directly.
+ * 
  * XXX: Once users are allowed to make their own rules, there may be 
  * some concurrency issues with the singleton class (i.e. concurrent 
  * modification exceptions on the Iterators which are used to grab
@@ -68,6 +86,20 @@ public class TypeMap {
    	TreeMap databases;
    	ArrayList EMPTY_LIST = new ArrayList(); 
    	Pattern SPACE_STRIPPER = Pattern.compile("[\\s]+");
+
+    /**
+     * The compiled rules for each translated database name and native type,
+     * or null if they have to be compiled again.
+     */
+    private volatile Map<String, Map<String, CompiledRule[]>> compiledRules;
+
+    /**
+     * The translated form of each database name that has been looked up, so
+     * looking up the rules for a column does not run the regex.
+     */
+    private final Map<String, String> translatedNames = new ConcurrentHashMap<String, String>();
+
+    private static final CompiledRule[] NO_RULES = new CompiledRule[0];
    	
    	// singleton instance. Since this class contains a getter method for this variable, this can be private.
    	private static final TypeMap mainInstance = new TypeMap();
@@ -164,7 +196,8 @@ public class TypeMap {
 	 * @param rule
 	 * @return
 	 */
-	public boolean addRule (MappingRule rule) {
+	public synchronized boolean addRule (MappingRule rule) {
+		compiledRules = null;
 		return getRulesForNativeType(rule,true).add(rule);	
 	}
 	
@@ -174,7 +207,8 @@ public class TypeMap {
 	 * @param rule
 	 * @return true if we removed something, false if we didn't find it
 	 */
-	public boolean removeRule (MappingRule rule) {
+	public synchronized boolean removeRule (MappingRule rule) {
+		compiledRules = null;
 		return getRulesForNativeType(rule,false).remove(rule);	
 	}
 
@@ -246,50 +280,65 @@ public class TypeMap {
 	 * @return
 	 */
 	protected List getRules (SQLColumn col) {
-		SQLDatabase database = col.getParent().getParentDatabase();
-		List mappingRules = null; 
 		List applicableRules = new ArrayList();
-		if (database != null) {
-			mappingRules = getRulesForNativeType(database.getDataSource().getPlDbType(),col.getSourceDataTypeName(),false);
-		}
-		if (mappingRules.size() > 0) {
-			Iterator it = mappingRules.iterator();
-			while (it.hasNext()) {
-				MappingRule rule = (MappingRule) it.next();
-				// check if this is an "any" rule
-				if (rule.getCompCondition().equals("*")) {		
-					applicableRules.add(rule);
-					continue;
-				}
+		for (CompiledRule rule : getCompiledRules(col)) {
+			if (rule.appliesTo(col)) {
+				applicableRules.add(rule.rule);
+			}
+		}
+		return applicableRules;
+	}
 
-				try {
-					// see if the property exists in SQLColumn
-					String propertyVal = BeanUtils.getProperty(col,rule.getCompField());
-					
-					// if we can cast things to integers, do an integer comparison, else, do
-					// a string comparison...
-					try {
-						Integer iPropertyVal = new Integer(propertyVal);
-						Integer iCompValue = new Integer(rule.getCompValue());
-						if (satisfiesComparison(iPropertyVal,iCompValue,rule.getCompCondition())) {
-							applicableRules.add(rule);
-						}
-					} catch (NumberFormatException nfe) {
-						logger.debug("numeric conversion failed, reverting to lexical comparison");
-						if (satisfiesComparison(propertyVal,rule.getCompValue(),rule.getCompCondition())) {
-							applicableRules.add(rule);
-						}
-					}									
-				} catch (NoSuchMethodException nsme) {
-					logger.error("mappingrules.properties references an non-existent column from SQLColumn: " + rule.getCompField());
-				} catch (IllegalAccessException iae) {
-					logger.error("SQLColumn getter was not public: " + rule.getCompField());					
-				} catch (InvocationTargetException ite) {					
-					logger.error("SQLColumn getter threw an exception: " + rule.getCompField());					
+	/**
+	 * Returns the compiled rules for the column's database and native type,
+	 * compiling all the rules first if they have changed.
+	 */
+	private CompiledRule[] getCompiledRules(SQLColumn col) {
+		if (col.getParent() == null) return NO_RULES;
+		SQLDatabase database = col.getParent().getParentDatabase();
+		if (database == null || database.getDataSource() == null) return NO_RULES;
+		String dbType = database.getDataSource().getPlDbType();
+		if (dbType == null || col.getSourceDataTypeName() == null) return NO_RULES;
+
+		String tDatabase = translatedNames.get(dbType);
+		if (tDatabase == null) {
+			tDatabase = translateDatabaseName(dbType);
+			translatedNames.put(dbType, tDatabase);
+		}
+
+		Map<String, Map<String, CompiledRule[]>> compiled = compiledRules;
+		if (compiled == null) {
+			compiled = compileRules();
+		}
+		Map<String, CompiledRule[]> nativeTypes = compiled.get(tDatabase);
+		if (nativeTypes == null) return NO_RULES;
+		CompiledRule[] rules = nativeTypes.get(col.getSourceDataTypeName());
+		return rules == null ? NO_RULES : rules;
+	}
+
+	/**
+	 * Compiles every rule into the index {@link #getCompiledRules(SQLColumn)}
+	 * looks them up in.
+	 */
+	private synchronized Map<String, Map<String, CompiledRule[]>> compileRules() {
+		if (compiledRules != null) return compiledRules;
+		Map<String, Map<String, CompiledRule[]>> compiled = new HashMap<String, Map<String, CompiledRule[]>>();
+		for (Object dbEntry : databases.entrySet()) {
+			Map.Entry db = (Map.Entry) dbEntry;
+			Map<String, CompiledRule[]> nativeTypes = new HashMap<String, CompiledRule[]>();
+			for (Object typeEntry : ((Map) db.getValue()).entrySet()) {
+				Map.Entry type = (Map.Entry) typeEntry;
+				List rules = (List) type.getValue();
+				CompiledRule[] compiledTypeRules = new CompiledRule[rules.size()];
+				for (int i = 0; i < compiledTypeRules.length; i++) {
+					compiledTypeRules[i] = new CompiledRule((MappingRule) rules.get(i));
 				}
+				nativeTypes.put((String) type.getKey(), compiledTypeRules);
 			}
+			compiled.put((String) db.getKey(), nativeTypes);
 		}
-		return applicableRules;
+		compiledRules = Collections.unmodifiableMap(compiled);
+		return compiledRules;
 	}
 	
 	/**
@@ -316,25 +365,326 @@ public class TypeMap {
 	 * @return tell the caller if any rules were applied.  this could also be an integer...
 	 */
 	public boolean applyRules (SQLColumn col) {
-		List mappingRules = getRules(col);
-		Iterator it = mappingRules.iterator();
-		while (it.hasNext()) {			 
-			MappingRule rule = (MappingRule) it.next();
+		CompiledRule[] rules = getCompiledRules(col);
+		if (rules.length == 0) return false;
+
+		// which rules apply is decided before any of them change the column.
+		// there are hardly ever more than 64 rules for one native type.
+		long applicable = 0;
+		boolean[] moreApplicable = rules.length > 64 ? new boolean[rules.length] : null;
+		boolean anyApplicable = false;
+		for (int i = 0; i < rules.length; i++) {
+			if (rules[i].appliesTo(col)) {
+				anyApplicable = true;
+				if (i < 64) {
+					applicable |= 1L << i;
+				} else {
+					moreApplicable[i] = true;
+				}
+			}
+		}
+
+		for (int i = 0; i < rules.length; i++) {
+			if (i < 64 ? (applicable & (1L << i)) != 0 : moreApplicable[i]) {
+				rules[i].modify(col);
+			}
+		}
+		return anyApplicable;
+	}
+
+	/**
+	 * Parses a string the way {@link Integer#Integer(String)} does, without
+	 * making any objects.
+	 * 
+	 * @return the value of the string, or {@link Long#MIN_VALUE} if it is not
+	 * an integer.
+	 */
+	static long parseInteger(String s) {
+		int length = s.length();
+		if (length == 0) return Long.MIN_VALUE;
+		boolean negative = s.charAt(0) == '-';
+		int start = negative ? 1 : 0;
+		if (start == length) return Long.MIN_VALUE;
+		long value = 0;
+		for (int i = start; i < length; i++) {
+			int digit = Character.digit(s.charAt(i), 10);
+			if (digit < 0) return Long.MIN_VALUE;
+			value = value * 10 + digit;
+			if (value > (long) Integer.MAX_VALUE + 1) return Long.MIN_VALUE;
+		}
+		if (negative) value = -value;
+		if (value > Integer.MAX_VALUE) return Long.MIN_VALUE;
+		return value;
+	}
+
+	/**
+	 * A property of SQLColumn that rules compare or modify.
+	 */
+	private static abstract class ColumnProperty {
+
+		/**
+		 * Returns true if the property is an int, which
+		 * {@link #getInt(SQLColumn)} returns without boxing it.
+		 */
+		boolean isInt() {
+			return false;
+		}
+
+		int getInt(SQLColumn col) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Returns the value of the property as BeanUtils would convert it to
+		 * a string.
+		 */
+		abstract String getString(SQLColumn col) throws Exception;
+
+		/**
+		 * Converts a rule's modify value into the value
+		 * {@link #set(SQLColumn, Object)} takes, or returns null if it
+		 * can't be converted.
+		 */
+		Object convert(String value) {
+			return value;
+		}
+
+		abstract void set(SQLColumn col, Object value) throws Exception;
+	}
+
+	private static abstract class IntColumnProperty extends ColumnProperty {
+		@Override
+		boolean isInt() {
+			return true;
+		}
+
+		@Override
+		abstract int getInt(SQLColumn col);
+
+		@Override
+		String getString(SQLColumn col) {
+			return String.valueOf(getInt(col));
+		}
+
+		@Override
+		Object convert(String value) {
+			long parsed = parseInteger(value);
+			return parsed == Long.MIN_VALUE ? null : Integer.valueOf((int) parsed);
+		}
+
+		@Override
+		void set(SQLColumn col, Object value) {
+			setInt(col, ((Integer) value).intValue());
+		}
+
+		abstract void setInt(SQLColumn col, int value);
+	}
+
+	/**
+	 * A property without a getter or setter of its own here, which is read
+	 * through its bean getter and set through BeanUtils.
+	 */
+	private static class BeanColumnProperty extends ColumnProperty {
+		private static final Object[] NO_ARGS = new Object[0];
+		private final String name;
+		private final Method getter;
+
+		BeanColumnProperty(String name, Method getter) {
+			this.name = name;
+			this.getter = getter;
+		}
+
+		@Override
+		String getString(SQLColumn col) throws Exception {
+			return ConvertUtils.convert(getter.invoke(col, NO_ARGS));
+		}
+
+		@Override
+		void set(SQLColumn col, Object value) throws Exception {
+			BeanUtils.setProperty(col, name, value);
+		}
+	}
+
+	/**
+	 * The properties rules use most, which are read and set directly.
+	 */
+	private static final Map<String, ColumnProperty> DIRECT_PROPERTIES = new HashMap<String, ColumnProperty>();
+	static {
+		DIRECT_PROPERTIES.put("precision", new IntColumnProperty() {
+			int getInt(SQLColumn col) { return col.getPrecision(); }
+			void setInt(SQLColumn col, int value) { col.setPrecision(value); }
+		});
+		DIRECT_PROPERTIES.put("scale", new IntColumnProperty() {
+			int getInt(SQLColumn col) { return col.getScale(); }
+			void setInt(SQLColumn col, int value) { col.setScale(value); }
+		});
+		DIRECT_PROPERTIES.put("type", new IntColumnProperty() {
+			int getInt(SQLColumn col) { return col.getType(); }
+			void setInt(SQLColumn col, int value) { col.setType(value); }
+		});
+		DIRECT_PROPERTIES.put("nullable", new IntColumnProperty() {
+			int getInt(SQLColumn col) { return col.getNullable(); }
+			void setInt(SQLColumn col, int value) { col.setNullable(value); }
+		});
+		DIRECT_PROPERTIES.put("sourceDataTypeName", new ColumnProperty() {
+			String getString(SQLColumn col) { return col.getSourceDataTypeName(); }
+			void set(SQLColumn col, Object value) { col.setSourceDataTypeName((String) value); }
+		});
+	}
+
+	/**
+	 * Returns the property with the given name, or null if SQLColumn has no
+	 * getter for it.
+	 */
+	private static ColumnProperty getColumnProperty(String name) {
+		ColumnProperty property = DIRECT_PROPERTIES.get(name);
+		if (property != null) return property;
+		try {
+			for (PropertyDescriptor pd : Introspector.getBeanInfo(SQLColumn.class).getPropertyDescriptors()) {
+				if (pd.getName().equals(name) && pd.getReadMethod() != null) {
+					return new BeanColumnProperty(name, pd.getReadMethod());
+				}
+			}
+		} catch (IntrospectionException e) {
+			logger.error("Couldn't look up the properties of SQLColumn", e);
+		}
+		return null;
+	}
+
+	/**
+	 * A mapping rule with its comparison parsed and its properties looked up
+	 * ahead of time.
+	 */
+	private static class CompiledRule {
+		private final MappingRule rule;
+
+		/**
+		 * True for "*" rules, which apply to every column.
+		 */
+		private final boolean any;
+
+		/**
+		 * The sign compareTo() has to give for the rule to apply, or 2 if
+		 * the rule's condition is not one it understands.
+		 */
+		private final int condition;
+
+		private final ColumnProperty compProperty;
+
+		/**
+		 * The comparison value as an integer, or {@link Long#MIN_VALUE} if
+		 * it is compared as a string.
+		 */
+		private final long compInt;
+
+		private final ColumnProperty modifyProperty;
+
+		/**
+		 * The modify value converted for {@link #modifyProperty}, or null if
+		 * it could not be converted.
+		 */
+		private final Object modifyValue;
+
+		CompiledRule(MappingRule rule) {
+			this.rule = rule;
+			String c = rule.getCompCondition();
+			any = "*".equals(c);
+			if ("=".equals(c)) {
+				condition = 0;
+			} else if (">".equals(c)) {
+				condition = 1;
+			} else if ("<".equals(c)) {
+				condition = -1;
+			} else {
+				condition = 2;
+			}
+
+			if (any) {
+				compProperty = null;
+				compInt = Long.MIN_VALUE;
+			} else {
+				compProperty = getColumnProperty(rule.getCompField());
+				if (compProperty == null) {
+					logger.error("mappingrules.properties references an non-existent column from SQLColumn: " + rule.getCompField());
+				}
+				compInt = rule.getCompValue() == null ? Long.MIN_VALUE : parseInteger(rule.getCompValue());
+			}
+
+			ColumnProperty property = DIRECT_PROPERTIES.get(rule.getModifyField());
+			if (property == null) {
+				// BeanUtils ignores properties that have no setter
+				property = new BeanColumnProperty(rule.getModifyField(), null);
+			}
+			modifyProperty = property;
+			modifyValue = rule.getModifyValue() == null ? null : property.convert(rule.getModifyValue());
+			if (rule.getModifyValue() != null && modifyValue == null) {
+				logger.error("Tried to set a numeric value with a non-numeric String: " + rule.getModifyField());
+			}
+		}
+
+		/**
+		 * Returns true if the rule applies to the column as it is now.
+		 */
+		boolean appliesTo(SQLColumn col) {
+			if (any) return true;
+			if (compProperty == null || condition == 2) return false;
+			if (compProperty.isInt()) {
+				int value = compProperty.getInt(col);
+				if (compInt != Long.MIN_VALUE) {
+					return sign(value < compInt ? -1 : (value == compInt ? 0 : 1));
+				}
+				return sign(String.valueOf(value).compareTo(rule.getCompValue()));
+			}
+
+			String value;
 			try {
-				if (logger.isDebugEnabled()) {
-					logger.debug("modifying SQLColumn, field=" + rule.getModifyField() + ", value=" + rule.getModifyValue());
+				value = compProperty.getString(col);
+			} catch (InvocationTargetException ite) {
+				logger.error("SQLColumn getter threw an exception: " + rule.getCompField());
+				return false;
+			} catch (IllegalAccessException iae) {
+				logger.error("SQLColumn getter was not public: " + rule.getCompField());
+				return false;
+			} catch (Exception e) {
+				logger.error("Couldn't read SQLColumn property " + rule.getCompField(), e);
+				return false;
+			}
+			if (value == null) return false;
+			
+			// if we can cast things to integers, do an integer comparison, else, do
+			// a string comparison...
+			if (compInt != Long.MIN_VALUE) {
+				long intValue = parseInteger(value);
+				if (intValue != Long.MIN_VALUE) {
+					return sign(intValue < compInt ? -1 : (intValue == compInt ? 0 : 1));
 				}
-				BeanUtils.setProperty(col,rule.getModifyField(),rule.getModifyValue());
+			}
+			return sign(value.compareTo(rule.getCompValue()));
+		}
+
+		private boolean sign(int comparison) {
+			return (comparison < 0 ? -1 : (comparison == 0 ? 0 : 1)) == condition;
+		}
+
+		void modify(SQLColumn col) {
+			if (modifyValue == null && rule.getModifyValue() != null) return;
+			if (logger.isDebugEnabled()) {
+				logger.debug("modifying SQLColumn, field=" + rule.getModifyField() + ", value=" + rule.getModifyValue());
+			}
+			try {
+				modifyProperty.set(col, modifyValue);
 			} catch (ConversionException ce) {
 				logger.error("Tried to set a numeric value with a non-numeric String: " + rule.getModifyField());
 			} catch (IllegalAccessException iae) {
 				logger.error("SQLColumn getter was not public: " + rule.getModifyField());					
 			} catch (InvocationTargetException ite) {					
 				logger.error("SQLColumn setter threw an exception: " + rule.getModifyField());					
+			} catch (Exception e) {
+				logger.error("Couldn't set SQLColumn property " + rule.getModifyField(), e);
 			}
 		}
-		return (mappingRules.size() > 0);
 	}
+
 	/**
 	 * 
 	 * change the upper case with spaces style name from SQLDatabase
@@ -40,6 +40,7 @@ import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
 import ca.sqlpower.object.annotation.ConstructorParameter;
 import ca.sqlpower.object.annotation.Mutator;
+import ca.sqlpower.object.annotation.NonProperty;
 
 /**
  * The settings of a specific {@link Critic}. Includes if the critic is enabled
@@ -191,6 +192,32 @@ public abstract class CriticAndSettings extends AbstractSPObject implements Crit
         started = false;
     }
     
+    /**
+     * Returns true if the criticisms this critic makes of one object depend on
+     * the other objects it was given in the same run, as with names that have
+     * to be unique. An {@link IncrementalCriticizer} gives critics like this
+     * every object on every refresh instead of only the changed ones, unless
+     * they are a {@link NamespaceCritic}. Most critics only look at the
+     * object they are given and its children, and do not need to override
+     * this method.
+     */
+    public boolean dependsOnOtherSubjects() {
+        return false;
+    }
+
+    /**
+     * Returns the types of object this critic has anything to say about. A
+     * {@link Criticizer} only gives the critic objects that are instances of
+     * one of these types, so the critic does not have to be called for the
+     * folders, column mappings and other objects it would ignore anyway. The
+     * default is every object; critics should override this to return the
+     * types they check for at the start of {@link #criticize(Object)}.
+     */
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(Object.class);
+    }
+    
     @Mutator
     public void setSeverity(Severity severity) {
         Severity oldSeverity = this.severity;
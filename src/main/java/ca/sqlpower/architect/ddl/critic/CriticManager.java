@@ -212,6 +212,10 @@ public class CriticManager extends AbstractSPObject {
      * Returns a list of criticisms calculated by critics in this manager based
      * on the object passed to them. These criticisms are immutable after they
      * are created.
+     * <p>
+     * The critics are shared by every run, and keep state from the start of
+     * a run to its end, so a run of an {@link IncrementalCriticizer} made
+     * by this manager must not be in progress.
      * 
      * @param generatorClass
      *            The generator type we will be using to create DDL with. Will
@@ -220,6 +224,20 @@ public class CriticManager extends AbstractSPObject {
      *            enabled critics will be used.
      */
     private List<Criticism> criticize(Class<? extends DDLGenerator> generatorClass, Object root) {
+        Criticizer criticizer = new Criticizer(getEnabledCritics(generatorClass));
+        return Collections.unmodifiableList(criticizer.criticize(root));
+        
+    }
+
+    /**
+     * Returns the critics that are enabled for the given generator type, in
+     * the order they criticize objects in.
+     * 
+     * @param generatorClass
+     *            The generator type we will be using to create DDL with. If
+     *            null all enabled critics will be used.
+     */
+    private List<Critic> getEnabledCritics(Class<? extends DDLGenerator> generatorClass) {
         List<Critic> critics = new ArrayList<Critic>();
         for (CriticGrouping grouping : criticGroupings) {
             if (!grouping.isEnabled()) continue;
@@ -231,9 +249,30 @@ public class CriticManager extends AbstractSPObject {
                 critics.add(singleSettings);
             }
         }
-        Criticizer criticizer = new Criticizer(critics);
-        return Collections.unmodifiableList(criticizer.criticize(root));
-        
+        return critics;
+    }
+
+    /**
+     * Returns a criticizer that keeps the given bucket up to date with the
+     * criticisms {@link #criticize(Class)} would give, as the objects it
+     * criticizes change. The criticizer uses the critics that are enabled
+     * now, and the target database and the data source types and connections
+     * the session has now, so it has to be made again when the critic
+     * settings change or to criticize data sources added since. Call
+     * {@link IncrementalCriticizer#start()} to fill the bucket and start
+     * listening for changes.
+     * 
+     * @param generatorClass
+     *            The generator type we will be using to create DDL with. If
+     *            null all enabled critics will be used.
+     */
+    public IncrementalCriticizer createIncrementalCriticizer(Class<? extends DDLGenerator> generatorClass,
+            CriticismBucket bucket) {
+        List<Object> roots = new ArrayList<Object>();
+        roots.add(getParent().getTargetDatabase());
+        roots.addAll(getParent().getSession().getDataSources().getDataSourceTypes());
+        roots.addAll(getParent().getSession().getDataSources().getConnections());
+        return new IncrementalCriticizer(getEnabledCritics(generatorClass), roots, bucket);
     }
     
     @Override
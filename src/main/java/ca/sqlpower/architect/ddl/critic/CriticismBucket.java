@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Set;
 
@@ -46,30 +47,53 @@ public class CriticismBucket {
     
     private final List<CriticismListener> listeners = new ArrayList<CriticismListener>();
     
+    /**
+     * Makes the criticisms in this bucket match the given list. Criticisms
+     * that are in both the bucket and the list, as the same objects, stay
+     * where they are; listeners are only told about the criticisms that were
+     * removed and added.
+     */
     public void updateCriticismsToMatch(List<Criticism> newCriticisms) {
-        clearCriticisms();
-        criticisms.addAll(newCriticisms);
-        int index = criticisms.size();
-        for (Criticism newCriticism : newCriticisms) {
+        Set<Criticism> kept = Collections.newSetFromMap(new IdentityHashMap<Criticism, Boolean>());
+        kept.addAll(newCriticisms);
+        if (!isInSameOrder(newCriticisms, kept)) {
+            kept.clear();
+        }
+        for (int i = criticisms.size() - 1; i >= 0; i--) {
+            Criticism oldCriticism = criticisms.get(i);
+            if (kept.contains(oldCriticism)) continue;
+            criticisms.remove(i);
+            for (int j = listeners.size() - 1; j >=0; j--) {
+                listeners.get(j).criticismRemoved(new CriticismEvent(oldCriticism, i));
+            }
+        }
+        
+        // the criticisms left are in the same order as in the new list
+        for (int index = 0; index < newCriticisms.size(); index++) {
+            Criticism newCriticism = newCriticisms.get(index);
+            if (index < criticisms.size() && criticisms.get(index) == newCriticism) continue;
+            criticisms.add(index, newCriticism);
             for (int i = listeners.size() - 1; i >=0; i--) {
                 listeners.get(i).criticismAdded(new CriticismEvent(newCriticism, index));
             }
-            index++;
         }
     }
     
     /**
-     * Removes all current criticisms from the criticizer.
+     * Returns true if the current criticisms that are in the new list are in
+     * the same order there as they are now.
      */
-    private void clearCriticisms() {
-        ArrayList<Criticism> oldCriticisms = new ArrayList<Criticism>(criticisms);
-        criticisms.clear();
-        for (int i = oldCriticisms.size() - 1; i >= 0; i--) {
-            Criticism oldCriticism = oldCriticisms.get(i);
-            for (int j = listeners.size() - 1; j >=0; j--) {
-                listeners.get(j).criticismRemoved(new CriticismEvent(oldCriticism, i));
+    private boolean isInSameOrder(List<Criticism> newCriticisms, Set<Criticism> newSet) {
+        int newIndex = 0;
+        for (Criticism criticism : criticisms) {
+            if (!newSet.contains(criticism)) continue;
+            while (newIndex < newCriticisms.size() && newCriticisms.get(newIndex) != criticism) {
+                newIndex++;
             }
+            if (newIndex == newCriticisms.size()) return false;
+            newIndex++;
         }
+        return true;
     }
     
     public List<Criticism> getCriticisms() {
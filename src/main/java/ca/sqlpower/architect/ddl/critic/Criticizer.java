@@ -21,8 +21,17 @@ package ca.sqlpower.architect.ddl.critic;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import ca.sqlpower.architect.ddl.critic.MergeableCritic.Accumulator;
 import ca.sqlpower.object.SPObject;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObjectException;
@@ -41,49 +50,283 @@ import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
  */
 class Criticizer {
 
+    /**
+     * The fewest children of a database worth criticizing on several
+     * threads.
+     */
+    private static final int MIN_PARALLEL_CHILDREN = 32;
+
     private final List<Critic> critics;
 
+    /**
+     * The positions in {@link #critics} of the critics that want to see
+     * objects of each class, in order. Filled in the first time an object of
+     * the class is criticized.
+     */
+    private final Map<Class<?>, int[]> dispatchTable = new ConcurrentHashMap<Class<?>, int[]>();
+
+    /**
+     * True if every critic either only looks at the object it is given or is
+     * a {@link MergeableCritic}, so the objects can be walked on several
+     * threads.
+     */
+    private final boolean parallelizable;
+
+    /**
+     * The number of threads the children of a play pen database are
+     * criticized on.
+     */
+    private final int threads;
+
     public Criticizer(List<Critic> critics) {
+        this(critics, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a criticizer that uses the given number of threads, so the
+     * tests can use several on any machine.
+     */
+    Criticizer(List<Critic> critics, int threads) {
+        this.threads = threads;
         this.critics = Collections.unmodifiableList(new ArrayList<Critic>(critics));
+        boolean parallelizable = true;
+        for (Critic c : this.critics) {
+            if (!(c instanceof MergeableCritic) && (!(c instanceof CriticAndSettings)
+                    || ((CriticAndSettings) c).dependsOnOtherSubjects())) {
+                parallelizable = false;
+            }
+        }
+        this.parallelizable = parallelizable;
+    }
+
+    /**
+     * Returns the positions of the critics that want to see objects of the
+     * given class. Critics that are not {@link CriticAndSettings} see every
+     * object.
+     */
+    int[] getCriticsFor(Class<?> subjectClass) {
+        int[] indices = dispatchTable.get(subjectClass);
+        if (indices == null) {
+            List<Integer> matching = new ArrayList<Integer>();
+            for (int i = 0; i < critics.size(); i++) {
+                Critic critic = critics.get(i);
+                if (!(critic instanceof CriticAndSettings)) {
+                    matching.add(i);
+                    continue;
+                }
+                for (Class<?> type : ((CriticAndSettings) critic).getSubjectTypes()) {
+                    if (type.isAssignableFrom(subjectClass)) {
+                        matching.add(i);
+                        break;
+                    }
+                }
+            }
+            indices = new int[matching.size()];
+            for (int i = 0; i < indices.length; i++) {
+                indices[i] = matching.get(i);
+            }
+            dispatchTable.put(subjectClass, indices);
+        }
+        return indices;
     }
     
     /**
      * Runs an object through the list of active critics. This will also criticize all
-     * descendants if it is an {@link SPObject}.
+     * descendants if it is an {@link SPObject}. The children of a play pen
+     * database with enough children are criticized on several threads, but
+     * the criticisms come back in the same order either way.
      */
+    @SuppressWarnings("unchecked")
     public List<Criticism> criticize(Object subject) {
         try {
             for (Critic c : critics) {
                 c.start();
             }
-            return recursivelyCriticize(subject);
+            if (parallelizable && threads > 1 && subject instanceof SQLDatabase
+                    && ((SQLDatabase) subject).isPlayPenDatabase()
+                    && ((SQLDatabase) subject).getChildren().size() >= MIN_PARALLEL_CHILDREN) {
+                return criticizeInParallel((List<SPObject>) ((SQLDatabase) subject).getChildren());
+            }
+            Part part = new Part(null);
+            recursivelyCriticize(subject, part);
+            return part.criticisms;
         } finally {
             for (Critic c : critics) {
                 c.end();
             }
         }
     }
+
+    /**
+     * The criticisms of the objects one thread walked, in walk order, and
+     * what it gave the mergeable critics.
+     */
+    private class Part {
+
+        private final List<Criticism> criticisms = new ArrayList<Criticism>();
+
+        /**
+         * The accumulator of each mergeable critic, by position, or null if
+         * the mergeable critics are given the objects directly.
+         */
+        private final Accumulator[] accumulators;
+
+        /**
+         * The objects given to the accumulators, which mergeable critic they
+         * were given to, and where in {@link #criticisms} that critic's
+         * criticisms of them go.
+         */
+        private final List<Object> deferredSubjects = new ArrayList<Object>();
+
+        private int[] deferredCritics = new int[16];
+
+        private int[] deferredPositions = new int[16];
+
+        private Part(Accumulator[] accumulators) {
+            this.accumulators = accumulators;
+        }
+
+        private void defer(Object subject, int critic) {
+            int count = deferredSubjects.size();
+            if (count == deferredCritics.length) {
+                int[] newCritics = new int[count * 2];
+                System.arraycopy(deferredCritics, 0, newCritics, 0, count);
+                deferredCritics = newCritics;
+                int[] newPositions = new int[count * 2];
+                System.arraycopy(deferredPositions, 0, newPositions, 0, count);
+                deferredPositions = newPositions;
+            }
+            deferredSubjects.add(subject);
+            deferredCritics[count] = critic;
+            deferredPositions[count] = criticisms.size();
+            accumulators[critic].accumulate(subject);
+        }
+
+        /**
+         * Adds this part's criticisms to the given list, with the criticisms
+         * the mergeable critics made of each object where that critic's
+         * criticisms would have been if it had been given the object
+         * directly.
+         *
+         * @param merged
+         *            The criticisms each mergeable critic made, by critic
+         *            position and subject.
+         */
+        private void addTo(List<Criticism> all, Map<Object, List<Criticism>>[] merged) {
+            int from = 0;
+            for (int i = 0; i < deferredSubjects.size(); i++) {
+                all.addAll(criticisms.subList(from, deferredPositions[i]));
+                from = deferredPositions[i];
+                List<Criticism> subjectCriticisms = merged[deferredCritics[i]].get(deferredSubjects.get(i));
+                if (subjectCriticisms != null) {
+                    all.addAll(subjectCriticisms);
+                }
+            }
+            all.addAll(criticisms.subList(from, criticisms.size()));
+        }
+    }
+
+    /**
+     * Criticizes the given children of a database on several threads. Each
+     * thread walks a run of neighbouring children, so the criticisms of
+     * the runs can be put together in order once all of the threads are
+     * done. The mergeable critics then make their criticisms from all of the
+     * runs at once.
+     */
+    @SuppressWarnings("unchecked")
+    private List<Criticism> criticizeInParallel(final List<SPObject> children) {
+        int partCount = Math.min(children.size(), threads * 4);
+        final Part[] parts = new Part[partCount];
+        for (int p = 0; p < partCount; p++) {
+            Accumulator[] accumulators = new Accumulator[critics.size()];
+            for (int i = 0; i < critics.size(); i++) {
+                if (critics.get(i) instanceof MergeableCritic) {
+                    accumulators[i] = ((MergeableCritic) critics.get(i)).createAccumulator();
+                }
+            }
+            parts[p] = new Part(accumulators);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, partCount));
+        try {
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (int p = 0; p < partCount; p++) {
+                final Part part = parts[p];
+                final int first = p * children.size() / partCount;
+                final int last = (p + 1) * children.size() / partCount;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        for (int i = first; i < last; i++) {
+                            recursivelyCriticize(children.get(i), part);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while criticizing", e);
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                    if (cause instanceof Error) throw (Error) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Map<Object, List<Criticism>>[] merged = new Map[critics.size()];
+        for (int i = 0; i < critics.size(); i++) {
+            if (!(critics.get(i) instanceof MergeableCritic)) continue;
+            List<Accumulator> accumulators = new ArrayList<Accumulator>(partCount);
+            for (Part part : parts) {
+                accumulators.add(part.accumulators[i]);
+            }
+            merged[i] = new IdentityHashMap<Object, List<Criticism>>();
+            for (Criticism c : ((MergeableCritic) critics.get(i)).merge(accumulators)) {
+                List<Criticism> subjectCriticisms = merged[i].get(c.getSubject());
+                if (subjectCriticisms == null) {
+                    subjectCriticisms = new ArrayList<Criticism>(1);
+                    merged[i].put(c.getSubject(), subjectCriticisms);
+                }
+                subjectCriticisms.add(c);
+            }
+        }
+
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        for (Part part : parts) {
+            part.addTo(criticisms, merged);
+        }
+        return criticisms;
+    }
     
     /**
+     * Criticizes the subtree at root, adding the criticisms to the given
+     * part in walk order.
      * 
      * @param root
      *            The SQLObject to criticize
-     * @param criticizer
-     *            The criticizer that will examine the subtree at root and
-     *            accumulate criticisms about it
+     * @param part
+     *            The criticisms found so far by the thread walking root
      * @throws SQLObjectException
      *             if the (sub)tree under root is not already populated, and an
      *             attempt to populate it fails
      */
     @SuppressWarnings("unchecked")
-    private List<Criticism> recursivelyCriticize(Object root) {
-        List<Criticism> criticisms = new ArrayList<Criticism>();
-        
+    private void recursivelyCriticize(Object root, Part part) {
         // skip types that don't warrant criticism
         if ( (!(root instanceof SQLDatabase))) {
-            for (Critic critic : critics) {
-                List<Criticism> newCriticisms = critic.criticize(root);
-                criticisms.addAll(newCriticisms);
+            for (int i : getCriticsFor(root.getClass())) {
+                if (part.accumulators != null && part.accumulators[i] != null) {
+                    part.defer(root, i);
+                } else {
+                    part.criticisms.addAll(critics.get(i).criticize(root));
+                }
                 // TODO record the critic-subject combination so it can be wiped out later
             }
         }
@@ -99,10 +342,9 @@ class Criticizer {
                 } catch (SQLObjectException e) {
                     throw new RuntimeException(e);
                 }
-                criticisms.addAll(recursivelyCriticize(child));
+                recursivelyCriticize(child, part);
             }
         }
-        return criticisms;
     }
     
 }
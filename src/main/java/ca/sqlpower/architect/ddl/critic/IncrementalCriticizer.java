@@ -0,0 +1,862 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLRelationship.SQLImportedKey;
+import ca.sqlpower.util.SQLPowerUtils;
+import ca.sqlpower.util.TransactionEvent;
+
+/**
+ * Keeps the criticisms of a set of objects up to date as the objects change,
+ * without criticizing everything again. The criticizer listens to the
+ * hierarchy of each root object and remembers which objects changed. When it
+ * refreshes, only the changed objects and the objects whose criticisms
+ * depend on them are given to the critics that look at one object at a time:
+ * <ul>
+ * <li>the ancestors of a changed object, as a table's criticisms depend on
+ * its columns and a relationship's on its mappings;</li>
+ * <li>the column mappings of every relationship of a changed column's table,
+ * as mappings are criticized by the columns they map;</li>
+ * <li>the column mappings of a changed relationship.</li>
+ * </ul>
+ * A {@link NamespaceCritic}, like the one for names that have to be unique,
+ * only sees the objects that share a name with an object that changed, in
+ * the order a {@link Criticizer} would give them. The criticizer remembers
+ * the names of every object between refreshes to find them. Other critics
+ * whose criticisms {@link CriticAndSettings#dependsOnOtherSubjects() depend
+ * on the other objects of a run} see every object on every refresh.
+ * <p>
+ * The objects are only walked again when objects are added or removed, so
+ * a refresh after an object changes costs about as much as criticizing the
+ * objects that depend on it.
+ * <p>
+ * The criticisms are given to the {@link CriticismBucket} in the same order
+ * a full run gives them. Criticisms that did not change are the same
+ * objects as before, so the bucket only tells its listeners about the ones
+ * that did.
+ * <p>
+ * The critics and the root objects are the ones given when the criticizer
+ * is made; it has to be made again when critic settings change, or to
+ * criticize a root that was added since, like a new data source. Objects
+ * that are not
+ * {@link SPObject}s, like data sources, fire no events and are criticized on
+ * every refresh. Changes the roots do not fire events for, like a change to
+ * an upstream type in the domain category, are only seen by
+ * {@link #refreshAll()}.
+ * <p>
+ * A refresh can also be spread out: take a {@link #takeSnapshot() snapshot},
+ * {@link #startRun(Snapshot) criticize it a few objects at a time} between
+ * other work, and give the criticisms to the bucket once the run is done.
+ * The critics read the live objects, so everything has to be done on the
+ * thread the objects change on.
+ */
+public class IncrementalCriticizer {
+
+    /**
+     * The criticisms each critic made of one subject. The slot of each critic
+     * is its index in {@link IncrementalCriticizer#critics}. The slots of
+     * critics that do not criticize the subject's type are null.
+     */
+    private static class SubjectCriticisms {
+        private final List<List<Criticism>> byCritic;
+
+        SubjectCriticisms(int criticCount) {
+            byCritic = new ArrayList<List<Criticism>>(Collections.<List<Criticism>>nCopies(criticCount, null));
+        }
+    }
+
+    private final List<Critic> critics;
+
+    /**
+     * True for each critic in {@link #critics} that has to see every subject
+     * of a run.
+     */
+    private final boolean[] wholeRunCritics;
+
+    /**
+     * The names each {@link NamespaceCritic} in {@link #critics} compares the
+     * objects by. The slots of the other critics are null.
+     */
+    private final Namespace[] namespaces;
+
+    /**
+     * Tells which of the critics want to see each subject, the same way a
+     * full run does.
+     */
+    private final Criticizer dispatcher;
+
+    private final List<?> roots;
+
+    private final CriticismBucket bucket;
+
+    /**
+     * The criticisms of every subject as of the last refresh. Only used
+     * while holding this criticizer's lock.
+     */
+    private Map<Object, SubjectCriticisms> criticisms = new IdentityHashMap<Object, SubjectCriticisms>();
+
+    /**
+     * The subjects that have to be criticized again on the next refresh.
+     * Like the other change tracking fields, this is only used on the thread
+     * the objects change on.
+     */
+    private final Set<Object> changed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * The objects whose names may have changed since the last refresh: the
+     * objects that fired a property change, their children, and the objects
+     * that were added.
+     */
+    private final Set<Object> renamed = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+    /**
+     * The objects to criticize as of the last walk, in walk order, or null
+     * if they have not been walked yet.
+     */
+    private List<Object> subjects;
+
+    /**
+     * True if objects were added or removed since the objects were last
+     * walked.
+     */
+    private boolean structureChanged = true;
+
+    /**
+     * True if something changed since the last refresh.
+     */
+    private boolean dirty;
+
+    /**
+     * True if the criticisms found before must not be reused on the next
+     * refresh.
+     */
+    private boolean forgetAll;
+
+    /**
+     * If true the criticisms are refreshed after every change that is not
+     * part of a transaction, and at the end of every transaction.
+     */
+    private boolean autoRefresh = false;
+
+    private int transactionCount;
+
+    private boolean listening;
+
+    /**
+     * The run in progress, or null if there is none. Only used while
+     * holding this criticizer's lock.
+     */
+    private Run currentRun;
+
+    private final AbstractSPListener listener = new AbstractSPListener() {
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            if (evt.getSource() instanceof SPObject) {
+                SPObject source = (SPObject) evt.getSource();
+                renamed.add(source);
+                renamed.addAll(source.getChildren());
+                objectChanged(source);
+            }
+            changeDone();
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            structureChanged = true;
+            subtreeChanged(e.getChild());
+            objectChanged(e.getSource());
+            changeDone();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            structureChanged = true;
+            objectChanged(e.getSource());
+            changeDone();
+        }
+
+        @Override
+        public void transactionStarted(TransactionEvent e) {
+            transactionCount++;
+        }
+
+        @Override
+        public void transactionEnded(TransactionEvent e) {
+            transactionCount--;
+            if (transactionCount < 0) {
+                transactionCount = 0;
+            }
+            changeDone();
+        }
+
+        @Override
+        public void transactionRollback(TransactionEvent e) {
+            transactionCount = 0;
+            changeDone();
+        }
+    };
+
+    /**
+     * @param critics
+     *            The critics to criticize the objects with, in the order a
+     *            {@link Criticizer} would use them.
+     * @param roots
+     *            The objects to criticize, along with their descendants.
+     * @param bucket
+     *            The bucket to keep up to date with the criticisms.
+     */
+    public IncrementalCriticizer(List<Critic> critics, List<?> roots, CriticismBucket bucket) {
+        this.critics = Collections.unmodifiableList(new ArrayList<Critic>(critics));
+        this.roots = Collections.unmodifiableList(new ArrayList<Object>(roots));
+        dispatcher = new Criticizer(this.critics);
+        this.bucket = bucket;
+        wholeRunCritics = new boolean[this.critics.size()];
+        namespaces = new Namespace[this.critics.size()];
+        for (int i = 0; i < wholeRunCritics.length; i++) {
+            Critic critic = this.critics.get(i);
+            if (critic instanceof NamespaceCritic) {
+                namespaces[i] = new Namespace((NamespaceCritic) critic);
+            } else {
+                wholeRunCritics[i] = !(critic instanceof CriticAndSettings)
+                    || ((CriticAndSettings) critic).dependsOnOtherSubjects();
+            }
+        }
+    }
+
+    /**
+     * Starts listening for changes and criticizes every object, or, if the
+     * criticisms are not refreshed automatically, marks every object to be
+     * criticized on the next refresh.
+     */
+    public void start() {
+        if (!listening) {
+            for (Object root : roots) {
+                if (root instanceof SPObject) {
+                    SQLPowerUtils.listenToHierarchy((SPObject) root, listener);
+                }
+            }
+            listening = true;
+        }
+        if (autoRefresh) {
+            refreshAll();
+        } else {
+            markAllChanged();
+        }
+    }
+
+    /**
+     * Stops listening for changes. The criticisms stay in the bucket.
+     */
+    public void stop() {
+        if (!listening) return;
+        for (Object root : roots) {
+            if (root instanceof SPObject) {
+                SQLPowerUtils.unlistenToHierarchy((SPObject) root, listener);
+            }
+        }
+        listening = false;
+    }
+
+    /**
+     * Criticizes every object again, as a new {@link Criticizer} would.
+     */
+    public void refreshAll() {
+        markAllChanged();
+        refresh();
+    }
+
+    /**
+     * Marks every object to be criticized again on the next refresh, without
+     * reusing any criticisms found before.
+     */
+    public void markAllChanged() {
+        changed.clear();
+        renamed.clear();
+        forgetAll = true;
+        structureChanged = true;
+        dirty = true;
+    }
+
+    /**
+     * Criticizes the objects that changed since the last refresh, and the
+     * objects whose criticisms depend on them, and updates the bucket. This
+     * does nothing if nothing changed.
+     */
+    public void refresh() {
+        if (!dirty) return;
+        bucket.updateCriticismsToMatch(criticize(takeSnapshot()));
+    }
+
+    /**
+     * The objects to criticize in one refresh, in walk order, and which of
+     * them changed. A snapshot is taken and criticized on the thread that
+     * changes the objects, at once or in steps.
+     */
+    public static class Snapshot {
+
+        private final List<Object> subjects;
+
+        private final Set<Object> changed;
+
+        /**
+         * The objects whose names may have changed.
+         */
+        private final Set<Object> renamed;
+
+        /**
+         * True if every object has to be criticized again.
+         */
+        private final boolean all;
+
+        /**
+         * True if the objects were walked again for this snapshot, as
+         * objects were added or removed.
+         */
+        private final boolean walked;
+
+        private Snapshot(List<Object> subjects, Set<Object> changed, Set<Object> renamed,
+                boolean all, boolean walked) {
+            this.subjects = subjects;
+            this.changed = changed;
+            this.renamed = renamed;
+            this.all = all;
+            this.walked = walked;
+        }
+
+        /**
+         * Returns the number of objects in the snapshot.
+         */
+        public int getSubjectCount() {
+            return subjects.size();
+        }
+    }
+
+    /**
+     * Lists the objects to criticize and the ones that changed, and starts
+     * remembering changes from scratch. This has to be called on the thread
+     * that changes the objects.
+     */
+    public Snapshot takeSnapshot() {
+        boolean walk = structureChanged || subjects == null;
+        if (walk) {
+            List<Object> walked = new ArrayList<Object>();
+            for (Object root : roots) {
+                addSubjects(root, walked);
+            }
+            subjects = Collections.unmodifiableList(walked);
+            structureChanged = false;
+        }
+        Set<Object> changedSubjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        changedSubjects.addAll(changed);
+        Set<Object> renamedSubjects = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+        renamedSubjects.addAll(renamed);
+        Snapshot snapshot = new Snapshot(subjects, changedSubjects, renamedSubjects, forgetAll, walk);
+        changed.clear();
+        renamed.clear();
+        forgetAll = false;
+        dirty = false;
+        return snapshot;
+    }
+
+    /**
+     * Marks the objects that changed in the given snapshot as changed again,
+     * for a snapshot whose criticisms could not be made or were thrown
+     * away.
+     */
+    public void restoreChanges(Snapshot snapshot) {
+        changed.addAll(snapshot.changed);
+        renamed.addAll(snapshot.renamed);
+        forgetAll |= snapshot.all;
+        dirty = true;
+    }
+
+    /**
+     * Criticizes the changed objects of the snapshot and the objects whose
+     * criticisms depend on them, and returns the criticisms of every object
+     * in the snapshot. The criticisms of the other objects are the ones
+     * found before. This does not change the bucket. Snapshots have to be
+     * criticized one at a time, in the order they were taken.
+     */
+    public synchronized List<Criticism> criticize(Snapshot snapshot) {
+        Run run = startRun(snapshot);
+        run.step(Integer.MAX_VALUE);
+        return run.getCriticisms();
+    }
+
+    /**
+     * Starts criticizing the snapshot in steps, cancelling the run that was
+     * in progress, if any. The critics are started here and ended when the
+     * run is done or cancelled.
+     */
+    public synchronized Run startRun(Snapshot snapshot) {
+        if (currentRun != null) {
+            currentRun.cancel();
+        }
+        currentRun = new Run(snapshot);
+        return currentRun;
+    }
+
+    /**
+     * A snapshot being criticized a few objects at a time, so the thread the
+     * objects change on can criticize them between its other work. The
+     * critics read the objects as they are when each step is made, so the
+     * steps have to be made on that thread. Objects changed between two
+     * steps are in the next snapshot, which sets right any criticisms made
+     * from a half-done change.
+     */
+    public class Run {
+
+        private final Snapshot snapshot;
+
+        /**
+         * For each critic, the objects it has to see again, or null if it
+         * has to see every object.
+         */
+        private final List<Set<Object>> affected = new ArrayList<Set<Object>>();
+
+        private final Map<Object, SubjectCriticisms> newCriticisms = new IdentityHashMap<Object, SubjectCriticisms>();
+
+        private final List<Criticism> allCriticisms = new ArrayList<Criticism>();
+
+        /**
+         * The index of the next object to criticize in the snapshot.
+         */
+        private int next;
+
+        private boolean done;
+
+        private Run(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            if (snapshot.all) {
+                criticisms.clear();
+            }
+            try {
+                for (Namespace namespace : namespaces) {
+                    affected.add(namespace == null ? null : namespace.findAffected(snapshot));
+                }
+                for (Critic c : critics) {
+                    c.start();
+                }
+            } catch (RuntimeException e) {
+                finish(false);
+                throw e;
+            }
+        }
+
+        /**
+         * Criticizes up to the given number of objects, and returns true if
+         * every object of the snapshot has been criticized. The criticisms
+         * of a run that is done are kept for the next run to reuse.
+         */
+        public boolean step(int maxSubjects) {
+            synchronized (IncrementalCriticizer.this) {
+                if (done) return true;
+                try {
+                    int end = (int) Math.min(snapshot.subjects.size(), (long) next + maxSubjects);
+                    for (; next < end; next++) {
+                        criticizeSubject(snapshot.subjects.get(next), snapshot.changed, affected,
+                                newCriticisms, allCriticisms);
+                    }
+                } catch (RuntimeException e) {
+                    finish(false);
+                    throw e;
+                }
+                if (next == snapshot.subjects.size()) {
+                    finish(true);
+                }
+                return done;
+            }
+        }
+
+        /**
+         * Stops the run without keeping its criticisms. The caller can
+         * {@link IncrementalCriticizer#restoreChanges(Snapshot) restore} the
+         * snapshot's changes to criticize them in a later run.
+         */
+        public void cancel() {
+            synchronized (IncrementalCriticizer.this) {
+                if (!done) {
+                    finish(false);
+                }
+            }
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        public Snapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Returns the criticisms of every object in the snapshot, once the
+         * run is done.
+         */
+        public List<Criticism> getCriticisms() {
+            if (!done || next < snapshot.subjects.size()) {
+                throw new IllegalStateException("The run did not finish");
+            }
+            return allCriticisms;
+        }
+
+        private void finish(boolean completed) {
+            done = true;
+            if (currentRun == this) {
+                currentRun = null;
+            }
+            try {
+                for (Critic c : critics) {
+                    c.end();
+                }
+            } finally {
+                if (completed) {
+                    criticisms = newCriticisms;
+                } else {
+                    // the names were updated for criticisms that will not be kept
+                    for (Namespace namespace : namespaces) {
+                        if (namespace != null) {
+                            namespace.clear();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if something changed since the last refresh.
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * If true, the criticisms are refreshed after every change that is not
+     * part of a transaction and at the end of every transaction, on the
+     * thread that made the change. If false, the default, changes are only
+     * remembered until {@link #refresh()} is called, so a caller can refresh
+     * once a burst of edits is over.
+     */
+    public void setAutoRefresh(boolean autoRefresh) {
+        this.autoRefresh = autoRefresh;
+    }
+
+    public boolean isAutoRefresh() {
+        return autoRefresh;
+    }
+
+    /**
+     * Adds the subject and its descendants to the list in the order a
+     * {@link Criticizer} walks them. Databases are walked but not
+     * criticized.
+     */
+    @SuppressWarnings("unchecked")
+    private static void addSubjects(Object subject, List<Object> subjects) {
+        if (!(subject instanceof SQLDatabase)) {
+            subjects.add(subject);
+        }
+
+        if (subject instanceof SPObject) {
+            for (SPObject child : (List<SPObject>) ((SPObject) subject).getChildren()) {
+                try {
+                    if (child instanceof SQLImportedKey
+                            && ((SQLTable) subject).getImportedKeys().contains(child)) {
+                        // skip contents of every imported keys folder, or else we will visit every relationship twice
+                        continue;
+                    }
+                } catch (SQLObjectException e) {
+                    throw new RuntimeException(e);
+                }
+                addSubjects(child, subjects);
+            }
+        }
+    }
+
+    /**
+     * Adds the criticisms of one subject to the list, criticizing it again
+     * if it changed and reusing its criticisms from before if not.
+     */
+    private void criticizeSubject(Object subject, Set<Object> changedSubjects, List<Set<Object>> affected,
+            Map<Object, SubjectCriticisms> newCriticisms, List<Criticism> allCriticisms) {
+        SubjectCriticisms old = criticisms.get(subject);
+        boolean recriticize = old == null || changedSubjects.contains(subject) || !(subject instanceof SPObject);
+        SubjectCriticisms current = new SubjectCriticisms(critics.size());
+        for (int i : dispatcher.getCriticsFor(subject.getClass())) {
+            List<Criticism> oldList = old == null ? null : old.byCritic.get(i);
+            boolean again;
+            if (namespaces[i] != null) {
+                again = oldList == null || affected.get(i) == null || affected.get(i).contains(subject);
+            } else {
+                again = recriticize || wholeRunCritics[i];
+            }
+            List<Criticism> list;
+            if (again) {
+                list = critics.get(i).criticize(subject);
+                if (oldList != null && isSame(oldList, list)) {
+                    list = oldList;
+                }
+            } else {
+                list = oldList;
+            }
+            current.byCritic.set(i, list);
+            allCriticisms.addAll(list);
+        }
+        newCriticisms.put(subject, current);
+    }
+
+    /**
+     * The names a {@link NamespaceCritic} compared each object by in the last
+     * refresh, and the objects that have each name. Only used while holding
+     * the criticizer's lock.
+     */
+    private static class Namespace {
+
+        private final NamespaceCritic critic;
+
+        private final Map<Object, Collection<?>> namesBySubject = new IdentityHashMap<Object, Collection<?>>();
+
+        private final Map<Object, Set<Object>> subjectsByName = new HashMap<Object, Set<Object>>();
+
+        /**
+         * False if the names of every object have to be found again.
+         */
+        private boolean valid;
+
+        Namespace(NamespaceCritic critic) {
+            this.critic = critic;
+        }
+
+        void clear() {
+            namesBySubject.clear();
+            subjectsByName.clear();
+            valid = false;
+        }
+
+        /**
+         * Finds the current names of the objects whose names may have changed
+         * in the snapshot, and returns the objects the critic has to see
+         * again: the objects that share a name, old or new, with one of them,
+         * and the objects that share a name with those. Returns null if the
+         * critic has to see every object.
+         */
+        Set<Object> findAffected(Snapshot snapshot) {
+            if (snapshot.all || !valid) {
+                clear();
+                for (Object subject : snapshot.subjects) {
+                    add(subject);
+                }
+                valid = true;
+                return null;
+            }
+
+            Set<Object> affected = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+            Set<Object> names = new HashSet<Object>();
+            Set<Object> present = null;
+            if (snapshot.walked) {
+                present = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+                present.addAll(snapshot.subjects);
+                for (Object subject : new ArrayList<Object>(namesBySubject.keySet())) {
+                    if (!present.contains(subject)) {
+                        names.addAll(remove(subject));
+                    }
+                }
+            }
+            for (Object subject : snapshot.renamed) {
+                if (present != null && !present.contains(subject)) continue;
+                Collection<?> oldNames = remove(subject);
+                if (oldNames != null) {
+                    names.addAll(oldNames);
+                }
+                names.addAll(add(subject));
+                affected.add(subject);
+            }
+
+            LinkedList<Object> unchecked = new LinkedList<Object>(names);
+            while (!unchecked.isEmpty()) {
+                Set<Object> withName = subjectsByName.get(unchecked.removeFirst());
+                if (withName == null) continue;
+                for (Object subject : withName) {
+                    if (!affected.add(subject)) continue;
+                    for (Object name : namesBySubject.get(subject)) {
+                        if (names.add(name)) {
+                            unchecked.add(name);
+                        }
+                    }
+                }
+            }
+            return affected;
+        }
+
+        /**
+         * Remembers the current names of the object and returns them.
+         */
+        private Collection<?> add(Object subject) {
+            Collection<?> names = critic.getNames(subject);
+            namesBySubject.put(subject, names);
+            for (Object name : names) {
+                Set<Object> withName = subjectsByName.get(name);
+                if (withName == null) {
+                    withName = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+                    subjectsByName.put(name, withName);
+                }
+                withName.add(subject);
+            }
+            return names;
+        }
+
+        /**
+         * Forgets the object and returns the names it had, or null if it had
+         * none.
+         */
+        private Collection<?> remove(Object subject) {
+            Collection<?> names = namesBySubject.remove(subject);
+            if (names == null) return null;
+            for (Object name : names) {
+                Set<Object> withName = subjectsByName.get(name);
+                if (withName == null) continue;
+                withName.remove(subject);
+                if (withName.isEmpty()) {
+                    subjectsByName.remove(name);
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Returns true if the two lists hold criticisms that say the same thing
+     * about the same subjects and offer the same fixes.
+     */
+    private static boolean isSame(List<Criticism> oldList, List<Criticism> newList) {
+        if (oldList.size() != newList.size()) return false;
+        for (int i = 0; i < oldList.size(); i++) {
+            Criticism o = oldList.get(i);
+            Criticism n = newList.get(i);
+            if (o.getSubject() != n.getSubject() || o.getCritic() != n.getCritic()
+                    || !o.getDescription().equals(n.getDescription())) {
+                return false;
+            }
+            List<CriticFix> oldFixes = o.getFixes();
+            List<CriticFix> newFixes = n.getFixes();
+            if (oldFixes.size() != newFixes.size()) return false;
+            for (int j = 0; j < oldFixes.size(); j++) {
+                if (oldFixes.get(j).getFixType() != newFixes.get(j).getFixType()
+                        || !oldFixes.get(j).getDescription().equals(newFixes.get(j).getDescription())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks the object and everything whose criticisms depend on it as
+     * changed.
+     */
+    private void objectChanged(SPObject source) {
+        dirty = true;
+        for (SPObject o = source; o != null; o = o.getParent()) {
+            changed.add(o);
+            if (o instanceof SQLColumn) {
+                relationshipsChanged(((SQLColumn) o).getParent());
+            } else if (o instanceof SQLRelationship) {
+                mappingsChanged((SQLRelationship) o);
+            } else if (o instanceof SQLImportedKey) {
+                SQLRelationship r = ((SQLImportedKey) o).getRelationship();
+                if (r != null) {
+                    changed.add(r);
+                    mappingsChanged(r);
+                }
+            }
+            if (o instanceof SQLDatabase || roots.contains(o)) break;
+        }
+    }
+
+    /**
+     * Marks the mappings of every relationship the table takes part in as
+     * changed.
+     */
+    private void relationshipsChanged(SQLTable table) {
+        if (table == null) return;
+        try {
+            for (SQLRelationship r : table.getExportedKeys()) {
+                mappingsChanged(r);
+            }
+            for (SQLImportedKey key : table.getImportedKeys()) {
+                if (key.getRelationship() != null) {
+                    mappingsChanged(key.getRelationship());
+                }
+            }
+        } catch (SQLObjectException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void mappingsChanged(SQLRelationship r) {
+        changed.addAll(r.getChildren());
+    }
+
+    /**
+     * Marks an object that was added and all its descendants as changed, as
+     * they may have changed while they were not being listened to.
+     */
+    private void subtreeChanged(SPObject o) {
+        dirty = true;
+        changed.add(o);
+        renamed.add(o);
+        for (SPObject child : o.getChildren()) {
+            subtreeChanged(child);
+        }
+    }
+
+    /**
+     * Refreshes the criticisms if they refresh automatically and no
+     * transaction is open.
+     */
+    private void changeDone() {
+        if (autoRefresh && transactionCount == 0) {
+            refresh();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.util.List;
+
+/**
+ * A critic whose criticisms of one object depend on the other objects of the
+ * same run, which can still be used when the objects are walked on several
+ * threads. Each thread gives the objects it walks to its own
+ * {@link Accumulator}, and once every thread is done the critic makes its
+ * criticisms from all of the accumulators at once.
+ * <p>
+ * The critic is still started before and ended after the run, and its
+ * criticisms have to be the same ones it would have made if it had been
+ * given the objects one at a time in walk order.
+ */
+public interface MergeableCritic extends Critic {
+
+    /**
+     * The objects one thread gave a mergeable critic, in the order it
+     * walked them. An accumulator is only used by one thread at a time.
+     */
+    public interface Accumulator {
+
+        /**
+         * Remembers the given object. This must not make any criticisms or
+         * change any state outside of the accumulator.
+         */
+        public void accumulate(Object subject);
+    }
+
+    /**
+     * Returns a new, empty accumulator for one part of the run.
+     */
+    public Accumulator createAccumulator();
+
+    /**
+     * Makes the criticisms of every object given to the accumulators. The
+     * accumulators are in walk order: every object given to an accumulator
+     * was walked before the objects given to the accumulators after it.
+     * This is called on one thread, after every accumulator has been filled.
+     */
+    public List<Criticism> merge(List<Accumulator> accumulators);
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic;
+
+import java.util.Collection;
+
+/**
+ * A critic whose criticisms of one object only depend on the objects that
+ * share a name with it and were walked before it in the same run, as with
+ * names that have to be unique. An {@link IncrementalCriticizer} remembers
+ * the names of every object and only gives a critic like this the objects
+ * that share a name with an object that changed, instead of every object on
+ * every refresh.
+ * <p>
+ * The criticisms may also mention the parents of the objects with the same
+ * name, so a change to an object counts as a change to the names of its
+ * children. The critic is still started before and ended after each run,
+ * and is given the objects in walk order.
+ */
+public interface NamespaceCritic extends Critic {
+
+    /**
+     * Returns the names the given object is compared by. Objects that have
+     * no name in common are never compared. The names have to be usable as
+     * hash map keys and must only change when the object or its parent fires
+     * an event.
+     */
+    public Collection<?> getNames(Object subject);
+}
@@ -26,6 +26,7 @@ import java.util.regex.Pattern;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 
 /**
@@ -40,6 +41,12 @@ public class AlphaNumericSequenceNameCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("AlphaNumericSequenceNameCritic.name"));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(SQLColumn.class);
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLColumn)) return Collections.emptyList();
         
@@ -20,6 +20,7 @@
 package ca.sqlpower.architect.ddl.critic.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -30,6 +31,7 @@ import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
 import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
 import ca.sqlpower.object.annotation.ConstructorParameter;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
 
@@ -50,6 +52,12 @@ public class CommentCritic extends CriticAndSettings {
         this.maxTableCommentLength = maxLengthTable;
     }
     
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Arrays.<Class<?>>asList(SQLTable.class, SQLColumn.class);
+    }
+
     public List<Criticism> criticize(final Object so) {
         
         if (!(so instanceof SQLTable || so instanceof SQLColumn)) return Collections.emptyList();
@@ -20,6 +20,7 @@
 package ca.sqlpower.architect.ddl.critic.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -29,6 +30,9 @@ import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
 import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.architect.ddl.critic.MergeableCritic;
+import ca.sqlpower.architect.ddl.critic.NamespaceCritic;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
@@ -44,7 +48,7 @@ import com.google.common.collect.Multimap;
  * tables, can have the same name but a sequence cannot have the same name as a
  * table because they are at the same level in a database.
  */
-public class DuplicateNameCritic extends CriticAndSettings {
+public class DuplicateNameCritic extends CriticAndSettings implements MergeableCritic, NamespaceCritic {
 
     /**
      * Stores all of the top level target database objects by name for the
@@ -82,7 +86,105 @@ public class DuplicateNameCritic extends CriticAndSettings {
         topLevelPhysicalNameMap.clear();
         columnPhysicalNameMap.clear();
     }
+
+    /**
+     * An object is a duplicate of the objects with the same name that were
+     * criticized before it in the same run.
+     */
+    @Override
+    public boolean dependsOnOtherSubjects() {
+        return true;
+    }
     
+    /**
+     * Keeps the objects one thread walked so their names can be compared
+     * with the objects the other threads walked.
+     */
+    private static class SubjectList implements Accumulator {
+
+        private final List<Object> subjects = new ArrayList<Object>();
+
+        public void accumulate(Object subject) {
+            subjects.add(subject);
+        }
+    }
+
+    /**
+     * The name of a column within its table. Tables are told apart by
+     * identity, as their names can change while this is a hash key.
+     */
+    private static class ColumnName {
+        private final SQLTable table;
+        private final String physicalName;
+
+        ColumnName(SQLTable table, String physicalName) {
+            this.table = table;
+            this.physicalName = physicalName;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ColumnName)) return false;
+            ColumnName other = (ColumnName) obj;
+            return table == other.table && physicalName.equals(other.physicalName);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(table) * 31 + physicalName.hashCode();
+        }
+    }
+
+    /**
+     * A column is compared with the columns of its table by physical name,
+     * and with the top level objects by sequence name. The other objects are
+     * compared with the top level objects by physical name.
+     */
+    public Collection<?> getNames(Object subject) {
+        if (subject instanceof SQLColumn) {
+            SQLColumn col = (SQLColumn) subject;
+            if (col.getPhysicalName() == null) return Collections.emptyList();
+            return Arrays.asList(new ColumnName(col.getParent(), col.getPhysicalName()),
+                    col.getAutoIncrementSequenceName());
+        } else if (subject instanceof SQLTable || subject instanceof SQLRelationship
+                || subject instanceof SQLIndex) {
+            return Collections.singletonList(((SQLObject) subject).getPhysicalName());
+        }
+        return Collections.emptyList();
+    }
+
+    public Accumulator createAccumulator() {
+        return new SubjectList();
+    }
+
+    /**
+     * Compares the names of the accumulated objects in walk order, the same
+     * way they would have been compared if they had been criticized one at
+     * a time.
+     */
+    public List<Criticism> merge(List<Accumulator> accumulators) {
+        List<Criticism> criticisms = new ArrayList<Criticism>();
+        topLevelPhysicalNameMap.clear();
+        columnPhysicalNameMap.clear();
+        try {
+            for (Accumulator accumulator : accumulators) {
+                for (Object subject : ((SubjectList) accumulator).subjects) {
+                    criticisms.addAll(criticize(subject));
+                }
+            }
+        } finally {
+            topLevelPhysicalNameMap.clear();
+            columnPhysicalNameMap.clear();
+        }
+        return criticisms;
+    }
+
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Arrays.<Class<?>>asList(SQLTable.class, SQLRelationship.class, SQLIndex.class, SQLColumn.class);
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLObject)) return Collections.emptyList();
 
@@ -24,6 +24,7 @@ import java.util.List;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLRelationship;
 
 /**
@@ -35,6 +36,12 @@ public class EmptyRelationshipCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("EmptyRelationshipCritic.name"));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(SQLRelationship.class);
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (subject instanceof SQLRelationship) {
             SQLRelationship relation = (SQLRelationship) subject;
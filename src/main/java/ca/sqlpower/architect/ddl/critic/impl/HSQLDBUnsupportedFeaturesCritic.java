@@ -25,6 +25,7 @@ import java.util.List;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLRelationship.Deferrability;
 import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
@@ -35,6 +36,12 @@ public class HSQLDBUnsupportedFeaturesCritic extends CriticAndSettings {
         super(StarterPlatformTypes.HSQLDB.getName(), Messages.getString("UnsupportedFeaturesCritic.name", StarterPlatformTypes.HSQLDB.getName()));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(SQLRelationship.class);
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof SQLRelationship)) return Collections.emptyList();
         
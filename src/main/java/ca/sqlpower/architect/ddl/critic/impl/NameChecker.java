@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.ddl.critic.impl;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Checks physical names for the name critics, remembering what it found for
+ * each name so the same name is only looked at once no matter how many runs
+ * and critics see it.
+ * <p>
+ * Every set of reserved words the critics use is merged into one table from
+ * upper-case word to the sets that reserve it, so one lookup of a name tells
+ * whether it is reserved on every platform at once. Critics with the same
+ * legal name pattern share the answers for that pattern.
+ * <p>
+ * All of the methods can be called on several threads at once.
+ */
+final class NameChecker {
+
+    /**
+     * The most names remembered at a time. The remembered answers are all
+     * forgotten once there are more than this, which only happens with
+     * very large or very many projects.
+     */
+    private static final int MAX_CACHED_NAMES = 100000;
+
+    private NameChecker() {
+        // static methods only
+    }
+
+    /**
+     * The reserved words of one platform.
+     */
+    static final class ReservedWords {
+
+        /**
+         * The bit of this set in the masks of the word table, or 0 if there
+         * were too many sets to give this one a bit.
+         */
+        private final long bit;
+
+        /**
+         * The words in upper case, for sets that did not get a bit.
+         */
+        private final Collection<String> words;
+
+        private ReservedWords(long bit, Collection<String> words) {
+            this.bit = bit;
+            this.words = words;
+        }
+
+        /**
+         * Returns true if the name is one of these reserved words, ignoring
+         * case. Null names are never reserved.
+         */
+        boolean isReserved(String name) {
+            if (name == null) return false;
+            if (bit == 0) return words.contains(name.toUpperCase());
+            return (getReservedMask(name) & bit) != 0;
+        }
+    }
+
+    /**
+     * The names that match a legal name pattern.
+     */
+    static final class LegalNames {
+
+        private final Pattern pattern;
+
+        private final Map<String, Boolean> verdicts = new ConcurrentHashMap<String, Boolean>();
+
+        private LegalNames(Pattern pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         * Returns true if the whole name matches the pattern.
+         */
+        boolean isLegal(String name) {
+            Boolean legal = verdicts.get(name);
+            if (legal == null) {
+                legal = Boolean.valueOf(pattern.matcher(name).matches());
+                if (verdicts.size() > MAX_CACHED_NAMES) {
+                    verdicts.clear();
+                }
+                verdicts.put(name, legal);
+            }
+            return legal.booleanValue();
+        }
+    }
+
+    /**
+     * The compiled form of each set of reserved words that has been given to
+     * {@link #getReservedWords(Collection)}, by identity. The generators'
+     * reserved word sets are shared by every critic for their platform.
+     */
+    private static final Map<Collection<String>, ReservedWords> reservedWordSets =
+        new IdentityHashMap<Collection<String>, ReservedWords>();
+
+    /**
+     * Every reserved word with the bits of the sets that reserve it, and
+     * the bits each name that has been checked got.
+     */
+    private static class WordTable {
+
+        /**
+         * Maps each upper-case reserved word to the bits of the sets that
+         * reserve it.
+         */
+        private final Map<String, Long> reservingSets;
+
+        /**
+         * The bits of {@link #reservingSets} each name has, by the name as it
+         * was given.
+         */
+        private final Map<String, Long> verdicts = new ConcurrentHashMap<String, Long>();
+
+        private WordTable(Map<String, Long> reservingSets) {
+            this.reservingSets = reservingSets;
+        }
+    }
+
+    /**
+     * Replaced with a new table, never changed, when a set of reserved words
+     * is added.
+     */
+    private static volatile WordTable wordTable = new WordTable(new HashMap<String, Long>());
+
+    /**
+     * The legal names of each pattern, by the pattern's regex and flags.
+     */
+    private static final Map<List<Object>, LegalNames> legalNames = new HashMap<List<Object>, LegalNames>();
+
+    /**
+     * Returns the compiled form of the given reserved words, compiling them
+     * the first time the collection is seen. The words are copied, so
+     * changes to the collection afterwards are not seen.
+     */
+    static ReservedWords getReservedWords(Collection<String> words) {
+        synchronized (reservedWordSets) {
+            ReservedWords compiled = reservedWordSets.get(words);
+            if (compiled != null) return compiled;
+
+            int index = reservedWordSets.size();
+            long bit = index < Long.SIZE ? 1L << index : 0;
+            Set<String> upperCaseWords = new HashSet<String>();
+            for (String word : words) {
+                upperCaseWords.add(word.toUpperCase());
+            }
+            compiled = new ReservedWords(bit, upperCaseWords);
+            reservedWordSets.put(words, compiled);
+            if (bit != 0) {
+                Map<String, Long> reservingSets = new HashMap<String, Long>(wordTable.reservingSets);
+                for (String word : upperCaseWords) {
+                    Long mask = reservingSets.get(word);
+                    reservingSets.put(word, Long.valueOf((mask == null ? 0 : mask.longValue()) | bit));
+                }
+                wordTable = new WordTable(reservingSets);
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * Returns the bits of every set of reserved words the name is in.
+     */
+    private static long getReservedMask(String name) {
+        WordTable table = wordTable;
+        Long mask = table.verdicts.get(name);
+        if (mask == null) {
+            mask = table.reservingSets.get(name.toUpperCase());
+            if (mask == null) {
+                mask = Long.valueOf(0);
+            }
+            if (table.verdicts.size() > MAX_CACHED_NAMES) {
+                table.verdicts.clear();
+            }
+            table.verdicts.put(name, mask);
+        }
+        return mask.longValue();
+    }
+
+    /**
+     * Returns the legal names of the given pattern. Patterns with the same
+     * regex and flags share their answers.
+     */
+    static LegalNames getLegalNames(Pattern pattern) {
+        List<Object> key = Arrays.<Object>asList(pattern.pattern(), Integer.valueOf(pattern.flags()));
+        synchronized (legalNames) {
+            LegalNames names = legalNames.get(key);
+            if (names == null) {
+                names = new LegalNames(pattern);
+                legalNames.put(key, names);
+            }
+            return names;
+        }
+    }
+}
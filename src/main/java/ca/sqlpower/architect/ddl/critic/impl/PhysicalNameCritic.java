@@ -32,6 +32,7 @@ import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
 import ca.sqlpower.object.annotation.Accessor;
 import ca.sqlpower.object.annotation.Constructor;
 import ca.sqlpower.object.annotation.ConstructorParameter;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
@@ -46,6 +47,12 @@ import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
 public class PhysicalNameCritic extends CriticAndSettings {
     
     private final Pattern legalNamePattern;
+
+    /**
+     * The names known to match {@link #legalNamePattern}, shared with the
+     * other critics that use the same pattern.
+     */
+    private final NameChecker.LegalNames legalNames;
     private final int maxNameLength;
     private final String platformName;
 
@@ -71,10 +78,17 @@ public class PhysicalNameCritic extends CriticAndSettings {
         super(platformName, Messages.getString("PhysicalNameCritic.name"));
         this.platformName = platformName;
         this.legalNamePattern = legalNamePattern;
+        legalNames = NameChecker.getLegalNames(legalNamePattern);
         this.maxNameLength = maxNameLength;
         
     }
     
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(SQLObject.class);
+    }
+
     public List<Criticism> criticize(final Object subject) {
         if (!(subject instanceof SQLObject)) return Collections.emptyList();
         
@@ -114,7 +128,7 @@ public class PhysicalNameCritic extends CriticAndSettings {
                     }));
         }
 		
-        if (!getLegalNamePattern().matcher(physName).matches()) {
+        if (!legalNames.isLegal(physName)) {
             final String newLogicalName = correctPhysicalName(so, physName);
             criticisms.add(new Criticism(
                     so,
@@ -143,7 +157,7 @@ public class PhysicalNameCritic extends CriticAndSettings {
         for (int i = 0; i < existingName.length(); i++) {
             if (existingName.charAt(i) == ' ') {
                 buffer.append('_');
-            } else if (getLegalNamePattern().matcher(Character.toString(existingName.charAt(i))).matches()) {
+            } else if (legalNames.isLegal(Character.toString(existingName.charAt(i)))) {
                 buffer.append(existingName.charAt(i));
             } else if (i == 0) {
                 if (subject instanceof SQLTable) {
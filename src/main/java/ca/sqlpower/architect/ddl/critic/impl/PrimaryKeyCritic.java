@@ -24,6 +24,7 @@ import java.util.List;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLTable;
 
 /**
@@ -35,6 +36,12 @@ public class PrimaryKeyCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("PrimaryKeyCritic.name"));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(SQLTable.class);
+    }
+
     public List<Criticism> criticize(final Object so) {
         if (!(so instanceof SQLTable)) return Collections.emptyList();
         SQLTable t = (SQLTable) so;
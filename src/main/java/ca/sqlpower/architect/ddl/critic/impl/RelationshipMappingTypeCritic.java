@@ -28,6 +28,7 @@ import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
 import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.UserDefinedSQLType;
@@ -44,6 +45,12 @@ public class RelationshipMappingTypeCritic extends CriticAndSettings {
         super(StarterPlatformTypes.GENERIC.getName(), Messages.getString("RelationshipMappingTypeCritic.name"));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(ColumnMapping.class);
+    }
+
     public List<Criticism> criticize(Object so) {
         if (!(so instanceof ColumnMapping)) return Collections.emptyList();
         ColumnMapping cm = (ColumnMapping) so;
@@ -19,6 +19,7 @@
 
 package ca.sqlpower.architect.ddl.critic.impl;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -27,6 +28,7 @@ import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
 import ca.sqlpower.architect.ddl.critic.CriticFix;
 import ca.sqlpower.architect.ddl.critic.CriticFix.FixType;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
@@ -44,19 +46,25 @@ public abstract class ReservedWordsCritic extends CriticAndSettings {
      * The words that if an object's name matches a criticism will be made for
      * the object.
      */
-    private final Collection<String> reservedWords;
+    private final NameChecker.ReservedWords reservedWords;
 
     public ReservedWordsCritic(String platformType, String name, Collection<String> reservedWords) {
         super(platformType, name);
-        this.reservedWords = reservedWords;
+        this.reservedWords = NameChecker.getReservedWords(reservedWords);
+    }
+
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Arrays.<Class<?>>asList(SQLTable.class, SQLIndex.class, SQLRelationship.class, SQLColumn.class);
     }
 
     public List<Criticism> criticize(Object subject) {
         if (subject instanceof SQLTable || subject instanceof SQLIndex || 
                 subject instanceof SQLRelationship || subject instanceof SQLColumn) {
             final SQLObject sqlObject = (SQLObject) subject;
-            String typeName = sqlObject.getClass().getSimpleName().substring(3);
-            if (reservedWords.contains(sqlObject.getPhysicalName().toUpperCase())) {
+            if (reservedWords.isReserved(sqlObject.getPhysicalName())) {
+                String typeName = sqlObject.getClass().getSimpleName().substring(3);
                 final String newName = sqlObject.getPhysicalName() + "_1";
                 return Collections.singletonList(new Criticism(subject, 
                         Messages.getString("ReservedWordsCritic.criticismDesc", 
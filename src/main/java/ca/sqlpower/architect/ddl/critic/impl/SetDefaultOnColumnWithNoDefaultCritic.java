@@ -25,6 +25,7 @@ import java.util.List;
 
 import ca.sqlpower.architect.ddl.critic.CriticAndSettings;
 import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.object.annotation.NonProperty;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
 import ca.sqlpower.sqlobject.SQLRelationship.UpdateDeleteRule;
@@ -45,6 +46,12 @@ public class SetDefaultOnColumnWithNoDefaultCritic extends CriticAndSettings {
                 Messages.getString("SetDefaultOnColumnWithNoDefaultCritic.name"));
     }
 
+    @Override
+    @NonProperty
+    public List<Class<?>> getSubjectTypes() {
+        return Collections.<Class<?>>singletonList(ColumnMapping.class);
+    }
+
     public List<Criticism> criticize(Object subject) {
         if (!(subject instanceof ColumnMapping)) return Collections.emptyList();
         
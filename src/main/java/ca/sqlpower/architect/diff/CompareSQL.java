@@ -19,31 +19,36 @@ package ca.sqlpower.architect.diff;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ArchitectSession;
 import ca.sqlpower.architect.ArchitectUtils;
-import ca.sqlpower.dao.PersisterUtils;
-import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
 import ca.sqlpower.diff.DiffChunk;
 import ca.sqlpower.diff.DiffType;
 import ca.sqlpower.diff.PropertyChange;
 import ca.sqlpower.object.SPObjectUUIDComparator;
 import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLIndex;
 import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLRelationship;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.util.Monitorable;
+import ca.sqlpower.util.SQLPowerUtils;
 
 public class CompareSQL implements Monitorable {
 
@@ -63,6 +68,13 @@ public class CompareSQL implements Monitorable {
 	 */
     final static Comparator<SQLObject> uuidComparator = new SPObjectUUIDComparator<SQLObject>();
 
+    /**
+     * The number of threads that compare pairs of matching tables. The tables
+     * are all populated before they are compared, so comparing them is just
+     * work for the processors.
+     */
+    private static final int DIFF_THREADS = Runtime.getRuntime().availableProcessors();
+
 	/**
 	 * The source tables that this compare object will use when asked
 	 * to generate diffs.
@@ -175,169 +187,232 @@ public class CompareSQL implements Monitorable {
 	}
 	
 	public List<DiffChunk<SQLObject>> generateTableDiffs(ArchitectSession session) throws SQLObjectException {
+	    generateTableDiffs(session, new DiffChunkListener() {
+	        public void chunksGenerated(List<DiffChunk<SQLObject>> chunks) {
+	            results.addAll(chunks);
+	        }
+	    });
+	    return results;
+	}
+
+	/**
+	 * Compares the tables and gives the differences to the listener as soon
+	 * as each table is done, so nothing has to hold on to all of them. The
+	 * chunks come in the order {@link #generateTableDiffs()} returns them in.
+	 * 
+	 * @param session
+	 *            The session to set up the upstream types of the tables with,
+	 *            or null to leave the tables' types alone.
+	 * @param listener
+	 *            Receives the chunks, on the thread calling this method.
+	 */
+	public void generateTableDiffs(ArchitectSession session, DiffChunkListener listener) throws SQLObjectException {
 		setStarted(true);
 		setFinished(false);
+		ExecutorService diffExecutor = Executors.newFixedThreadPool(DIFF_THREADS);
 	    try {
+	        populateTables(session, diffExecutor);
+
+	        // One task per step of the walk through the two sorted table sets, so
+	        // the results go out in the same order no matter which pairs of
+	        // tables finish comparing first.
+	        List<Callable<List<DiffChunk<SQLObject>>>> tableTasks =
+	            new ArrayList<Callable<List<DiffChunk<SQLObject>>>>();
 			Iterator<SQLTable> sourceIter = sourceTableSet.iterator();
 			Iterator<SQLTable> targetIter = targetTableSet.iterator();
-			SQLTable targetTable;
-			SQLTable sourceTable;
-			boolean sourceContinue;
-			boolean targetContinue;
-
-			//Checks if both lists of tables contain any tables at all, if they do
-			//the iterator is initialized for the list
-			if (sourceIter.hasNext()) {
-
-				sourceContinue = true;
-				sourceTable = sourceIter.next();
-				sourceTable.populate();
-			} else {
-				sourceContinue = false;
-				sourceTable = null;
-			}
-
-			if (targetIter.hasNext()) {
-				targetContinue = true;
-				targetTable = targetIter.next();
-				targetTable.populate();
-			} else {
-				targetContinue = false;
-				targetTable = null;
-			}
-
-			// Will loop until one or both the list reaches its last table
-			while (sourceContinue && targetContinue && !isCancelled()) {
-			    logger.debug("Generating table diffs for " + sourceTable.getName());
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
+			SQLTable sourceTable = sourceIter.hasNext() ? sourceIter.next() : null;
+			SQLTable targetTable = targetIter.hasNext() ? targetIter.next() : null;
+
+			while ((sourceTable != null || targetTable != null) && !isCancelled()) {
+			    int compareResult;
+			    if (sourceTable == null) {
+			        compareResult = 1;
+			    } else if (targetTable == null) {
+			        compareResult = -1;
+			    } else {
+			        compareResult = getObjectComparator().compare(sourceTable, targetTable);
 			    }
-			    DiffChunk<SQLObject> chunk = null;
-			    int compareResult = getObjectComparator().compare(sourceTable, targetTable);
 
-				// bring the source table up to the same level as the target
 				if (compareResult < 0) {
-					chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY);
-					incProgress(1, sourceTable, targetTable);
-					//results.addAll(generateColumnDiffs(sourceTable, null));
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					} else {
-						sourceContinue = false;
-
-					}
-				}
-
-				// bring the target table up to the same level as the source
-				if (compareResult > 0) {
-					chunk = new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY);
-					incProgress(1, sourceTable, targetTable);
-					// now don't do the columns it's already handled
-					//results.addAll(generateColumnDiffs(null, targetTable));
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-				}
-
-				if (compareResult == 0) {
-                    List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
-					if (changes.size() > 0) {
-						if (nameComparator.compare(sourceTable, targetTable) != 0) {
-							chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
-							chunk.setOriginalData(sourceTable);
-						} else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
-                            // If the remarks are the same, then don't generate SQL script
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
-                        } else {
-                            // If the remarks were changed, generate SQL script for that
-                            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
-                        }
-                        for (PropertyChange change : changes) {
-                            chunk.addPropertyChange(change);
-                        }
-                    } else {
-                        chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
-                    }
-                    incProgress(1, sourceTable, targetTable);
-                    List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
-                    if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
-                        results.add(chunk);
-                        results.addAll(columns);
-                    }
-					if (!targetIter.hasNext() && !sourceIter.hasNext())
-					{
-						targetContinue = false;
-						sourceContinue = false;
-					}
-					if (targetIter.hasNext()) {
-						targetTable = (SQLTable) targetIter.next();
-						targetTable.populate();
-					} else {
-						targetContinue = false;
-					}
-
-					if (sourceIter.hasNext()) {
-						sourceTable = (SQLTable) sourceIter.next();
-						sourceTable.populate();
-					}
-
-					else {
-						sourceContinue = false;
-					}
+				    tableTasks.add(new SingleChunkTask(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY)));
+				    incProgress(1, sourceTable, null);
+				    sourceTable = sourceIter.hasNext() ? sourceIter.next() : null;
+				} else if (compareResult > 0) {
+				    tableTasks.add(new SingleChunkTask(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY)));
+				    incProgress(1, null, targetTable);
+				    targetTable = targetIter.hasNext() ? targetIter.next() : null;
 				} else {
-				    // If we are adding column diffs, the table diff must be in the list first.
-				    // If we are not generating column diffs, we have waited until now to add the chunk.
-				    results.add(chunk);
+				    tableTasks.add(new TablePairTask(sourceTable, targetTable));
+				    sourceTable = sourceIter.hasNext() ? sourceIter.next() : null;
+				    targetTable = targetIter.hasNext() ? targetIter.next() : null;
 				}
+			}
 
+			List<Future<List<DiffChunk<SQLObject>>>> tableDiffs =
+			    new ArrayList<Future<List<DiffChunk<SQLObject>>>>();
+			for (Callable<List<DiffChunk<SQLObject>>> task : tableTasks) {
+			    tableDiffs.add(diffExecutor.submit(task));
 			}
-			// If any tables in the sourceList still exist, the changes are added
-			while (sourceContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(sourceTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(sourceTable, DiffType.LEFTONLY));
-				incProgress(1, sourceTable, null);
-				//results.addAll(generateColumnDiffs(sourceTable, null));
-				if (sourceIter.hasNext()) {
-					sourceTable = (SQLTable) sourceIter.next();
-					sourceTable.populate();
-				} else {
-					sourceContinue = false;
-				}
+			for (Future<List<DiffChunk<SQLObject>>> tableDiff : tableDiffs) {
+			    fireChunksGenerated(listener, getResult(tableDiff));
 			}
 
-			//If any remaining tables in the targetList still exist, they are now being added
-			while (targetContinue && !isCancelled()) {
-			    if (session != null) {
-			        ArchitectUtils.setUpstreamTypesInTable(targetTable, session);
-			    }
-				results.add(new DiffChunk<SQLObject>(targetTable, DiffType.RIGHTONLY));
-				incProgress(1, null, targetTable);
-
-				//results.addAll(generateColumnDiffs(null, targetTable));
-				if (targetIter.hasNext()) {
-					targetTable = (SQLTable) targetIter.next();
-					targetTable.populate();
-				} else {
-					targetContinue = false;
-				}
-			}
-			results.addAll(generateRelationshipDiffs(sourceTableSet, targetTableSet));
+			fireChunksGenerated(listener, generateRelationshipDiffs(sourceTableSet, targetTableSet));
 
 			if (compareIndex) {
-			    results.addAll(generateIndexDiffs(sourceTableSet, targetTableSet));
+			    fireChunksGenerated(listener, generateIndexDiffs(sourceTableSet, targetTableSet));
 			}
 		} finally {
+		    diffExecutor.shutdownNow();
 			setJobSize(null);
 			setFinished(true);
 		}
-		return results;
+	}
+
+	private void fireChunksGenerated(DiffChunkListener listener, List<DiffChunk<SQLObject>> chunks) {
+	    if (!chunks.isEmpty()) {
+	        listener.chunksGenerated(chunks);
+	    }
+	}
+
+	/**
+	 * Populates every table being compared before any of them are compared,
+	 * so the comparisons never go back to the database and can run on any
+	 * thread. Populating is mostly spent waiting on the server, so if the
+	 * source and target tables come from different databases the target
+	 * tables are populated on another thread at the same time as the source
+	 * tables.
+	 */
+	private void populateTables(final ArchitectSession session, ExecutorService executor) throws SQLObjectException {
+	    Future<Void> targetPopulated = null;
+	    if (isFromDifferentDatabases()) {
+	        targetPopulated = executor.submit(new Callable<Void>() {
+	            public Void call() throws SQLObjectException {
+	                populateTables(targetTableSet, session);
+	                return null;
+	            }
+	        });
+	    } else {
+	        populateTables(targetTableSet, session);
+	    }
+	    populateTables(sourceTableSet, session);
+	    if (targetPopulated != null) {
+	        getResult(targetPopulated);
+	    }
+	}
+
+	private void populateTables(Collection<SQLTable> tables, ArchitectSession session) throws SQLObjectException {
+	    for (SQLTable table : tables) {
+	        if (isCancelled()) return;
+	        table.populate();
+	        if (session != null) {
+	            ArchitectUtils.setUpstreamTypesInTable(table, session);
+	        }
+	    }
+	}
+
+	/**
+	 * Returns true if the source and target tables belong to two different
+	 * databases, which don't share connections or listeners.
+	 */
+	private boolean isFromDifferentDatabases() {
+	    if (sourceTableSet.isEmpty() || targetTableSet.isEmpty()) return false;
+	    SQLDatabase sourceDB = SQLPowerUtils.getAncestor(sourceTableSet.first(), SQLDatabase.class);
+	    SQLDatabase targetDB = SQLPowerUtils.getAncestor(targetTableSet.first(), SQLDatabase.class);
+	    return sourceDB != null && targetDB != null && sourceDB != targetDB;
+	}
+
+	/**
+	 * Waits for the given task and returns its result, rethrowing anything it
+	 * threw as it was thrown.
+	 */
+	private static <T> T getResult(Future<T> future) throws SQLObjectException {
+	    try {
+	        return future.get();
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	        throw new SQLObjectException("Interrupted while comparing tables", e);
+	    } catch (ExecutionException e) {
+	        Throwable cause = e.getCause();
+	        if (cause instanceof SQLObjectException) {
+	            throw (SQLObjectException) cause;
+	        } else if (cause instanceof RuntimeException) {
+	            throw (RuntimeException) cause;
+	        } else if (cause instanceof Error) {
+	            throw (Error) cause;
+	        }
+	        throw new SQLObjectException("Error comparing tables", cause);
+	    }
+	}
+
+	/**
+	 * The diff for a table that is only on one side of the comparison.
+	 */
+	private static class SingleChunkTask implements Callable<List<DiffChunk<SQLObject>>> {
+
+	    private final DiffChunk<SQLObject> chunk;
+
+	    SingleChunkTask(DiffChunk<SQLObject> chunk) {
+	        this.chunk = chunk;
+	    }
+
+	    public List<DiffChunk<SQLObject>> call() {
+	        return Collections.singletonList(chunk);
+	    }
+	}
+
+	/**
+	 * Compares the properties and columns of two populated tables that match
+	 * each other. The chunk for the table comes first, followed by the chunks
+	 * for its columns.
+	 */
+	private class TablePairTask implements Callable<List<DiffChunk<SQLObject>>> {
+
+	    private final SQLTable sourceTable;
+	    private final SQLTable targetTable;
+
+	    TablePairTask(SQLTable sourceTable, SQLTable targetTable) {
+	        this.sourceTable = sourceTable;
+	        this.targetTable = targetTable;
+	    }
+
+	    public List<DiffChunk<SQLObject>> call() throws SQLObjectException {
+	        if (isCancelled()) return Collections.emptyList();
+	        if (suppressSimilarities && !useUUID && TableDigest.isSame(sourceTable, targetTable)) {
+	            // nothing in the table would be reported
+	            incProgress(1, sourceTable, targetTable);
+	            return Collections.emptyList();
+	        }
+	        logger.debug("Generating table diffs for " + sourceTable.getName());
+	        DiffChunk<SQLObject> chunk;
+	        List<PropertyChange> changes = generatePropertyChanges(sourceTable, targetTable);
+	        if (changes.size() > 0) {
+	            if (nameComparator.compare(sourceTable, targetTable) != 0) {
+	                chunk = new DiffChunk<SQLObject>(targetTable, DiffType.NAME_CHANGED);
+	                chunk.setOriginalData(sourceTable);
+	            } else if (!StringUtils.equals(sourceTable.getRemarks(), targetTable.getRemarks())) {
+	                // If the remarks are the same, then don't generate SQL script
+	                chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SQL_MODIFIED);
+	            } else {
+	                // If the remarks were changed, generate SQL script for that
+	                chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.MODIFIED);
+	            }
+	            for (PropertyChange change : changes) {
+	                chunk.addPropertyChange(change);
+	            }
+	        } else {
+	            chunk = new DiffChunk<SQLObject>(sourceTable, DiffType.SAME);
+	        }
+	        List<DiffChunk<SQLObject>> columns = generateColumnDiffs(sourceTable, targetTable);
+	        incProgress(1, sourceTable, targetTable);
+
+	        List<DiffChunk<SQLObject>> diffs = new ArrayList<DiffChunk<SQLObject>>();
+	        if (!(chunk.getType() == DiffType.SAME && suppressSimilarities) || columns.size() > 0) {
+	            diffs.add(chunk);
+	            diffs.addAll(columns);
+	        }
+	        return diffs;
+	    }
 	}
 
     private List<DiffChunk<SQLObject>> generateRelationshipDiffs(
@@ -808,41 +883,14 @@ public class CompareSQL implements Monitorable {
 	
 
 	/**
-     * This method gets two lists of interesting properties, and compares them against each other
+     * This method compares the interesting properties of the two objects
      * to generate a list of PropertyChange.
+     *
+     * @see PropertyDiffer
      */
 	private List<PropertyChange> generatePropertyChanges(SQLObject sourceObject, SQLObject targetObject)
 	throws SQLObjectException {
-	    
-
-	    List<PropertyChange> changes = new ArrayList<PropertyChange>();
-	    
-
-	    try {
-	        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, sourceObject);
-	        Map<String, Object> sourceProperties = PersisterUtils.getInterestingProperties(sourceObject, converter);
-	        converter = new SessionPersisterSuperConverter(null, targetObject);
-	        Map<String, Object> targetProperties = PersisterUtils.getInterestingProperties(targetObject, converter);
-	        
-
-	        Iterator<String> i = sourceProperties.keySet().iterator();
-	        while (i.hasNext()) {
-	            String propertyName = i.next();
-	            String oldValue = String.valueOf(sourceProperties.get(propertyName));
-	            String newValue = String.valueOf(targetProperties.get(propertyName));
-	            if (oldValue.equals("")) oldValue = "null";
-	            if (newValue.equals("")) newValue = "null";
-	            if (!oldValue.equals(newValue)) {
-	                logger.debug(propertyName + "differs");
-	                changes.add(new PropertyChange(propertyName, oldValue, newValue));
-	            }
-	        }
-	    } catch (Exception e) {
-	        throw new SQLObjectException("Error generating property diffs", e);
-	    }
-	    
-
-	    return changes;
+	    return PropertyDiffer.generatePropertyChanges(sourceObject, targetObject);
 	}
 
 	private Comparator<SQLObject> getObjectComparator() {
@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.util.EventListener;
+import java.util.List;
+
+import ca.sqlpower.diff.DiffChunk;
+import ca.sqlpower.sqlobject.SQLObject;
+
+/**
+ * Interface for receiving the results of a {@link CompareSQL} as they are
+ * found, instead of all at once when the comparison is done.
+ */
+public interface DiffChunkListener extends EventListener {
+
+    /**
+     * Some more chunks were found. The chunks come in the same order
+     * {@link CompareSQL#generateTableDiffs()} returns them in, on the thread
+     * doing the comparison. A table and its columns always come in the same
+     * call.
+     */
+    public void chunksGenerated(List<DiffChunk<SQLObject>> chunks);
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.dao.PersisterUtils;
+import ca.sqlpower.dao.session.SessionPersisterSuperConverter;
+import ca.sqlpower.diff.PropertyChange;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLObjectException;
+
+/**
+ * Finds the differences between the interesting properties of two SQL objects
+ * of the same class. The property names and their getters are looked up once
+ * per class and kept, and properties whose values are plainly equal are not
+ * converted to strings at all. Only properties that might differ go through
+ * the session persister's converter, so the {@link PropertyChange}s are the
+ * same ones a comparison of the full property maps would give.
+ */
+class PropertyDiffer {
+
+    private static final Logger logger = Logger.getLogger(PropertyDiffer.class);
+
+    private static final ConcurrentMap<Class<?>, PropertyDiffer> differs =
+        new ConcurrentHashMap<Class<?>, PropertyDiffer>();
+
+    /**
+     * Returns the differences between the interesting properties of the two
+     * objects, in the order the persister lists the properties.
+     */
+    static List<PropertyChange> generatePropertyChanges(SQLObject sourceObject, SQLObject targetObject)
+    throws SQLObjectException {
+        try {
+            if (sourceObject.getClass() != targetObject.getClass()) {
+                return compareAllProperties(sourceObject, targetObject);
+            }
+            PropertyDiffer differ = getDiffer(sourceObject);
+            if (differ.getters == null) {
+                return compareAllProperties(sourceObject, targetObject);
+            }
+            return differ.diff(sourceObject, targetObject);
+        } catch (SQLObjectException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLObjectException("Error generating property diffs", e);
+        }
+    }
+
+    /**
+     * Returns the names and string forms of the interesting properties of the
+     * given object, alternating name and value. Values are in the form they
+     * are compared in, so two objects with the same list have no property
+     * changes between them.
+     */
+    static List<String> getPropertyStrings(SQLObject o) throws SQLObjectException {
+        try {
+            List<String> strings = new ArrayList<String>();
+            PropertyDiffer differ = getDiffer(o);
+            SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, o);
+            if (differ.getters == null) {
+                Map<String, Object> properties = PersisterUtils.getInterestingProperties(o, converter);
+                for (Map.Entry<String, Object> property : properties.entrySet()) {
+                    strings.add(property.getKey());
+                    strings.add(toComparedString(property.getValue()));
+                }
+            } else {
+                for (int i = 0; i < differ.getters.length; i++) {
+                    strings.add(differ.propertyNames[i]);
+                    strings.add(toComparedString(converter.convertToBasicType(differ.getters[i].invoke(o))));
+                }
+            }
+            return strings;
+        } catch (SQLObjectException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new SQLObjectException("Error reading the properties of " + o, e);
+        }
+    }
+
+    private static PropertyDiffer getDiffer(SQLObject o) throws Exception {
+        PropertyDiffer differ = differs.get(o.getClass());
+        if (differ == null) {
+            differ = new PropertyDiffer(o);
+            PropertyDiffer existing = differs.putIfAbsent(o.getClass(), differ);
+            if (existing != null) {
+                differ = existing;
+            }
+        }
+        return differ;
+    }
+
+    /**
+     * Compares every interesting property of the two objects by its string
+     * form, the way the differ does for properties it can't show are equal.
+     */
+    static List<PropertyChange> compareAllProperties(SQLObject sourceObject, SQLObject targetObject)
+    throws Exception {
+        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, sourceObject);
+        Map<String, Object> sourceProperties = PersisterUtils.getInterestingProperties(sourceObject, converter);
+        converter = new SessionPersisterSuperConverter(null, targetObject);
+        Map<String, Object> targetProperties = PersisterUtils.getInterestingProperties(targetObject, converter);
+
+        List<PropertyChange> changes = new ArrayList<PropertyChange>();
+        for (String propertyName : sourceProperties.keySet()) {
+            addChange(changes, propertyName, sourceProperties.get(propertyName), targetProperties.get(propertyName));
+        }
+        return changes;
+    }
+
+    /**
+     * Adds a change to the list if the given converted values differ.
+     */
+    private static void addChange(List<PropertyChange> changes, String propertyName,
+            Object sourceValue, Object targetValue) {
+        String oldValue = toComparedString(sourceValue);
+        String newValue = toComparedString(targetValue);
+        if (!oldValue.equals(newValue)) {
+            logger.debug(propertyName + "differs");
+            changes.add(new PropertyChange(propertyName, oldValue, newValue));
+        }
+    }
+
+    /**
+     * Returns the string a converted property value is compared by. Empty
+     * strings and nulls are taken as the same value.
+     */
+    private static String toComparedString(Object value) {
+        String string = String.valueOf(value);
+        if (string.equals("")) return "null";
+        return string;
+    }
+
+    /**
+     * Returns true if the two property values are certain to convert to the
+     * same string. Only values of immutable types whose equals() compares by
+     * value are checked; anything else has to be converted to be compared.
+     */
+    private static boolean isSameValue(Object sourceValue, Object targetValue) {
+        if (sourceValue == targetValue) return true;
+        if (sourceValue == null || targetValue == null) return false;
+        if (sourceValue.getClass() != targetValue.getClass()) return false;
+        if (sourceValue instanceof String || sourceValue instanceof Number ||
+                sourceValue instanceof Boolean || sourceValue instanceof Character ||
+                sourceValue instanceof Enum<?>) {
+            return sourceValue.equals(targetValue);
+        }
+        return false;
+    }
+
+    /**
+     * The interesting property names of the class, in the order the persister
+     * gave them.
+     */
+    private final String[] propertyNames;
+
+    /**
+     * The getter for each property in {@link #propertyNames}, or null if one
+     * of them could not be found. In that case the objects of this class are
+     * compared by their full property maps.
+     */
+    private final Method[] getters;
+
+    private PropertyDiffer(SQLObject example) throws Exception {
+        SessionPersisterSuperConverter converter = new SessionPersisterSuperConverter(null, example);
+        Set<String> names = PersisterUtils.getInterestingProperties(example, converter).keySet();
+        propertyNames = names.toArray(new String[names.size()]);
+
+        Map<String, Method> readMethods = new HashMap<String, Method>();
+        for (PropertyDescriptor pd : Introspector.getBeanInfo(example.getClass()).getPropertyDescriptors()) {
+            if (pd.getReadMethod() != null) {
+                readMethods.put(pd.getName(), pd.getReadMethod());
+            }
+        }
+
+        Method[] methods = new Method[propertyNames.length];
+        for (int i = 0; i < propertyNames.length; i++) {
+            methods[i] = readMethods.get(propertyNames[i]);
+            if (methods[i] == null) {
+                logger.debug("No getter for " + example.getClass().getName() + "." + propertyNames[i] +
+                        ", comparing all its properties instead");
+                methods = null;
+                break;
+            }
+            methods[i].setAccessible(true);
+        }
+        getters = methods;
+    }
+
+    private List<PropertyChange> diff(SQLObject sourceObject, SQLObject targetObject) throws Exception {
+        List<PropertyChange> changes = new ArrayList<PropertyChange>();
+        SessionPersisterSuperConverter sourceConverter = null;
+        SessionPersisterSuperConverter targetConverter = null;
+        for (int i = 0; i < getters.length; i++) {
+            Object sourceValue = getters[i].invoke(sourceObject);
+            Object targetValue = getters[i].invoke(targetObject);
+            if (isSameValue(sourceValue, targetValue)) continue;
+
+            if (sourceConverter == null) {
+                sourceConverter = new SessionPersisterSuperConverter(null, sourceObject);
+                targetConverter = new SessionPersisterSuperConverter(null, targetObject);
+            }
+            addChange(changes, propertyNames[i],
+                    sourceConverter.convertToBasicType(sourceValue),
+                    targetConverter.convertToBasicType(targetValue));
+        }
+        return changes;
+    }
+}
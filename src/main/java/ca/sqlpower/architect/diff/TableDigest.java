@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.diff;
+
+import java.beans.PropertyChangeEvent;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.object.SPObject;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * A digest of the contents of a table: its interesting properties, the
+ * properties of its columns and which columns are in the primary key, and
+ * the definitions of its indices. Two tables with the same digest compare
+ * the same in a {@link CompareSQL} by name, so a comparison can skip them
+ * without looking at their columns.
+ * <p>
+ * Digests are kept for each table once they are found, and are thrown away
+ * as soon as the table or anything in it fires an event. Relationships are
+ * not part of the digest; they are compared separately and are added to the
+ * tables after the tables themselves when a project is loaded.
+ * <p>
+ * The digests are saved with the tables in the project file, so a table
+ * loaded from a file has its digest without having to read its columns.
+ */
+public class TableDigest {
+
+    /**
+     * Changes whenever the contents of the digest change, so digests saved
+     * by an older version are never taken to match.
+     */
+    private static final String VERSION = "1"; //$NON-NLS-1$
+
+    /**
+     * The digest of each table that has one. The values do not refer to the
+     * tables, so a table can be collected once nothing else refers to it.
+     */
+    private static final Map<SQLTable, Entry> digests = new WeakHashMap<SQLTable, Entry>();
+
+    /**
+     * The digest of one table and the listener that clears it.
+     */
+    private static class Entry extends AbstractSPListener {
+
+        private String digest;
+
+        /**
+         * Counts the changes to the table, so a digest that was being found
+         * while the table changed is not kept.
+         */
+        private int changeCount;
+
+        private synchronized void clear() {
+            digest = null;
+            changeCount++;
+        }
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            clear();
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            if (isRelationship(e.getChild())) return;
+            clear();
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            if (isRelationship(e.getChild())) return;
+            clear();
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+        }
+
+        private static boolean isRelationship(SPObject o) {
+            return o instanceof SQLRelationship || o instanceof SQLRelationship.SQLImportedKey;
+        }
+    }
+
+    private TableDigest() {
+        // static utility class
+    }
+
+    /**
+     * Returns the digest of the given table, finding it if the table does
+     * not have one yet. This populates the table.
+     */
+    public static String getDigest(SQLTable table) throws SQLObjectException {
+        Entry entry = getEntry(table);
+        int changeCount;
+        synchronized (entry) {
+            if (entry.digest != null) return entry.digest;
+            changeCount = entry.changeCount;
+        }
+        String digest = computeDigest(table);
+        synchronized (entry) {
+            if (entry.changeCount == changeCount) {
+                entry.digest = digest;
+            }
+        }
+        return digest;
+    }
+
+    /**
+     * Returns the digest the given table already has, or null if it has none.
+     * This never populates the table.
+     */
+    public static String getCachedDigest(SQLTable table) {
+        Entry entry;
+        synchronized (digests) {
+            entry = digests.get(table);
+        }
+        if (entry == null) return null;
+        synchronized (entry) {
+            return entry.digest;
+        }
+    }
+
+    /**
+     * Gives the table the digest it was saved with. It is kept until the
+     * table changes.
+     */
+    public static void setDigest(SQLTable table, String digest) {
+        Entry entry = getEntry(table);
+        synchronized (entry) {
+            entry.digest = digest;
+        }
+    }
+
+    /**
+     * Returns the entry for the given table, creating it and starting to
+     * listen to the table if it has none.
+     */
+    private static Entry getEntry(SQLTable table) {
+        synchronized (digests) {
+            Entry entry = digests.get(table);
+            if (entry == null) {
+                entry = new Entry();
+                digests.put(table, entry);
+                SQLPowerUtils.listenToHierarchy(table, entry);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Returns true if the two tables have the same digest.
+     */
+    public static boolean isSame(SQLTable source, SQLTable target) throws SQLObjectException {
+        return getDigest(source).equals(getDigest(target));
+    }
+
+    /**
+     * Finds the digest of the given table from its contents.
+     */
+    static String computeDigest(SQLTable table) throws SQLObjectException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        update(md, VERSION);
+        update(md, "table"); //$NON-NLS-1$
+        update(md, table.getName());
+        update(md, table.getPhysicalName());
+        update(md, PropertyDiffer.getPropertyStrings(table));
+        for (SQLColumn column : table.getColumns()) {
+            // the names are what CompareSQL matches columns by
+            update(md, "column"); //$NON-NLS-1$
+            update(md, column.getName());
+            update(md, column.getPhysicalName());
+            update(md, PropertyDiffer.getPropertyStrings(column));
+            update(md, String.valueOf(column.isPrimaryKey()));
+        }
+        for (SQLIndex index : table.getIndices()) {
+            update(md, "index"); //$NON-NLS-1$
+            update(md, index.getName());
+            update(md, index.getType());
+            update(md, index.getQualifier());
+            update(md, index.getFilterCondition());
+            update(md, String.valueOf(index.isUnique()));
+            update(md, String.valueOf(index.isClustered()));
+            update(md, String.valueOf(index.isPrimaryKeyIndex()));
+            for (SQLIndex.Column column : index.getChildren(SQLIndex.Column.class)) {
+                update(md, column.getName());
+                update(md, String.valueOf(column.getAscendingOrDescending()));
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : md.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+            hex.append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static void update(MessageDigest md, List<String> strings) {
+        updateLength(md, strings.size());
+        for (String s : strings) {
+            update(md, s);
+        }
+    }
+
+    /**
+     * Adds a string to the digest along with its length, so the boundaries
+     * between strings are part of the digest too.
+     */
+    private static void update(MessageDigest md, String s) {
+        if (s == null) {
+            md.update((byte) 0xff);
+            return;
+        }
+        try {
+            byte[] bytes = s.getBytes("UTF-8"); //$NON-NLS-1$
+            updateLength(md, bytes.length);
+            md.update(bytes);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void updateLength(MessageDigest md, int length) {
+        md.update((byte) (length >>> 24));
+        md.update((byte) (length >>> 16));
+        md.update((byte) (length >>> 8));
+        md.update((byte) length);
+    }
+}
@@ -0,0 +1,690 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.layout;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A force directed layout with the same forces as
+ * {@link FruchtermanReingoldForceLayout} that stays fast for play pens with
+ * thousands of tables.
+ * <p>
+ * Instead of pushing every pair of tables apart, the tables are put in a
+ * quadtree each frame and a table is pushed away from far off groups of
+ * tables as a whole, from the group's centre (the Barnes-Hut approximation).
+ * That takes a frame from O(n<sup>2</sup>) to O(n log n). The positions and
+ * movements are kept in arrays of doubles, so nothing is rounded until the
+ * tables are moved at the end of a frame and nothing is allocated per table
+ * per frame. For large layouts the pushes on each table are added up on
+ * several threads.
+ * <p>
+ * Tables without relationships are laid out in a grid along the bottom of
+ * the layout area, as the other force layout does.
+ */
+public class BarnesHutForceLayout extends AbstractLayout {
+
+    private static final Logger logger = Logger.getLogger(BarnesHutForceLayout.class);
+
+    /**
+     * The number of threads the pushes between tables are added up on.
+     */
+    private static final int LAYOUT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The fewest tables worth laying out on several threads. Smaller
+     * layouts are faster on one.
+     */
+    private static final int MIN_PARALLEL_NODES = 256;
+
+    /**
+     * How far away a group of tables has to be, relative to the size of its
+     * cell in the quadtree, before it pushes as a whole. Smaller is more
+     * accurate and slower; 0 pushes every pair of tables apart.
+     */
+    private static final double THETA = 0.7;
+
+    /**
+     * Tables whose centres are closer than this stop being split into
+     * separate cells of the quadtree.
+     */
+    private static final double MIN_CELL_SIZE = 1.0;
+
+    /**
+     * Spacing multiplier
+     */
+    private static final double SPACING_MULTIPLIER = 2;
+
+    /**
+     * How strongly tables push each other away, per pixel of their sizes.
+     */
+    private static final double BASE_FORCE = .1;
+
+    /**
+     * Tables further apart than this many empty radii do not push each
+     * other.
+     */
+    private static final double CUTOFF_RADII = 5;
+
+    private static final int ORPHAN_BUFFER = 50;
+
+    private List<LayoutNode> nodes;
+
+    private List<LayoutNode> orphanedTables;
+
+    /**
+     * The centre, width, height and width plus height of each node, by its
+     * index in {@link #nodes}.
+     */
+    private double[] x, y, width, height, size;
+
+    /**
+     * The movement of each node in this frame.
+     */
+    private double[] dx, dy;
+
+    /**
+     * The location each node was last moved to, so nodes that end up at the
+     * same pixel are not moved again.
+     */
+    private int[] shownX, shownY;
+
+    /**
+     * The node indices of the ends of each relationship.
+     */
+    private int[] edgeTails, edgeHeads;
+
+    private final QuadTree tree = new QuadTree();
+
+    /**
+     * The radius that is kept clear
+     */
+    private double k;
+
+    /**
+     * The maximum movement
+     */
+    private double temp;
+
+    /**
+     * The number of frames in a row that are considered stopped
+     */
+    private int stoppedFrames;
+
+    /**
+     * The amount of movement at the begining of the frame
+     * or away from the edge of the playpen
+     */
+    private int baseLineJitter;
+
+    /**
+     * Used to be able to stop the algoithm prematurely
+     */
+    private boolean overrideDone;
+
+    private int frameNum;
+
+    private final Random random;
+
+    /**
+     * Adds up the pushes on the nodes for large layouts. This is made on the
+     * first frame that needs it and shut down when the layout is done.
+     */
+    private ExecutorService executor;
+
+    /**
+     * The search stack of each part of the nodes the pushes are added up
+     * for in parallel.
+     */
+    private int[][] stacks = new int[0][];
+
+    public BarnesHutForceLayout() {
+        this(new Random());
+    }
+
+    /**
+     * Creates a layout whose jitter comes from the given random number
+     * generator, so the tests can lay out the same way every time.
+     */
+    BarnesHutForceLayout(Random random) {
+        this.random = random;
+    }
+
+    @Override
+    public void setup(Collection<? extends LayoutNode> nodes, Collection<? extends LayoutEdge> edges, Rectangle frame) {
+        this.frame = new Rectangle(frame);
+        this.nodes = new ArrayList<LayoutNode>();
+        orphanedTables = new ArrayList<LayoutNode>();
+        for (LayoutNode node : nodes) {
+            if (node.getOutboundEdges().size() == 0 && node.getInboundEdges().size() == 0) {
+                orphanedTables.add(node);
+            } else {
+                this.nodes.add(node);
+            }
+        }
+
+        int n = this.nodes.size();
+        x = new double[n];
+        y = new double[n];
+        width = new double[n];
+        height = new double[n];
+        size = new double[n];
+        dx = new double[n];
+        dy = new double[n];
+        shownX = new int[n];
+        shownY = new int[n];
+        Map<LayoutNode, Integer> indices = new IdentityHashMap<LayoutNode, Integer>();
+        Rectangle b = new Rectangle();
+        double totalSize = 0;
+        for (int i = 0; i < n; i++) {
+            LayoutNode node = this.nodes.get(i);
+            indices.put(node, Integer.valueOf(i));
+            node.getBounds(b);
+            width[i] = b.width;
+            height[i] = b.height;
+            size[i] = b.width + b.height;
+            x[i] = b.x + b.width / 2.0;
+            y[i] = b.y + b.height / 2.0;
+            shownX[i] = b.x;
+            shownY[i] = b.y;
+            totalSize += size[i];
+        }
+
+        List<int[]> edgeEnds = new ArrayList<int[]>();
+        for (LayoutEdge e : edges) {
+            Integer tail = indices.get(e.getTailNode());
+            Integer head = indices.get(e.getHeadNode());
+            if (tail != null && head != null && tail.intValue() != head.intValue()) {
+                edgeEnds.add(new int[] { tail.intValue(), head.intValue() });
+            }
+        }
+        edgeTails = new int[edgeEnds.size()];
+        edgeHeads = new int[edgeEnds.size()];
+        for (int e = 0; e < edgeEnds.size(); e++) {
+            edgeTails[e] = edgeEnds.get(e)[0];
+            edgeHeads[e] = edgeEnds.get(e)[1];
+        }
+
+        baseLineJitter = 10;
+        temp = 1000 * nodes.size();
+        stoppedFrames = 0;
+        frameNum = 0;
+        overrideDone = false;
+        k = n == 0 ? 0 : totalSize / n * SPACING_MULTIPLIER;
+    }
+
+    /**
+     * Checks and sees if the program stops
+     */
+    public boolean isDone() {
+        return stoppedFrames > 5 || (nodes.size() + orphanedTables.size() < 2) || overrideDone;
+    }
+
+    public void done() {
+        overrideDone = true;
+        shutdownExecutor();
+    }
+
+    /**
+     * Performs the next step of the layout
+     */
+    public void nextFrame() {
+        if (frameNum == 0) {
+            placeOrphans();
+        }
+
+        int n = nodes.size();
+        if (n > 0 && !isDone()) {
+            for (int i = 0; i < n; i++) {
+                dx[i] = random.nextDouble() * baseLineJitter - baseLineJitter / 2.0;
+                dy[i] = random.nextDouble() * baseLineJitter - baseLineJitter / 2.0;
+            }
+
+            tree.build(x, y, size, n);
+            if (n >= MIN_PARALLEL_NODES && LAYOUT_THREADS > 1) {
+                addRepulsionInParallel(n);
+            } else {
+                stacks = ensureStacks(1);
+                tree.addRepulsion(0, n, dx, dy, k, stacks[0]);
+            }
+            addAttraction();
+
+            if (moveNodes()) {
+                stoppedFrames++;
+            }
+        }
+        temp = temp / 1.1;
+        frameNum++;
+
+        if (isDone()) {
+            shutdownExecutor();
+        }
+    }
+
+    /**
+     * Lays the tables without relationships out in a grid along the bottom
+     * of the frame, and leaves the rest of the frame to the other tables.
+     */
+    private void placeOrphans() {
+        ArchitectGridLayout gl = new ArchitectGridLayout();
+        gl.setup(orphanedTables, Collections.<LayoutEdge>emptyList(), frame);
+        gl.done();
+
+        int maxy = 0;
+        for (LayoutNode tp : orphanedTables) {
+            maxy = Math.max(tp.getY() + tp.getHeight(), maxy);
+        }
+        int orphanStartY = frame.height - maxy;
+        logger.debug("max y is " + maxy + ". orphanStartY is " + orphanStartY);
+        for (LayoutNode tp : orphanedTables) {
+            tp.setLocation(tp.getX(), tp.getY() + orphanStartY);
+        }
+        frame.height -= maxy + ORPHAN_BUFFER;
+    }
+
+    /**
+     * Splits the nodes into contiguous parts and adds up the pushes on each
+     * part on its own thread. Each part only writes the movements of its
+     * own nodes, and the quadtree is only read.
+     */
+    private void addRepulsionInParallel(final int n) {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(LAYOUT_THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "Auto layout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        int partCount = LAYOUT_THREADS * 4;
+        stacks = ensureStacks(partCount);
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        for (int p = 0; p < partCount; p++) {
+            final int from = (int) ((long) n * p / partCount);
+            final int to = (int) ((long) n * (p + 1) / partCount);
+            final int[] stack = stacks[p];
+            futures.add(executor.submit(new Callable<Object>() {
+                public Object call() {
+                    tree.addRepulsion(from, to, dx, dy, k, stack);
+                    return null;
+                }
+            }));
+        }
+        for (Future<Object> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during auto layout", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+    }
+
+    /**
+     * Returns at least the given number of search stacks, each big enough
+     * for the current quadtree.
+     */
+    private int[][] ensureStacks(int count) {
+        int[][] newStacks = stacks;
+        if (newStacks.length < count) {
+            newStacks = new int[count][];
+            System.arraycopy(stacks, 0, newStacks, 0, stacks.length);
+        }
+        for (int s = 0; s < count; s++) {
+            if (newStacks[s] == null || newStacks[s].length < tree.getMaxStackSize()) {
+                newStacks[s] = new int[tree.getMaxStackSize()];
+            }
+        }
+        return newStacks;
+    }
+
+    /**
+     * Pulls the ends of each relationship towards each other.
+     */
+    private void addAttraction() {
+        for (int e = 0; e < edgeTails.length; e++) {
+            int v = edgeTails[e];
+            int u = edgeHeads[e];
+            double deltaX = x[v] - x[u];
+            double deltaY = y[v] - y[u];
+            double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+            if (distance == 0) continue;
+            double force = distance * distance / k;
+            double moveX = 0.5 * deltaX / distance * force;
+            double moveY = 0.5 * deltaY / distance * force;
+            dx[v] -= moveX;
+            dy[v] -= moveY;
+            dx[u] += moveX;
+            dy[u] += moveY;
+        }
+    }
+
+    /**
+     * Moves every node by its movement, limited by the temperature and kept
+     * inside the frame.
+     *
+     * @return true if no node moved more than a couple of pixels
+     */
+    private boolean moveNodes() {
+        boolean done = true;
+        double right = frame.x + frame.width;
+        double bottom = frame.y + frame.height;
+        for (int i = 0; i < nodes.size(); i++) {
+            double distance = Math.sqrt(dx[i] * dx[i] + dy[i] * dy[i]);
+            double newX = x[i];
+            double newY = y[i];
+            if (distance > 0) {
+                double step = Math.min(distance, temp);
+                newX += dx[i] / distance * step;
+                newY += dy[i] / distance * step;
+            }
+
+            double xJitter = Math.round(random.nextDouble() * baseLineJitter);
+            double yJitter = Math.round(random.nextDouble() * baseLineJitter);
+            double left = Math.min(Math.max(frame.x + xJitter, newX - width[i] / 2),
+                    right - width[i] - xJitter);
+            double top = Math.min(Math.max(frame.y + yJitter, newY - height[i] / 2),
+                    bottom - height[i] - yJitter);
+            newX = left + width[i] / 2;
+            newY = top + height[i] / 2;
+
+            double moveX = newX - x[i];
+            double moveY = newY - y[i];
+            if (moveX * moveX + moveY * moveY > 4) {
+                done = false;
+            }
+            x[i] = newX;
+            y[i] = newY;
+
+            int pixelX = (int) Math.round(left);
+            int pixelY = (int) Math.round(top);
+            if (pixelX != shownX[i] || pixelY != shownY[i]) {
+                shownX[i] = pixelX;
+                shownY[i] = pixelY;
+                nodes.get(i).setLocation(pixelX, pixelY);
+            }
+        }
+        return done;
+    }
+
+    private void shutdownExecutor() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * The radius that is kept clear around each table.
+     */
+    public double getK() {
+        return k;
+    }
+
+    public double getTemp() {
+        return temp;
+    }
+
+    /**
+     * A quadtree of the node centres, kept in arrays that are reused from
+     * frame to frame. Each cell knows how many nodes are in it, the sum of
+     * their sizes and the sum of their centres, so it can push on a node
+     * as if it were one big node. The tree can be searched by several
+     * threads at once once it is built.
+     */
+    private static final class QuadTree {
+
+        /**
+         * The body of a cell with no nodes.
+         */
+        private static final int EMPTY = -1;
+
+        /**
+         * The body of a cell that has been split into child cells.
+         */
+        private static final int INTERNAL = -2;
+
+        /**
+         * The body of a cell too small to split that has several nodes.
+         */
+        private static final int CROWDED = -3;
+
+        private int cellCount;
+
+        /**
+         * The centre and half the width of each cell.
+         */
+        private double[] centreX = new double[0], centreY = new double[0], half = new double[0];
+
+        /**
+         * The four child cells of each cell, or -1 where there is none.
+         */
+        private int[] children = new int[0];
+
+        /**
+         * The one node in each leaf cell, or one of {@link #EMPTY},
+         * {@link #INTERNAL} or {@link #CROWDED}.
+         */
+        private int[] body = new int[0];
+
+        private int[] count = new int[0];
+
+        private double[] sizeSum = new double[0], sumX = new double[0], sumY = new double[0];
+
+        private double[] x, y, size;
+
+        /**
+         * Puts the first n nodes in a new tree, forgetting the old one.
+         */
+        void build(double[] x, double[] y, double[] size, int n) {
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+            double side = Math.max(Math.max(maxX - minX, maxY - minY), MIN_CELL_SIZE) + 1;
+
+            cellCount = 0;
+            newCell((minX + maxX) / 2, (minY + maxY) / 2, side / 2);
+            for (int i = 0; i < n; i++) {
+                insert(0, i);
+            }
+        }
+
+        /**
+         * The biggest search stack {@link #addRepulsion} can need for the
+         * current tree.
+         */
+        int getMaxStackSize() {
+            return cellCount + 1;
+        }
+
+        private int newCell(double cx, double cy, double halfWidth) {
+            if (cellCount == body.length) {
+                int capacity = Math.max(16, body.length * 2);
+                centreX = grow(centreX, capacity);
+                centreY = grow(centreY, capacity);
+                half = grow(half, capacity);
+                sizeSum = grow(sizeSum, capacity);
+                sumX = grow(sumX, capacity);
+                sumY = grow(sumY, capacity);
+                int[] newBody = new int[capacity];
+                System.arraycopy(body, 0, newBody, 0, cellCount);
+                body = newBody;
+                int[] newCount = new int[capacity];
+                System.arraycopy(count, 0, newCount, 0, cellCount);
+                count = newCount;
+                int[] newChildren = new int[capacity * 4];
+                System.arraycopy(children, 0, newChildren, 0, cellCount * 4);
+                children = newChildren;
+            }
+            int c = cellCount++;
+            centreX[c] = cx;
+            centreY[c] = cy;
+            half[c] = halfWidth;
+            body[c] = EMPTY;
+            count[c] = 0;
+            sizeSum[c] = 0;
+            sumX[c] = 0;
+            sumY[c] = 0;
+            for (int q = 0; q < 4; q++) {
+                children[c * 4 + q] = -1;
+            }
+            return c;
+        }
+
+        private static double[] grow(double[] array, int capacity) {
+            double[] newArray = new double[capacity];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            return newArray;
+        }
+
+        /**
+         * Adds node i to cell c and to the cells under it that it falls in.
+         */
+        private void insert(int c, int i) {
+            while (true) {
+                count[c]++;
+                sizeSum[c] += size[i];
+                sumX[c] += x[i];
+                sumY[c] += y[i];
+                int b = body[c];
+                if (b == EMPTY) {
+                    body[c] = i;
+                    return;
+                } else if (b == CROWDED) {
+                    return;
+                } else if (b >= 0) {
+                    if (half[c] < MIN_CELL_SIZE) {
+                        body[c] = CROWDED;
+                        return;
+                    }
+                    body[c] = INTERNAL;
+                    insert(childFor(c, b), b);
+                }
+                c = childFor(c, i);
+            }
+        }
+
+        /**
+         * Returns the child of cell c that node i falls in, making it if
+         * there is none yet.
+         */
+        private int childFor(int c, int i) {
+            int q = (x[i] >= centreX[c] ? 1 : 0) + (y[i] >= centreY[c] ? 2 : 0);
+            int child = children[c * 4 + q];
+            if (child < 0) {
+                double h = half[c] / 2;
+                child = newCell(centreX[c] + ((q & 1) != 0 ? h : -h),
+                        centreY[c] + ((q & 2) != 0 ? h : -h), h);
+                children[c * 4 + q] = child;
+            }
+            return child;
+        }
+
+        /**
+         * Adds the pushes of the other nodes on the nodes from index
+         * <code>from</code> up to <code>to</code> to their movements.
+         */
+        void addRepulsion(int from, int to, double[] dx, double[] dy, double k, int[] stack) {
+            double cutoff = CUTOFF_RADII * k;
+            double kSquared = k * k;
+            for (int i = from; i < to; i++) {
+                double forceX = 0;
+                double forceY = 0;
+                int top = 0;
+                stack[top++] = 0;
+                while (top > 0) {
+                    int c = stack[--top];
+                    int b = body[c];
+                    if (b == EMPTY || b == i) continue;
+
+                    boolean inside = Math.abs(x[i] - centreX[c]) <= half[c]
+                            && Math.abs(y[i] - centreY[c]) <= half[c];
+                    int n = count[c];
+                    double sizes;
+                    double fromX, fromY;
+                    if (b >= 0) {
+                        sizes = size[i] + size[b];
+                        fromX = x[b];
+                        fromY = y[b];
+                    } else if (b == CROWDED && inside) {
+                        // the crowd without node i
+                        n--;
+                        if (n == 0) continue;
+                        sizes = n * size[i] + sizeSum[c] - size[i];
+                        fromX = (sumX[c] - x[i]) / n;
+                        fromY = (sumY[c] - y[i]) / n;
+                    } else {
+                        sizes = n * size[i] + sizeSum[c];
+                        fromX = sumX[c] / n;
+                        fromY = sumY[c] / n;
+                    }
+
+                    double deltaX = x[i] - fromX;
+                    double deltaY = y[i] - fromY;
+                    double distance = Math.sqrt(deltaX * deltaX + deltaY * deltaY);
+                    if (b == INTERNAL && (inside || half[c] * 2 >= THETA * distance)) {
+                        for (int q = 0; q < 4; q++) {
+                            int child = children[c * 4 + q];
+                            if (child >= 0) {
+                                stack[top++] = child;
+                            }
+                        }
+                        continue;
+                    }
+                    if (distance > 0 && distance < cutoff) {
+                        double force = BASE_FORCE * sizes * kSquared / (distance * distance);
+                        forceX += deltaX / distance * force;
+                        forceY += deltaY / distance * force;
+                    }
+                }
+                dx[i] += forceX;
+                dy[i] += forceY;
+            }
+        }
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Collects the statistics for one column as values are fed to it one row at a
+ * time, so a table can be profiled in a single pass without keeping the rows
+ * around. All running totals are primitives; the only per-value structure is
+ * a {@link SpaceSavingSketch} for the most frequent values, next to a
+ * {@link HyperLogLog} for the distinct count.
+ * <p>
+ * The sketch capacity bounds the memory each accumulator uses. The counts stay
+ * exact as long as the column has no more distinct values than the capacity,
+ * and beyond that the distinct count comes from the HyperLogLog estimate and
+ * the top N counts carry the sketch's overestimate. An exact accumulator only
+ * differs from an approximate one by its much larger capacity,
+ * {@link #EXACT_TRACKED_VALUES}, so a column with more distinct values than
+ * that gets the same error bounds instead of running out of memory. The
+ * error bounds are copied into the column profile result by
+ * {@link #populate(ColumnProfileResult, int)}.
+ * <p>
+ * Null values count towards the row count, the distinct count and the top N
+ * values, and count as 0 towards the average value and average length, which
+ * matches the behaviour of the original per-column sample profiler.
+ */
+class ColumnProfileAccumulator {
+
+    /**
+     * The most distinct values an exact accumulator counts individually. At
+     * roughly 100 bytes per tracked value this keeps each column under about
+     * 10MB.
+     */
+    static final int EXACT_TRACKED_VALUES = 100000;
+
+    private final SpaceSavingSketch valueCounts;
+
+    private final HyperLogLog distinctValues;
+
+    private int rowCount;
+
+    private int nullCount;
+
+    private double sum;
+
+    private double lengthSum;
+
+    private int minLength = -1;
+
+    private int maxLength;
+
+    private Comparable minValue;
+
+    private Comparable maxValue;
+
+    /**
+     * Creates an exact accumulator, which counts up to
+     * {@link #EXACT_TRACKED_VALUES} distinct values individually.
+     */
+    ColumnProfileAccumulator() {
+        this(EXACT_TRACKED_VALUES);
+    }
+
+    /**
+     * Creates an approximate accumulator.
+     * 
+     * @param maxTrackedValues
+     *            The most distinct values to count individually. This bounds
+     *            the memory used by this accumulator.
+     */
+    ColumnProfileAccumulator(int maxTrackedValues) {
+        this(maxTrackedValues, HyperLogLog.DEFAULT_PRECISION);
+    }
+
+    /**
+     * Creates an accumulator that feeds a {@link HyperLogLog} of the given
+     * precision.
+     */
+    ColumnProfileAccumulator(int maxTrackedValues, int sketchPrecision) {
+        valueCounts = new SpaceSavingSketch(maxTrackedValues);
+        distinctValues = new HyperLogLog(sketchPrecision);
+    }
+
+    /**
+     * Adds one row's value for this column.
+     */
+    @SuppressWarnings("unchecked")
+    void add(Object val) {
+        rowCount++;
+        valueCounts.offer(val);
+        distinctValues.offer(val);
+
+        if (val == null) {
+            nullCount++;
+            return;
+        }
+        if (val instanceof Number) {
+            sum += ((Number) val).doubleValue();
+        }
+
+        int length;
+        if (val instanceof String) {
+            length = ((String) val).length();
+        } else {
+            length = String.valueOf(val).length();
+        }
+        lengthSum += length;
+        if (minLength < 0 || length < minLength) minLength = length;
+        if (length > maxLength) maxLength = length;
+
+        if (val instanceof Comparable) {
+            Comparable cval = (Comparable) val;
+            if (minValue == null || (cval.compareTo(minValue) < 0)) {
+                minValue = cval;
+            }
+            if (maxValue == null || (cval.compareTo(maxValue) > 0)) {
+                maxValue = cval;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows added to this accumulator.
+     */
+    int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the largest value added, or null if no comparable values were
+     * added.
+     */
+    Comparable getMaxValue() {
+        return maxValue;
+    }
+
+    /**
+     * Returns the distinct value estimator.
+     */
+    HyperLogLog getDistinctValueSketch() {
+        return distinctValues;
+    }
+
+    /**
+     * Returns the exact distinct count if it is known, otherwise the
+     * HyperLogLog estimate.
+     */
+    int getDistinctValueCount() {
+        if (valueCounts.isExact()) {
+            return valueCounts.size();
+        }
+        return (int) Math.min(Integer.MAX_VALUE,
+                Math.max(valueCounts.getCapacity(), distinctValues.cardinality()));
+    }
+
+    /**
+     * Returns the relative standard error of {@link #getDistinctValueCount()},
+     * which is 0 when the count is exact.
+     */
+    double getDistinctValueCountError() {
+        if (valueCounts.isExact()) {
+            return 0;
+        }
+        return distinctValues.getRelativeError();
+    }
+
+    /**
+     * Copies the accumulated statistics into the given column profile result.
+     * The column profile's parent must already have its row count set, since
+     * the top N value percentages are calculated from it.
+     *
+     * @param topNCount
+     *            The number of most frequent values to record.
+     */
+    void populate(ColumnProfileResult cpr, int topNCount) {
+        populate(cpr, topNCount, 1.0);
+    }
+
+    /**
+     * Copies the accumulated statistics of a sample into the given column
+     * profile result, scaling the null count and top N counts up to estimates
+     * for the whole table. The distinct count is not scaled; it is the number
+     * of distinct values in the sample, which is a lower bound for the table.
+     * The column profile's parent must already have the estimated row count of
+     * the whole table set.
+     * 
+     * @param topNCount
+     *            The number of most frequent values to record.
+     * @param scale
+     *            The number of rows in the table for each row in the sample.
+     */
+    void populate(ColumnProfileResult cpr, int topNCount, double scale) {
+        double rows = rowCount == 0 ? 1.0 : (double) rowCount;
+        cpr.setAvgLength(lengthSum / rows);
+        cpr.setAvgValue(sum / rows);
+        cpr.setDistinctValueCount(getDistinctValueCount());
+        cpr.setMaxLength(maxLength);
+        cpr.setMaxValue(maxValue);
+        cpr.setMinLength(minLength < 0 ? 0 : minLength);
+        cpr.setMinValue(minValue);
+        cpr.setNullCount((int) Math.round(nullCount * scale));
+        cpr.setDistinctValueCountError(getDistinctValueCountError());
+        cpr.setValueCountError((int) Math.round(valueCounts.getMaxError() * scale));
+
+        List<SpaceSavingSketch.Entry> topN = valueCounts.getTopEntries(topNCount);
+        int sumOfTopNCount = 0;
+        for (SpaceSavingSketch.Entry entry : topN) {
+            int count = (int) Math.round(entry.getCount() * scale);
+            cpr.addValueCount(entry.getValue(), count);
+            sumOfTopNCount += count;
+        }
+        int totalRowCount = (int) Math.round(rowCount * scale);
+        cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, Math.max(0, totalRowCount - sumOfTopNCount));
+    }
+
+    /**
+     * Combines the statistics of an earlier profile of the same column with
+     * the ones accumulated here, which must come from rows that were not part
+     * of the earlier profile, and stores the result in the given column
+     * profile result. The earlier result must carry a
+     * {@link ColumnProfileResult#getDistinctValueSketch() distinct value sketch}
+     * of the same precision as this accumulator's.
+     * <p>
+     * The merged distinct count is always an estimate. The earlier profile only
+     * kept its top N values, so a value that was rare before but is frequent
+     * in the new rows may be undercounted by at most the smallest of the
+     * earlier top N counts; this is added to the merged result's
+     * {@link ColumnProfileResult#getValueCountError() value count error}.
+     * 
+     * @param cpr
+     *            The result to populate. Its parent must already have the
+     *            combined row count set.
+     * @param base
+     *            The earlier profile of this column. Its parent must be the
+     *            earlier table profile.
+     * @param topNCount
+     *            The number of most frequent values to record.
+     */
+    void populateMerged(ColumnProfileResult cpr, ColumnProfileResult base, int topNCount) {
+        int baseRowCount = base.getParent().getRowCount();
+        int totalRowCount = baseRowCount + rowCount;
+        double rows = totalRowCount == 0 ? 1.0 : (double) totalRowCount;
+        double baseSum = 0;
+        if (base.getAvgValue() instanceof Number) {
+            baseSum = ((Number) base.getAvgValue()).doubleValue() * baseRowCount;
+        }
+        cpr.setAvgValue((baseSum + sum) / rows);
+        cpr.setAvgLength((base.getAvgLength() * baseRowCount + lengthSum) / rows);
+        cpr.setNullCount(base.getNullCount() + nullCount);
+
+        if (rowCount - nullCount == 0) {
+            cpr.setMinLength(base.getMinLength());
+            cpr.setMaxLength(base.getMaxLength());
+        } else if (baseRowCount - base.getNullCount() == 0) {
+            cpr.setMinLength(minLength);
+            cpr.setMaxLength(maxLength);
+        } else {
+            cpr.setMinLength(Math.min(base.getMinLength(), minLength));
+            cpr.setMaxLength(Math.max(base.getMaxLength(), maxLength));
+        }
+        cpr.setMinValue(extreme(base.getMinValue(), minValue, true));
+        cpr.setMaxValue(extreme(base.getMaxValue(), maxValue, false));
+
+        HyperLogLog mergedDistinct = HyperLogLog.decode(base.getDistinctValueSketch());
+        mergedDistinct.merge(distinctValues);
+        if (rowCount == 0) {
+            cpr.setDistinctValueCount(base.getDistinctValueCount());
+            cpr.setDistinctValueCountError(base.getDistinctValueCountError());
+        } else {
+            cpr.setDistinctValueCount((int) Math.min(Integer.MAX_VALUE, mergedDistinct.cardinality()));
+            cpr.setDistinctValueCountError(mergedDistinct.getRelativeError());
+        }
+        cpr.setDistinctValueSketch(mergedDistinct.encode());
+
+        SpaceSavingSketch mergedCounts = new SpaceSavingSketch(Integer.MAX_VALUE);
+        long smallestBaseCount = 0;
+        boolean baseHadOtherValues = false;
+        for (ColumnValueCount cvc : base.getValueCount()) {
+            if (cvc.isOtherValues()) {
+                baseHadOtherValues = cvc.getCount() > 0;
+                continue;
+            }
+            mergedCounts.offer(normalize(cvc.getValue()), cvc.getCount());
+            if (smallestBaseCount == 0 || cvc.getCount() < smallestBaseCount) {
+                smallestBaseCount = cvc.getCount();
+            }
+        }
+        for (SpaceSavingSketch.Entry entry : valueCounts.getTopEntries(valueCounts.size())) {
+            mergedCounts.offer(normalize(entry.getValue()), entry.getCount());
+        }
+        long error = base.getValueCountError() + valueCounts.getMaxError();
+        if (baseHadOtherValues) {
+            error += smallestBaseCount;
+        }
+        cpr.setValueCountError((int) Math.min(Integer.MAX_VALUE, error));
+
+        int sumOfTopNCount = 0;
+        for (SpaceSavingSketch.Entry entry : mergedCounts.getTopEntries(topNCount)) {
+            cpr.addValueCount(entry.getValue(), (int) entry.getCount());
+            sumOfTopNCount += (int) entry.getCount();
+        }
+        cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, Math.max(0, totalRowCount - sumOfTopNCount));
+    }
+
+    /**
+     * Returns the smaller (if min is true) or larger of the two values. If
+     * either is null or they cannot be compared, the new value wins.
+     */
+    private static Object extreme(Object baseValue, Object newValue, boolean min) {
+        if (newValue == null) return baseValue;
+        if (baseValue == null) return newValue;
+        Integer c = compareValues(newValue, baseValue);
+        if (c == null) return newValue;
+        if (min) {
+            return c.intValue() < 0 ? newValue : baseValue;
+        } else {
+            return c.intValue() > 0 ? newValue : baseValue;
+        }
+    }
+
+    /**
+     * Compares two column values that may have been read through different
+     * paths, for instance an Integer from the database and a BigDecimal from
+     * a saved project file. Returns null if the values cannot be compared.
+     */
+    @SuppressWarnings("unchecked")
+    static Integer compareValues(Object v1, Object v2) {
+        if (v1 instanceof Number && v2 instanceof Number) {
+            Object n1 = normalize(v1);
+            Object n2 = normalize(v2);
+            if (n1 instanceof BigDecimal && n2 instanceof BigDecimal) {
+                return ((BigDecimal) n1).compareTo((BigDecimal) n2);
+            }
+            return Double.compare(((Number) v1).doubleValue(), ((Number) v2).doubleValue());
+        } else if (v1 instanceof Date && v2 instanceof Date) {
+            long t1 = ((Date) v1).getTime();
+            long t2 = ((Date) v2).getTime();
+            return t1 < t2 ? -1 : (t1 == t2 ? 0 : 1);
+        } else if (v1 instanceof Comparable && v1.getClass() == v2.getClass()) {
+            return ((Comparable) v1).compareTo(v2);
+        }
+        return null;
+    }
+
+    /**
+     * Converts numbers to BigDecimal and dates to Timestamp, which are the
+     * types the project file loader restores them as, so values from a stored
+     * profile and values read from the database are equal when they should
+     * be. Other values are returned as they are.
+     */
+    static Object normalize(Object value) {
+        if (value instanceof Number && !(value instanceof BigDecimal)) {
+            try {
+                return new BigDecimal(value.toString());
+            } catch (NumberFormatException ex) {
+                // NaN and infinity have no BigDecimal form
+                return value;
+            }
+        } else if (value instanceof Date && !(value instanceof Timestamp)) {
+            return new Timestamp(((Date) value).getTime());
+        }
+        return value;
+    }
+}
@@ -52,6 +52,25 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
     private int maxLength;
     private double avgLength;
     private int nullCount;
+
+    /**
+     * The relative standard error of {@link #distinctValueCount}, or 0 if the
+     * count is exact.
+     */
+    private double distinctValueCountError;
+
+    /**
+     * The most by which any of the top N value counts can differ from the
+     * true count, or 0 if the counts are exact.
+     */
+    private int valueCountError;
+
+    /**
+     * The encoded {@link HyperLogLog} of this column's values, kept so that
+     * an incremental profile can extend the distinct count. Null if the
+     * profile was not made incrementally.
+     */
+    private String distinctValueSketch;
     private List<ColumnValueCount> topTen = new ArrayList<ColumnValueCount>();
     
     /**
@@ -75,7 +94,11 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         this.maxLength = cprToCopy.maxLength;
         this.minLength = cprToCopy.minLength;
         this.minValue = cprToCopy.minValue;
+        this.maxValue = cprToCopy.maxValue;
         this.nullCount = cprToCopy.nullCount;
+        this.distinctValueCountError = cprToCopy.distinctValueCountError;
+        this.valueCountError = cprToCopy.valueCountError;
+        this.distinctValueSketch = cprToCopy.distinctValueSketch;
         setParent(cprToCopy.getParent());
         for (int i = 0; i < cprToCopy.getValueCount().size(); i++) {
             ColumnValueCount cvc = cprToCopy.getValueCount().get(i);
@@ -123,6 +146,66 @@ public class ColumnProfileResult extends AbstractProfileResult<SQLColumn> {
         firePropertyChange("distinctValueCount", oldVal, distinctValueCount);
     }
 
+    /**
+     * Returns the relative standard error of the distinct value count. About
+     * 68% of estimates are within this fraction of the true count and about
+     * 95% within twice this fraction. This is 0 if the count is exact.
+     */
+    @Accessor
+    public double getDistinctValueCountError() {
+        return distinctValueCountError;
+    }
+
+    @Mutator
+    public void setDistinctValueCountError(double distinctValueCountError) {
+        double oldError = this.distinctValueCountError;
+        this.distinctValueCountError = distinctValueCountError;
+        firePropertyChange("distinctValueCountError", oldError, distinctValueCountError);
+    }
+
+    /**
+     * Returns the most by which the count of any of the top N values can
+     * differ from its true count. Counts from a single profile only ever
+     * overstate the true count; counts extended by an incremental profile can
+     * also understate it. This is 0 if the counts are exact.
+     */
+    @Accessor
+    public int getValueCountError() {
+        return valueCountError;
+    }
+
+    @Mutator
+    public void setValueCountError(int valueCountError) {
+        int oldError = this.valueCountError;
+        this.valueCountError = valueCountError;
+        firePropertyChange("valueCountError", oldError, valueCountError);
+    }
+
+    /**
+     * Returns the {@link HyperLogLog#encode() encoded} distinct value sketch
+     * an incremental profile can be merged with, or null if there is none.
+     */
+    @Accessor
+    public String getDistinctValueSketch() {
+        return distinctValueSketch;
+    }
+
+    @Mutator
+    public void setDistinctValueSketch(String distinctValueSketch) {
+        String oldSketch = this.distinctValueSketch;
+        this.distinctValueSketch = distinctValueSketch;
+        firePropertyChange("distinctValueSketch", oldSketch, distinctValueSketch);
+    }
+
+    /**
+     * Returns true if the distinct count or the top N value counts of this
+     * result are estimates.
+     */
+    @NonProperty
+    public boolean isApproximate() {
+        return distinctValueCountError != 0 || valueCountError != 0;
+    }
+
     @Accessor
     public int getMaxLength() {
         return maxLength;
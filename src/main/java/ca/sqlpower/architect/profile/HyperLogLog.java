@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+
+/**
+ * Estimates the number of distinct values in a stream using the HyperLogLog
+ * algorithm of Flajolet, Fusy, Gandouet and Meunier. Memory use is fixed at
+ * 2<sup>precision</sup> bytes no matter how many values are offered, and the
+ * relative standard error of the estimate is about
+ * 1.04 / sqrt(2<sup>precision</sup>), which is reported by
+ * {@link #getRelativeError()}.
+ * <p>
+ * Two sketches of the same precision can be combined with
+ * {@link #merge(HyperLogLog)}; the result is exactly the sketch that would
+ * have been built by offering both streams to one sketch. A sketch can be
+ * saved as a string with {@link #encode()} and restored with
+ * {@link #decode(String)}, so a stored profile can be extended with new rows
+ * later. Null is a legal value and counts as one distinct value.
+ * <p>
+ * This class is not thread safe.
+ */
+public class HyperLogLog {
+
+    /**
+     * The precision used when none is given: 2^14 registers, for a 16kB sketch
+     * with a relative standard error of about 0.8%.
+     */
+    public static final int DEFAULT_PRECISION = 14;
+
+    private static final int MIN_PRECISION = 4;
+
+    private static final int MAX_PRECISION = 18;
+
+    /**
+     * The character that encodes a register value of 0 in {@link #encode()}.
+     * Register values never exceed 61, so every encoded character falls
+     * between '@' and '}' and needs no escaping in XML.
+     */
+    private static final char ENCODING_BASE = '@';
+
+    /**
+     * Arbitrary constant hashed in place of null values.
+     */
+    private static final long NULL_HASH = 0x6a09e667f3bcc909L;
+
+    private final int precision;
+
+    /**
+     * One register per bucket. Each holds the largest run of leading zero
+     * bits (plus one) seen in the hashes that fall in its bucket.
+     */
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    /**
+     * @param precision
+     *            The base-2 logarithm of the number of registers, between 4
+     *            and 18.
+     */
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException("Precision must be between " + MIN_PRECISION +
+                    " and " + MAX_PRECISION + " but was " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Records one occurrence of the given value.
+     */
+    public void offer(Object value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        // the guard bit caps the rank at 64 - precision + 1
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Returns the estimated number of distinct values offered so far.
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeroRegisters = 0;
+        for (int i = 0; i < m; i++) {
+            sum += 1.0 / (1L << registers[i]);
+            if (registers[i] == 0) {
+                zeroRegisters++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeroRegisters > 0) {
+            // small range correction: linear counting is more accurate here
+            estimate = m * Math.log((double) m / zeroRegisters);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds all the values counted by the given sketch to this one.
+     *
+     * @throws IllegalArgumentException
+     *             if the other sketch has a different precision
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge a sketch of precision " +
+                    other.precision + " into one of precision " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * Returns the relative standard error of {@link #cardinality()}. About
+     * 68% of estimates fall within this fraction of the true count, and about
+     * 95% within twice this fraction.
+     */
+    public double getRelativeError() {
+        return 1.04 / Math.sqrt(registers.length);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Returns this sketch's registers as a string of printable characters,
+     * one per register.
+     */
+    public String encode() {
+        char[] chars = new char[registers.length];
+        for (int i = 0; i < registers.length; i++) {
+            chars[i] = (char) (ENCODING_BASE + registers[i]);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Recreates a sketch from a string returned by {@link #encode()}.
+     * 
+     * @throws IllegalArgumentException
+     *             if the string is not an encoded sketch
+     */
+    public static HyperLogLog decode(String encoded) {
+        int precision = Integer.numberOfTrailingZeros(encoded.length());
+        if (encoded.length() != 1 << precision) {
+            throw new IllegalArgumentException("Encoded sketch length " + encoded.length() +
+                    " is not a power of 2");
+        }
+        HyperLogLog hll = new HyperLogLog(precision);
+        for (int i = 0; i < encoded.length(); i++) {
+            int register = encoded.charAt(i) - ENCODING_BASE;
+            if (register < 0 || register > 64 - precision + 1) {
+                throw new IllegalArgumentException("Invalid register value at position " + i +
+                        " of encoded sketch");
+            }
+            hll.registers[i] = (byte) register;
+        }
+        return hll;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+        case 16:
+            return 0.673;
+        case 32:
+            return 0.697;
+        case 64:
+            return 0.709;
+        default:
+            return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * Returns a well mixed 64 bit hash of the given value. Strings and numbers
+     * are hashed over their full contents rather than through
+     * {@link Object#hashCode()}, which only has 32 bits and would make the
+     * estimate for very large columns collapse.
+     */
+    static long hash(Object value) {
+        long h;
+        if (value == null) {
+            h = NULL_HASH;
+        } else if (value instanceof String) {
+            String s = (String) value;
+            h = 0xcbf29ce484222325L;
+            for (int i = 0, n = s.length(); i < n; i++) {
+                h = (h ^ s.charAt(i)) * 0x100000001b3L;
+            }
+        } else if (value instanceof Long || value instanceof Integer
+                || value instanceof Short || value instanceof Byte) {
+            h = ((Number) value).longValue();
+        } else if (value instanceof Double || value instanceof Float) {
+            h = Double.doubleToLongBits(((Number) value).doubleValue());
+        } else if (value instanceof BigDecimal) {
+            h = hash(value.toString());
+        } else {
+            h = value.hashCode();
+        }
+        // MurmurHash3 finalizer
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
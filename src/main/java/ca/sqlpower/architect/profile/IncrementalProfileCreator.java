@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * Profiles a table that has a
+ * {@link ProfileSettings#getWatermarkColumnName() watermark column} by
+ * extending the table's previous profile instead of starting over. Only the
+ * rows whose watermark is greater than the previous profile's
+ * {@link TableProfileResult#getWatermark() watermark} are read, in a single
+ * streaming pass like the {@link LocalStreamingProfileCreator}, and their
+ * statistics are merged with the previous ones: counts and sums are added,
+ * minimums and maximums compared, distinct counts combined through the
+ * {@link HyperLogLog} sketch stored with each column profile, and the top N
+ * values re-ranked.
+ * <p>
+ * The whole table is profiled instead if there is no usable previous profile,
+ * if columns were added since it was made, or if the table now has fewer rows
+ * than it did then, which means rows were deleted and the old statistics no
+ * longer hold. Rows whose watermark is null are never picked up by an
+ * incremental pass.
+ * <p>
+ * A new instance is made by the {@link ProfileManagerImpl} for each table it
+ * profiles this way, since each instance carries the previous profile it
+ * extends.
+ */
+class IncrementalProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(IncrementalProfileCreator.class);
+
+    /**
+     * The precision of the distinct value sketches saved with each column
+     * profile. 2^11 registers take 2kB per column in the project file and
+     * give a relative error of about 2.3%.
+     */
+    static final int SKETCH_PRECISION = 11;
+
+    /**
+     * The number of rows read between checks for a cancel request.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1000;
+
+    private final ProfileSettings settings;
+
+    private final String watermarkColumnName;
+
+    /**
+     * The profile to extend, or null to profile the whole table.
+     */
+    private final TableProfileResult base;
+
+    /**
+     * The number of distinct values each column will count individually
+     * before switching to approximate counts, when approximate profiling is
+     * turned on.
+     */
+    private int maxTrackedValues = 10000;
+
+    /**
+     * @param settings
+     *            The profile settings.
+     * @param watermarkColumnName
+     *            The name of the table's watermark column.
+     * @param base
+     *            The previous profile of the table, whose columns must be the
+     *            ones of the table being profiled. Null means there is no
+     *            previous profile.
+     */
+    IncrementalProfileCreator(ProfileSettings settings, String watermarkColumnName, TableProfileResult base) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        if (watermarkColumnName == null) {
+            throw new NullPointerException("Null watermark column name");
+        }
+        this.settings = settings;
+        this.watermarkColumnName = watermarkColumnName;
+        this.base = base;
+    }
+
+    /**
+     * Returns the index of the column with the given name, ignoring case, or
+     * -1 if the table has no such column.
+     */
+    static int findColumn(SQLTable table, String columnName) throws SQLObjectException {
+        List<SQLColumn> columns = table.getColumns();
+        for (int i = 0; i < columns.size(); i++) {
+            if (columns.get(i).getName().equalsIgnoreCase(columnName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+        int watermarkIndex = findColumn(table, watermarkColumnName);
+        if (watermarkIndex < 0) {
+            throw new SQLObjectException("Table " + table.getName() + " has no watermark column " +
+                    watermarkColumnName);
+        }
+
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(columns.size() + 1);
+        pm.setProgress(0);
+
+        int capacity = settings.isApproximate() ? maxTrackedValues
+                : ColumnProfileAccumulator.EXACT_TRACKED_VALUES;
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columns.size()];
+        for (int col = 0; col < accumulators.length; col++) {
+            accumulators[col] = new ColumnProfileAccumulator(capacity, SKETCH_PRECISION);
+        }
+
+        TableProfileResult mergeBase = canMerge(base, columns) ? base : null;
+        int rowCount = 0;
+        Connection con = null;
+        PreparedStatement stmt = null;
+        ResultSet rs = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            if (mergeBase != null) {
+                int currentRowCount = countRows(con, table);
+                if (currentRowCount < mergeBase.getRowCount()) {
+                    logger.info("Table " + table.getName() + " shrank from " + mergeBase.getRowCount() +
+                            " to " + currentRowCount + " rows since its last profile; profiling it in full");
+                    mergeBase = null;
+                }
+            }
+
+            String sql = LocalReservoirProfileCreator.createSelectAllColumnsQuery(table);
+            if (mergeBase != null) {
+                sql += " WHERE " + columns.get(watermarkIndex).getName() + " > ?";
+            }
+            logger.debug("About to execute profiling query: " + sql);
+            stmt = con.prepareStatement(sql);
+            if (mergeBase != null) {
+                stmt.setObject(1, mergeBase.getWatermark());
+            }
+            rs = stmt.executeQuery();
+            while (rs.next()) {
+                for (int col = 0; col < accumulators.length; col++) {
+                    accumulators[col].add(rs.getObject(col + 1));
+                }
+                rowCount++;
+                if (rowCount % CANCEL_CHECK_INTERVAL == 0 && pm.isCancelled()) {
+                    logger.debug("Profile of " + table + " cancelled after " + rowCount + " rows");
+                    return false;
+                }
+            }
+            logger.debug("Finished streaming result set. New row count=" + rowCount);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close connection. Squishing this exception: ", ex);
+            }
+        }
+        pm.setProgress(1);
+
+        Object watermark = ColumnProfileAccumulator.normalize(accumulators[watermarkIndex].getMaxValue());
+        if (mergeBase == null) {
+            tpr.setRowCount(rowCount);
+            tpr.setWatermark(watermark);
+        } else {
+            tpr.setRowCount(mergeBase.getRowCount() + rowCount);
+            tpr.setWatermark(watermark == null ? mergeBase.getWatermark() : watermark);
+        }
+        for (int col = 0; col < accumulators.length; col++) {
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(col));
+            tpr.addColumnProfileResult(cpr);
+            cpr.setCreateStartTime(tpr.getCreateStartTime());
+            if (mergeBase == null) {
+                accumulators[col].populate(cpr, settings.getTopNCount());
+                cpr.setDistinctValueSketch(accumulators[col].getDistinctValueSketch().encode());
+            } else {
+                ColumnProfileResult baseCpr = mergeBase.getColumnProfileResult(columns.get(col)).iterator().next();
+                accumulators[col].populateMerged(cpr, baseCpr, settings.getTopNCount());
+            }
+            cpr.setCreateEndTime(System.currentTimeMillis());
+            pm.setProgress(col + 2);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the given previous profile can be extended: it must
+     * have a watermark, have no errors, and have a column profile with a
+     * distinct value sketch for every one of the given columns.
+     */
+    private static boolean canMerge(TableProfileResult base, List<SQLColumn> columns) {
+        if (base == null || base.getWatermark() == null || base.getException() != null) {
+            return false;
+        }
+        for (SQLColumn col : columns) {
+            Collection<ColumnProfileResult> baseCprs = base.getColumnProfileResult(col);
+            if (baseCprs.isEmpty()) {
+                logger.debug("No previous profile for column " + col.getName());
+                return false;
+            }
+            ColumnProfileResult baseCpr = baseCprs.iterator().next();
+            if (baseCpr.getException() != null || baseCpr.getDistinctValueSketch() == null
+                    || baseCpr.getDistinctValueSketch().length() != 1 << SKETCH_PRECISION) {
+                logger.debug("Previous profile of column " + col.getName() + " cannot be extended");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int countRows(Connection con, SQLTable table) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM " + DDLUtils.toQualifiedName(table));
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    public int getMaxTrackedValues() {
+        return maxTrackedValues;
+    }
+
+    public void setMaxTrackedValues(int maxTrackedValues) {
+        this.maxTrackedValues = maxTrackedValues;
+    }
+
+    @Override
+    public String toString() {
+        return "Incremental";
+    }
+}
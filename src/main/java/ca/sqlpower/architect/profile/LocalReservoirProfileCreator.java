@@ -21,13 +21,7 @@ package ca.sqlpower.architect.profile;
 
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.apache.log4j.Logger;
 
@@ -87,19 +81,11 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
 
         try {
             con = table.getParentDatabase().getConnection();
-            StringBuilder sql = new StringBuilder();
-            sql.append("SELECT ");
-            boolean first = true;
-            for (SQLColumn col : table.getColumns()) {
-                if (!first) sql.append(", ");
-                sql.append(col.getName());
-                first = false;
-            }
-            sql.append(" FROM ").append(DDLUtils.toQualifiedName(table));
+            String sql = createSelectAllColumnsQuery(table);
             
             logger.debug("About to execute profiling query: " + sql);
             try {
-                JDBCReserviorDataSource ds = new JDBCReserviorDataSource(con, sql.toString());
+                JDBCReserviorDataSource ds = new JDBCReserviorDataSource(con, sql);
                 Reservoir<Object[]> r = new BasicReservoir<Object[]>();
                 sample = r.getSample(ds, sampleSize);
                 tpr.setRowCount(ds.getRowCount());
@@ -126,101 +112,57 @@ public class LocalReservoirProfileCreator extends AbstractTableProfileCreator {
         return true;
     }
 
+    /**
+     * Profiles every column of the sample in one row-major pass, feeding each
+     * value to that column's {@link ColumnProfileAccumulator}. The sample is
+     * bounded by {@link #sampleSize}, so exact accumulators are always
+     * affordable.
+     */
     private void profileColumnsFromSample(TableProfileResult tpr, Object[][] sample, MonitorableImpl pm) {
-        // Profile each column in a separate pass so we only have to track one set
-        // of "top n values" at a time.
-        if (sample.length > 0) {
-            for (int col = 0; col < sample[0].length; col++) {
-                pm.setProgress(col + 1);
-                ColumnProfileResult cpr = tpr.getColumnProfileResults().get(col);
-                cpr.setCreateStartTime(System.currentTimeMillis());
-                
-                // this map is for counting distinct values as well as finding the "top n" values
-                Map<Object, Integer> valueCounts = new HashMap<Object, Integer>();
-                
-                // for calculating the average value (nulls count as 0)
-                double sum = 0.0;
-    
-                // for calculating the average length, based on string length (nulls count as 0)
-                double lengthSum = 0.0;
-                
-                int minLength = 0;
-                int maxLength = 0;
-                
-                Comparable minValue = null;
-                Comparable maxValue = null;
-                
-                int nullCount = 0;
-                
-                for (int row = 0; row < sample.length; row++) {
-                    Object val = sample[row][col];
-                    String sval = (val == null ? null : String.valueOf(val));
-                    
-                    Integer oldCount = valueCounts.get(val);
-                    if (oldCount == null) oldCount = new Integer(0);
-                    valueCounts.put(val, oldCount + 1);
-                    
-                    if (val == null) {
-                        nullCount++;
-                    } else if (val instanceof Number) {
-                        sum += ((Number) val).doubleValue();
-                    }
-                    
-                    if (sval != null) {
-                        lengthSum += sval.length();
-                    }
-                    
-                    if (val instanceof Comparable) {
-                        Comparable cval = (Comparable) val;
-                        if (minValue == null || (cval.compareTo(minValue) < 0)) {
-                            minValue = cval;
-                        }
-                        if (maxValue == null || (cval.compareTo(maxValue) > 0)) {
-                            maxValue = cval;
-                        }
-                    }
-                }
-                
-                // TODO: scale results by the ratio of the sample size to the total row count
-                // (the actual row count is in tpr.getRowCount())
-                
-                cpr.setAvgLength(lengthSum / ((double) sample.length));
-                cpr.setAvgValue(sum / ((double) sample.length));
-                cpr.setDistinctValueCount(valueCounts.size());
-                cpr.setMaxLength(maxLength);
-                cpr.setMaxValue(maxValue);
-                cpr.setMinLength(minLength);
-                cpr.setMinValue(minValue);
-                cpr.setNullCount(nullCount);
-                
-                List<Map.Entry<Object, Integer>> topNList = new ArrayList<Entry<Object,Integer>>(valueCounts.entrySet());
-                Collections.sort(topNList, new TopNValuesComparator());
-                
-                int sumOfTopNCount = 0;
-                for (int i = 0; i < settings.getTopNCount() && i < topNList.size(); i++) {
-                    Entry<Object, Integer> entry = topNList.get(i);
-                    cpr.addValueCount(entry.getKey(), entry.getValue().intValue());
-                    sumOfTopNCount += entry.getValue().intValue();
-                }
-                
-                cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, sample.length - sumOfTopNCount);
-                
-                cpr.setCreateEndTime(System.currentTimeMillis());
-    
+        if (sample.length == 0) return;
+        
+        List<ColumnProfileResult> cprs = tpr.getColumnProfileResults();
+        int columnCount = sample[0].length;
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columnCount];
+        long startTime = System.currentTimeMillis();
+        for (int col = 0; col < columnCount; col++) {
+            accumulators[col] = new ColumnProfileAccumulator();
+            cprs.get(col).setCreateStartTime(startTime);
+        }
+        
+        for (int row = 0; row < sample.length; row++) {
+            Object[] values = sample[row];
+            for (int col = 0; col < columnCount; col++) {
+                accumulators[col].add(values[col]);
             }
         }
+        
+        // TODO: scale results by the ratio of the sample size to the total row count
+        // (the actual row count is in tpr.getRowCount())
+        
+        for (int col = 0; col < columnCount; col++) {
+            pm.setProgress(col + 1);
+            ColumnProfileResult cpr = cprs.get(col);
+            accumulators[col].populate(cpr, settings.getTopNCount());
+            cpr.setCreateEndTime(System.currentTimeMillis());
+        }
     }
 
     /**
-     * Compares the two map entries by their value.  This allows us to sort a list
-     * of entries by frequency of occurrence.
+     * Creates the query that selects every column of the given table, in
+     * column order.
      */
-    class TopNValuesComparator implements Comparator<Map.Entry<Object, Integer>> {
-
-        public int compare(Entry<Object, Integer> o1, Entry<Object, Integer> o2) {
-            return o2.getValue().compareTo(o1.getValue());
+    static String createSelectAllColumnsQuery(SQLTable table) throws SQLObjectException {
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ");
+        boolean first = true;
+        for (SQLColumn col : table.getColumns()) {
+            if (!first) sql.append(", ");
+            sql.append(col.getName());
+            first = false;
         }
-        
+        sql.append(" FROM ").append(DDLUtils.toQualifiedName(table));
+        return sql.toString();
     }
     
     @Override
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+import ca.sqlpower.util.reservoir.JDBCReserviorDataSource;
+import ca.sqlpower.util.reservoir.ReservoirDataException;
+
+/**
+ * A profile creator that reads every row of the table exactly once and
+ * updates one {@link ColumnProfileAccumulator} per column as each row
+ * arrives. Unlike the {@link LocalReservoirProfileCreator}, no sample matrix is
+ * ever built.
+ * <p>
+ * The aggregates computed are the same as the reservoir profiler's, but they
+ * describe the whole table rather than a sample. Memory use is bounded by
+ * the number of columns times the number of distinct values counted per
+ * column, no matter how many rows the table has. That number is
+ * {@link #getMaxTrackedValues()} if {@link ProfileSettings#isApproximate()}
+ * is set and {@link ColumnProfileAccumulator#EXACT_TRACKED_VALUES} otherwise.
+ * Top N value counts and the distinct count stay exact as long as a column
+ * has no more than that many distinct values, and beyond that they come from
+ * a {@link SpaceSavingSketch} and a {@link HyperLogLog} and carry the error
+ * bounds reported by
+ * {@link ColumnProfileResult#getValueCountError()} and
+ * {@link ColumnProfileResult#getDistinctValueCountError()}.
+ */
+public class LocalStreamingProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(LocalStreamingProfileCreator.class);
+
+    /**
+     * The number of rows read between checks for a cancel request.
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 1000;
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    /**
+     * The number of distinct values each column will count individually
+     * before switching to approximate counts, when approximate profiling is
+     * turned on.
+     */
+    private int maxTrackedValues = 10000;
+
+    public LocalStreamingProfileCreator(ProfileSettings settings) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        this.settings = settings;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr)
+    throws ReservoirDataException, SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(columns.size() + 1);
+        pm.setProgress(0);
+
+        boolean approximate = settings.isApproximate();
+        ColumnProfileAccumulator[] accumulators = new ColumnProfileAccumulator[columns.size()];
+        for (int col = 0; col < accumulators.length; col++) {
+            if (approximate) {
+                accumulators[col] = new ColumnProfileAccumulator(maxTrackedValues);
+            } else {
+                accumulators[col] = new ColumnProfileAccumulator();
+            }
+        }
+
+        int rowCount = 0;
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            String sql = LocalReservoirProfileCreator.createSelectAllColumnsQuery(table);
+            logger.debug("About to execute profiling query: " + sql);
+
+            JDBCReserviorDataSource ds = new JDBCReserviorDataSource(con, sql);
+            while (ds.hasNext()) {
+                Object[] row = ds.readNextRecord();
+                for (int col = 0; col < accumulators.length; col++) {
+                    accumulators[col].add(row[col]);
+                }
+                rowCount++;
+                if (rowCount % CANCEL_CHECK_INTERVAL == 0 && pm.isCancelled()) {
+                    logger.debug("Profile of " + table + " cancelled after " + rowCount + " rows");
+                    return false;
+                }
+            }
+            logger.debug("Finished streaming result set. Row count=" + rowCount);
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close connection. Squishing this exception: ", ex);
+            }
+        }
+        pm.setProgress(1);
+
+        // the column results need the row count to calculate the top N percentages
+        tpr.setRowCount(rowCount);
+        for (int col = 0; col < accumulators.length; col++) {
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(col));
+            tpr.addColumnProfileResult(cpr);
+            cpr.setCreateStartTime(tpr.getCreateStartTime());
+            accumulators[col].populate(cpr, settings.getTopNCount());
+            cpr.setCreateEndTime(System.currentTimeMillis());
+            pm.setProgress(col + 2);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of distinct values each column counts exactly
+     * before its counts become approximate. This only applies to approximate
+     * profiles.
+     */
+    public int getMaxTrackedValues() {
+        return maxTrackedValues;
+    }
+
+    public void setMaxTrackedValues(int maxTrackedValues) {
+        this.maxTrackedValues = maxTrackedValues;
+    }
+
+    @Override
+    public String toString() {
+        return "Local Streaming";
+    }
+}
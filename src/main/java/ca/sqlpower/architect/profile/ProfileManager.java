@@ -75,8 +75,8 @@ public interface ProfileManager extends SPObject {
     /**
      * Creates TableProfileResult objects for each of the tables in the
      * given list, then adds them to this ProfileManager in an unpopulated
-     * state.  Then starts a new worker thread which will populate the results
-     * one after the other.  It is likely that none of the profiles will be
+     * state.  Then schedules the results to be populated on worker threads,
+     * possibly several at once.  It is likely that none of the profiles will be
      * populated yet by the time this method returns.
      */
     public Collection<Future<TableProfileResult>> asynchCreateProfiles(Collection<SQLTable> tables);
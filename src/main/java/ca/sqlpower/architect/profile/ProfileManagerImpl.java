@@ -18,6 +18,7 @@
  */
 package ca.sqlpower.architect.profile;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -25,8 +26,6 @@ import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import org.apache.log4j.Logger;
@@ -65,7 +64,7 @@ import ca.sqlpower.util.UserPrompterFactory.UserPromptType;
 
 /**
  * The default ProfileManager implementation. Creates profiles of tables,
- * optionally using a separate worker thread.
+ * optionally using a pool of worker threads (see {@link ProfileScheduler}).
  * 
  * @version $Id$
  */
@@ -147,10 +146,29 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     private ProfileSettings defaultProfileSettings = new ProfileSettings();
 
     /**
-     * The Profile Executor manages the thread that actually does the work
+     * The default number of tables profiled at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_PROFILES = 4;
+
+    /**
+     * The default number of tables from the same data source profiled at once.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_PROFILES_PER_DATA_SOURCE = 2;
+
+    /**
+     * The Profile Scheduler manages the threads that actually do the work
      * of creating the profiles.
      */
-    private ExecutorService profileExecutor = Executors.newSingleThreadExecutor();
+    private final ProfileScheduler profileScheduler = new ProfileScheduler(
+            DEFAULT_MAX_CONCURRENT_PROFILES, DEFAULT_MAX_CONCURRENT_PROFILES_PER_DATA_SOURCE);
+
+    /**
+     * Profiles finished by different worker threads are copied back into the
+     * real profile results one at a time by locking on this object. When a
+     * session has a real foreground thread this lock is never contended, but
+     * sessions without one run the update on the worker thread itself.
+     */
+    private final Object resultUpdateLock = new Object();
 
     /**
      * The creator that will be used to create profiles.
@@ -167,7 +185,10 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
      */
     private List<TableProfileCreator> profileCreators = Arrays.asList(
             (TableProfileCreator)new RemoteDatabaseProfileCreator(getDefaultProfileSettings()),
-            new LocalReservoirProfileCreator(getDefaultProfileSettings()));
+            new RemoteDatabaseProfileCreator(getDefaultProfileSettings(), true),
+            new LocalReservoirProfileCreator(getDefaultProfileSettings()),
+            new RemoteSampleProfileCreator(getDefaultProfileSettings()),
+            new LocalStreamingProfileCreator(getDefaultProfileSettings()));
 
     /**
      * A Callable interface which populates a single profile result then returns
@@ -200,11 +221,30 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
          */
         private final TableProfileResult tpr;
 
+        /**
+         * The creator that populates {@link #tpr}. This is the manager's
+         * creator unless the table is profiled incrementally.
+         */
+        private final TableProfileCreator jobCreator;
+
         ProfileResultCallable(TableProfileResult actualTPR) {
+            this(actualTPR, null);
+        }
+
+        /**
+         * @param actualTPR
+         *            The result to populate.
+         * @param previousTPR
+         *            The table's most recent incremental profile, which the
+         *            new profile extends if a watermark column is set in the
+         *            profile settings and the table has it. May be null.
+         */
+        ProfileResultCallable(TableProfileResult actualTPR, TableProfileResult previousTPR) {
             if (actualTPR == null) throw new NullPointerException("Can't populate a null profile result!");
             this.actualTPR = actualTPR;
             SQLTable table;
             TableProfileResult tempTPR;
+            TableProfileCreator tempCreator = creator;
             try {
                 SQLTable profileTable = actualTPR.getProfiledObject();
                 table = new SQLTable(profileTable.getParentDatabase(), true);
@@ -226,6 +266,17 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 ProfileManager backgroundPM = new ProfileManagerImpl();
                 backgroundPM.setUUID(actualTPR.getParent().getUUID());
                 tempTPR.setParent(backgroundPM);
+                
+                String watermarkColumnName = getDefaultProfileSettings().getWatermarkColumnName();
+                if (watermarkColumnName != null 
+                        && IncrementalProfileCreator.findColumn(table, watermarkColumnName) >= 0) {
+                    TableProfileResult baseTPR = null;
+                    if (previousTPR != null) {
+                        baseTPR = new TableProfileResult(previousTPR, table);
+                    }
+                    tempCreator = new IncrementalProfileCreator(
+                            getDefaultProfileSettings(), watermarkColumnName, baseTPR);
+                }
             } catch (Exception e) {
                 //If an exception is thrown during setup define the profile to have an exception on
                 //it and handle appropriately when doing the profile.
@@ -233,6 +284,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
                 actualTPR.setException(e);
             }
             tpr = tempTPR;
+            jobCreator = tempCreator;
         }
         
         /**
@@ -243,30 +295,12 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
             if (actualTPR.getException() != null) {
                 throw actualTPR.getException();
             }
-            creator.doProfile(tpr);
+            jobCreator.doProfile(tpr);
             Runnable runner = new Runnable() {
                 public void run() {
-                    //None of the profiling creates or saves any data source information so an
-                    //empty data source is used for the converter. If the profiling stores
-                    //data source information in the future we may need the data source collection
-                    //in the project.
-                    DataSourceCollection<SPDataSource> dsCollection = new PlDotIni();
-                    
-                    SPObject root = actualTPR.getWorkspaceContainer().getWorkspace();
-                    SessionPersisterSuperConverter converter = 
-                        new SessionPersisterSuperConverter(dsCollection, root);
-                    SPSessionPersister persister = 
-                        new SPSessionPersister("Profiling persister", root, converter) {
-                            @Override
-                            protected void refreshRootNode(PersistedSPObject pso) {
-                                //do nothing, this is not needed for the profiling update.
-                            }
-                    };
-                    persister.setWorkspaceContainer(actualTPR.getWorkspaceContainer());
-                    SPPersisterListener eventCreator = new SPPersisterListener(persister, converter);
-                    eventCreator.persistObject(tpr, 
-                            actualTPR.getParent().getChildren(TableProfileResult.class).indexOf(actualTPR),
-                            false);
+                    synchronized (resultUpdateLock) {
+                        updateActualResult();
+                    }
                 }
             };
             try {
@@ -281,6 +315,35 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
             
             return actualTPR;
         }
+
+        /**
+         * Copies the populated background profile result into the real one
+         * through a persister, which updates the real result's properties and
+         * children.
+         */
+        private void updateActualResult() {
+            //None of the profiling creates or saves any data source information so an
+            //empty data source is used for the converter. If the profiling stores
+            //data source information in the future we may need the data source collection
+            //in the project.
+            DataSourceCollection<SPDataSource> dsCollection = new PlDotIni();
+            
+            SPObject root = actualTPR.getWorkspaceContainer().getWorkspace();
+            SessionPersisterSuperConverter converter = 
+                new SessionPersisterSuperConverter(dsCollection, root);
+            SPSessionPersister persister = 
+                new SPSessionPersister("Profiling persister", root, converter) {
+                    @Override
+                    protected void refreshRootNode(PersistedSPObject pso) {
+                        //do nothing, this is not needed for the profiling update.
+                    }
+            };
+            persister.setWorkspaceContainer(actualTPR.getWorkspaceContainer());
+            SPPersisterListener eventCreator = new SPPersisterListener(persister, converter);
+            eventCreator.persistObject(tpr, 
+                    actualTPR.getParent().getChildren(TableProfileResult.class).indexOf(actualTPR),
+                    false);
+        }
     }
     
     @Constructor
@@ -344,7 +407,7 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         addResults(Collections.singletonList(tpr), false);
         
         try {
-            profileExecutor.submit(new ProfileResultCallable(tpr)).get();
+            scheduleProfile(tpr).get();
             assert (tpr.getProgressMonitor().isFinished());
         } catch (InterruptedException ex) {
             logger.info("Profiling was interrupted (likely because this manager is being shut down)");
@@ -365,16 +428,53 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
         
         addResults(profiles, false);
         
-        List<Future<TableProfileResult>> results = new ArrayList<Future<TableProfileResult>>();
+        List<ProfileScheduler.ProfileJob> jobs = new ArrayList<ProfileScheduler.ProfileJob>();
         for (TableProfileResult tpr : profiles) {
-            results.add(scheduleProfile(tpr));
+            jobs.add(new ProfileScheduler.ProfileJob(
+                    new ProfileResultCallable(tpr, findPreviousIncrementalResult(tpr)), 
+                    tpr.getProfiledObject()));
         }
-        return results;
+        return profileScheduler.schedule(jobs);
     }
 
     /* docs inherited from interface */
     public Future<TableProfileResult> scheduleProfile(TableProfileResult result) {
-        return profileExecutor.submit(new ProfileResultCallable(result));
+        ProfileScheduler.ProfileJob job = new ProfileScheduler.ProfileJob(
+                new ProfileResultCallable(result, findPreviousIncrementalResult(result)), 
+                result.getProfiledObject());
+        return profileScheduler.schedule(Collections.singletonList(job)).get(0);
+    }
+
+    /**
+     * Returns the most recent profile of the given result's table,
+     * other than the given result, that an incremental profile can extend.
+     * Returns null if there is none or incremental profiling is off. The
+     * previous profile's column results are read from their store here, and
+     * if they cannot be the table gets profiled in full instead.
+     */
+    private TableProfileResult findPreviousIncrementalResult(TableProfileResult result) {
+        if (getDefaultProfileSettings().getWatermarkColumnName() == null) return null;
+        TableProfileResult previous = null;
+        for (TableProfileResult tpr : getResults(result.getProfiledObject())) {
+            // the watermark is only set once a profile has completed
+            if (tpr == result || tpr.getWatermark() == null || tpr.getException() != null) {
+                continue;
+            }
+            if (previous == null || tpr.getCreateStartTime() > previous.getCreateStartTime()) {
+                previous = tpr;
+            }
+        }
+        if (previous == null) return null;
+        try {
+            previous.loadColumnProfileResults();
+        } catch (IOException e) {
+            logger.warn("Could not read the column profiles of " + previous + ", profiling it in full", e);
+            return null;
+        } catch (SQLObjectException e) {
+            logger.warn("Could not read the column profiles of " + previous + ", profiling it in full", e);
+            return null;
+        }
+        return previous;
     }
     
     /* docs inherited from interface */
@@ -534,7 +634,58 @@ public class ProfileManagerImpl extends AbstractSPObject implements ProfileManag
     }
 
     public void close() {
-        profileExecutor.shutdown();
+        profileScheduler.shutdown();
+    }
+
+    /**
+     * Returns the maximum number of tables this profile manager will profile
+     * at the same time.
+     */
+    @NonBound
+    public int getMaxConcurrentProfiles() {
+        return profileScheduler.getMaxThreads();
+    }
+
+    /**
+     * Sets the maximum number of tables this profile manager will profile at
+     * the same time. Profiles already running are not affected.
+     */
+    @NonBound
+    public void setMaxConcurrentProfiles(int maxConcurrentProfiles) {
+        profileScheduler.setMaxThreads(maxConcurrentProfiles);
+    }
+
+    /**
+     * Returns the maximum number of tables from any one data source this
+     * profile manager will profile at the same time.
+     */
+    @NonBound
+    public int getMaxConcurrentProfilesPerDataSource() {
+        return profileScheduler.getMaxJobsPerDataSource();
+    }
+
+    /**
+     * Sets the maximum number of tables from any one data source this profile
+     * manager will profile at the same time. Set this to 1 to keep the load on
+     * each source database the same as profiling one table at a time.
+     */
+    @NonBound
+    public void setMaxConcurrentProfilesPerDataSource(int maxConcurrentProfiles) {
+        profileScheduler.setMaxJobsPerDataSource(maxConcurrentProfiles);
+    }
+
+    /**
+     * Returns true if tables scheduled together are profiled largest first,
+     * based on the row count estimates in the source database catalog.
+     */
+    @NonBound
+    public boolean isOrderingProfilesBySize() {
+        return profileScheduler.isOrderingBySize();
+    }
+
+    @NonBound
+    public void setOrderingProfilesBySize(boolean orderBySize) {
+        profileScheduler.setOrderingBySize(orderBySize);
     }
 
     @NonBound
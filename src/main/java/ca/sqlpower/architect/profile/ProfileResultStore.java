@@ -0,0 +1,431 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * A binary file that holds the column profile results of many table profile
+ * results, kept next to a project file so the project XML does not have to
+ * hold them inline. The column results of each table profile result are
+ * stored as one compressed block, and an index at the end of the file maps
+ * the UUID of each table profile result to its block, so the column results
+ * of one table can be read without reading any of the others.
+ * <p>
+ * Inside a block the values are laid out by field rather than by column:
+ * all the null counts, then all the distinct counts, and so on. Values of the
+ * same kind side by side compress much better than the mix of a single
+ * column's fields.
+ * <p>
+ * Values (minimum, maximum, average and top N values) are stored as
+ * {@link BigDecimal}, {@link Timestamp} or String, the same types the project
+ * XML restores them as.
+ */
+public class ProfileResultStore {
+
+    private static final Logger logger = Logger.getLogger(ProfileResultStore.class);
+
+    /**
+     * The extension added to the project file's name to get the name of the
+     * store that goes with it.
+     */
+    public static final String FILE_EXTENSION = ".profiles";
+
+    /**
+     * The first and last four bytes of every store: "APRF".
+     */
+    private static final int MAGIC = 0x41505246;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The length of the trailer at the end of the file: the offset of the
+     * index followed by the magic number.
+     */
+    private static final int TRAILER_LENGTH = 12;
+
+    private static final byte NULL_VALUE = 0;
+    private static final byte STRING_VALUE = 1;
+    private static final byte BIG_DECIMAL_VALUE = 2;
+    private static final byte TIMESTAMP_VALUE = 3;
+
+    private File file;
+
+    /**
+     * Maps the UUID of each table profile result in the file to the offset
+     * and length of its block. Read the first time it is needed.
+     */
+    private Map<String, long[]> index;
+
+    public ProfileResultStore(File file) {
+        this.file = file;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Changes the file this store reads from. This is used to resolve the
+     * file name given in a project XML once the project file's location is
+     * known.
+     */
+    public synchronized void setFile(File file) {
+        this.file = file;
+        index = null;
+    }
+
+    /**
+     * Returns true if this store holds the column results of the table
+     * profile result with the given UUID.
+     */
+    public synchronized boolean contains(String tableResultUUID) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return getIndex(raf).containsKey(tableResultUUID);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the column profile results stored for the given table profile
+     * result. The results are matched to the columns of the result's table
+     * by UUID, or by name for columns whose UUID has changed, and results
+     * for columns the table no longer has are dropped. The returned results
+     * have not been added to the table result. An empty list is returned if
+     * the store has nothing for the table result.
+     */
+    public List<ColumnProfileResult> read(TableProfileResult tpr) throws IOException, SQLObjectException {
+        byte[] block = readBlock(tpr.getUUID());
+        if (block == null) {
+            logger.debug("No stored column results for " + tpr.getUUID());
+            return new ArrayList<ColumnProfileResult>();
+        }
+        return decode(block, tpr.getProfiledObject());
+    }
+
+    /**
+     * Returns the compressed block stored for the given table profile result
+     * UUID, or null if there is none.
+     */
+    synchronized byte[] readBlock(String tableResultUUID) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long[] entry = getIndex(raf).get(tableResultUUID);
+            if (entry == null) return null;
+            byte[] block = new byte[(int) entry[1]];
+            raf.seek(entry[0]);
+            raf.readFully(block);
+            return block;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private Map<String, long[]> getIndex(RandomAccessFile raf) throws IOException {
+        if (index != null) return index;
+        if (raf.length() < 8 + TRAILER_LENGTH || raf.readInt() != MAGIC) {
+            throw new IOException(file + " is not a profile result store");
+        }
+        int version = raf.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported profile result store version " + version + " in " + file);
+        }
+        raf.seek(raf.length() - TRAILER_LENGTH);
+        long indexOffset = raf.readLong();
+        if (raf.readInt() != MAGIC) {
+            throw new IOException("The profile result store " + file + " is incomplete");
+        }
+        raf.seek(indexOffset);
+        int count = raf.readInt();
+        Map<String, long[]> newIndex = new HashMap<String, long[]>(count * 2);
+        for (int i = 0; i < count; i++) {
+            String uuid = readString(raf);
+            long offset = raf.readLong();
+            long length = raf.readInt();
+            newIndex.put(uuid, new long[] { offset, length });
+        }
+        index = newIndex;
+        return index;
+    }
+
+    /**
+     * Writes a new store. The column results of each table profile result
+     * are written as they are given; the index is written on
+     * {@link #close()}.
+     */
+    public static class Writer {
+
+        private final DataOutputStream out;
+
+        private final Map<String, long[]> index = new LinkedHashMap<String, long[]>();
+
+        private long position;
+
+        public Writer(File file) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = 8;
+        }
+
+        /**
+         * Writes the column results of the given table profile result. If
+         * they were never read back from the store they were loaded from,
+         * the stored block is copied over as is.
+         */
+        public void write(TableProfileResult tpr) throws IOException {
+            byte[] block;
+            if (tpr.isColumnProfileResultsLoaded()) {
+                block = encode(tpr.getColumnProfileResults());
+            } else {
+                block = tpr.getColumnProfileResultStore().readBlock(tpr.getUUID());
+                if (block == null) {
+                    block = encode(tpr.getColumnProfileResults());
+                }
+            }
+            out.write(block);
+            index.put(tpr.getUUID(), new long[] { position, block.length });
+            position += block.length;
+        }
+
+        /**
+         * Writes the index and closes the file.
+         */
+        public void close() throws IOException {
+            try {
+                out.writeInt(index.size());
+                for (Map.Entry<String, long[]> entry : index.entrySet()) {
+                    writeString(out, entry.getKey());
+                    out.writeLong(entry.getValue()[0]);
+                    out.writeInt((int) entry.getValue()[1]);
+                }
+                out.writeLong(position);
+                out.writeInt(MAGIC);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the compressed block holding the given column results.
+     */
+    static byte[] encode(List<ColumnProfileResult> cprs) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes));
+        int n = cprs.size();
+        out.writeInt(n);
+        for (ColumnProfileResult cpr : cprs) writeString(out, cpr.getProfiledObject().getUUID());
+        for (ColumnProfileResult cpr : cprs) writeString(out, cpr.getProfiledObject().getName());
+        for (ColumnProfileResult cpr : cprs) writeString(out, cpr.getUUID());
+        for (ColumnProfileResult cpr : cprs) out.writeLong(cpr.getCreateStartTime());
+        for (ColumnProfileResult cpr : cprs) out.writeLong(cpr.getCreateEndTime());
+        for (ColumnProfileResult cpr : cprs) out.writeBoolean(cpr.getException() != null);
+        for (ColumnProfileResult cpr : cprs) {
+            if (cpr.getException() != null) writeString(out, cpr.getException().getMessage());
+        }
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getNullCount());
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getDistinctValueCount());
+        for (ColumnProfileResult cpr : cprs) out.writeDouble(cpr.getDistinctValueCountError());
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getValueCountError());
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getMinLength());
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getMaxLength());
+        for (ColumnProfileResult cpr : cprs) out.writeDouble(cpr.getAvgLength());
+        for (ColumnProfileResult cpr : cprs) writeValue(out, cpr.getMinValue());
+        for (ColumnProfileResult cpr : cprs) writeValue(out, cpr.getMaxValue());
+        for (ColumnProfileResult cpr : cprs) writeValue(out, cpr.getAvgValue());
+        for (ColumnProfileResult cpr : cprs) writeString(out, cpr.getDistinctValueSketch());
+        for (ColumnProfileResult cpr : cprs) out.writeInt(cpr.getValueCount().size());
+        for (ColumnProfileResult cpr : cprs) {
+            for (ColumnValueCount cvc : cpr.getValueCount()) writeValue(out, cvc.getValue());
+        }
+        for (ColumnProfileResult cpr : cprs) {
+            for (ColumnValueCount cvc : cpr.getValueCount()) out.writeInt(cvc.getCount());
+        }
+        for (ColumnProfileResult cpr : cprs) {
+            for (ColumnValueCount cvc : cpr.getValueCount()) out.writeDouble(cvc.getPercent());
+        }
+        for (ColumnProfileResult cpr : cprs) {
+            for (ColumnValueCount cvc : cpr.getValueCount()) out.writeBoolean(cvc.isOtherValues());
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the column results in the given block back and matches them to
+     * the columns of the given table.
+     */
+    static List<ColumnProfileResult> decode(byte[] block, SQLTable table) throws IOException, SQLObjectException {
+        Map<String, SQLColumn> columnsByUUID = new HashMap<String, SQLColumn>();
+        Map<String, SQLColumn> columnsByName = new HashMap<String, SQLColumn>();
+        for (SQLColumn col : table.getColumns()) {
+            columnsByUUID.put(col.getUUID(), col);
+            columnsByName.put(col.getName(), col);
+        }
+
+        DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(block)));
+        try {
+            int n = in.readInt();
+            ColumnProfileResult[] cprs = new ColumnProfileResult[n];
+            String[] columnUUIDs = new String[n];
+            for (int i = 0; i < n; i++) columnUUIDs[i] = readString(in);
+            for (int i = 0; i < n; i++) {
+                String name = readString(in);
+                SQLColumn col = columnsByUUID.get(columnUUIDs[i]);
+                if (col == null) {
+                    col = columnsByName.get(name);
+                }
+                if (col == null) {
+                    logger.debug("Dropping stored result for column " + name + " which is no longer in " + table);
+                    col = new SQLColumn();
+                }
+                cprs[i] = new ColumnProfileResult(col);
+            }
+            for (int i = 0; i < n; i++) cprs[i].setUUID(readString(in));
+            for (int i = 0; i < n; i++) cprs[i].setCreateStartTime(in.readLong());
+            for (int i = 0; i < n; i++) cprs[i].setCreateEndTime(in.readLong());
+            boolean[] failed = new boolean[n];
+            for (int i = 0; i < n; i++) failed[i] = in.readBoolean();
+            for (int i = 0; i < n; i++) {
+                if (failed[i]) cprs[i].setException(new Exception(readString(in)));
+            }
+            for (int i = 0; i < n; i++) cprs[i].setNullCount(in.readInt());
+            for (int i = 0; i < n; i++) cprs[i].setDistinctValueCount(in.readInt());
+            for (int i = 0; i < n; i++) cprs[i].setDistinctValueCountError(in.readDouble());
+            for (int i = 0; i < n; i++) cprs[i].setValueCountError(in.readInt());
+            for (int i = 0; i < n; i++) cprs[i].setMinLength(in.readInt());
+            for (int i = 0; i < n; i++) cprs[i].setMaxLength(in.readInt());
+            for (int i = 0; i < n; i++) cprs[i].setAvgLength(in.readDouble());
+            for (int i = 0; i < n; i++) cprs[i].setMinValue(readValue(in));
+            for (int i = 0; i < n; i++) cprs[i].setMaxValue(readValue(in));
+            for (int i = 0; i < n; i++) cprs[i].setAvgValue(readValue(in));
+            for (int i = 0; i < n; i++) cprs[i].setDistinctValueSketch(readString(in));
+            int[] topNSizes = new int[n];
+            int totalTopN = 0;
+            for (int i = 0; i < n; i++) {
+                topNSizes[i] = in.readInt();
+                totalTopN += topNSizes[i];
+            }
+            Object[] values = new Object[totalTopN];
+            int[] counts = new int[totalTopN];
+            double[] percents = new double[totalTopN];
+            for (int j = 0; j < totalTopN; j++) values[j] = readValue(in);
+            for (int j = 0; j < totalTopN; j++) counts[j] = in.readInt();
+            for (int j = 0; j < totalTopN; j++) percents[j] = in.readDouble();
+            int j = 0;
+            for (int i = 0; i < n; i++) {
+                for (int k = 0; k < topNSizes[i]; k++, j++) {
+                    cprs[i].addValueCount(new ColumnValueCount(values[j], counts[j], percents[j], in.readBoolean()));
+                }
+            }
+
+            List<ColumnProfileResult> results = new ArrayList<ColumnProfileResult>(n);
+            for (ColumnProfileResult cpr : cprs) {
+                if (cpr.getProfiledObject().getParent() == table) {
+                    results.add(cpr);
+                }
+            }
+            return results;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_VALUE);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL_VALUE);
+            writeString(out, value.toString());
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP_VALUE);
+            out.writeLong(((Timestamp) value).getTime());
+        } else {
+            out.writeByte(STRING_VALUE);
+            writeString(out, String.valueOf(value));
+        }
+    }
+
+    private static Object readValue(DataInput in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case NULL_VALUE:
+            return null;
+        case BIG_DECIMAL_VALUE:
+            return new BigDecimal(readString(in));
+        case TIMESTAMP_VALUE:
+            return new Timestamp(in.readLong());
+        case STRING_VALUE:
+            return readString(in);
+        default:
+            throw new IOException("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Writes a string that may be null or longer than
+     * {@link DataOutput#writeUTF(String)} allows.
+     */
+    private static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLTable;
+
+/**
+ * Runs table profiling jobs on a pool of worker threads. At most
+ * {@link #getMaxThreads()} tables are profiled at once overall, and at most
+ * {@link #getMaxJobsPerDataSource()} of those can come from the same
+ * {@link JDBCDataSource}, so profiling many tables from one production
+ * server never opens more than a handful of connections to it.
+ * <p>
+ * Jobs scheduled together in one call to {@link #schedule(List)} are ordered
+ * largest table first within each data source, using the row count estimate
+ * the database catalog reports through
+ * {@link DatabaseMetaData#getIndexInfo(String, String, String, boolean, boolean)}.
+ * Large tables therefore start early instead of being the last stragglers of
+ * a batch. Looking up the estimates needs a database connection, so it is done
+ * on a separate planning thread and never on the thread that schedules the
+ * jobs.
+ * <p>
+ * The returned futures can be cancelled at any time; a job cancelled before
+ * it starts just gives its slot to the next job.
+ */
+class ProfileScheduler {
+
+    private static final Logger logger = Logger.getLogger(ProfileScheduler.class);
+
+    /**
+     * A job to profile one table. The job's own future is handed back to the
+     * client as soon as it is scheduled.
+     */
+    static class ProfileJob extends FutureTask<TableProfileResult> implements Comparable<ProfileJob> {
+
+        private final SQLTable table;
+
+        /**
+         * The estimated number of rows in the table, or -1 if not known.
+         */
+        private long rowCountEstimate = -1;
+
+        /**
+         * Breaks ties between equally sized jobs so they run in the order
+         * they were scheduled.
+         */
+        private long sequence;
+
+        ProfileJob(Callable<TableProfileResult> callable, SQLTable table) {
+            super(callable);
+            this.table = table;
+        }
+
+        SQLTable getTable() {
+            return table;
+        }
+
+        long getRowCountEstimate() {
+            return rowCountEstimate;
+        }
+
+        void setRowCountEstimate(long rowCountEstimate) {
+            this.rowCountEstimate = rowCountEstimate;
+        }
+
+        /**
+         * Larger tables sort first; tables of unknown size go after all
+         * tables of known size.
+         */
+        public int compareTo(ProfileJob o) {
+            if (rowCountEstimate > o.rowCountEstimate) return -1;
+            if (rowCountEstimate < o.rowCountEstimate) return 1;
+            if (sequence < o.sequence) return -1;
+            if (sequence > o.sequence) return 1;
+            return 0;
+        }
+    }
+
+    /**
+     * The jobs waiting to run against one data source and the number of that
+     * data source's jobs currently running.
+     */
+    private static class DataSourceQueue {
+        private final PriorityQueue<ProfileJob> pending = new PriorityQueue<ProfileJob>();
+        private int running;
+    }
+
+    /**
+     * The threads that do the profiling. The work queue is a priority queue so
+     * that of the jobs released by the different data sources, the largest
+     * runs first.
+     */
+    private final ThreadPoolExecutor workers;
+
+    /**
+     * A single thread that looks up row count estimates before the jobs are
+     * released to the workers.
+     */
+    private final ExecutorService planner = Executors.newSingleThreadExecutor();
+
+    /**
+     * The per-data source queues. Jobs for tables whose data source is not
+     * known are grouped under the null key. All access must be synchronized
+     * on this map.
+     */
+    private final Map<JDBCDataSource, DataSourceQueue> queues = new HashMap<JDBCDataSource, DataSourceQueue>();
+
+    private int maxJobsPerDataSource;
+
+    /**
+     * Incremented for each job scheduled, to keep the order of equally sized
+     * jobs stable.
+     */
+    private long nextSequence;
+
+    /**
+     * If true, catalog row count estimates are looked up to order the jobs.
+     */
+    private volatile boolean orderingBySize = true;
+
+    /**
+     * @param maxThreads
+     *            The maximum number of tables to profile at once.
+     * @param maxJobsPerDataSource
+     *            The maximum number of tables from the same data source to
+     *            profile at once.
+     */
+    ProfileScheduler(int maxThreads, int maxJobsPerDataSource) {
+        if (maxThreads < 1 || maxJobsPerDataSource < 1) {
+            throw new IllegalArgumentException("Thread limits must be at least 1");
+        }
+        this.maxJobsPerDataSource = maxJobsPerDataSource;
+        workers = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>());
+    }
+
+    /**
+     * Schedules the given jobs and returns immediately. The jobs are released
+     * to the workers once their row count estimates have been looked up.
+     */
+    List<Future<TableProfileResult>> schedule(final List<ProfileJob> jobs) {
+        List<Future<TableProfileResult>> futures = new ArrayList<Future<TableProfileResult>>(jobs);
+        synchronized (queues) {
+            for (ProfileJob job : jobs) {
+                job.sequence = nextSequence++;
+            }
+        }
+        planner.execute(new Runnable() {
+            public void run() {
+                if (orderingBySize) {
+                    estimateRowCounts(jobs);
+                }
+                enqueue(jobs);
+            }
+        });
+        return futures;
+    }
+
+    /**
+     * Looks up the row count estimate of each job's table, using one
+     * connection per data source.
+     */
+    private void estimateRowCounts(List<ProfileJob> jobs) {
+        Map<SQLDatabase, List<ProfileJob>> jobsByDatabase = new LinkedHashMap<SQLDatabase, List<ProfileJob>>();
+        for (ProfileJob job : jobs) {
+            if (job.isCancelled()) continue;
+            SQLDatabase db = job.getTable().getParentDatabase();
+            if (db == null) continue;
+            List<ProfileJob> dbJobs = jobsByDatabase.get(db);
+            if (dbJobs == null) {
+                dbJobs = new ArrayList<ProfileJob>();
+                jobsByDatabase.put(db, dbJobs);
+            }
+            dbJobs.add(job);
+        }
+
+        for (Map.Entry<SQLDatabase, List<ProfileJob>> entry : jobsByDatabase.entrySet()) {
+            // a single job needs no ordering, so don't pay for a connection
+            if (entry.getValue().size() < 2) continue;
+            Connection con = null;
+            try {
+                con = entry.getKey().getConnection();
+                DatabaseMetaData dbmd = con.getMetaData();
+                for (ProfileJob job : entry.getValue()) {
+                    job.setRowCountEstimate(estimateRowCount(dbmd, job.getTable()));
+                }
+            } catch (Exception ex) {
+                logger.info("Could not estimate row counts in " + entry.getKey() +
+                        "; profiling in the order requested", ex);
+            } finally {
+                try {
+                    if (con != null) con.close();
+                } catch (SQLException ex) {
+                    logger.error("Failed to close connection. Squishing this exception: ", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the catalog's approximate row count for the given table, or -1
+     * if the driver does not report one.
+     */
+    static long estimateRowCount(DatabaseMetaData dbmd, SQLTable table) {
+        ResultSet rs = null;
+        try {
+            rs = dbmd.getIndexInfo(table.getCatalogName(), table.getSchemaName(), table.getName(), false, true);
+            while (rs.next()) {
+                if (rs.getShort("TYPE") == DatabaseMetaData.tableIndexStatistic) {
+                    return rs.getLong("CARDINALITY");
+                }
+            }
+        } catch (SQLException ex) {
+            logger.debug("No row count estimate for " + table.getName(), ex);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+        return -1;
+    }
+
+    private void enqueue(List<ProfileJob> jobs) {
+        List<DataSourceQueue> touched = new ArrayList<DataSourceQueue>();
+        synchronized (queues) {
+            for (ProfileJob job : jobs) {
+                JDBCDataSource ds = null;
+                SQLDatabase db = job.getTable().getParentDatabase();
+                if (db != null) {
+                    ds = db.getDataSource();
+                }
+                DataSourceQueue queue = queues.get(ds);
+                if (queue == null) {
+                    queue = new DataSourceQueue();
+                    queues.put(ds, queue);
+                }
+                queue.pending.add(job);
+                if (!touched.contains(queue)) {
+                    touched.add(queue);
+                }
+            }
+            for (DataSourceQueue queue : touched) {
+                dispatch(queue);
+            }
+        }
+    }
+
+    /**
+     * Releases as many of the queue's pending jobs to the workers as its data
+     * source's limit allows. Must be called while holding the lock on
+     * {@link #queues}.
+     */
+    private void dispatch(final DataSourceQueue queue) {
+        if (workers.isShutdown()) {
+            for (ProfileJob job : queue.pending) {
+                job.cancel(false);
+            }
+            queue.pending.clear();
+            return;
+        }
+        while (queue.running < maxJobsPerDataSource && !queue.pending.isEmpty()) {
+            final ProfileJob job = queue.pending.poll();
+            queue.running++;
+            workers.execute(new PrioritizedRunnable(job) {
+                public void run() {
+                    try {
+                        job.run();
+                    } finally {
+                        synchronized (queues) {
+                            queue.running--;
+                            dispatch(queue);
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * A worker task that sorts in the work queue the same way as the job it
+     * runs.
+     */
+    private static abstract class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+        private final ProfileJob job;
+
+        PrioritizedRunnable(ProfileJob job) {
+            this.job = job;
+        }
+
+        public int compareTo(PrioritizedRunnable o) {
+            return job.compareTo(o.job);
+        }
+    }
+
+    int getMaxThreads() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /**
+     * Changes the number of worker threads. Jobs already running are not
+     * affected.
+     */
+    void setMaxThreads(int maxThreads) {
+        if (maxThreads < 1) throw new IllegalArgumentException("Thread limit must be at least 1");
+        if (maxThreads > workers.getMaximumPoolSize()) {
+            workers.setMaximumPoolSize(maxThreads);
+            workers.setCorePoolSize(maxThreads);
+        } else {
+            workers.setCorePoolSize(maxThreads);
+            workers.setMaximumPoolSize(maxThreads);
+        }
+    }
+
+    int getMaxJobsPerDataSource() {
+        synchronized (queues) {
+            return maxJobsPerDataSource;
+        }
+    }
+
+    /**
+     * Changes the number of jobs that can run against one data source at
+     * once. Raising the limit releases waiting jobs immediately.
+     */
+    void setMaxJobsPerDataSource(int maxJobsPerDataSource) {
+        if (maxJobsPerDataSource < 1) throw new IllegalArgumentException("Thread limit must be at least 1");
+        synchronized (queues) {
+            this.maxJobsPerDataSource = maxJobsPerDataSource;
+            for (DataSourceQueue queue : queues.values()) {
+                dispatch(queue);
+            }
+        }
+    }
+
+    boolean isOrderingBySize() {
+        return orderingBySize;
+    }
+
+    void setOrderingBySize(boolean orderingBySize) {
+        this.orderingBySize = orderingBySize;
+    }
+
+    /**
+     * Stops accepting new jobs. Jobs already released to the workers run to
+     * completion and jobs still waiting for their data source are cancelled.
+     * The workers are shut down while holding the lock on {@link #queues} so
+     * that {@link #dispatch(DataSourceQueue)} never hands them a job after
+     * they stop accepting them.
+     */
+    void shutdown() {
+        planner.shutdown();
+        synchronized (queues) {
+            workers.shutdown();
+            for (DataSourceQueue queue : queues.values()) {
+                dispatch(queue);
+            }
+        }
+    }
+}
@@ -65,6 +65,18 @@ public class ProfileSettings extends AbstractSPObject {
 
     private int topNCount = 10;
 
+    /**
+     * If true, profile creators that support it trade exactness for bounded
+     * memory by estimating distinct counts and top N values with sketches.
+     */
+    private boolean approximate = false;
+
+    /**
+     * The name of the column that identifies newly loaded rows, or null if
+     * tables are always profiled from scratch.
+     */
+    private String watermarkColumnName;
+
     public ProfileSettings() {
         setName("Profile Settings");
     }
@@ -194,6 +206,44 @@ public class ProfileSettings extends AbstractSPObject {
         setTopNCount(Integer.valueOf(topNCount));
     }
 
+    /**
+     * Returns true if distinct counts and top N values may be estimated
+     * rather than counted exactly. Estimated results report their error
+     * bounds in the {@link ColumnProfileResult}.
+     */
+    @Accessor
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    @Mutator
+    public void setApproximate(boolean approximate) {
+        boolean oldApproximate = this.approximate;
+        this.approximate = approximate;
+        firePropertyChange("approximate", oldApproximate, approximate);
+    }
+
+    /**
+     * Returns the name of the watermark column: a timestamp or sequence
+     * column whose value only ever grows as rows are added. When this is set,
+     * tables that have a column of this name are profiled incrementally: a
+     * new profile only reads the rows past the highest watermark of the
+     * table's previous profile and merges them into that profile. Tables
+     * without the column are profiled in full as usual. Null turns
+     * incremental profiling off.
+     */
+    @Accessor
+    public String getWatermarkColumnName() {
+        return watermarkColumnName;
+    }
+
+    @Mutator
+    public void setWatermarkColumnName(String watermarkColumnName) {
+        String oldName = this.watermarkColumnName;
+        this.watermarkColumnName = watermarkColumnName;
+        firePropertyChange("watermarkColumnName", oldName, watermarkColumnName);
+    }
+
     @Override
     protected boolean removeChildImpl(SPObject child) {
         return false;
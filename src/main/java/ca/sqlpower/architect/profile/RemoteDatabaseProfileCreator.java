@@ -20,10 +20,15 @@
 package ca.sqlpower.architect.profile;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
@@ -62,12 +67,6 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
     private static final Logger logger = Logger.getLogger(RemoteDatabaseProfileCreator.class);
     
-    /**
-     * A map from data type names used in Architect to the database's actual
-     * data type stored in a profile function descriptor.
-     */
-    private Map<String, ProfileFunctionDescriptor> profileFunctionMap;
-    
     /**
      * This class is used to hold the specific start and end to a LENGTH
      * SQL command based on the database in use.
@@ -180,42 +179,104 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     }
     
     /**
-     * An object to store the string length function for the database.
+     * The platform-specific SQL functions and data type descriptors used to
+     * profile one table. A new instance is created for each table profiled, so
+     * this creator holds no per-run state of its own and can profile several
+     * tables at once on different threads.
      */
-    private StringLengthSQLFunction stringLengthSQLFunction;
-    
+    protected static class PlatformProfileFunctions {
+        
+        /**
+         * A map from data type names used in Architect to the database's actual
+         * data type stored in a profile function descriptor.
+         */
+        private final Map<String, ProfileFunctionDescriptor> profileFunctionMap = 
+            new HashMap<String, ProfileFunctionDescriptor>();
+        
+        /**
+         * An object to store the string length function for the database.
+         */
+        private StringLengthSQLFunction stringLengthSQLFunction;
+        
+        /**
+         * An object to store the average function for the database.
+         */
+        private AverageSQLFunction averageSQLFunction;
+        
+        /**
+         * An object to store the case when null function for the database.
+         */
+        private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+    }
+
     /**
-     * An object to store the average function for the database.
+     * The data source type property that limits how many aggregates the
+     * single scan mode puts in one SELECT statement. Platforms with a small
+     * limit on the size of a select list should set this.
      */
-    private AverageSQLFunction averageSQLFunction;
-    
+    public static final String MAX_SELECT_LIST_SIZE_PROPERTY = 
+        RemoteDatabaseProfileCreator.class.getName() + ".maxSelectListSize";
+
+    /**
+     * The data source type property that says whether the platform can find
+     * the top N values of all columns at once with GROUPING SETS and the
+     * ROW_NUMBER() window function. If the property is not set, support is
+     * guessed from the database product name and version.
+     */
+    public static final String GROUPING_SETS_TOP_N_PROPERTY = 
+        RemoteDatabaseProfileCreator.class.getName() + ".groupingSetsTopN";
+
     /**
-     * An object to store the case when null function for the database.
+     * The number of aggregates put in one SELECT statement in single scan
+     * mode when the platform does not specify its own limit.
      */
-    private CaseWhenNullSQLFunction caseWhenNullSQLFunction;
+    private static final int DEFAULT_MAX_SELECT_LIST_SIZE = 250;
 
     /**
      * The settings for this profile creator.
      */
     private final ProfileSettings settings;
+
+    /**
+     * If true, the aggregates of all columns are calculated by as few wide
+     * SELECT statements as possible instead of one statement per column.
+     */
+    private final boolean singleScan;
     
     public RemoteDatabaseProfileCreator(ProfileSettings settings) {
+        this(settings, false);
+    }
+
+    /**
+     * @param settings
+     *            The settings for this profile creator.
+     * @param singleScan
+     *            If true, the table is profiled by one wide aggregate query
+     *            (split into a few batches if the select list would be too
+     *            big) rather than by one query per column.
+     */
+    public RemoteDatabaseProfileCreator(ProfileSettings settings, boolean singleScan) {
         this.settings = settings;
+        this.singleScan = singleScan;
     }
     
     public boolean doProfileImpl(TableProfileResult tpr) {
         MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
         try {
+            if (singleScan) {
+                doSingleScanProfile(tpr, pm);
+                return !pm.isCancelled();
+            }
             
             doTableProfile(tpr);
             
             SQLTable table = tpr.getProfiledObject();
             JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
-            createProfileFunctions(dsType);
+            PlatformProfileFunctions functions = createProfileFunctions(dsType);
             for (SQLColumn col : table.getColumns()) {
                 ColumnProfileResult columnResult = new ColumnProfileResult(col);
                 tpr.addColumnProfileResult(columnResult);
-                doColumnProfile(columnResult, pm);
+                doColumnProfile(columnResult, functions, pm);
                 pm.setProgress(pm.getProgress() + 1);
             }
 
@@ -226,6 +287,312 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         }
     }
     
+    /**
+     * Profiles the table and all of its columns with as few full scans of the
+     * table as possible. The row count and the aggregates for every column go
+     * into one SELECT statement, which is split into batches of at most
+     * {@link #MAX_SELECT_LIST_SIZE_PROPERTY} aggregates; a column's aggregates
+     * are never split across batches. If a batch fails, its columns are
+     * profiled one at a time the usual way so one unsupported aggregate costs
+     * only that batch. The top N values are then found for all columns at
+     * once with GROUPING SETS where the platform supports it.
+     */
+    private void doSingleScanProfile(TableProfileResult tpr, MonitorableImpl pm) 
+    throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+        JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
+        PlatformProfileFunctions functions = createProfileFunctions(dsType);
+        pm.setJobSize(columns.size() + 1);
+        pm.setProgress(0);
+        
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            String quote = con.getMetaData().getIdentifierQuoteString();
+            String qualifiedName = DDLUtils.toQualifiedName(table.getCatalogName(),
+                    table.getSchemaName(), table.getName(), quote, quote);
+            int maxSelectListSize = getMaxSelectListSize(dsType);
+            
+            List<ColumnProfileResult> cprs = new ArrayList<ColumnProfileResult>();
+            List<ProfileFunctionDescriptor> pfds = new ArrayList<ProfileFunctionDescriptor>();
+            for (SQLColumn col : columns) {
+                ColumnProfileResult cpr = new ColumnProfileResult(col);
+                tpr.addColumnProfileResult(cpr);
+                cpr.setCreateStartTime(System.currentTimeMillis());
+                ProfileFunctionDescriptor pfd = functions.profileFunctionMap.get(col.getSourceDataTypeName());
+                if (pfd == null) {
+                    logger.debug(col.getName()+ " Unknown DataType:(" +
+                            col.getSourceDataTypeName() + ").");
+                    pfd = discoverProfileFunctionDescriptor(col, functions, con, pm);
+                    if (pm.isCancelled()) return;
+                    functions.profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
+                }
+                cprs.add(cpr);
+                pfds.add(pfd);
+            }
+            
+            // The first batch always carries the row count
+            boolean rowCountFound = false;
+            int batchStart = 0;
+            while ((batchStart < cprs.size() || !rowCountFound) && !pm.isCancelled()) {
+                StringBuffer sql = new StringBuffer();
+                sql.append("SELECT COUNT(*) AS ROW__COUNT");
+                int itemCount = 1;
+                int batchEnd = batchStart;
+                while (batchEnd < cprs.size()) {
+                    StringBuffer columnSql = new StringBuffer();
+                    int columnItems = appendAggregateFunctions(columnSql, functions, pfds.get(batchEnd),
+                            quote + columns.get(batchEnd).getName() + quote, "_" + batchEnd);
+                    if (batchEnd > batchStart && itemCount + columnItems > maxSelectListSize) break;
+                    sql.append(columnSql);
+                    itemCount += columnItems;
+                    batchEnd++;
+                }
+                sql.append("\nFROM ").append(qualifiedName);
+                
+                String lastSQL = sql.toString();
+                Statement stmt = null;
+                ResultSet rs = null;
+                try {
+                    stmt = con.createStatement();
+                    stmt.setEscapeProcessing(false);
+                    rs = stmt.executeQuery(lastSQL);
+                    if (!rs.next()) {
+                        throw new IllegalStateException("Query executed, but returns no rows:\n" + lastSQL);
+                    }
+                    if (!rowCountFound) {
+                        tpr.setRowCount(rs.getInt("ROW__COUNT"));
+                        rowCountFound = true;
+                    }
+                    for (int i = batchStart; i < batchEnd; i++) {
+                        readAggregateFunctions(rs, cprs.get(i), pfds.get(i), "_" + i);
+                    }
+                } catch (SQLException ex) {
+                    logger.info("Single scan profiling query failed. Profiling columns " + batchStart + 
+                            " to " + (batchEnd - 1) + " one at a time. Query was:\n" + lastSQL, ex);
+                    if (!rowCountFound) {
+                        doTableProfile(tpr);
+                        rowCountFound = true;
+                    }
+                    for (int i = batchStart; i < batchEnd && !pm.isCancelled(); i++) {
+                        try {
+                            execProfileFunctions(cprs.get(i), functions, pfds.get(i), 
+                                    columns.get(i), con, pm);
+                        } catch (Exception columnEx) {
+                            cprs.get(i).setException(columnEx);
+                            logger.error("Error in Column Profiling", columnEx);
+                        }
+                    }
+                } finally {
+                    try {
+                        if (rs != null) rs.close();
+                        if (stmt != null) stmt.close();
+                    } catch (SQLException ex) {
+                        logger.error("Couldn't clean up result set", ex);
+                    }
+                }
+                pm.setProgress(batchEnd + 1);
+                batchStart = batchEnd;
+            }
+            
+            if (settings.isFindingTopTen() && !pm.isCancelled()) {
+                List<ColumnProfileResult> topNColumns = new ArrayList<ColumnProfileResult>();
+                for (int i = 0; i < cprs.size(); i++) {
+                    if (pfds.get(i).isCountDist() && cprs.get(i).getValueCount().isEmpty()
+                            && cprs.get(i).getException() == null) {
+                        topNColumns.add(cprs.get(i));
+                    }
+                }
+                if (topNColumns.size() > 1 && supportsGroupingSetsTopN(dsType, con.getMetaData())) {
+                    topNColumns = execGroupingSetsTopN(topNColumns, con, quote, qualifiedName, maxSelectListSize);
+                }
+                for (ColumnProfileResult cpr : topNColumns) {
+                    if (pm.isCancelled()) break;
+                    try {
+                        execTopNQuery(cpr, cpr.getProfiledObject(), con, quote);
+                    } catch (SQLException ex) {
+                        cpr.setException(ex);
+                    }
+                }
+            }
+            
+            long endTime = System.currentTimeMillis();
+            for (ColumnProfileResult cpr : cprs) {
+                cpr.setCreateEndTime(endTime);
+            }
+        } finally {
+            if (con != null) {
+                con.close();
+            }
+        }
+    }
+
+    /**
+     * Finds the top N values of all the given columns with one query per batch
+     * of columns, using GROUPING SETS to group by each column separately in a
+     * single scan and ROW_NUMBER() to keep only the most frequent values of
+     * each. Columns whose query fails are left untouched.
+     * 
+     * @return The columns that still need their top N values because their
+     *         batch failed. This is empty if every batch succeeded.
+     */
+    List<ColumnProfileResult> execGroupingSetsTopN(List<ColumnProfileResult> cprs, Connection con,
+            String quote, String qualifiedName, int maxSelectListSize) {
+        // each column takes a value and a grouping flag in the select list
+        int batchSize = Math.max(1, (maxSelectListSize - 2) / 2);
+        List<ColumnProfileResult> failed = new ArrayList<ColumnProfileResult>();
+        for (int batchStart = 0; batchStart < cprs.size(); batchStart += batchSize) {
+            List<ColumnProfileResult> batch = 
+                cprs.subList(batchStart, Math.min(cprs.size(), batchStart + batchSize));
+            List<SQLColumn> columns = new ArrayList<SQLColumn>();
+            for (ColumnProfileResult cpr : batch) {
+                columns.add(cpr.getProfiledObject());
+            }
+            String lastSQL = createGroupingSetsTopNQuery(columns, quote, qualifiedName, settings.getTopNCount());
+            Statement stmt = null;
+            ResultSet rs = null;
+            try {
+                stmt = con.createStatement();
+                stmt.setEscapeProcessing(false);
+                rs = stmt.executeQuery(lastSQL);
+                List<List<Object[]>> valueCounts = new ArrayList<List<Object[]>>();
+                for (int i = 0; i < batch.size(); i++) {
+                    valueCounts.add(new ArrayList<Object[]>());
+                }
+                while (rs.next()) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        if (rs.getInt("G_" + i) == 0) {
+                            valueCounts.get(i).add(new Object[] {
+                                    rs.getObject("V_" + i), rs.getInt("COUNT1"), rs.getInt("RN") });
+                            break;
+                        }
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    addTopNValueCounts(batch.get(i), valueCounts.get(i));
+                }
+            } catch (SQLException ex) {
+                logger.info("Grouping sets top N query failed. Query was:\n" + lastSQL, ex);
+                failed.addAll(batch);
+            } finally {
+                try {
+                    if (rs != null) rs.close();
+                    if (stmt != null) stmt.close();
+                } catch (SQLException ex) {
+                    logger.error("Couldn't clean up result set", ex);
+                }
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Returns the query that finds the top N values of each of the given
+     * columns in one scan. Each row has the value of one column in
+     * <code>V_</code><i>i</i>, with <code>G_</code><i>i</i> being 0 for that
+     * column and 1 for the others, followed by the value's count and rank.
+     */
+    static String createGroupingSetsTopNQuery(List<SQLColumn> columns, String quote, String qualifiedName,
+            int topNCount) {
+        StringBuffer select = new StringBuffer();
+        StringBuffer groupingFlags = new StringBuffer();
+        StringBuffer groupingSets = new StringBuffer();
+        for (int i = 0; i < columns.size(); i++) {
+            String quotedColumn = quote + columns.get(i).getName() + quote;
+            if (i > 0) {
+                groupingFlags.append(", ");
+                groupingSets.append(", ");
+            }
+            select.append(quotedColumn).append(" AS V_").append(i).append(", ");
+            select.append("GROUPING(").append(quotedColumn).append(") AS G_").append(i).append(", ");
+            groupingFlags.append("GROUPING(").append(quotedColumn).append(")");
+            groupingSets.append("(").append(quotedColumn).append(")");
+        }
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT * FROM (\n SELECT ").append(select);
+        sql.append("COUNT(*) AS COUNT1,\n ROW_NUMBER() OVER (PARTITION BY ").append(groupingFlags);
+        sql.append(" ORDER BY COUNT(*) DESC) AS RN");
+        sql.append("\n FROM ").append(qualifiedName);
+        sql.append("\n GROUP BY GROUPING SETS (").append(groupingSets).append(")");
+        sql.append("\n) TOPN WHERE RN <= ").append(topNCount);
+        return sql.toString();
+    }
+
+    /**
+     * Adds the given rows of (value, count, rank) to the column profile result
+     * in rank order, followed by the count of all other values.
+     */
+    private void addTopNValueCounts(ColumnProfileResult cpr, List<Object[]> rows) {
+        Collections.sort(rows, new Comparator<Object[]>() {
+            public int compare(Object[] o1, Object[] o2) {
+                return ((Integer) o1[2]).compareTo((Integer) o2[2]);
+            }
+        });
+        int topNSum = 0;
+        for (Object[] row : rows) {
+            int count = ((Integer) row[1]).intValue();
+            cpr.addValueCount(row[0], count);
+            topNSum += count;
+        }
+        int remainingCount = cpr.getParent().getRowCount() - topNSum;
+        if (remainingCount > 0) {
+            cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+        }
+    }
+
+    /**
+     * Returns the most aggregates single scan mode may put in one SELECT
+     * statement on the given platform.
+     */
+    private static int getMaxSelectListSize(JDBCDataSourceType dsType) {
+        String limit = dsType.getProperty(MAX_SELECT_LIST_SIZE_PROPERTY);
+        if (limit != null) {
+            try {
+                return Math.max(2, Integer.parseInt(limit.trim()));
+            } catch (NumberFormatException ex) {
+                logger.warn("Ignoring invalid " + MAX_SELECT_LIST_SIZE_PROPERTY + " for " + 
+                        dsType.getName() + ": " + limit);
+            }
+        }
+        return DEFAULT_MAX_SELECT_LIST_SIZE;
+    }
+
+    /**
+     * Decides if the platform supports the GROUPING SETS and ROW_NUMBER()
+     * query used to find the top N values of many columns in one scan. The
+     * {@link #GROUPING_SETS_TOP_N_PROPERTY} of the data source type decides if
+     * it is set; otherwise the database product and version are checked
+     * against the platforms known to support both features.
+     */
+    static boolean supportsGroupingSetsTopN(JDBCDataSourceType dsType, DatabaseMetaData dbmd) {
+        String setting = dsType.getProperty(GROUPING_SETS_TOP_N_PROPERTY);
+        if (setting != null) {
+            return Boolean.valueOf(setting.trim()).booleanValue();
+        }
+        try {
+            String product = dbmd.getDatabaseProductName();
+            int major = dbmd.getDatabaseMajorVersion();
+            int minor = dbmd.getDatabaseMinorVersion();
+            if (product == null) {
+                return false;
+            } else if (product.startsWith("Oracle")) {
+                return major >= 9;
+            } else if (product.startsWith("Microsoft SQL Server")) {
+                return major >= 10;
+            } else if (product.startsWith("DB2")) {
+                return true;
+            } else if (product.startsWith("PostgreSQL")) {
+                return major > 9 || (major == 9 && minor >= 5);
+            }
+        } catch (SQLException ex) {
+            logger.debug("Could not determine database version", ex);
+        } catch (AbstractMethodError ex) {
+            logger.debug("Driver does not support database version lookup", ex);
+        }
+        return false;
+    }
+
     /**
      * Performs just the overall table part of the profiling.  No column profiling
      * is performed.
@@ -294,6 +661,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * in the given {@link ColumnProfileResult} object.
      * 
      * @param cpr The object to store the profile results in.
+     * @param functions The SQL functions for the platform <tt>col</tt> is in.
      * @param pfd The descriptor that says which profiling functions can be calculated
      * for col in the RDBMS it's stored in (the data types supported by the various
      * aggregate functions differ by platform).
@@ -306,6 +674,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      */
     private void execProfileFunctions(
             ColumnProfileResult cpr,
+            PlatformProfileFunctions functions,
             ProfileFunctionDescriptor pfd,
             SQLColumn col,
             Connection con,
@@ -313,12 +682,11 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         logger.debug("Starting execProfileFunctions for " + col);
         long createStartTime = System.currentTimeMillis();
-        final int i = 0;
+        final String suffix = "_0";
         StringBuffer sql = new StringBuffer();
         Statement stmt = null;
         ResultSet rs = null;
         String lastSQL = null;
-        String columnName = null;
         String databaseIdentifierQuoteString = null;
         cpr.setCreateStartTime(createStartTime);
         SQLTable table = col.getParent();
@@ -326,71 +694,8 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             databaseIdentifierQuoteString = con.getMetaData().getIdentifierQuoteString();
             sql.append("SELECT 1");
-            int tryCount = 0;
-            if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                sql.append(",\n COUNT(DISTINCT ");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS DISTINCTCOUNT_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMin() && pfd.isMinValue() ) {
-                sql.append(",\n MIN(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MINVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                sql.append(",\n MAX(");
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(col.getName());
-                sql.append(databaseIdentifierQuoteString);
-                sql.append(") AS MAXVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                sql.append(",\n ");
-                sql.append(averageSQLFunction.getAverageSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString));
-                sql.append(" AS AVGVALUE_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                sql.append(",\n MIN(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MINLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                sql.append(",\n MAX(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS MAXLENGTH_"+i);
-                tryCount++;
-            }
-            if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                sql.append(",\n AVG(");
-                sql.append(stringLengthSQLFunction.getStringLengthSQLFunction(databaseIdentifierQuoteString+
-                        col.getName()+databaseIdentifierQuoteString));
-                sql.append(") AS AVGLENGTH_"+i);
-                tryCount++;
-            }
-
-            if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                sql.append(",\n SUM(");
-                sql.append(caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(
-                        databaseIdentifierQuoteString+
-                        col.getName()+
-                        databaseIdentifierQuoteString,
-                "1"));
-                sql.append(") AS NULLCOUNT_"+i);
-                tryCount++;
-            }
+            int tryCount = appendAggregateFunctions(sql, functions, pfd, 
+                    databaseIdentifierQuoteString + col.getName() + databaseIdentifierQuoteString, suffix);
 
             if ( tryCount > 0 && !pm.isCancelled() ) {
                 sql.append("\n FROM ");
@@ -411,76 +716,18 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 if (pm.isCancelled()) return;
 
                 if (rs.next()) {
-                    if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
-                        columnName = "DISTINCTCOUNT_"+i;
-                        cpr.setDistinctValueCount(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMin() && pfd.isMinValue() ) {
-                        columnName = "MINVALUE_"+i;
-                        cpr.setMinValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMax() && pfd.isMaxValue() ) {
-                        columnName = "MAXVALUE_"+i;
-                        cpr.setMaxValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingAvg() && pfd.isAvgValue() ) {
-                        columnName = "AVGVALUE_"+i;
-                        cpr.setAvgValue(rs.getObject(columnName));
-                    }
-                    if (settings.isFindingMinLength() && pfd.isMinLength() ) {
-                        columnName = "MINLENGTH_"+i;
-                        cpr.setMinLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
-                        columnName = "MAXLENGTH_"+i;
-                        cpr.setMaxLength(rs.getInt(columnName));
-                    }
-                    if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
-                        columnName = "AVGLENGTH_"+i;
-                        cpr.setAvgLength(rs.getDouble(columnName));
-                    }
-
-                    if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
-                        columnName = "NULLCOUNT_"+i;
-                        cpr.setNullCount(rs.getInt(columnName));
-                    }
+                    readAggregateFunctions(rs, cpr, pfd, suffix);
                 }
                 else {
                     throw new IllegalStateException("Query executed, but returns no rows:\n" +
-                            lastSQL + "\nColumn Name: " + columnName );
+                            lastSQL);
                 }
                 rs.close();
                 rs = null;
             }
 
             if (settings.isFindingTopTen() && pfd.isCountDist() && !pm.isCancelled() ) {
-                sql = new StringBuffer();
-                sql.append("SELECT ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
-                sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
-                        table.getSchemaName(),
-                        table.getName(),
-                        databaseIdentifierQuoteString,
-                        databaseIdentifierQuoteString));
-                sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
-                sql.append(col.getName()).append(databaseIdentifierQuoteString);
-                sql.append(" ORDER BY COUNT1 DESC");
-
-                lastSQL = sql.toString();
-                rs = stmt.executeQuery(lastSQL);
-                int topNCount = settings.getTopNCount();
-                int topNSum = 0;
-                for (int n = 0; rs.next() && n < topNCount; n++) {
-                    cpr.addValueCount(rs.getObject("MYVALUE"), rs.getInt("COUNT1"));
-                    topNSum += rs.getInt("COUNT1");
-                }
-                int remainingCount = cpr.getParent().getRowCount() - topNSum;
-                if (remainingCount > 0) {
-                    cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
-                }
-                rs.close();
-                rs = null;
+                execTopNQuery(cpr, col, con, databaseIdentifierQuoteString);
             }
 
             cpr.setCreateEndTime(System.currentTimeMillis());
@@ -501,16 +748,166 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         }
 
     }
+
+    /**
+     * Appends the aggregate functions the settings ask for and the descriptor
+     * allows to the select list in <tt>sql</tt>. Each item is preceded by a
+     * comma and given an alias ending in <tt>suffix</tt>, so the aggregates of
+     * several columns can share one select list as long as each column has its
+     * own suffix.
+     * 
+     * @param quotedColumn
+     *            The column name, already quoted for the platform.
+     * @return The number of aggregates appended.
+     */
+    private int appendAggregateFunctions(StringBuffer sql, PlatformProfileFunctions functions,
+            ProfileFunctionDescriptor pfd, String quotedColumn, String suffix) {
+        int count = 0;
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            sql.append(",\n COUNT(DISTINCT ").append(quotedColumn);
+            sql.append(") AS DISTINCTCOUNT").append(suffix);
+            count++;
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            sql.append(",\n MIN(").append(quotedColumn);
+            sql.append(") AS MINVALUE").append(suffix);
+            count++;
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            sql.append(",\n MAX(").append(quotedColumn);
+            sql.append(") AS MAXVALUE").append(suffix);
+            count++;
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            sql.append(",\n ");
+            sql.append(functions.averageSQLFunction.getAverageSQLFunction(quotedColumn));
+            sql.append(" AS AVGVALUE").append(suffix);
+            count++;
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            sql.append(",\n MIN(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumn));
+            sql.append(") AS MINLENGTH").append(suffix);
+            count++;
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            sql.append(",\n MAX(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumn));
+            sql.append(") AS MAXLENGTH").append(suffix);
+            count++;
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            sql.append(",\n AVG(");
+            sql.append(functions.stringLengthSQLFunction.getStringLengthSQLFunction(quotedColumn));
+            sql.append(") AS AVGLENGTH").append(suffix);
+            count++;
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            sql.append(",\n SUM(");
+            sql.append(functions.caseWhenNullSQLFunction.getCaseWhenNullSQLFunction(quotedColumn, "1"));
+            sql.append(") AS NULLCOUNT").append(suffix);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Reads the aggregates appended by
+     * {@link #appendAggregateFunctions(StringBuffer, PlatformProfileFunctions, ProfileFunctionDescriptor, String, String)}
+     * with the same suffix from the current row of <tt>rs</tt> into the column
+     * profile result.
+     */
+    private void readAggregateFunctions(ResultSet rs, ColumnProfileResult cpr,
+            ProfileFunctionDescriptor pfd, String suffix) throws SQLException {
+        if (settings.isFindingDistinctCount() && pfd.isCountDist() ) {
+            cpr.setDistinctValueCount(rs.getInt("DISTINCTCOUNT" + suffix));
+        }
+        if (settings.isFindingMin() && pfd.isMinValue() ) {
+            cpr.setMinValue(rs.getObject("MINVALUE" + suffix));
+        }
+        if (settings.isFindingMax() && pfd.isMaxValue() ) {
+            cpr.setMaxValue(rs.getObject("MAXVALUE" + suffix));
+        }
+        if (settings.isFindingAvg() && pfd.isAvgValue() ) {
+            cpr.setAvgValue(rs.getObject("AVGVALUE" + suffix));
+        }
+        if (settings.isFindingMinLength() && pfd.isMinLength() ) {
+            cpr.setMinLength(rs.getInt("MINLENGTH" + suffix));
+        }
+        if (settings.isFindingMaxLength() && pfd.isMaxLength() ) {
+            cpr.setMaxLength(rs.getInt("MAXLENGTH" + suffix));
+        }
+        if (settings.isFindingAvgLength() && pfd.isAvgLength() ) {
+            cpr.setAvgLength(rs.getDouble("AVGLENGTH" + suffix));
+        }
+        if (settings.isFindingNullCount() && pfd.isSumDecode() ) {
+            cpr.setNullCount(rs.getInt("NULLCOUNT" + suffix));
+        }
+    }
+    
+    /**
+     * Finds the most frequent values of the given column with a GROUP BY query
+     * and adds them, plus the count of all other values, to the given column
+     * profile result. The result's parent must already have its row count.
+     */
+    private void execTopNQuery(ColumnProfileResult cpr, SQLColumn col, Connection con,
+            String databaseIdentifierQuoteString) throws SQLException {
+        SQLTable table = col.getParent();
+        StringBuffer sql = new StringBuffer();
+        sql.append("SELECT ").append(databaseIdentifierQuoteString);
+        sql.append(col.getName()).append(databaseIdentifierQuoteString);
+        sql.append(" AS MYVALUE, COUNT(*) AS COUNT1 FROM ");
+        sql.append(DDLUtils.toQualifiedName(table.getCatalogName(),
+                table.getSchemaName(),
+                table.getName(),
+                databaseIdentifierQuoteString,
+                databaseIdentifierQuoteString));
+        sql.append(" GROUP BY ").append(databaseIdentifierQuoteString);
+        sql.append(col.getName()).append(databaseIdentifierQuoteString);
+        sql.append(" ORDER BY COUNT1 DESC");
+
+        String lastSQL = sql.toString();
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(lastSQL);
+            int topNCount = settings.getTopNCount();
+            int topNSum = 0;
+            for (int n = 0; rs.next() && n < topNCount; n++) {
+                cpr.addValueCount(rs.getObject("MYVALUE"), rs.getInt("COUNT1"));
+                topNSum += rs.getInt("COUNT1");
+            }
+            int remainingCount = cpr.getParent().getRowCount() - topNSum;
+            if (remainingCount > 0) {
+                cpr.addValueCount(ColumnValueCount.OTHER_VALUE_OBJECT, remainingCount);
+            }
+        } catch (SQLException ex) {
+            logger.error("Top N query failed. Query was:");
+            logger.error(lastSQL);
+            throw ex;
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
     
     /**
      * Performs profiling at the column level by issuing a SELECT statement against
      * the column referenced by <tt>cpr</tt>.
      * 
      * @param cpr The profile result to populate
+     * @param functions The SQL functions for the platform the column is in.
      * @param pm The progress monitor.  This progress monitor is only used for checking
      * if the operation is canceled; it is not updated with progress information.
      */
-    protected void doColumnProfile(ColumnProfileResult cpr, MonitorableImpl pm) throws SQLException, SQLObjectException {
+    protected void doColumnProfile(ColumnProfileResult cpr, PlatformProfileFunctions functions,
+            MonitorableImpl pm) throws SQLException, SQLObjectException {
         logger.debug("Doing profile for column " + cpr.getProfiledObject().getName());
         if (pm.isCancelled()) {
             return;
@@ -527,6 +924,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             stmt = con.createStatement();
             stmt.setEscapeProcessing(false);
             
+            Map<String, ProfileFunctionDescriptor> profileFunctionMap = functions.profileFunctionMap;
             ProfileFunctionDescriptor pfd = profileFunctionMap.get(col.getSourceDataTypeName());
             long profileStartTime = System.currentTimeMillis();
 
@@ -534,12 +932,12 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 logger.debug(col.getName()+ " Unknown DataType:(" +
                         col.getSourceDataTypeName() + ").");
                 logger.debug("Known data types are: " + profileFunctionMap.keySet());
-                pfd = discoverProfileFunctionDescriptor(col, con, pm);
+                pfd = discoverProfileFunctionDescriptor(col, functions, con, pm);
                 profileFunctionMap.put(col.getSourceDataTypeName(), pfd);
             }
 
             try {
-                execProfileFunctions(cpr, pfd, col, con, pm);
+                execProfileFunctions(cpr, functions, pfd, col, con, pm);
             } catch (Exception ex) {
                 cpr.setCreateStartTime(profileStartTime);
                 cpr.setException(ex);
@@ -578,9 +976,10 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * function, and case when null SQL function as they are also database
      * specific.
      */
-    private void createProfileFunctions(JDBCDataSourceType dsType) {
+    private PlatformProfileFunctions createProfileFunctions(JDBCDataSourceType dsType) {
         
-        profileFunctionMap = new HashMap<String, ProfileFunctionDescriptor>();
+        PlatformProfileFunctions functions = new PlatformProfileFunctions();
+        Map<String, ProfileFunctionDescriptor> profileFunctionMap = functions.profileFunctionMap;
         logger.debug("The property to retrieve is " + ProfileFunctionDescriptor.class.getName() + "_(number)");
         
         for (int dataTypeCount = 0;; dataTypeCount += 1) {
@@ -601,7 +1000,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
+        functions.stringLengthSQLFunction = new StringLengthSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(AverageSQLFunction.class));
         functionParts = function.split(":");
@@ -612,7 +1011,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
+        functions.averageSQLFunction = new AverageSQLFunction(functionParts[0], functionParts[1]);
         
         function = dsType.getProperty(propName(CaseWhenNullSQLFunction.class));
         functionParts = function.split(":");
@@ -623,8 +1022,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
                 "Current setting for your database is '" + function + "'"
                 );
         }
-        caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
+        functions.caseWhenNullSQLFunction = new CaseWhenNullSQLFunction(functionParts[0], functionParts[1], functionParts[2]);
         
+        return functions;
     }
 
     /**
@@ -632,11 +1032,13 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
      * by trial and error.  This could be extremely time-consuming.
      * 
      * @param col The column to figureout how to profile
+     * @param functions The SQL functions for col's platform
      * @param conn A connection to col's database
      * @return A ProfileFunctionDescriptor that is properly configured for the data
      * type of col.
      */
-    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, Connection conn, Monitorable pm) {
+    private ProfileFunctionDescriptor discoverProfileFunctionDescriptor(SQLColumn col, 
+            PlatformProfileFunctions functions, Connection conn, Monitorable pm) {
         ProfileFunctionDescriptor pfd = new ProfileFunctionDescriptor(col.getSourceDataTypeName(),
                 col.getType(),false,false,false,false,false,false,false,false);
 
@@ -651,7 +1053,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         
         try {
             pfd.setCountDist(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, functions, pfd, col, conn, pm);
             logger.debug("countDist worked");
         } catch (Exception e) {
             logger.debug("countDist failed", e);
@@ -663,7 +1065,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
         try {
             pfd.setMaxValue(true);
             pfd.setMinValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, functions, pfd, col, conn, pm);
             logger.debug("min/max worked");
         } catch (Exception e) {
             logger.debug("min/max failed", e);
@@ -675,7 +1077,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setAvgValue(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, functions, pfd, col, conn, pm);
             logger.debug("avg worked");
         } catch (Exception e) {
             logger.debug("avg failed", e);
@@ -688,7 +1090,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
             pfd.setMaxLength(true);
             pfd.setMinLength(true);
             pfd.setAvgLength(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, functions, pfd, col, conn, pm);
             logger.debug("min/max/avg length worked");
         } catch (Exception e) {
             logger.debug("min/max/avg length failed", e);
@@ -701,7 +1103,7 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
 
         try {
             pfd.setSumDecode(true);
-            execProfileFunctions(dummy, pfd, col, conn, pm);
+            execProfileFunctions(dummy, functions, pfd, col, conn, pm);
             logger.debug("sumDecode worked");
         } catch (Exception e) {
             logger.debug("sumDecode failed", e);
@@ -736,6 +1138,9 @@ public class RemoteDatabaseProfileCreator extends AbstractTableProfileCreator {
     
     @Override
     public String toString() {
+        if (singleScan) {
+            return "Remote Database (Single Scan)";
+        }
         return "Remote Database";
     }
 }
@@ -0,0 +1,364 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.DDLUtils;
+import ca.sqlpower.sql.JDBCDataSourceType;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.util.MonitorableImpl;
+
+/**
+ * A profile creator that has the database pick a random sample of the table's
+ * rows, so only the sample crosses the network, and then profiles the sample
+ * locally like the {@link LocalReservoirProfileCreator}. Null counts and top N
+ * value counts are scaled up to estimates for the whole table; the margin of
+ * error of the resulting percentages and the size of the sample are recorded
+ * on the {@link TableProfileResult}.
+ * <p>
+ * The sampling clause appended to the table name depends on the platform. It
+ * can be given for a data source type with the {@link #SAMPLE_CLAUSE_PROPERTY}
+ * and {@link #BLOCK_SAMPLE_CLAUSE_PROPERTY} properties, in which the tokens
+ * <code>{percent}</code> and <code>{fraction}</code> are replaced by the
+ * share of rows to keep. Otherwise <code>TABLESAMPLE</code> is used on
+ * PostgreSQL, SQL Server and DB2, <code>SAMPLE</code> on Oracle, and a filter
+ * on the platform's per-row random number function on the other platforms
+ * that have one. The random filter is also used when the platform's own
+ * sampling clause fails, for example on a view. Where there is no random
+ * filter that works, the whole table is profiled instead.
+ */
+public class RemoteSampleProfileCreator extends AbstractTableProfileCreator {
+
+    private static final Logger logger = Logger.getLogger(RemoteSampleProfileCreator.class);
+
+    /**
+     * The data source type property that overrides the row sampling clause.
+     */
+    public static final String SAMPLE_CLAUSE_PROPERTY =
+        RemoteSampleProfileCreator.class.getName() + ".sampleClause";
+
+    /**
+     * The data source type property that overrides the block sampling clause.
+     */
+    public static final String BLOCK_SAMPLE_CLAUSE_PROPERTY =
+        RemoteSampleProfileCreator.class.getName() + ".blockSampleClause";
+
+    /**
+     * The random filter for SQL Server. RAND() is only evaluated once per
+     * query there, so a checksum of a new id is used as each row's random
+     * number instead. It is widened before ABS() since ABS() of the smallest
+     * int overflows.
+     */
+    static final String SQL_SERVER_RANDOM_FILTER_CLAUSE =
+        " WHERE ABS(CAST(CHECKSUM(NEWID()) AS BIGINT)) % 100000000 < {fraction} * 100000000";
+
+    /**
+     * The database's sampling is only approximately the requested size, so
+     * a little more than needed is asked for.
+     */
+    private static final double OVERSAMPLING = 1.1;
+
+    /**
+     * The settings for this profile creator.
+     */
+    private final ProfileSettings settings;
+
+    /**
+     * The number of rows the database should send back.
+     */
+    private int sampleSize = 50000;
+
+    /**
+     * If true, the database picks whole pages instead of individual rows
+     * where the platform allows it. This is much faster but the sample is
+     * less random when the table's rows are clustered.
+     */
+    private boolean blockSampling = false;
+
+    public RemoteSampleProfileCreator(ProfileSettings settings) {
+        if (settings == null) {
+            throw new NullPointerException("Null settings");
+        }
+        this.settings = settings;
+    }
+
+    @Override
+    protected boolean doProfileImpl(TableProfileResult tpr) throws SQLException, SQLObjectException {
+        SQLTable table = tpr.getProfiledObject();
+        List<SQLColumn> columns = table.getColumns();
+        JDBCDataSourceType dsType = table.getParentDatabase().getDataSource().getParentType();
+
+        MonitorableImpl pm = (MonitorableImpl) tpr.getProgressMonitor();
+        pm.setJobSize(columns.size() + 2);
+        pm.setProgress(0);
+
+        ColumnProfileAccumulator[] accumulators = null;
+        int rowCount;
+        int sampleRowCount = 0;
+        double fraction;
+        Connection con = null;
+        try {
+            con = table.getParentDatabase().getConnection();
+            DatabaseMetaData dbmd = con.getMetaData();
+            rowCount = (int) Math.min(Integer.MAX_VALUE, ProfileScheduler.estimateRowCount(dbmd, table));
+            if (rowCount < 0) {
+                rowCount = countRows(con, table);
+            }
+            pm.setProgress(1);
+            if (pm.isCancelled()) return false;
+
+            String selectAll = LocalReservoirProfileCreator.createSelectAllColumnsQuery(table);
+            fraction = rowCount == 0 ? 1.0 : sampleSize * OVERSAMPLING / rowCount;
+            String platformClause = null;
+            String filterClause = null;
+            if (fraction < 1.0) {
+                platformClause = getSampleClause(dsType, dbmd, blockSampling);
+                filterClause = getRandomFilterClause(getProductName(dbmd));
+                if (platformClause == null) {
+                    logger.info("No way to sample " + table.getName() + " on this platform; profiling every row");
+                    fraction = 1.0;
+                }
+            }
+
+            try {
+                accumulators = new ColumnProfileAccumulator[columns.size()];
+                sampleRowCount = profileSample(con, selectAll + formatSampleClause(platformClause, fraction),
+                        accumulators, pm);
+            } catch (SQLException ex) {
+                if (fraction >= 1.0 || platformClause.equals(filterClause)) throw ex;
+                if (filterClause == null) {
+                    logger.info("Sampling with \"" + platformClause + "\" failed on " + table.getName() + 
+                            "; profiling every row instead", ex);
+                    fraction = 1.0;
+                } else {
+                    logger.info("Sampling with \"" + platformClause + "\" failed on " + table.getName() + 
+                            "; falling back to a random filter", ex);
+                }
+                accumulators = new ColumnProfileAccumulator[columns.size()];
+                sampleRowCount = profileSample(con, selectAll + formatSampleClause(filterClause, fraction),
+                        accumulators, pm);
+            }
+            if (pm.isCancelled()) return false;
+        } finally {
+            try {
+                if (con != null) con.close();
+            } catch (SQLException ex) {
+                logger.error("Failed to close connection. Squishing this exception: ", ex);
+            }
+        }
+        pm.setProgress(2);
+
+        double scale = 1.0;
+        if (fraction >= 1.0) {
+            // the whole table was read
+            rowCount = sampleRowCount;
+        } else if (sampleRowCount > 0) {
+            if (sampleRowCount >= rowCount) {
+                // the catalog estimate was stale, so estimate from the sample instead
+                rowCount = (int) Math.min(Integer.MAX_VALUE, Math.round(sampleRowCount / fraction));
+            }
+            scale = rowCount / (double) sampleRowCount;
+            tpr.setSampleSize(sampleRowCount);
+            tpr.setSampleMarginOfError(TableProfileResult.marginOfError(sampleRowCount, rowCount));
+        }
+        tpr.setRowCount(rowCount);
+        for (int col = 0; col < accumulators.length; col++) {
+            ColumnProfileResult cpr = new ColumnProfileResult(columns.get(col));
+            tpr.addColumnProfileResult(cpr);
+            cpr.setCreateStartTime(tpr.getCreateStartTime());
+            accumulators[col].populate(cpr, settings.getTopNCount(), scale);
+            cpr.setCreateEndTime(System.currentTimeMillis());
+            pm.setProgress(col + 3);
+        }
+        return true;
+    }
+
+    /**
+     * Runs the given sampling query and feeds every row it returns to a new
+     * set of accumulators, which are stored in the given array.
+     * 
+     * @return The number of rows in the sample.
+     */
+    private int profileSample(Connection con, String sql, ColumnProfileAccumulator[] accumulators, 
+            MonitorableImpl pm) throws SQLException {
+        for (int col = 0; col < accumulators.length; col++) {
+            accumulators[col] = new ColumnProfileAccumulator();
+        }
+        logger.debug("About to execute sampling query: " + sql);
+        Statement stmt = null;
+        ResultSet rs = null;
+        int rows = 0;
+        try {
+            stmt = con.createStatement();
+            stmt.setEscapeProcessing(false);
+            rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                for (int col = 0; col < accumulators.length; col++) {
+                    accumulators[col].add(rs.getObject(col + 1));
+                }
+                rows++;
+                if (rows % 1000 == 0 && pm.isCancelled()) break;
+            }
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+        logger.debug("Sample has " + rows + " rows");
+        return rows;
+    }
+
+    private static int countRows(Connection con, SQLTable table) throws SQLException {
+        Statement stmt = null;
+        ResultSet rs = null;
+        try {
+            stmt = con.createStatement();
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM " + DDLUtils.toQualifiedName(table));
+            rs.next();
+            return rs.getInt(1);
+        } finally {
+            try {
+                if (rs != null) rs.close();
+                if (stmt != null) stmt.close();
+            } catch (SQLException ex) {
+                logger.error("Couldn't clean up result set", ex);
+            }
+        }
+    }
+
+    /**
+     * Returns the clause to append to the table name to sample it on the
+     * given platform, with <code>{percent}</code> or <code>{fraction}</code>
+     * standing for the share of rows to keep. Returns null if there is no
+     * way to sample on the platform.
+     */
+    static String getSampleClause(JDBCDataSourceType dsType, DatabaseMetaData dbmd, boolean blockSampling) {
+        String clause = dsType.getProperty(blockSampling ? BLOCK_SAMPLE_CLAUSE_PROPERTY : SAMPLE_CLAUSE_PROPERTY);
+        if (clause != null) {
+            return " " + clause.trim();
+        }
+        String product = getProductName(dbmd);
+        if (product == null) {
+            return null;
+        } else if (product.startsWith("Oracle")) {
+            return blockSampling ? " SAMPLE BLOCK ({percent})" : " SAMPLE ({percent})";
+        } else if (product.startsWith("Microsoft SQL Server")) {
+            // SQL Server only samples pages
+            return " TABLESAMPLE SYSTEM ({percent} PERCENT)";
+        } else if (product.startsWith("DB2")) {
+            return blockSampling ? " TABLESAMPLE SYSTEM ({percent})" : " TABLESAMPLE BERNOULLI ({percent})";
+        } else if (product.startsWith("PostgreSQL")) {
+            try {
+                int major = dbmd.getDatabaseMajorVersion();
+                int minor = dbmd.getDatabaseMinorVersion();
+                if (major > 9 || (major == 9 && minor >= 5)) {
+                    return blockSampling ? " TABLESAMPLE SYSTEM ({percent})" : " TABLESAMPLE BERNOULLI ({percent})";
+                }
+            } catch (SQLException ex) {
+                logger.debug("Could not determine database version", ex);
+            } catch (AbstractMethodError ex) {
+                logger.debug("Driver does not support database version lookup", ex);
+            }
+        }
+        return getRandomFilterClause(product);
+    }
+
+    /**
+     * Returns a filter that keeps each row of a table with the probability
+     * <code>{fraction}</code> on the given platform, or null if the platform
+     * is not known to have a random number function that is evaluated for
+     * every row.
+     */
+    static String getRandomFilterClause(String product) {
+        if (product == null) {
+            return null;
+        } else if (product.startsWith("Oracle")) {
+            return " WHERE DBMS_RANDOM.VALUE < {fraction}";
+        } else if (product.startsWith("Microsoft SQL Server")) {
+            return SQL_SERVER_RANDOM_FILTER_CLAUSE;
+        } else if (product.startsWith("PostgreSQL")) {
+            return " WHERE RANDOM() < {fraction}";
+        } else if (product.startsWith("MySQL") || product.startsWith("DB2")
+                || product.startsWith("H2") || product.startsWith("HSQL")) {
+            return " WHERE RAND() < {fraction}";
+        }
+        return null;
+    }
+
+    /**
+     * Returns the database product name from the given metadata, or null if
+     * the driver does not say.
+     */
+    private static String getProductName(DatabaseMetaData dbmd) {
+        try {
+            return dbmd.getDatabaseProductName();
+        } catch (SQLException ex) {
+            logger.debug("Could not determine database product", ex);
+            return null;
+        }
+    }
+
+    /**
+     * Fills in the share of rows to keep in the given sampling clause.
+     * Returns an empty string if the clause is null or the whole table is
+     * wanted.
+     */
+    static String formatSampleClause(String clause, double fraction) {
+        if (clause == null || fraction >= 1.0) return "";
+        BigDecimal f = BigDecimal.valueOf(fraction).setScale(8, BigDecimal.ROUND_UP).stripTrailingZeros();
+        BigDecimal percent = f.movePointRight(2);
+        return clause.replace("{percent}", percent.toPlainString()).replace("{fraction}", f.toPlainString());
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public void setSampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+    }
+
+    public boolean isBlockSampling() {
+        return blockSampling;
+    }
+
+    public void setBlockSampling(boolean blockSampling) {
+        this.blockSampling = blockSampling;
+    }
+
+    @Override
+    public String toString() {
+        return "Remote Sample";
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.profile;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded-memory counter for finding the most frequent values in a stream,
+ * using the Space-Saving algorithm of Metwally, Agrawal and El Abbadi. At most
+ * {@link #getCapacity()} values are tracked at once. While fewer distinct
+ * values than the capacity have been offered the counts are exact; after that,
+ * each reported count overestimates the true count by at most its
+ * {@link Entry#getError()}, and any value whose true frequency exceeds
+ * {@link #getTotal()} / capacity is guaranteed to be tracked.
+ * <p>
+ * The tracked entries are kept in a min-heap ordered by count so both
+ * incrementing a tracked value and replacing the least frequent value cost
+ * O(log capacity). Null is a legal value.
+ * <p>
+ * This class is not thread safe.
+ */
+public class SpaceSavingSketch {
+
+    /**
+     * One tracked value and its (possibly overestimated) count.
+     */
+    public static class Entry {
+        private Object value;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Entry(Object value, long count, long error, int heapIndex) {
+            this.value = value;
+            this.count = count;
+            this.error = error;
+            this.heapIndex = heapIndex;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+
+        /**
+         * The estimated number of occurrences of this entry's value. This is
+         * never less than the true count.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * The maximum amount by which {@link #getCount()} can exceed the
+         * true count. This is 0 for values that have been tracked since they
+         * first appeared.
+         */
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return value + "=" + count + "(+/-" + error + ")";
+        }
+    }
+
+    /**
+     * Orders entries from most to least frequent.
+     */
+    private static final Comparator<Entry> DESCENDING_COUNT = new Comparator<Entry>() {
+        public int compare(Entry o1, Entry o2) {
+            if (o1.count > o2.count) return -1;
+            if (o1.count < o2.count) return 1;
+            return 0;
+        }
+    };
+
+    private final int capacity;
+
+    private final Map<Object, Entry> entries;
+
+    /**
+     * Min-heap of the tracked entries, ordered by count. Only the first
+     * {@link #size} elements are in use. The array grows on demand up to the
+     * capacity so a sketch with a large capacity over a column with few
+     * distinct values stays small.
+     */
+    private Entry[] heap;
+
+    private int size;
+
+    private long total;
+
+    /**
+     * The number of times a tracked value was replaced by a new one.
+     */
+    private long evictions;
+
+    /**
+     * Creates a new sketch that tracks at most the given number of values.
+     */
+    public SpaceSavingSketch(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.entries = new HashMap<Object, Entry>();
+        this.heap = new Entry[Math.min(capacity, 16)];
+    }
+
+    /**
+     * Records one more occurrence of the given value.
+     */
+    public void offer(Object value) {
+        offer(value, 1);
+    }
+
+    /**
+     * Records the given number of occurrences of the given value.
+     */
+    public void offer(Object value, long increment) {
+        total += increment;
+        Entry e = entries.get(value);
+        if (e != null) {
+            e.count += increment;
+            siftDown(e.heapIndex);
+        } else if (size < capacity) {
+            if (size == heap.length) {
+                Entry[] newHeap = new Entry[(int) Math.min(capacity, heap.length * 2L)];
+                System.arraycopy(heap, 0, newHeap, 0, size);
+                heap = newHeap;
+            }
+            e = new Entry(value, increment, 0, size);
+            heap[size] = e;
+            size++;
+            entries.put(value, e);
+            siftUp(e.heapIndex);
+        } else {
+            e = heap[0];
+            entries.remove(e.value);
+            e.value = value;
+            e.error = e.count;
+            e.count += increment;
+            entries.put(value, e);
+            evictions++;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns up to n of the most frequent tracked entries, most frequent
+     * first. The returned entries are live and must not be retained across
+     * further calls to {@link #offer(Object)}.
+     */
+    public List<Entry> getTopEntries(int n) {
+        List<Entry> sorted = new ArrayList<Entry>(size);
+        for (int i = 0; i < size; i++) {
+            sorted.add(heap[i]);
+        }
+        Collections.sort(sorted, DESCENDING_COUNT);
+        if (sorted.size() > n) {
+            return sorted.subList(0, n);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns true if no tracked value has ever been evicted, in which case
+     * every count is exact and {@link #size()} is the exact number of
+     * distinct values offered.
+     */
+    public boolean isExact() {
+        return evictions == 0;
+    }
+
+    /**
+     * The number of values currently tracked.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * The total number of occurrences offered to this sketch.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Returns the largest possible overestimate of any count in this sketch,
+     * which is the smallest tracked count once the sketch has overflowed and 0
+     * before that.
+     */
+    public long getMaxError() {
+        if (isExact() || size == 0) return 0;
+        return heap[0].count;
+    }
+
+    private void siftUp(int i) {
+        Entry e = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            Entry p = heap[parent];
+            if (p.count <= e.count) break;
+            heap[i] = p;
+            p.heapIndex = i;
+            i = parent;
+        }
+        heap[i] = e;
+        e.heapIndex = i;
+    }
+
+    private void siftDown(int i) {
+        Entry e = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (e.count <= heap[child].count) break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = e;
+        e.heapIndex = i;
+    }
+}
@@ -18,6 +18,7 @@
  */
 package ca.sqlpower.architect.profile;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -62,6 +63,24 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
     private static final Logger logger = Logger.getLogger(TableProfileResult.class);
 
     private int rowCount;
+
+    /**
+     * The largest value of the watermark column seen by the profile that
+     * produced this result, or null if it was not an incremental profile.
+     */
+    private Object watermark;
+
+    /**
+     * The number of rows actually profiled if the profile was made from a
+     * sample of the table, or 0 if every row was profiled.
+     */
+    private int sampleSize;
+
+    /**
+     * The margin of error, at 95% confidence, of percentages estimated from
+     * the sample. 0 if every row was profiled.
+     */
+    private double sampleMarginOfError;
     
     /**
      * The "children" of this profile result: the profile results for the columns
@@ -69,6 +88,13 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
      */
     private List<ColumnProfileResult> columnProfileResults = new ArrayList<ColumnProfileResult>();
 
+    /**
+     * The store this result's column profile results were saved to and have
+     * not been read back from yet, or null if they are in
+     * {@link #columnProfileResults}.
+     */
+    private ProfileResultStore columnProfileResultStore;
+
     private Monitorable progressMonitor = new MonitorableImpl();
     
     /**
@@ -109,7 +135,15 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         super(tprToCopy, table);
         setName("New Table Profile");
         this.rowCount = tprToCopy.rowCount;
+        this.watermark = tprToCopy.watermark;
+        this.sampleSize = tprToCopy.sampleSize;
+        this.sampleMarginOfError = tprToCopy.sampleMarginOfError;
         this.progressMonitor = tprToCopy.progressMonitor;
+        try {
+            tprToCopy.loadColumnProfileResults();
+        } catch (IOException e) {
+            throw new SQLObjectException("Could not read the column profiles of " + tprToCopy, e);
+        }
         for (SQLColumn col : table.getColumns()) {
             for (ColumnProfileResult cpr : tprToCopy.getColumnProfileResults()) {
                 if (cpr.getProfiledObject().getUUID().equals(col.getUUID())) {
@@ -146,6 +180,75 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         firePropertyChange("rowCount", oldCount, rowCount);
     }
 
+    /**
+     * Returns the largest value of the
+     * {@link ProfileSettings#getWatermarkColumnName() watermark column} that
+     * this result covers. A later incremental profile only scans rows with a
+     * greater watermark. This is null if the result was not made by an
+     * incremental profile.
+     */
+    @Accessor
+    public Object getWatermark() {
+        return watermark;
+    }
+
+    @Mutator
+    public void setWatermark(Object watermark) {
+        Object oldWatermark = this.watermark;
+        this.watermark = watermark;
+        firePropertyChange("watermark", oldWatermark, watermark);
+    }
+
+    /**
+     * Returns the number of rows the profile was made from if it was made
+     * from a sample of the table, or 0 if every row was profiled. When this is
+     * not 0, the row count and the column counts are estimates for the whole
+     * table scaled up from the sample.
+     */
+    @Accessor
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    @Mutator
+    public void setSampleSize(int sampleSize) {
+        int oldSize = this.sampleSize;
+        this.sampleSize = sampleSize;
+        firePropertyChange("sampleSize", oldSize, sampleSize);
+    }
+
+    /**
+     * Returns the margin of error, as a fraction, of the percentages in this
+     * profile: with 95% confidence the true percentage of nulls or of any
+     * top N value is within this much of the reported one. This is 0 if every
+     * row was profiled.
+     */
+    @Accessor
+    public double getSampleMarginOfError() {
+        return sampleMarginOfError;
+    }
+
+    @Mutator
+    public void setSampleMarginOfError(double sampleMarginOfError) {
+        double oldMargin = this.sampleMarginOfError;
+        this.sampleMarginOfError = sampleMarginOfError;
+        firePropertyChange("sampleMarginOfError", oldMargin, sampleMarginOfError);
+    }
+
+    /**
+     * Returns the margin of error, at 95% confidence, of a proportion
+     * estimated from a simple random sample of the given size drawn from a
+     * table with the given number of rows. The worst case proportion of 50%
+     * is assumed, and the finite population correction is applied.
+     */
+    public static double marginOfError(int sampleSize, int rowCount) {
+        if (sampleSize <= 0 || sampleSize >= rowCount) {
+            return 0;
+        }
+        double finitePopulationCorrection = Math.sqrt((rowCount - sampleSize) / (rowCount - 1.0));
+        return 1.96 * 0.5 / Math.sqrt(sampleSize) * finitePopulationCorrection;
+    }
+
     /**
      * This printf format string is used in our toString() but is also
      * made public for use in UI controls that need an approximation
@@ -215,6 +318,58 @@ public class TableProfileResult extends AbstractProfileResult<SQLTable> {
         return Collections.unmodifiableList(columnProfileResults);
     }
 
+    /**
+     * Returns the store this result's column profile results are waiting to
+     * be read from, or null if they have been loaded.
+     */
+    @NonProperty
+    public ProfileResultStore getColumnProfileResultStore() {
+        return columnProfileResultStore;
+    }
+
+    /**
+     * Marks this result as having its column profile results in the given
+     * store rather than in memory. They are read in by
+     * {@link #loadColumnProfileResults()}.
+     */
+    @NonProperty
+    public void setColumnProfileResultStore(ProfileResultStore columnProfileResultStore) {
+        this.columnProfileResultStore = columnProfileResultStore;
+    }
+
+    /**
+     * Returns false if this result's column profile results are still in a
+     * {@link ProfileResultStore}, in which case
+     * {@link #getColumnProfileResults()} is empty until
+     * {@link #loadColumnProfileResults()} is called.
+     */
+    @NonProperty
+    public boolean isColumnProfileResultsLoaded() {
+        return columnProfileResultStore == null;
+    }
+
+    /**
+     * Reads this result's column profile results from the store they were
+     * saved to, if they have not been read yet. Projects with many profiles
+     * keep them on disk until they are viewed, so code that looks at the
+     * column results of a profile loaded from a project must call this first.
+     */
+    public void loadColumnProfileResults() throws IOException, SQLObjectException {
+        if (columnProfileResultStore == null) return;
+        List<ColumnProfileResult> loaded = columnProfileResultStore.read(this);
+        columnProfileResultStore = null;
+        begin("Loading column profiles");
+        try {
+            for (ColumnProfileResult cpr : loaded) {
+                addColumnProfileResult(cpr);
+            }
+            commit();
+        } catch (RuntimeException e) {
+            rollback(e.getMessage());
+            throw e;
+        }
+    }
+
     /**
      * Returns a collection of column profile results associated with this 
      * table. These profile results will probably differ by the
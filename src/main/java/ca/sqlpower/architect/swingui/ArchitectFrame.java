@@ -85,7 +85,7 @@ import ca.sqlpower.architect.UpdateCheckSettings;
 import ca.sqlpower.architect.UserSettings;
 import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.layout.ArchitectLayout;
-import ca.sqlpower.architect.layout.FruchtermanReingoldForceLayout;
+import ca.sqlpower.architect.layout.BarnesHutForceLayout;
 import ca.sqlpower.architect.olap.OLAPSession;
 import ca.sqlpower.architect.swingui.PlayPen.CancelableListener;
 import ca.sqlpower.architect.swingui.action.AboutAction;
@@ -131,6 +131,7 @@ import ca.sqlpower.architect.swingui.action.ReverseRelationshipAction;
 import ca.sqlpower.architect.swingui.action.SQLQueryAction;
 import ca.sqlpower.architect.swingui.action.SearchReplaceAction;
 import ca.sqlpower.architect.swingui.action.SelectAllAction;
+import ca.sqlpower.architect.swingui.action.ShowLiveCriticismsAction;
 import ca.sqlpower.architect.swingui.action.UndoAction;
 import ca.sqlpower.architect.swingui.action.VisualMappingReportAction;
 import ca.sqlpower.architect.swingui.action.ZoomAction;
@@ -761,7 +762,7 @@ public class ArchitectFrame extends JFrame {
         undoAction = new UndoAction(currentSession, this, currentSession.getUndoManager());
         redoAction = new RedoAction(currentSession, this, currentSession.getUndoManager());
         autoLayoutAction = new AutoLayoutAction(this, Messages.getString("ArchitectFrame.autoLayoutActionName"), Messages.getString("ArchitectFrame.autoLayoutActionDescription"), "auto_layout"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-        autoLayout = new FruchtermanReingoldForceLayout();
+        autoLayout = new BarnesHutForceLayout();
         autoLayoutAction.setLayout(autoLayout);
         exportDDLAction = new ExportDDLAction(this);
         
@@ -1101,6 +1102,7 @@ public class ArchitectFrame extends JFrame {
             }
         });
         windowMenu.add(new JMenuItem(getShowCriticsManagerAction()));
+        windowMenu.add(new ShowLiveCriticismsAction(this));
         
         menuBar.add(windowMenu);
 
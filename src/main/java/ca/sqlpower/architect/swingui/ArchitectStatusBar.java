@@ -29,6 +29,7 @@ import java.util.List;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.swing.ImageIcon;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 import org.apache.log4j.Logger;
@@ -201,16 +202,31 @@ public class ArchitectStatusBar implements ArchitectStatusInformation {
     @GuardedBy("this")
     private final List<ArchitectStatusProgressBar> progressBars = 
         new ArrayList<ArchitectStatusProgressBar>();
+
+    /**
+     * A short message shown after the progress bars, like how long the live
+     * critics took to catch up with the last change.
+     */
+    private final JLabel messageLabel = new JLabel();
     
     public ArchitectStatusBar() {
-        DefaultFormBuilder builder = new DefaultFormBuilder(new FormLayout("fill:pref:grow"), statusBar);
+        DefaultFormBuilder builder = new DefaultFormBuilder(new FormLayout("fill:pref:grow, 4dlu, pref"), statusBar);
         builder.append(progressBarPanel);
+        builder.append(messageLabel);
     }
     
     public JPanel getStatusBar() {
         return statusBar;
     }
 
+    /**
+     * Sets the message shown after the progress bars. This must be called on
+     * the Swing event dispatch thread.
+     */
+    public void setMessage(String message) {
+        messageLabel.setText(message);
+    }
+
     @Override
     public MonitorableImpl createProgressMonitor() {
         ArchitectStatusProgressBar newBar = new ArchitectStatusProgressBar();
@@ -37,6 +37,7 @@ import ca.sqlpower.architect.enterprise.ArchitectClientSideSession;
 import ca.sqlpower.architect.etl.kettle.KettleJob;
 import ca.sqlpower.architect.olap.OLAPRootObject;
 import ca.sqlpower.architect.olap.OLAPSession;
+import ca.sqlpower.architect.swingui.critic.LiveCriticService;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.undo.ArchitectUndoManager;
 import ca.sqlpower.sqlobject.SQLObjectException;
@@ -354,6 +355,12 @@ public interface ArchitectSwingSession extends ArchitectSession, SwingWorkerRegi
     
     ArchitectStatusBar getStatusInformation();
 
+    /**
+     * Returns the service that criticizes this session's project in the
+     * background as it changes, or null if the session has no GUI.
+     */
+    public LiveCriticService getLiveCriticService();
+
     void setSaveBehaviour(Saver saveBehaviour);
 
     public Saver getSaveBehaviour();
@@ -75,6 +75,7 @@ import ca.sqlpower.architect.swingui.action.AddDataSourceAction;
 import ca.sqlpower.architect.swingui.action.NewDataSourceAction;
 import ca.sqlpower.architect.swingui.action.OpenProjectAction;
 import ca.sqlpower.architect.swingui.action.PreferencesAction;
+import ca.sqlpower.architect.swingui.critic.LiveCriticService;
 import ca.sqlpower.architect.swingui.dbtree.DBTreeCellRenderer;
 import ca.sqlpower.architect.swingui.olap.OLAPEditSession;
 import ca.sqlpower.architect.swingui.olap.OLAPSchemaManager;
@@ -199,6 +200,12 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
      */
     private RecentMenu recent;
 
+    /**
+     * Criticizes the project in the background as it is edited. This is
+     * null until the GUI has been created.
+     */
+    private LiveCriticService liveCriticService;
+
     /** the dialog that contains the small ProfileManagerView */
     private JDialog profileDialog;
 
@@ -496,6 +503,9 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         macOSXRegistration(frame);
 
         profileDialog.setLocationRelativeTo(frame);
+
+        liveCriticService = new LiveCriticService(this);
+        liveCriticService.start();
     }
     
     public SwingUIProjectLoader getProjectLoader() {
@@ -739,6 +749,10 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         // XXX this could/should be done by the profile manager with a session closing listener
         delegateSession.getProfileManager().clear();
 
+        if (liveCriticService != null) {
+            liveCriticService.stop();
+        }
+
         fireSessionClosing();
         
         return true;
@@ -1303,6 +1317,10 @@ public class ArchitectSwingSessionImpl implements ArchitectSwingSession {
         return frame.getStatusBar();
     }
 
+    public LiveCriticService getLiveCriticService() {
+        return liveCriticService;
+    }
+
     @Override
     public Runnable createUpdateSnapshotRunnable(SPObjectSnapshot<?> snapshot) {
         return delegateSession.createUpdateSnapshotRunnable(snapshot);
@@ -28,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.swing.SwingUtilities;
 import javax.swing.text.AttributeSet;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
@@ -41,6 +42,7 @@ import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.LiquibaseDDLGenerator;
 import ca.sqlpower.architect.ddl.PostgresDDLGenerator;
 import ca.sqlpower.architect.diff.ArchitectDiffException;
+import ca.sqlpower.architect.diff.DiffChunkListener;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.diff.DiffChunk;
@@ -126,16 +128,7 @@ public class CompareDMFormatter {
             sourceDoc = generateEnglishDescription(DIFF_STYLES, convertToDiffInfo(diff));
             targetDoc = generateEnglishDescription(DIFF_STYLES, convertToDiffInfo(diff1));
 
-            // get the title string for the compareDMFrame
-
-            String leftTitle = toTitleText(true, left);
-            String rightTitle = toTitleText(false, right);
-
-            CompareDMFrame cf =
-                new CompareDMFrame(dialogOwner, sourceDoc, targetDoc, leftTitle,rightTitle);
-
-            cf.pack();
-            cf.setVisible(true);
+            showEnglishOutput(sourceDoc, targetDoc, left, right);
 
 
         } catch (SQLObjectException exp) {
@@ -151,6 +144,51 @@ public class CompareDMFormatter {
         }
     }
 
+    /**
+     * Shows the given English descriptions of the differences between the
+     * left and right objects in a new {@link CompareDMFrame}. The documents
+     * may still be filling up, for example from the listeners returned by
+     * {@link #createEnglishDescriptionWriter(DefaultStyledDocument)}.
+     */
+    public CompareDMFrame showEnglishOutput(DefaultStyledDocument sourceDoc,
+            DefaultStyledDocument targetDoc, SQLObject left, SQLObject right) {
+        // get the title string for the compareDMFrame
+
+        String leftTitle = toTitleText(true, left);
+        String rightTitle = toTitleText(false, right);
+
+        CompareDMFrame cf =
+            new CompareDMFrame(dialogOwner, sourceDoc, targetDoc, leftTitle,rightTitle);
+
+        cf.pack();
+        cf.setVisible(true);
+        return cf;
+    }
+
+    /**
+     * Returns a listener that appends the English description of the chunks
+     * it is given to the end of the document, so the results of a comparison
+     * can be shown while it is still running. The document is only changed on
+     * the Swing event dispatch thread.
+     */
+    public static DiffChunkListener createEnglishDescriptionWriter(final DefaultStyledDocument doc) {
+        final DiffInfoConverter converter = new DiffInfoConverter();
+        return new DiffChunkListener() {
+            public void chunksGenerated(List<DiffChunk<SQLObject>> chunks) {
+                final List<DiffChunk<DiffInfo>> infos = converter.convert(chunks);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        try {
+                            appendEnglishDescription(doc, DIFF_STYLES, infos);
+                        } catch (BadLocationException ex) {
+                            logger.error("Could not add results to the document", ex);
+                        }
+                    }
+                });
+            }
+        };
+    }
+
     public DDLGenerator formatForSQLOutput(List<DiffChunk<SQLObject>> diff,
             List<DiffChunk<SQLObject>> diff1, SQLObject left, SQLObject right) {
         DDLGenerator gen = null;
@@ -337,7 +375,19 @@ public class CompareDMFormatter {
 
 
         DefaultStyledDocument resultDoc = new DefaultStyledDocument();
+        appendEnglishDescription(resultDoc, styles, diff);
+        return resultDoc;
+    }
 
+    /**
+     * Appends the English descriptions of the given chunks to the end of the
+     * document.
+     * 
+     * @see #generateEnglishDescription(Map, List)
+     */
+    private static void appendEnglishDescription(DefaultStyledDocument resultDoc,
+            Map<DiffType, AttributeSet> styles, List<DiffChunk<DiffInfo>> diff)
+            throws BadLocationException {
 
         for (DiffChunk<DiffInfo> chunk : diff) {
 
@@ -409,8 +459,6 @@ public class CompareDMFormatter {
                         s, attributes);
             }
         }
-
-        return resultDoc;
     }
 
 //  Generates the proper title text for compareDMFrame or SQLScriptDialog
@@ -479,49 +527,61 @@ public class CompareDMFormatter {
 
 
     private List<DiffChunk<DiffInfo>> convertToDiffInfo(List<DiffChunk<SQLObject>> diff) {
+        return new DiffInfoConverter().convert(diff);
+    }
 
+    /**
+     * Turns the chunks of a comparison into chunks of {@link DiffInfo}, with
+     * each object's depth set from the objects before it. One converter has
+     * to be given all the chunks of a comparison in order, but they can come
+     * a few at a time.
+     */
+    private static class DiffInfoConverter {
 
-        List<DiffChunk<DiffInfo>> newDiff = new ArrayList<DiffChunk<DiffInfo>>();
-        List<SQLObject> ancestors = new ArrayList<SQLObject>();
-        ancestors.add(new SQLTable());
-        int depth = 0;
-        for (DiffChunk<SQLObject> chunk : diff) {
-            SQLObject data = chunk.getData();
-            String name;
-            if (data instanceof SQLTable && data.getPhysicalName() != null) {
-                name = data.getPhysicalName();
-            } else {
-                name = data.getName();
-            }
-            DiffInfo info = new DiffInfo(data.getClass().getSimpleName().replaceFirst("SQL", ""), name);
-
-
-            // Set the depth property based on the object hierarchy.
-            // If it is a relationship, we ignore depth, and there are only relationships left.
-            if (chunk.getData() instanceof SQLRelationship) {
-                depth = 0;
-            } else if (ancestors.get(depth).allowsChildType(data.getClass())) {
-                ancestors.add(data);
-                depth++;
-            }
-            while (depth > 0 && !ancestors.get(depth - 1).allowsChildType(data.getClass())) {
-                ancestors.remove(depth);
-                depth--;
-            }
-            ancestors.add(depth, data);
+        private final List<SQLObject> ancestors = new ArrayList<SQLObject>();
 
+        private int depth = 0;
 
-            info.setDepth(depth);
-            DiffChunk<DiffInfo> newChunk = new DiffChunk<DiffInfo>(info, chunk.getType());
-            for (PropertyChange change : chunk.getPropertyChanges()) {
-                newChunk.addPropertyChange(change);
-            }
-            newDiff.add(newChunk);
+        DiffInfoConverter() {
+            ancestors.add(new SQLTable());
         }
 
+        List<DiffChunk<DiffInfo>> convert(List<DiffChunk<SQLObject>> diff) {
+            List<DiffChunk<DiffInfo>> newDiff = new ArrayList<DiffChunk<DiffInfo>>();
+            for (DiffChunk<SQLObject> chunk : diff) {
+                SQLObject data = chunk.getData();
+                String name;
+                if (data instanceof SQLTable && data.getPhysicalName() != null) {
+                    name = data.getPhysicalName();
+                } else {
+                    name = data.getName();
+                }
+                DiffInfo info = new DiffInfo(data.getClass().getSimpleName().replaceFirst("SQL", ""), name);
 
-        return newDiff;
 
+                // Set the depth property based on the object hierarchy.
+                // If it is a relationship, we ignore depth, and there are only relationships left.
+                if (chunk.getData() instanceof SQLRelationship) {
+                    depth = 0;
+                } else if (ancestors.get(depth).allowsChildType(data.getClass())) {
+                    ancestors.add(data);
+                    depth++;
+                }
+                while (depth > 0 && !ancestors.get(depth - 1).allowsChildType(data.getClass())) {
+                    ancestors.remove(depth);
+                    depth--;
+                }
+                ancestors.add(depth, data);
 
+
+                info.setDepth(depth);
+                DiffChunk<DiffInfo> newChunk = new DiffChunk<DiffInfo>(info, chunk.getType());
+                for (PropertyChange change : chunk.getPropertyChanges()) {
+                    newChunk.addPropertyChange(change);
+                }
+                newDiff.add(newChunk);
+            }
+            return newDiff;
+        }
     }
 }
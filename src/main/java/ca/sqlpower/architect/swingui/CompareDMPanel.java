@@ -58,12 +58,14 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 import javax.swing.event.ListDataEvent;
 import javax.swing.event.ListDataListener;
+import javax.swing.text.DefaultStyledDocument;
 
 import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLUtils;
 import ca.sqlpower.architect.diff.CompareSQL;
+import ca.sqlpower.architect.diff.DiffChunkListener;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.CatalogPopulator;
 import ca.sqlpower.architect.swingui.CompareDMPanel.SourceOrTargetStuff.SchemaPopulator;
 import ca.sqlpower.architect.swingui.CompareDMSettings.DatastoreType;
@@ -1302,6 +1304,24 @@ public class CompareDMPanel extends JPanel {
 			    reenableGUIComponents();
 			    throw new RuntimeException(ex);
 			}
+
+			// The English output is shown right away and filled in as each
+			// table is compared.
+			final DiffChunkListener sourceWriter;
+			final DiffChunkListener targetWriter;
+			final CompareDMFrame englishFrame;
+			if (session.getCompareDMSettings().getOutputFormat() == CompareDMSettings.OutputFormat.ENGLISH) {
+			    DefaultStyledDocument sourceDoc = new DefaultStyledDocument();
+			    DefaultStyledDocument targetDoc = new DefaultStyledDocument();
+			    sourceWriter = CompareDMFormatter.createEnglishDescriptionWriter(sourceDoc);
+			    targetWriter = CompareDMFormatter.createEnglishDescriptionWriter(targetDoc);
+			    englishFrame = new CompareDMFormatter(session, parentDialog, session.getCompareDMSettings())
+			        .showEnglishOutput(sourceDoc, targetDoc, left, right);
+			} else {
+			    sourceWriter = null;
+			    targetWriter = null;
+			    englishFrame = null;
+			}
 			
 			compareWorker = new SPSwingWorker(session) {
 
@@ -1321,6 +1341,17 @@ public class CompareDMPanel extends JPanel {
 			            throw new CancellationException("User-requested abort");
 			        }
 			    }
+
+			    /**
+			     * Closes the English output opened when the comparison started,
+			     * so a comparison that failed or was cancelled part way through
+			     * doesn't leave its partial results looking like a finished one.
+			     */
+			    private void closeEnglishOutput() {
+			        if (englishFrame != null) {
+			            englishFrame.dispose();
+			        }
+			    }
 				
 				public void doStuff() throws SQLObjectException {
 	                try {
@@ -1338,10 +1369,18 @@ public class CompareDMPanel extends JPanel {
 	                }
 	                setJobSize(sourceComp.getJobSize() + targetComp.getJobSize());
 	                logger.debug("Generating TableDiffs for source");
-	                diff = sourceComp.generateTableDiffs(session);
+	                if (sourceWriter != null) {
+	                    sourceComp.generateTableDiffs(session, sourceWriter);
+	                } else {
+	                    diff = sourceComp.generateTableDiffs(session);
+	                }
 	                checkCancelled();
 	                logger.debug("Generating TableDiffs for target");
-	                diff1 = targetComp.generateTableDiffs(session);
+	                if (targetWriter != null) {
+	                    targetComp.generateTableDiffs(session, targetWriter);
+	                } else {
+	                    diff1 = targetComp.generateTableDiffs(session);
+	                }
 	                checkCancelled();
 					message = "Finished";
 					logger.debug("Finished Compare");
@@ -1359,6 +1398,7 @@ public class CompareDMPanel extends JPanel {
                         if (getDoStuffException() != null) {
                             Throwable exc = getDoStuffException();
                             logger.error("Error in doStuff()", exc); //$NON-NLS-1$
+                            closeEnglishOutput();
                             ASUtils.showExceptionDialog(session,
                                     Messages.getString("CompareDMPanel.databaseComparisonFailed"), exc); //$NON-NLS-1$
                             reenableGUIComponents();
@@ -1373,13 +1413,14 @@ public class CompareDMPanel extends JPanel {
                             dmFormat.formatForSQLOutput(diff, diff1, left, right);
                             break;
                         case ENGLISH:
-                            dmFormat.formatForEnglishOutput(diff, diff1, left, right);
+                            // already shown while comparing
                             break;
                         default:
                             throw new IllegalStateException("Don't know what type of output to make");                        
                         }
                         logger.debug("cleanup finished"); //$NON-NLS-1$
                     } catch (CancellationException e) {
+                        closeEnglishOutput();
                         setFinished(true);
                     } finally {
                         reenableGUIComponents();
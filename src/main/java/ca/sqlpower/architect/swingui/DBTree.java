@@ -60,6 +60,7 @@ import javax.swing.tree.TreePath;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.DeferredSourceDatabase;
 import ca.sqlpower.architect.swingui.action.DataSourcePropertiesAction;
 import ca.sqlpower.architect.swingui.action.DatabaseConnectionManagerAction;
 import ca.sqlpower.architect.swingui.action.NewDataSourceAction;
@@ -571,6 +572,7 @@ public class DBTree extends JTree implements DragSourceListener {
 			    SQLDatabase tempDB=(SQLDatabase)(p.getLastPathComponent());
 
 			    try {
+			        DeferredSourceDatabase.loadIfDeferred(tempDB);
 			        //this if is looking for a database with only tables in it
 			        //it checks first that it does not hold schemas of catalogs
 			        //then it looks if it contains error nodes, which will occur if the 
@@ -326,7 +326,12 @@ public class ProfileGraphPanel {
     private void displayValidProfile(final ColumnProfileResult cr) {
         TableProfileResult tr = (TableProfileResult) cr.getParent();
         rowCount = tr.getRowCount();
-        rowCountDisplay.setText(Integer.toString(rowCount));
+        if (tr.getSampleSize() > 0) {
+            rowCountDisplay.setText("~" + rowCount + " (sample of " + tr.getSampleSize() +
+                    " rows, \u00b1" + format(tr.getSampleMarginOfError() * 100D).trim() + "% at 95% confidence)");
+        } else {
+            rowCountDisplay.setText(Integer.toString(rowCount));
+        }
 
         StringBuffer sb = new StringBuffer();
         SQLColumn c = cr.getProfiledObject();
@@ -342,7 +347,12 @@ public class ProfileGraphPanel {
         int nullsInRecords = cr.getNullCount();
         double ratio = rowCount > 0 ? nullsInRecords * 100D / rowCount : 0;
         nullPercentLabel.setText(format(ratio));
-        uniqueCountLabel.setText(Integer.toString(cr.getDistinctValueCount()));
+        if (cr.getDistinctValueCountError() > 0) {
+            uniqueCountLabel.setText("~" + cr.getDistinctValueCount() +
+                    " (\u00b1" + format(cr.getDistinctValueCountError() * 100D).trim() + "%)");
+        } else {
+            uniqueCountLabel.setText(Integer.toString(cr.getDistinctValueCount()));
+        }
         double uniqueRatio = rowCount > 0 ? cr.getDistinctValueCount() * 100D / rowCount : 0;
         uniquePercentLabel.setText(format(uniqueRatio));
         minLengthLabel.setText(Integer.toString(cr.getMinLength()));
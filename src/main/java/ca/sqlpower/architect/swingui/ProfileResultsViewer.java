@@ -520,11 +520,13 @@ public class ProfileResultsViewer {
     }
 
     public void addTableProfileResult(TableProfileResult result) {
+        loadColumnProfileResults(result);
         results.add(result);
         tm.refresh();
     }
 
     public void addTableProfileResultToScan(TableProfileResult result) {
+        loadColumnProfileResults(result);
         tm.addTableResultToScan(result);
         List<TableProfileResult> profileResults = new ArrayList<TableProfileResult>(tm.getTableResultsToScan());
         profileResults.add(0, null);
@@ -540,6 +542,21 @@ public class ProfileResultsViewer {
         tm.clearScanList();
     }
 
+    /**
+     * Profile results loaded with a project keep their column results on disk
+     * until they are viewed, so they are read in here.
+     */
+    private void loadColumnProfileResults(TableProfileResult result) {
+        if (result.isColumnProfileResultsLoaded()) return;
+        try {
+            result.loadColumnProfileResults();
+        } catch (Exception e) {
+            logger.error("Could not load the column profiles of " + result, e); //$NON-NLS-1$
+            ASUtils.showExceptionDialogNoReport(frame, 
+                    "Could not load the column profiles of " + result.getProfiledObject().getName(), e);
+        }
+    }
+
     public JFrame getDialog() {
         return frame;
     }
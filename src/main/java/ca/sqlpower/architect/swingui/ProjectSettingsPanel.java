@@ -57,6 +57,18 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
      * A profile manager setting: How many "top n" values to store.
      */
     private JTextField numberOfFreqValues;
+
+    /**
+     * A profile manager setting: Whether distinct counts and "top n" values
+     * may be estimated with bounded memory instead of counted exactly.
+     */
+    private JCheckBox approximateProfiles;
+
+    /**
+     * A profile manager setting: The name of the column that lets tables be
+     * profiled incrementally. Blank turns incremental profiling off.
+     */
+    private JTextField watermarkColumn;
     
     /**
      * A profile manager setting: Which profile creator to use.
@@ -100,6 +112,10 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
 		
 		fb.append(Messages.getString("ProjectSettingsPanel.numCommonProfileValues"), numberOfFreqValues = new JTextField("",6)); //$NON-NLS-1$
         fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.approximateProfiles"), approximateProfiles = new JCheckBox()); //$NON-NLS-1$
+        fb.nextLine();
+        fb.append(Messages.getString("ProjectSettingsPanel.watermarkColumn"), watermarkColumn = new JTextField("", 12)); //$NON-NLS-1$ //$NON-NLS-2$
+        fb.nextLine();
         fb.appendUnrelatedComponentsGapRow();
         fb.nextLine();
         
@@ -186,6 +202,9 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
 	private void revertToProjectSettings() {
         logger.debug("Reverting project options"); //$NON-NLS-1$
         numberOfFreqValues.setText(String.valueOf(session.getProfileManager().getDefaultProfileSettings().getTopNCount()));
+        approximateProfiles.setSelected(session.getProfileManager().getDefaultProfileSettings().isApproximate());
+        String watermarkColumnName = session.getProfileManager().getDefaultProfileSettings().getWatermarkColumnName();
+        watermarkColumn.setText(watermarkColumnName == null ? "" : watermarkColumnName); //$NON-NLS-1$
         profileMode.setSelectedItem(session.getProfileManager().getCreator());
 		saveEntireSource.setSelected(session.isSavingEntireSource());
         if (session.getRelationshipLinesDirect()) {
@@ -245,6 +264,10 @@ public class ProjectSettingsPanel extends JPanel implements DataEntryPanel {
             }
         }
         
+        session.getProfileManager().getDefaultProfileSettings().setApproximate(approximateProfiles.isSelected());
+        String watermarkColumnName = watermarkColumn.getText().trim();
+        session.getProfileManager().getDefaultProfileSettings().setWatermarkColumnName(
+                watermarkColumnName.length() == 0 ? null : watermarkColumnName);
         session.getProfileManager().setCreator((TableProfileCreator) profileMode.getSelectedItem());
         
         if (directRelationships.isSelected()) {
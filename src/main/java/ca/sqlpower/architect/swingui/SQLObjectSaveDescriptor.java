@@ -0,0 +1,350 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import ca.sqlpower.architect.diff.TableDigest;
+import ca.sqlpower.sql.SPDataSource;
+import ca.sqlpower.sqlobject.SQLCatalog;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLSchema;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.UserDefinedSQLType;
+import ca.sqlpower.util.SQLPowerUtils;
+
+/**
+ * Describes the XML element {@link SwingUIProjectLoader} saves for one type of
+ * {@link SQLObject}: the element name, the prefix of its save id and the
+ * attributes it has. There is one shared descriptor per type, so saving an
+ * object only fills in an array of attribute values.
+ * <p>
+ * The attributes are written in alphabetical order with null values left
+ * out, which is the order they had when they were collected into a sorted
+ * map for each object. Project files saved through the descriptors are
+ * therefore identical to the ones saved before.
+ */
+abstract class SQLObjectSaveDescriptor {
+
+    /**
+     * The attributes every SQLObject has, in the slots they are given to
+     * {@link #collect(SQLObject, Map, Map, Object[])}.
+     */
+    private static final String[] COMMON_ATTRIBUTES = { "physicalName", "name", "UUID", "sql-exception" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+    /**
+     * The index of the first type specific attribute in the values array.
+     */
+    protected static final int FIRST = COMMON_ATTRIBUTES.length;
+
+    /**
+     * The descriptors found so far for each concrete class. Access must be
+     * synchronized on the map.
+     */
+    private static final Map<Class<?>, SQLObjectSaveDescriptor> descriptorsByClass =
+        new HashMap<Class<?>, SQLObjectSaveDescriptor>();
+
+    private final String elementName;
+
+    private final String idPrefix;
+
+    /**
+     * All the attribute names, in the order they are written.
+     */
+    private final String[] sortedNames;
+
+    /**
+     * The slot in the values array of each name in {@link #sortedNames}.
+     */
+    private final int[] sortedSlots;
+
+    private final int attributeCount;
+
+    /**
+     * @param elementName
+     *            The name of the XML element.
+     * @param idPrefix
+     *            The prefix of the save ids given to objects of this type.
+     * @param attributes
+     *            The names of the type specific attributes, in the slots
+     *            {@link #collect(SQLObject, Map, Map, Object[])} fills starting
+     *            at {@link #FIRST}.
+     */
+    private SQLObjectSaveDescriptor(String elementName, String idPrefix, String ... attributes) {
+        this.elementName = elementName;
+        this.idPrefix = idPrefix;
+        final String[] names = new String[COMMON_ATTRIBUTES.length + attributes.length];
+        System.arraycopy(COMMON_ATTRIBUTES, 0, names, 0, COMMON_ATTRIBUTES.length);
+        System.arraycopy(attributes, 0, names, COMMON_ATTRIBUTES.length, attributes.length);
+        attributeCount = names.length;
+
+        Integer[] slots = new Integer[names.length];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = i;
+        }
+        Arrays.sort(slots, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                return names[o1].compareTo(names[o2]);
+            }
+        });
+        sortedNames = new String[names.length];
+        sortedSlots = new int[names.length];
+        for (int i = 0; i < slots.length; i++) {
+            sortedSlots[i] = slots[i];
+            sortedNames[i] = names[slots[i]];
+        }
+    }
+
+    /**
+     * Fills in the type specific attribute values of the given object,
+     * starting at {@link #FIRST}. Slots left null are not saved.
+     */
+    protected abstract void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+            Map<SPDataSource, String> dbcsSaveIdMap, Object[] values);
+
+    public String getElementName() {
+        return elementName;
+    }
+
+    /**
+     * Returns the save id of an object of this type given the number of
+     * objects that already have an id.
+     */
+    public String createId(int savedObjectCount) {
+        return idPrefix + savedObjectCount;
+    }
+
+    /**
+     * Appends the attributes of the given object, each followed by a space,
+     * to the given buffer.
+     */
+    public void appendAttributes(StringBuilder sb, SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+            Map<SPDataSource, String> dbcsSaveIdMap) {
+        Object[] values = new Object[attributeCount];
+        values[0] = o.getPhysicalName();
+        values[1] = o.getName();
+        values[2] = o.getUUID();
+        if (!o.getChildrenInaccessibleReasons().isEmpty()) {
+            //Only storing the top exception to prevent file format changes
+            //Only the SQLTable should have multiple children inaccessible reasons.
+            values[3] = o.getChildrenInaccessibleReason(SQLObject.class);
+        }
+        collect(o, sqlObjectSaveIdMap, dbcsSaveIdMap, values);
+
+        for (int i = 0; i < sortedNames.length; i++) {
+            Object value = values[sortedSlots[i]];
+            if (value != null) {
+                sb.append(sortedNames[i]).append("=\"") //$NON-NLS-1$
+                    .append(SQLPowerUtils.escapeXML(value.toString())).append("\" "); //$NON-NLS-1$
+            }
+        }
+    }
+
+    /**
+     * Returns the descriptor for the given object's type.
+     *
+     * @throws UnsupportedOperationException
+     *             if objects of the given type are not saved.
+     */
+    public static SQLObjectSaveDescriptor getDescriptor(SQLObject o) {
+        synchronized (descriptorsByClass) {
+            SQLObjectSaveDescriptor descriptor = descriptorsByClass.get(o.getClass());
+            if (descriptor == null) {
+                descriptor = findDescriptor(o);
+                descriptorsByClass.put(o.getClass(), descriptor);
+            }
+            return descriptor;
+        }
+    }
+
+    private static SQLObjectSaveDescriptor findDescriptor(SQLObject o) {
+        if (o instanceof SQLDatabase) {
+            return DATABASE;
+        } else if (o instanceof SQLCatalog) {
+            return CATALOG;
+        } else if (o instanceof SQLSchema) {
+            return SCHEMA;
+        } else if (o instanceof SQLTable) {
+            return TABLE;
+        } else if (o instanceof SQLColumn) {
+            return COLUMN;
+        } else if (o instanceof SQLRelationship) {
+            return RELATIONSHIP;
+        } else if (o instanceof SQLRelationship.ColumnMapping) {
+            return COLUMN_MAPPING;
+        } else if (o instanceof SQLIndex) {
+            return INDEX;
+        } else if (o instanceof SQLIndex.Column) {
+            return INDEX_COLUMN;
+        } else {
+            throw new UnsupportedOperationException("Whoops, the SQLObject type " //$NON-NLS-1$
+                    +o.getClass().getName()+" is not supported!"); //$NON-NLS-1$
+        }
+    }
+
+    private static final SQLObjectSaveDescriptor DATABASE =
+        new SQLObjectSaveDescriptor("database", "DB", "dbcs-ref") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            values[FIRST] = dbcsSaveIdMap.get(((SQLDatabase) o).getDataSource());
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor CATALOG =
+        new SQLObjectSaveDescriptor("catalog", "CAT", "nativeTerm") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            values[FIRST] = ((SQLCatalog) o).getNativeTerm();
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor SCHEMA =
+        new SQLObjectSaveDescriptor("schema", "SCH", "nativeTerm") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            values[FIRST] = ((SQLSchema) o).getNativeTerm();
+        }
+    };
+
+    /**
+     * The primary key name is not saved. It is a property of the PK index,
+     * not the table. The content digest is only saved if the table already
+     * has one; finding it would mean reading the whole table.
+     */
+    private static final SQLObjectSaveDescriptor TABLE =
+        new SQLObjectSaveDescriptor("table", "TAB", "objectType", "content-digest") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            values[FIRST] = ((SQLTable) o).getObjectType();
+            values[FIRST + 1] = TableDigest.getCachedDigest((SQLTable) o);
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor COLUMN =
+        new SQLObjectSaveDescriptor("column", "COL", //$NON-NLS-1$ //$NON-NLS-2$
+                "source-column-ref", "userDefinedTypeUUID", "type", "sourceDataTypeName", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+                "scale", "precision", "nullable", "defaultValue", "primaryKeySeq", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+                "autoIncrement", "referenceCount", "autoIncrementSequenceName") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            SQLColumn col = (SQLColumn) o;
+            SQLColumn sourceCol = col.getSourceColumn();
+            if (sourceCol != null) {
+                values[FIRST] = sqlObjectSaveIdMap.get(sourceCol);
+            }
+            UserDefinedSQLType userDefinedSQLType = col.getUserDefinedSQLType();
+            if (userDefinedSQLType.getUpstreamType() != null) {
+                values[FIRST + 1] = userDefinedSQLType.getUpstreamType().getUUID();
+            }
+            values[FIRST + 2] = Integer.valueOf(col.getType());
+            values[FIRST + 3] = col.getSourceDataTypeName();
+            values[FIRST + 4] = Integer.valueOf(col.getScale());
+            values[FIRST + 5] = Integer.valueOf(col.getPrecision());
+            values[FIRST + 6] = Integer.valueOf(col.getNullable());
+            values[FIRST + 7] = col.getDefaultValue();
+            values[FIRST + 8] = col.isPrimaryKey() ? col.getParent().getChildrenWithoutPopulating(SQLColumn.class).indexOf(col) : null;
+            values[FIRST + 9] = Boolean.valueOf(col.isAutoIncrement());
+            values[FIRST + 10] = Integer.valueOf(col.getReferenceCount());
+            if (col.isAutoIncrementSequenceNameSet()) {
+                values[FIRST + 11] = col.getAutoIncrementSequenceName();
+            }
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor RELATIONSHIP =
+        new SQLObjectSaveDescriptor("relationship", "REL", //$NON-NLS-1$ //$NON-NLS-2$
+                "pk-table-ref", "fk-table-ref", "updateRule", "deleteRule", "deferrability", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+                "pkCardinality", "fkCardinality", "identifying") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            SQLRelationship rel = (SQLRelationship) o;
+            values[FIRST] = sqlObjectSaveIdMap.get(rel.getPkTable());
+            values[FIRST + 1] = sqlObjectSaveIdMap.get(rel.getFkTable());
+            values[FIRST + 2] = Integer.valueOf(rel.getUpdateRule().getCode());
+            values[FIRST + 3] = Integer.valueOf(rel.getDeleteRule().getCode());
+            values[FIRST + 4] = Integer.valueOf(rel.getDeferrability().getCode());
+            values[FIRST + 5] = Integer.valueOf(rel.getPkCardinality());
+            values[FIRST + 6] = Integer.valueOf(rel.getFkCardinality());
+            values[FIRST + 7] = Boolean.valueOf(rel.isIdentifying());
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor COLUMN_MAPPING =
+        new SQLObjectSaveDescriptor("column-mapping", "CMP", //$NON-NLS-1$ //$NON-NLS-2$
+                "pk-column-ref", "fk-column-ref", "fk-col-name", "fk-table") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            SQLRelationship.ColumnMapping mapping = (SQLRelationship.ColumnMapping) o;
+            values[FIRST] = sqlObjectSaveIdMap.get(mapping.getPkColumn());
+            values[FIRST + 1] = sqlObjectSaveIdMap.get(mapping.getFkColumn());
+            values[FIRST + 2] = mapping.getFkColName();
+            values[FIRST + 3] = sqlObjectSaveIdMap.get(mapping.getFkTable());
+        }
+    };
+
+    /**
+     * Normally, hyphenated names are used to stop BeanUtils from
+     * auto-populating a field. However in this case, we are going to keep the
+     * hyphen in index-type (and break the normal scheme) in order to preserve
+     * backward compatibility.
+     */
+    private static final SQLObjectSaveDescriptor INDEX =
+        new SQLObjectSaveDescriptor("index", "IDX", //$NON-NLS-1$ //$NON-NLS-2$
+                "unique", "qualifier", "clustered", "index-type", "primaryKeyIndex", "filterCondition") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            SQLIndex index = (SQLIndex) o;
+            values[FIRST] = index.isUnique();
+            values[FIRST + 1] = index.getQualifier();
+            values[FIRST + 2] = index.isClustered();
+            values[FIRST + 3] = index.getType();
+            values[FIRST + 4] = index.isPrimaryKeyIndex();
+            values[FIRST + 5] = index.getFilterCondition();
+        }
+    };
+
+    private static final SQLObjectSaveDescriptor INDEX_COLUMN =
+        new SQLObjectSaveDescriptor("index-column", "IDC", "column-ref", "ascendingOrDescending") { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+        @Override
+        protected void collect(SQLObject o, Map<SQLObject, String> sqlObjectSaveIdMap,
+                Map<SPDataSource, String> dbcsSaveIdMap, Object[] values) {
+            SQLIndex.Column col = (SQLIndex.Column) o;
+            if (col.getColumn() != null) {
+                values[FIRST] = sqlObjectSaveIdMap.get(col.getColumn());
+            }
+            values[FIRST + 1] = col.getAscendingOrDescending().name();
+        }
+    };
+}
@@ -29,17 +29,35 @@ import java.awt.datatransfer.StringSelection;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JButton;
 import javax.swing.JDialog;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -58,13 +76,18 @@ import org.apache.log4j.Logger;
 
 import ca.sqlpower.architect.ddl.DDLGenerator;
 import ca.sqlpower.architect.ddl.DDLStatement;
+import ca.sqlpower.architect.ddl.DDLStatement.StatementType;
 import ca.sqlpower.sql.JDBCDataSource;
+import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.swingui.ProgressWatcher;
 import ca.sqlpower.swingui.SPSUtils;
 import ca.sqlpower.swingui.SPSwingWorker;
-import ca.sqlpower.swingui.SPSUtils.FileExtensionFilter;
 
 import com.jgoodies.forms.builder.ButtonBarBuilder;
 import com.jgoodies.forms.builder.PanelBuilder;
@@ -82,6 +105,24 @@ public class SQLScriptDialog extends JDialog {
 
 	private static final Logger logger = Logger.getLogger(SQLScriptDialog.class);
 
+    /**
+     * The most statements the preview shows at once. Longer scripts are shown
+     * a page at a time, so the preview never holds the whole script.
+     */
+	private static final int PAGE_SIZE = 500;
+
+	/**
+	 * The most statements sent to the database in one batch, when the
+	 * database supports batches.
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * The number of connections CREATE INDEX statements are run on, besides
+	 * the one the rest of the script runs on.
+	 */
+	private static final int INDEX_CONNECTIONS = 4;
+
 	private List<DDLStatement> statements;
 	private JProgressBar progressBar = new JProgressBar();
 
@@ -95,6 +136,14 @@ public class SQLScriptDialog extends JDialog {
 	private JTextPane sqlScriptArea;
 	private AbstractDocument sqlDoc;
 
+	/**
+	 * The index of the first statement on the page the preview shows.
+	 */
+	private int pageStart;
+	private JLabel pageLabel;
+	private JButton previousPageButton;
+	private JButton nextPageButton;
+
 	private boolean closeParent;
     
     private ArchitectSwingSession session;
@@ -103,6 +152,12 @@ public class SQLScriptDialog extends JDialog {
 
     private JButton executeButton;
 
+    /**
+     * Shows how long each statement took to execute, and why the ones that
+     * failed did.
+     */
+    private JTextArea executionLog;
+
     /**
      * Creates and packs a new SQL script dialog, but does not display it. Call
      * setVisible(true) to show the dialog, which will appear over or near the
@@ -161,32 +216,38 @@ public class SQLScriptDialog extends JDialog {
 	private JPanel buildPanel() {
 		FormLayout sqlLayout = new FormLayout(
 				"4dlu, min:grow, 4dlu", //columns //$NON-NLS-1$
-				"pref, 4dlu, pref, 6dlu, fill:300dlu:grow,6dlu, pref, 6dlu, pref"); //rows //$NON-NLS-1$
+				"pref, 4dlu, pref, 6dlu, fill:300dlu:grow, 4dlu, pref, 6dlu, pref, 6dlu, pref, 4dlu, fill:60dlu"); //rows //$NON-NLS-1$
 
 		CellConstraints cc = new CellConstraints();
 
-		sqlDoc = new DefaultStyledDocument();
-
-		SimpleAttributeSet att = new SimpleAttributeSet();
-		StyleConstants.setForeground(att, Color.black);
-
-		for (DDLStatement ddl : statements){
-			try {
-				sqlDoc.insertString(sqlDoc.getLength(), ddl.getSQLText()+ddl.getSqlTerminator(), att);
-			} catch(BadLocationException e) {
-				ASUtils.showExceptionDialogNoReport(parent,
-						Messages.getString("SQLScriptDialog.couldNotCreateDocument"), e); //$NON-NLS-1$
-				logger.error("Could not create document for results", e); //$NON-NLS-1$
-			}
-		}
 		sqlScriptArea = new JTextPane();
 		sqlScriptArea.setMargin(new Insets(6, 10, 4, 6));
-		sqlScriptArea.setDocument(sqlDoc);
 		sqlScriptArea.setEditable(false);
 		sqlScriptArea.setAutoscrolls(true);
 		JScrollPane sp = new JScrollPane(sqlScriptArea);
 
-		Action copy = new CopyAction(sqlDoc);
+		pageLabel = new JLabel();
+		previousPageButton = new JButton(new AbstractAction(Messages.getString("SQLScriptDialog.previousPageOption")) { //$NON-NLS-1$
+		    public void actionPerformed(ActionEvent e) {
+		        showPage(Math.max(0, pageStart - PAGE_SIZE));
+		    }
+		});
+		nextPageButton = new JButton(new AbstractAction(Messages.getString("SQLScriptDialog.nextPageOption")) { //$NON-NLS-1$
+		    public void actionPerformed(ActionEvent e) {
+		        showPage(pageStart + PAGE_SIZE);
+		    }
+		});
+		ButtonBarBuilder pageBarBuilder = new ButtonBarBuilder();
+		pageBarBuilder.addGridded(previousPageButton);
+		pageBarBuilder.addRelatedGap();
+		pageBarBuilder.addFixed(pageLabel);
+		pageBarBuilder.addRelatedGap();
+		pageBarBuilder.addGridded(nextPageButton);
+		JPanel pageBar = pageBarBuilder.getPanel();
+		pageBar.setVisible(statements.size() > PAGE_SIZE);
+		showPage(0);
+
+		Action copy = new CopyAction();
 		Action execute = null;
 		
 		execute = new AbstractAction(){
@@ -202,15 +263,7 @@ public class SQLScriptDialog extends JDialog {
 			}
 		};
 
-		Action save = new AbstractAction() {
-			public void actionPerformed(ActionEvent e) {
-
-				logger.info( "SQL_FILE_FILTER:"+ ((FileExtensionFilter) SPSUtils.SQL_FILE_FILTER).toString()); //$NON-NLS-1$
-
-				SPSUtils.saveDocument(parent,sqlDoc,
-						(FileExtensionFilter) SPSUtils.SQL_FILE_FILTER );
-			}
-		};
+		Action save = new SaveAction();
 		CloseAction close = new CloseAction();
 		close.setWhatToClose(this);
 		SPSUtils.makeJDialogCancellable(this, close);
@@ -257,12 +310,57 @@ public class SQLScriptDialog extends JDialog {
 		    executeButton.setEnabled(false);
 		}
 		pb.add(sp, cc.xy(2, 5));
-    		pb.add(barBuilder.getPanel(), cc.xy(2, 7, "c,c")); //$NON-NLS-1$
-		pb.add(progressBar, cc.xy(2, 9));
+		pb.add(pageBar, cc.xy(2, 7, "c,c")); //$NON-NLS-1$
+    		pb.add(barBuilder.getPanel(), cc.xy(2, 9, "c,c")); //$NON-NLS-1$
+		pb.add(progressBar, cc.xy(2, 11));
+		executionLog = new JTextArea();
+		executionLog.setEditable(false);
+		pb.add(new JScrollPane(executionLog), cc.xy(2, 13));
 
 		return pb.getPanel();
 	}
 
+	/**
+	 * Shows the page of statements starting with the given one in the preview.
+	 */
+	private void showPage(int start) {
+	    pageStart = start;
+	    int end = Math.min(start + PAGE_SIZE, statements.size());
+
+	    StringBuilder text = new StringBuilder();
+	    for (DDLStatement ddl : statements.subList(start, end)) {
+	        text.append(ddl.getSQLText()).append(ddl.getSqlTerminator());
+	    }
+	    SimpleAttributeSet att = new SimpleAttributeSet();
+	    StyleConstants.setForeground(att, Color.black);
+	    sqlDoc = new DefaultStyledDocument();
+	    try {
+	        sqlDoc.insertString(0, text.toString(), att);
+	    } catch(BadLocationException e) {
+	        ASUtils.showExceptionDialogNoReport(parent,
+	                Messages.getString("SQLScriptDialog.couldNotCreateDocument"), e); //$NON-NLS-1$
+	        logger.error("Could not create document for results", e); //$NON-NLS-1$
+	    }
+	    sqlScriptArea.setDocument(sqlDoc);
+	    sqlScriptArea.setCaretPosition(0);
+
+	    pageLabel.setText(Messages.getString("SQLScriptDialog.showingStatements", //$NON-NLS-1$
+	            String.valueOf(start + 1), String.valueOf(end), String.valueOf(statements.size())));
+	    previousPageButton.setEnabled(start > 0);
+	    nextPageButton.setEnabled(end < statements.size());
+	}
+
+	/**
+	 * Writes every statement in the script to the given writer, as the
+	 * preview shows them.
+	 */
+	private void writeScript(Writer out) throws IOException {
+	    for (DDLStatement ddl : statements) {
+	        out.write(ddl.getSQLText() + ddl.getSqlTerminator());
+	    }
+	    out.flush();
+	}
+
 	public SPSwingWorker getExecuteTask() {
 		return executeTask;
 	}
@@ -283,22 +381,64 @@ public class SQLScriptDialog extends JDialog {
 
 	private class CopyAction extends AbstractAction {
 
-		AbstractDocument doc;
-		public CopyAction(AbstractDocument doc) {
-			this.doc = doc;
-		}
-
 		public void actionPerformed(ActionEvent e) {
 
 			try {
-				StringSelection selection = new StringSelection(doc.getText(0,doc.getLength()));
+				StringWriter script = new StringWriter();
+				writeScript(script);
+				StringSelection selection = new StringSelection(script.toString());
 				Toolkit.getDefaultToolkit().getSystemClipboard().setContents(selection,selection);
-			} catch (BadLocationException e1) {
+			} catch (IOException e1) {
 				logger.debug("Unable to get the text for copying"+ e1); //$NON-NLS-1$
 			}
 
 		}
 	}
+
+	/**
+	 * Saves the whole script to a file the user picks, writing it a statement
+	 * at a time.
+	 */
+	private class SaveAction extends AbstractAction {
+
+	    public void actionPerformed(ActionEvent e) {
+	        JFileChooser chooser = new JFileChooser();
+	        chooser.addChoosableFileFilter(SPSUtils.SQL_FILE_FILTER);
+
+	        File file;
+	        while (true) {
+	            if (chooser.showSaveDialog(SQLScriptDialog.this) != JFileChooser.APPROVE_OPTION) {
+	                return;
+	            }
+	            file = chooser.getSelectedFile();
+	            if (!file.getName().toLowerCase().endsWith(".sql")) { //$NON-NLS-1$
+	                file = new File(file.getPath() + ".sql"); //$NON-NLS-1$
+	            }
+	            if (!file.exists()) break;
+	            int response = JOptionPane.showConfirmDialog(SQLScriptDialog.this,
+	                    Messages.getString("SQLScriptDialog.fileExists", file.getPath()), //$NON-NLS-1$
+	                    Messages.getString("SQLScriptDialog.fileExistsDialogTitle"), JOptionPane.YES_NO_OPTION); //$NON-NLS-1$
+	            if (response == JOptionPane.YES_OPTION) break;
+	        }
+
+	        logger.debug("Saving script to " + file.getPath()); //$NON-NLS-1$
+	        Writer out = null;
+	        try {
+	            out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8")); //$NON-NLS-1$
+	            writeScript(out);
+	        } catch (IOException ex) {
+	            ASUtils.showExceptionDialogNoReport(SQLScriptDialog.this,
+	                    Messages.getString("SQLScriptDialog.couldNotSaveScript"), ex); //$NON-NLS-1$
+	            logger.error("Could not save the script to " + file, ex); //$NON-NLS-1$
+	        } finally {
+	            try {
+	                if (out != null) out.close();
+	            } catch (IOException ex) {
+	                logger.error("Couldn't close " + file, ex); //$NON-NLS-1$
+	            }
+	        }
+	    }
+	}
 	
 	/**
 	 * An action that will close the parent dialog when this window
@@ -332,6 +472,44 @@ public class SQLScriptDialog extends JDialog {
 
 		private int stmtsCompleted = 0;
 
+		/**
+		 * The statements executed in the current batch, which have not been
+		 * sent to the database yet.
+		 */
+		private final List<DDLStatement> batch = new ArrayList<DDLStatement>();
+
+		/**
+		 * Index statements whose tables are in the current batch. They are
+		 * started once the batch has been executed.
+		 */
+		private final List<DDLStatement> waitingIndices = new ArrayList<DDLStatement>();
+
+		/**
+		 * Runs CREATE INDEX statements on connections of their own, or null
+		 * if the script is not being executed.
+		 */
+		private ExecutorService indexExecutor;
+
+		private final List<Future<?>> indexTasks = new ArrayList<Future<?>>();
+
+		/**
+		 * The tables of the index statements that have been started or are
+		 * waiting for the batch and are not known to be finished.
+		 */
+		private final Set<SQLTable> pendingIndexTables = new HashSet<SQLTable>();
+
+		/**
+		 * Every connection the index threads opened, so they can be closed
+		 * when the script is done.
+		 */
+		private final List<Connection> indexConnections = new ArrayList<Connection>();
+
+		/**
+		 * Makes sure only one "do you want to continue" question is asked at
+		 * a time.
+		 */
+		private final Object failureLock = new Object();
+
         public ExecuteSQLScriptWorker(ArchitectSwingSession session) {
 		    super(session);
 		    setMessage(null);
@@ -350,10 +528,11 @@ public class SQLScriptDialog extends JDialog {
 			setCancelled(false);
 			if (isCancelled() || isFinished()) return;
 
-			SQLDatabase target = new SQLDatabase(targetDataSource);
+			final SQLDatabase target = new SQLDatabase(targetDataSource);
 			statusLabel.setText(Messages.getString("SQLScriptDialog.creatingObjectsInTargetDb") + target.getDataSource() ); //$NON-NLS-1$
 			setProgress(0);
 			stmtsCompleted = 0;
+			clearExecutionLog();
 
 			logger.debug("the Target Database is: " + target.getDataSource()); //$NON-NLS-1$
 
@@ -372,14 +551,18 @@ public class SQLScriptDialog extends JDialog {
 				throw new RuntimeException(Messages.getString("SQLScriptDialog.specifyATargetDb")); //$NON-NLS-1$
 			}
 
+			boolean batching;
 			try {
 				logger.debug("the connection thinks it is: " + con.getMetaData().getURL()); //$NON-NLS-1$
+				batching = con.getMetaData().supportsBatchUpdates();
 				stmt = con.createStatement();
 			} catch (SQLException ex) {
 				setFinished(true);
 				throw new RuntimeException(Messages.getString("SQLScriptDialog.couldNotGenerateDDL", ex.getMessage())); //$NON-NLS-1$
 			}
 
+			long scriptStart = System.currentTimeMillis();
+			indexExecutor = Executors.newFixedThreadPool(INDEX_CONNECTIONS);
 			try {
 				logger.info("Starting DDL Generation at " + new java.util.Date(System.currentTimeMillis())); //$NON-NLS-1$
 				logger.info("Database Target: " + target.getDataSource()); //$NON-NLS-1$
@@ -389,47 +572,31 @@ public class SQLScriptDialog extends JDialog {
 				Iterator<DDLStatement> it = statements.iterator();
 				while (it.hasNext() && !isFinished() && !isCancelled()) {
 					DDLStatement ddlStmt = it.next();
-					try {
-						increaseProgress();
-						logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
-						stmt.executeUpdate(ddlStmt.getSQLText());
-						stmtsCompleted++;
-					} catch (final SQLException ex) {
-						final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
-						logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
-						try {
-							SwingUtilities.invokeAndWait(new Runnable() {
-								public void run() {
-									JTextArea jta = new JTextArea(fsql);
-									jta.setOpaque(false);
-									jta.setEditable(false);
-									JPanel jp = new JPanel(new BorderLayout(0, 10));
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
-									jp.add(jta, BorderLayout.CENTER);
-									jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
-									int decision = JOptionPane.showConfirmDialog(
-									        SQLScriptDialog.this,
-									        jp,
-									        Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
-									        JOptionPane.YES_NO_OPTION);
-									if (decision == JOptionPane.NO_OPTION) {
-										logger.info("Export cancelled by user."); //$NON-NLS-1$
-										cancelJob();
-									}
-								}
-							});
-						} catch (InterruptedException ex2) {
-							logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
-						} catch (InvocationTargetException ex2) {
-							throw new RuntimeException(ex2);
-						}
-
-						if (isCancelled()) {
-							setFinished(true);
-							// don't return, we might as well display how many statements ended up being processed...
-						}
+					if (isIndexCreation(ddlStmt)) {
+					    pendingIndexTables.addAll(getTables(ddlStmt));
+					    // the index's table may still be waiting in the batch
+					    if (batch.isEmpty()) {
+					        startIndex(target, ddlStmt);
+					    } else {
+					        waitingIndices.add(ddlStmt);
+					    }
+					    continue;
+					}
+					if (mustWaitForIndices(ddlStmt, pendingIndexTables)) {
+					    executeBatch(target, stmt);
+					    waitForIndices();
+					}
+					if (batching) {
+					    batch.add(ddlStmt);
+					    if (batch.size() >= BATCH_SIZE) {
+					        executeBatch(target, stmt);
+					    }
+					} else {
+					    execute(stmt, ddlStmt);
 					}
 				}
+				executeBatch(target, stmt);
+				waitForIndices();
 
 			} catch (Exception exc){
 				logger.info("Caught Unexpected Exception " + exc); //$NON-NLS-1$
@@ -438,10 +605,27 @@ public class SQLScriptDialog extends JDialog {
 						Messages.getString("SQLScriptDialog.couldNotFinishSQL"), //$NON-NLS-1$
 						exc);
 			} finally {
+				// running index statements still use their connections
+				indexExecutor.shutdownNow();
+				try {
+				    while (!indexExecutor.awaitTermination(1, TimeUnit.SECONDS)) {
+				        logger.debug("Waiting for index statements to finish"); //$NON-NLS-1$
+				    }
+				} catch (InterruptedException ex) {
+				    logger.warn("Interrupted while waiting for index statements to finish", ex); //$NON-NLS-1$
+				    Thread.currentThread().interrupt();
+				}
+				indexExecutor = null;
+				indexTasks.clear();
+				pendingIndexTables.clear();
+				batch.clear();
+				waitingIndices.clear();
 				final String resultsMessage =
 					(stmtsCompleted == 0 ? Messages.getString("SQLScriptDialog.didNotExecute", String.valueOf(getProgress())) : //$NON-NLS-1$
 						Messages.getString("SQLScriptDialog.successfullyExecuted", String.valueOf(stmtsCompleted), String.valueOf(getProgress()))); //$NON-NLS-1$
 				logger.info(resultsMessage);
+				appendToExecutionLog(Messages.getString("SQLScriptDialog.totalTime", //$NON-NLS-1$
+				        String.valueOf(System.currentTimeMillis() - scriptStart)));
 				JOptionPane.showMessageDialog(SQLScriptDialog.this, resultsMessage);
 				// flush and close the LogWriter
 				try {
@@ -454,11 +638,217 @@ public class SQLScriptDialog extends JDialog {
 				} catch (SQLException ex) {
 					logger.error("Couldn't close connection", ex); //$NON-NLS-1$
 				}
+				synchronized (indexConnections) {
+				    for (Connection indexCon : indexConnections) {
+				        try {
+				            indexCon.close();
+				        } catch (SQLException ex) {
+				            logger.error("Couldn't close connection", ex); //$NON-NLS-1$
+				        }
+				    }
+				    indexConnections.clear();
+				}
 				SQLScriptDialog.this.executeButton.setEnabled(true);
 			}
 
 		}
 
+
+		/**
+		 * Executes one statement on its own, reporting how long it took or
+		 * why it failed.
+		 */
+		private void execute(Statement stmt, DDLStatement ddlStmt) {
+		    long start = System.currentTimeMillis();
+		    try {
+		        logger.info("executing: " + ddlStmt.getSQLText()); //$NON-NLS-1$
+		        stmt.executeUpdate(ddlStmt.getSQLText());
+		        statementExecuted(ddlStmt, System.currentTimeMillis() - start);
+		    } catch (SQLException ex) {
+		        statementFailed(ddlStmt, ex);
+		    }
+		}
+
+		/**
+		 * Executes the statements in the current batch, then starts the index
+		 * statements that were waiting for them. If the batch fails, the
+		 * statements the database did not get to are executed one at a time.
+		 */
+		private void executeBatch(SQLDatabase target, Statement stmt) {
+		    if (!batch.isEmpty()) {
+		        List<DDLStatement> remaining = Collections.emptyList();
+		        long start = System.currentTimeMillis();
+		        try {
+		            for (DDLStatement ddlStmt : batch) {
+		                logger.info("batching: " + ddlStmt.getSQLText()); //$NON-NLS-1$
+		                stmt.addBatch(ddlStmt.getSQLText());
+		            }
+		            stmt.executeBatch();
+		            batchExecuted(batch, System.currentTimeMillis() - start);
+		        } catch (BatchUpdateException ex) {
+		            // drivers either stop at the first failure or mark each failure
+		            int[] counts = ex.getUpdateCounts() == null ? new int[0] : ex.getUpdateCounts();
+		            boolean reported = false;
+		            for (int i = 0; i < counts.length && i < batch.size(); i++) {
+		                if (counts[i] == Statement.EXECUTE_FAILED) {
+		                    statementFailed(batch.get(i), ex);
+		                    reported = true;
+		                } else {
+		                    statementExecuted(batch.get(i), -1);
+		                }
+		            }
+		            if (counts.length < batch.size()) {
+		                statementFailed(batch.get(counts.length), ex);
+		                remaining = batch.subList(counts.length + 1, batch.size());
+		            } else if (!reported) {
+		                statementFailed(batch.get(batch.size() - 1), ex);
+		            }
+		        } catch (SQLException ex) {
+		            logger.info("Could not execute batch, executing its statements one at a time", ex); //$NON-NLS-1$
+		            remaining = batch;
+		        } finally {
+		            try {
+		                stmt.clearBatch();
+		            } catch (SQLException ex) {
+		                logger.error("Couldn't clear batch", ex); //$NON-NLS-1$
+		            }
+		        }
+		        for (DDLStatement ddlStmt : remaining) {
+		            if (isFinished() || isCancelled()) break;
+		            execute(stmt, ddlStmt);
+		        }
+		        batch.clear();
+		    }
+
+		    for (DDLStatement index : waitingIndices) {
+		        startIndex(target, index);
+		    }
+		    waitingIndices.clear();
+		}
+
+		/**
+		 * Starts executing an index statement on one of the index threads.
+		 */
+		private void startIndex(final SQLDatabase target, final DDLStatement ddlStmt) {
+		    indexTasks.add(indexExecutor.submit(new Runnable() {
+		        public void run() {
+		            if (isFinished() || isCancelled()) return;
+		            Statement indexStmt = null;
+		            try {
+		                indexStmt = getIndexConnection(target).createStatement();
+		                execute(indexStmt, ddlStmt);
+		            } catch (SQLException ex) {
+		                statementFailed(ddlStmt, ex);
+		            } catch (SQLObjectException ex) {
+		                statementFailed(ddlStmt, ex);
+		            } finally {
+		                try {
+		                    if (indexStmt != null) indexStmt.close();
+		                } catch (SQLException ex) {
+		                    logger.error("SQLException while closing statement", ex); //$NON-NLS-1$
+		                }
+		            }
+		        }
+		    }));
+		}
+
+		/**
+		 * The connection each index thread uses.
+		 */
+		private final ThreadLocal<Connection> indexConnection = new ThreadLocal<Connection>();
+
+		private Connection getIndexConnection(SQLDatabase target) throws SQLObjectException {
+		    Connection c = indexConnection.get();
+		    if (c == null) {
+		        c = target.getConnection();
+		        indexConnection.set(c);
+		        synchronized (indexConnections) {
+		            indexConnections.add(c);
+		        }
+		    }
+		    return c;
+		}
+
+		/**
+		 * Waits for every index statement started so far to finish.
+		 */
+		private void waitForIndices() throws InterruptedException {
+		    for (Future<?> task : indexTasks) {
+		        try {
+		            task.get();
+		        } catch (ExecutionException ex) {
+		            throw new RuntimeException(ex.getCause());
+		        }
+		    }
+		    indexTasks.clear();
+		    pendingIndexTables.clear();
+		}
+
+		private synchronized void statementExecuted(DDLStatement ddlStmt, long millis) {
+		    increaseProgress();
+		    stmtsCompleted++;
+		    if (millis >= 0) {
+		        appendToExecutionLog(Messages.getString("SQLScriptDialog.statementTime", //$NON-NLS-1$
+		                String.valueOf(millis), summarize(ddlStmt)));
+		    }
+		}
+
+		private synchronized void batchExecuted(List<DDLStatement> executed, long millis) {
+		    for (DDLStatement ddlStmt : executed) {
+		        statementExecuted(ddlStmt, -1);
+		    }
+		    appendToExecutionLog(Messages.getString("SQLScriptDialog.batchTime", //$NON-NLS-1$
+		            String.valueOf(millis), String.valueOf(executed.size()), summarize(executed.get(0))));
+		}
+
+		/**
+		 * Reports a statement that failed, and asks the user whether to go on
+		 * with the rest of the script.
+		 */
+		private void statementFailed(DDLStatement ddlStmt, final Exception ex) {
+		    synchronized (this) {
+		        increaseProgress();
+		    }
+		    final String fsql = ddlStmt.getSQLText() == null ? null : ddlStmt.getSQLText().trim();
+		    logger.info("sql statement failed: " + ex.getMessage()); //$NON-NLS-1$
+		    appendToExecutionLog(Messages.getString("SQLScriptDialog.statementFailedLog", //$NON-NLS-1$
+		            summarize(ddlStmt), ex.getMessage()));
+		    synchronized (failureLock) {
+		        if (isCancelled()) return;
+		        try {
+		            SwingUtilities.invokeAndWait(new Runnable() {
+		                public void run() {
+		                    JTextArea jta = new JTextArea(fsql);
+		                    jta.setOpaque(false);
+		                    jta.setEditable(false);
+		                    JPanel jp = new JPanel(new BorderLayout(0, 10));
+		                    jp.add(new JLabel(Messages.getString("SQLScriptDialog.sqlStatementFailed", ex.getMessage())), BorderLayout.NORTH);
+		                    jp.add(jta, BorderLayout.CENTER);
+		                    jp.add(new JLabel(Messages.getString("SQLScriptDialog.continuePrompt")), BorderLayout.SOUTH);
+		                    int decision = JOptionPane.showConfirmDialog(
+		                            SQLScriptDialog.this,
+		                            jp,
+		                            Messages.getString("SQLScriptDialog.sqlFailure"), //$NON-NLS-1$
+		                            JOptionPane.YES_NO_OPTION);
+		                    if (decision == JOptionPane.NO_OPTION) {
+		                        logger.info("Export cancelled by user."); //$NON-NLS-1$
+		                        cancelJob();
+		                    }
+		                }
+		            });
+		        } catch (InterruptedException ex2) {
+		            logger.warn("DDL Worker was interrupted during InvokeAndWait", ex2); //$NON-NLS-1$
+		        } catch (InvocationTargetException ex2) {
+		            throw new RuntimeException(ex2);
+		        }
+		    }
+
+		    if (isCancelled()) {
+		        setFinished(true);
+		        // don't return, we might as well display how many statements ended up being processed...
+		    }
+		}
+
 		/**
 		 * Displays error messages or invokes the next process in the chain on a new
 		 * thread. The run method asks swing to invoke this method on the event dispatch
@@ -478,4 +868,86 @@ public class SQLScriptDialog extends JDialog {
 		}
 
 	}
+
+	/**
+	 * Returns true if the given statement creates an index, which can be
+	 * done on a connection of its own once the index's table exists.
+	 */
+	static boolean isIndexCreation(DDLStatement ddlStmt) {
+	    return ddlStmt.getType() == StatementType.CREATE && ddlStmt.getObject() instanceof SQLIndex;
+	}
+
+	/**
+	 * Returns true if the index statements still running have to finish
+	 * before the given statement is executed: the statement touches a
+	 * table with an index being created, which would wait for or fail on
+	 * the index's locks, or it is a drop or alter that may be about the
+	 * indices. Creates, primary keys and comments on other tables can be
+	 * batched while the indices are created.
+	 *
+	 * @param pendingIndexTables
+	 *            The tables of the index statements that may not be finished.
+	 */
+	static boolean mustWaitForIndices(DDLStatement ddlStmt, Set<SQLTable> pendingIndexTables) {
+	    if (pendingIndexTables.isEmpty()) return false;
+	    StatementType type = ddlStmt.getType();
+	    if (type != StatementType.CREATE && type != StatementType.ADD_PK && type != StatementType.COMMENT) {
+	        return true;
+	    }
+	    for (SQLTable table : getTables(ddlStmt)) {
+	        if (pendingIndexTables.contains(table)) return true;
+	    }
+	    return false;
+	}
+
+	/**
+	 * Returns the tables the given statement changes or locks: both tables
+	 * of a relationship, the parent table of a column or index, or the
+	 * table itself.
+	 */
+	static List<SQLTable> getTables(DDLStatement ddlStmt) {
+	    SQLObject object = ddlStmt.getObject();
+	    List<SQLTable> tables = new ArrayList<SQLTable>(2);
+	    if (object instanceof SQLTable) {
+	        tables.add((SQLTable) object);
+	    } else if (object instanceof SQLColumn || object instanceof SQLIndex) {
+	        if (object.getParent() instanceof SQLTable) {
+	            tables.add((SQLTable) object.getParent());
+	        }
+	    } else if (object instanceof SQLRelationship) {
+	        SQLRelationship r = (SQLRelationship) object;
+	        if (r.getPkTable() != null) tables.add(r.getPkTable());
+	        if (r.getFkTable() != null) tables.add(r.getFkTable());
+	    }
+	    return tables;
+	}
+
+	/**
+	 * Returns the first line of the given statement, for the execution log.
+	 */
+	private static String summarize(DDLStatement ddlStmt) {
+	    String sql = ddlStmt.getSQLText() == null ? "" : ddlStmt.getSQLText().trim(); //$NON-NLS-1$
+	    int lineEnd = sql.indexOf('\n');
+	    return lineEnd < 0 ? sql : sql.substring(0, lineEnd).trim();
+	}
+
+	private void clearExecutionLog() {
+	    SwingUtilities.invokeLater(new Runnable() {
+	        public void run() {
+	            executionLog.setText(""); //$NON-NLS-1$
+	        }
+	    });
+	}
+
+	/**
+	 * Adds a line to the execution log. This can be called from any thread.
+	 */
+	private void appendToExecutionLog(final String line) {
+	    SwingUtilities.invokeLater(new Runnable() {
+	        public void run() {
+	            executionLog.append(line);
+	            executionLog.append("\n"); //$NON-NLS-1$
+	        }
+	    });
+	}
 }
@@ -57,6 +57,7 @@ import javax.swing.table.TableModel;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.DeferredSourceDatabase;
 import ca.sqlpower.architect.swingui.action.ZoomToFitAction;
 import ca.sqlpower.architect.swingui.event.SelectionEvent;
 import ca.sqlpower.sqlobject.SQLColumn;
@@ -517,6 +518,7 @@ public class SearchReplace {
         if (searchPattern.matcher(aspect.getSearchableText(obj)).matches() && searchTypeMatches(obj)) {
             appendTo.add(obj);
         }
+        DeferredSourceDatabase.loadIfDeferred(obj);
         List<? extends SQLObject> children = obj.getChildren();
         if (children != null) {
             for (SQLObject so : children) {
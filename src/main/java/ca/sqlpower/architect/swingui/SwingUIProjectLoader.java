@@ -20,7 +20,9 @@ package ca.sqlpower.architect.swingui;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -34,7 +36,6 @@ import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 import javax.swing.JOptionPane;
 import javax.swing.ProgressMonitor;
@@ -69,6 +70,8 @@ import ca.sqlpower.architect.profile.ColumnProfileResult;
 import ca.sqlpower.architect.profile.ColumnValueCount;
 import ca.sqlpower.architect.profile.ProfileManager;
 import ca.sqlpower.architect.profile.ProfileResult;
+import ca.sqlpower.architect.profile.ProfileResultStore;
+import ca.sqlpower.architect.profile.ProfileSettings;
 import ca.sqlpower.architect.profile.TableProfileResult;
 import ca.sqlpower.architect.swingui.CompareDMSettings.SourceOrTargetSettings;
 import ca.sqlpower.architect.swingui.olap.CubePane;
@@ -79,7 +82,6 @@ import ca.sqlpower.architect.swingui.olap.UsageComponent;
 import ca.sqlpower.architect.swingui.olap.VirtualCubePane;
 import ca.sqlpower.sql.DataSourceCollection;
 import ca.sqlpower.sql.SPDataSource;
-import ca.sqlpower.sqlobject.SQLCatalog;
 import ca.sqlpower.sqlobject.SQLColumn;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLIndex;
@@ -87,7 +89,6 @@ import ca.sqlpower.sqlobject.SQLObject;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.sqlobject.SQLObjectUtils;
 import ca.sqlpower.sqlobject.SQLRelationship;
-import ca.sqlpower.sqlobject.SQLSchema;
 import ca.sqlpower.sqlobject.SQLTable;
 import ca.sqlpower.sqlobject.SQLTypePhysicalProperties;
 import ca.sqlpower.sqlobject.UserDefinedSQLType;
@@ -128,6 +129,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
 
     private static final Logger logger = Logger.getLogger(SwingUIProjectLoader.class);
 
+    /**
+     * The size in characters of the buffer project files are written through.
+     * Large projects are written in chunks of this size rather than in the
+     * many small writes the XML is printed in.
+     */
+    private static final int SAVE_BUFFER_SIZE = 64 * 1024;
+
     /**
      * This map maps String ID codes to OLAPObject instances used in loading.
      */
@@ -153,6 +161,25 @@ public class SwingUIProjectLoader extends ProjectLoader {
      */
     private ProgressMonitor pm;
 
+    /**
+     * The temp file {@link #saveProfiles(PrintWriter)} writes the column
+     * profile results to while the project is saved to a file, or null to
+     * write them inline as when saving to a stream.
+     */
+    private File profileStoreTempFile;
+
+    /**
+     * The name, relative to the project file, of the profile result store
+     * {@link #profileStoreTempFile} becomes.
+     */
+    private String profileStoreName;
+
+    /**
+     * Set by {@link #saveProfiles(PrintWriter)} if it wrote the column
+     * profile results to {@link #profileStoreTempFile}.
+     */
+    private boolean profileStoreWritten;
+
     /**
      * Sets up a new project file load/save object for the given session.
      * 
@@ -244,6 +271,21 @@ public class SwingUIProjectLoader extends ProjectLoader {
         getSession().getUndoManager().discardAllEdits();
     }
 
+    /**
+     * Loads the source database contents without recording undo edits, the
+     * same as the rest of the project.
+     */
+    @Override
+    protected void loadDeferredSourceDatabase(SQLDatabase db, byte[] children, String encoding)
+            throws SQLObjectException {
+        getSession().getUndoManager().setLoading(true);
+        try {
+            super.loadDeferredSourceDatabase(db, children, encoding);
+        } finally {
+            getSession().getUndoManager().setLoading(false);
+        }
+    }
+
     protected Digester setupDigester() throws ParserConfigurationException, SAXException {
         Digester d = super.setupDigester();
         
@@ -801,6 +843,10 @@ public class SwingUIProjectLoader extends ProjectLoader {
             }
         }
 
+        // the contents of source databases that were never expanded are
+        // still in the file we may be about to replace
+        loadDeferredSourceDatabases();
+
         File backupFile = new File (file.getParent(), file.getName()+"~"); //$NON-NLS-1$
 
         // Several places we would check dir perms, but MS-Windows stupidly doesn't let use the
@@ -812,11 +858,16 @@ public class SwingUIProjectLoader extends ProjectLoader {
         String encoding = "UTF-8"; //$NON-NLS-1$
         try {
             // If creating this temp file fails, feed the user back a more explanatory message
-            out = new PrintWriter(tempFile,encoding);
+            out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(new FileOutputStream(tempFile), encoding), SAVE_BUFFER_SIZE));
         } catch (IOException e) {
             throw new SQLObjectException(Messages.getString("SwingUIProject.cannotCreateOutputFile") + e, e); //$NON-NLS-1$
         }
 
+        profileStoreName = file.getName() + ProfileResultStore.FILE_EXTENSION;
+        profileStoreTempFile = new File(file.getParent(), "tmp___" + profileStoreName); //$NON-NLS-1$
+        profileStoreWritten = false;
+
         progress = 0;
         this.pm = pm;
         if (pm != null) {
@@ -833,12 +884,20 @@ public class SwingUIProjectLoader extends ProjectLoader {
             pm.setMillisToDecideToPopup(0);
         }
 
-        save(out,encoding);	// Does ALL the actual I/O
+        try {
+            save(out,encoding);	// Does ALL the actual I/O
+        } finally {
+            profileStoreTempFile = null;
+        }
         out = null;
         if (pm != null)
             pm.close();
         pm = null;
 
+        if (profileStoreWritten) {
+            saveProfileStore(new File(file.getParent(), profileStoreName));
+        }
+
         // Do the rename dance.
         // This is a REALLY bad place for failure (especially if we've made the user wait several hours to save
         // a large project), so we MUST check failures from renameto (both places!)
@@ -865,6 +924,37 @@ public class SwingUIProjectLoader extends ProjectLoader {
         fileVersion = ArchitectVersion.APP_FULL_VERSION.toString();
     }
 
+    /**
+     * Moves the profile result store written by the last save into place
+     * with the same backup and rename dance as the project file, and points
+     * the profile results whose column results are still on disk at it.
+     */
+    private void saveProfileStore(File storeFile) throws SQLObjectException {
+        File storeTempFile = new File(storeFile.getParent(), "tmp___" + storeFile.getName()); //$NON-NLS-1$
+        File storeBackupFile = new File(storeFile.getParent(), storeFile.getName() + "~"); //$NON-NLS-1$
+        boolean fstatus = storeBackupFile.delete();
+        logger.debug("deleting profile store backup~ file: " + fstatus); //$NON-NLS-1$
+        if (storeFile.exists()) {
+            fstatus = storeFile.renameTo(storeBackupFile);
+            if (!fstatus) {
+                throw new SQLObjectException((
+                        Messages.getString("SwingUIProject.couldNotRenameFile", storeTempFile.toString(), storeFile.toString()))); //$NON-NLS-1$
+            }
+        }
+        fstatus = storeTempFile.renameTo(storeFile);
+        if (!fstatus) {
+            throw new SQLObjectException((
+                    Messages.getString("SwingUIProject.couldNotRenameTempFile", storeTempFile.toString(), storeFile.toString()))); //$NON-NLS-1$
+        }
+
+        profileStore = new ProfileResultStore(storeFile);
+        for (TableProfileResult tpr : getSession().getProfileManager().getResults()) {
+            if (!tpr.isColumnProfileResultsLoaded()) {
+                tpr.setColumnProfileResultStore(profileStore);
+            }
+        }
+    }
+
     XMLHelper ioo = new XMLHelper();
     
     /**
@@ -875,6 +965,12 @@ public class SwingUIProjectLoader extends ProjectLoader {
      * @throws SQLObjectException
      */
     public void save(PrintWriter out, String encoding) throws IOException {
+        try {
+            loadDeferredSourceDatabases();
+        } catch (SQLObjectException e) {
+            out.close();
+            throw new IOException("Could not read the source databases left in the project file", e);
+        }
         sqlObjectSaveIdMap = new IdentityHashMap<SQLObject, String>();
         olapObjectSaveIdMap = new IdentityHashMap<OLAPObject, String>();
         dbcsSaveIdMap = new HashMap<SPDataSource, String>();
@@ -920,7 +1016,7 @@ public class SwingUIProjectLoader extends ProjectLoader {
     }
 
     public void save(OutputStream out, String encoding) throws IOException {
-        save(new PrintWriter(new OutputStreamWriter(out, encoding)), encoding);
+        save(new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, encoding), SAVE_BUFFER_SIZE)), encoding);
     }
     
     private void saveOLAP(PrintWriter out) {
@@ -1313,16 +1409,50 @@ public class SwingUIProjectLoader extends ProjectLoader {
     }
 
     /**
-     * Save all of the profiling information.
+     * Save all of the profiling information. When saving to a file, the
+     * column profile results go to a {@link ProfileResultStore} next to the
+     * project file and only the table profile results are written here.
      * @param out
      */
-    private void saveProfiles(PrintWriter out) {
+    private void saveProfiles(PrintWriter out) throws IOException {
         ProfileManager profmgr = getSession().getProfileManager();
-        ioo.println(out, "<profiles topNCount=\""+profmgr.getDefaultProfileSettings().getTopNCount()+"\">"); //$NON-NLS-1$ //$NON-NLS-2$
+        List<TableProfileResult> tableResults = profmgr.getResults();
+
+        ProfileSettings settings = profmgr.getDefaultProfileSettings();
+        StringBuilder profilesTag = new StringBuilder("<profiles"); //$NON-NLS-1$
+        profilesTag.append(" topNCount=\"").append(settings.getTopNCount()).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
+        profilesTag.append(" approximate=\"").append(settings.isApproximate()).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
+        if (settings.getWatermarkColumnName() != null) {
+            profilesTag.append(" watermarkColumnName=\"") //$NON-NLS-1$
+                .append(SQLPowerUtils.escapeXML(settings.getWatermarkColumnName())).append("\""); //$NON-NLS-1$
+        }
+
+        ProfileResultStore.Writer storeWriter = null;
+        if (profileStoreTempFile != null && !tableResults.isEmpty()) {
+            storeWriter = new ProfileResultStore.Writer(profileStoreTempFile);
+            profilesTag.append(" store=\"").append(SQLPowerUtils.escapeXML(profileStoreName)).append("\""); //$NON-NLS-1$ //$NON-NLS-2$
+        }
+        ioo.println(out, profilesTag.append(">").toString()); //$NON-NLS-1$
         ioo.indent++;
 
-        List<TableProfileResult> tableResults = profmgr.getResults();
-        
+        try {
+            saveTableProfileResults(out, tableResults, storeWriter);
+        } finally {
+            if (storeWriter != null) {
+                storeWriter.close();
+            }
+        }
+        profileStoreWritten = storeWriter != null;
+        ioo.println(out, "</profiles>"); //$NON-NLS-1$
+        ioo.indent--;
+    }
+
+    /**
+     * Writes the given table profile results. Their column profile results
+     * are written to the store writer if one is given, or inline otherwise.
+     */
+    private void saveTableProfileResults(PrintWriter out, List<TableProfileResult> tableResults,
+            ProfileResultStore.Writer storeWriter) throws IOException {
         for (TableProfileResult tableResult : tableResults) {
             String profiledObjectId = sqlObjectSaveIdMap.get(tableResult.getProfiledObject());
             if (profiledObjectId == null) {
@@ -1335,10 +1465,34 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.print(out, "<table-profile-result"); //$NON-NLS-1$
             printCommonItems(out, tableResult, profiledObjectId);
             ioo.niprint(out, " rowCount=\"" + tableResult.getRowCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            if (tableResult.getSampleSize() > 0) {
+                ioo.niprint(out, " sampleSize=\"" + tableResult.getSampleSize() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                ioo.niprint(out, " sampleMarginOfError=\"" + tableResult.getSampleMarginOfError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+            }
             ioo.niprint(out, " UUID=\"" + tableResult.getUUID() + "\"");
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             ioo.indent++;
             
+            if (tableResult.getWatermark() != null) {
+                ioo.println(out, "<watermark type=\"" + //$NON-NLS-1$
+                        tableResult.getWatermark().getClass().getName() +
+                        "\" value=\""+ //$NON-NLS-1$
+                        SQLPowerUtils.escapeXML(String.valueOf(tableResult.getWatermark())) +
+                        "\"/>" ); //$NON-NLS-1$
+            }
+            
+            if (storeWriter != null) {
+                storeWriter.write(tableResult);
+                ioo.indent--;
+                ioo.println(out, "</table-profile-result>");
+                continue;
+            }
+
+            try {
+                tableResult.loadColumnProfileResults();
+            } catch (SQLObjectException e) {
+                throw new IOException("Could not read the column profiles of " + tableResult, e);
+            }
             List<ColumnProfileResult> columnProfileResults = tableResult.getColumnProfileResults();
             for (ColumnProfileResult cpr : columnProfileResults) {
                 String profiledColumnObjectId = sqlObjectSaveIdMap.get(cpr.getProfiledObject());
@@ -1357,6 +1511,13 @@ public class SwingUIProjectLoader extends ProjectLoader {
                 ioo.niprint(out, " maxLength=\"" + cpr.getMaxLength() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " nullCount=\"" + cpr.getNullCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
                 ioo.niprint(out, " distinctValueCount=\"" + cpr.getDistinctValueCount() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                if (cpr.isApproximate()) {
+                    ioo.niprint(out, " distinctValueCountError=\"" + cpr.getDistinctValueCountError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                    ioo.niprint(out, " valueCountError=\"" + cpr.getValueCountError() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
+                if (cpr.getDistinctValueSketch() != null) {
+                    ioo.niprint(out, " distinctValueSketch=\"" + cpr.getDistinctValueSketch() + "\""); //$NON-NLS-1$ //$NON-NLS-2$
+                }
                 ioo.niprint(out, " UUID=\"" + cpr.getUUID() + "\"");
                 ioo.niprintln(out, ">"); //$NON-NLS-1$
 
@@ -1406,8 +1567,6 @@ public class SwingUIProjectLoader extends ProjectLoader {
             ioo.indent--;
             ioo.println(out, "</table-profile-result>");
         }
-        ioo.println(out, "</profiles>"); //$NON-NLS-1$
-        ioo.indent--;
     }
 
     private void printCommonItems(PrintWriter out, ProfileResult<?> profileResult, String profiledObjectId) {
@@ -1448,133 +1607,31 @@ public class SwingUIProjectLoader extends ProjectLoader {
             return;
         }
 
-        String type;
-        Map<String,Object> propNames = new TreeMap<String,Object>();
-
-        // properties of all SQLObject types
-        propNames.put("physicalName", o.getPhysicalName()); //$NON-NLS-1$
-        propNames.put("name", o.getName()); // note: there was no name attrib for SQLDatabase, SQLRelationship.ColumnMapping, and SQLExceptionNode //$NON-NLS-1$
-        propNames.put("UUID", o.getUUID());
-        
-        if (!o.getChildrenInaccessibleReasons().isEmpty()) {
-            //Only storing the top exception to prevent file format changes
-            //Only the SQLTable should have multiple children inaccessible reasons.
-            Throwable topException = o.getChildrenInaccessibleReason(SQLObject.class);
-            propNames.put("sql-exception", topException); //$NON-NLS-1$
-        }
-
-        if (o instanceof SQLDatabase) {
-            id = "DB"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "database"; //$NON-NLS-1$
-            propNames.put("dbcs-ref", dbcsSaveIdMap.get(((SQLDatabase) o).getDataSource())); //$NON-NLS-1$
-        } else if (o instanceof SQLCatalog) {
-            id = "CAT"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "catalog"; //$NON-NLS-1$
-            propNames.put("nativeTerm", ((SQLCatalog) o).getNativeTerm()); //$NON-NLS-1$
-        } else if (o instanceof SQLSchema) {
-            id = "SCH"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "schema"; //$NON-NLS-1$
-            propNames.put("nativeTerm", ((SQLSchema) o).getNativeTerm()); //$NON-NLS-1$
-        } else if (o instanceof SQLTable) {
-            id = "TAB"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "table"; //$NON-NLS-1$
-            propNames.put("objectType", ((SQLTable) o).getObjectType()); //$NON-NLS-1$
-            // don't save primary key name. It is a propery of the PK index, not the table.
-            if (pm != null) {
-                pm.setProgress(++progress);
-            }
-        } else if (o instanceof SQLColumn) {
-            id = "COL"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "column"; //$NON-NLS-1$
-            SQLColumn sourceCol = ((SQLColumn) o).getSourceColumn();
-            if (sourceCol != null) {
-                propNames.put("source-column-ref", sqlObjectSaveIdMap.get(sourceCol)); //$NON-NLS-1$
-            }
-            UserDefinedSQLType userDefinedSQLType = ((SQLColumn) o).getUserDefinedSQLType();
-            if (userDefinedSQLType.getUpstreamType() != null) {
-                propNames.put("userDefinedTypeUUID", userDefinedSQLType.getUpstreamType().getUUID());
-            }
-            propNames.put("type", new Integer(((SQLColumn) o).getType())); //$NON-NLS-1$
-            propNames.put("sourceDataTypeName", ((SQLColumn) o).getSourceDataTypeName()); //$NON-NLS-1$
-            propNames.put("scale", new Integer(((SQLColumn) o).getScale())); //$NON-NLS-1$
-            propNames.put("precision", new Integer(((SQLColumn) o).getPrecision())); //$NON-NLS-1$
-            propNames.put("nullable", new Integer(((SQLColumn) o).getNullable())); //$NON-NLS-1$
-            propNames.put("defaultValue", ((SQLColumn) o).getDefaultValue()); //$NON-NLS-1$
-            propNames.put("primaryKeySeq", ((SQLColumn) o).isPrimaryKey() ? ((SQLColumn) o).getParent().getChildrenWithoutPopulating(SQLColumn.class).indexOf(o) : null); //$NON-NLS-1$
-            propNames.put("autoIncrement", Boolean.valueOf(((SQLColumn) o).isAutoIncrement())); //$NON-NLS-1$
-            propNames.put("referenceCount", new Integer(((SQLColumn)o).getReferenceCount())); //$NON-NLS-1$
-            if (((SQLColumn) o).isAutoIncrementSequenceNameSet()) {
-                propNames.put("autoIncrementSequenceName", ((SQLColumn) o).getAutoIncrementSequenceName()); //$NON-NLS-1$
-            }
-        } else if (o instanceof SQLRelationship) {
-            id = "REL"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "relationship"; //$NON-NLS-1$
-            propNames.put("pk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getPkTable())); //$NON-NLS-1$
-            propNames.put("fk-table-ref", sqlObjectSaveIdMap.get(((SQLRelationship) o).getFkTable())); //$NON-NLS-1$
-            propNames.put("updateRule", new Integer(((SQLRelationship) o).getUpdateRule().getCode())); //$NON-NLS-1$
-            propNames.put("deleteRule", new Integer(((SQLRelationship) o).getDeleteRule().getCode())); //$NON-NLS-1$
-            propNames.put("deferrability", new Integer(((SQLRelationship) o).getDeferrability().getCode())); //$NON-NLS-1$
-            propNames.put("pkCardinality", new Integer(((SQLRelationship) o).getPkCardinality())); //$NON-NLS-1$
-            propNames.put("fkCardinality", new Integer(((SQLRelationship) o).getFkCardinality())); //$NON-NLS-1$
-            propNames.put("identifying", Boolean.valueOf(((SQLRelationship) o).isIdentifying())); //$NON-NLS-1$
-        } else if (o instanceof SQLRelationship.ColumnMapping) {
-            id = "CMP"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "column-mapping"; //$NON-NLS-1$
-            propNames.put("pk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getPkColumn())); //$NON-NLS-1$
-            propNames.put("fk-column-ref", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkColumn())); //$NON-NLS-1$
-            propNames.put("fk-col-name", ((SQLRelationship.ColumnMapping) o).getFkColName()); //$NON-NLS-1$
-            propNames.put("fk-table", sqlObjectSaveIdMap.get(((SQLRelationship.ColumnMapping) o).getFkTable())); //$NON-NLS-1$
-        } else if (o instanceof SQLIndex) {
-            id = "IDX"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "index"; //$NON-NLS-1$
-            SQLIndex index = (SQLIndex) o;
-            propNames.put("unique", index.isUnique()); //$NON-NLS-1$
-            propNames.put("qualifier", index.getQualifier()); //$NON-NLS-1$
-            propNames.put("clustered", index.isClustered()); //$NON-NLS-1$
-            /*
-             * Normally, hyphenated names are used to stop
-             * BeanUtils from auto-populating a field. However in this case,
-             * we are going to keep the hyphen (and break the normal scheme)
-             * in order to preserve backward compatibility.
-             */
-            propNames.put("index-type", index.getType()); //$NON-NLS-1$
-            propNames.put("primaryKeyIndex", index.isPrimaryKeyIndex()); //$NON-NLS-1$
-            propNames.put("filterCondition", index.getFilterCondition()); //$NON-NLS-1$
-        } else if (o instanceof SQLIndex.Column) {
-            id = "IDC"+sqlObjectSaveIdMap.size(); //$NON-NLS-1$
-            type = "index-column"; //$NON-NLS-1$
-            SQLIndex.Column col = (SQLIndex.Column) o;
-            if (col.getColumn() != null) {
-                propNames.put("column-ref", sqlObjectSaveIdMap.get(col.getColumn())); //$NON-NLS-1$
-            }
-            propNames.put("ascendingOrDescending", col.getAscendingOrDescending().name()); //$NON-NLS-1$
-        } else {
-            throw new UnsupportedOperationException("Whoops, the SQLObject type " //$NON-NLS-1$
-                    +o.getClass().getName()+" is not supported!"); //$NON-NLS-1$
+        SQLObjectSaveDescriptor descriptor = SQLObjectSaveDescriptor.getDescriptor(o);
+        String type = descriptor.getElementName();
+        id = descriptor.createId(sqlObjectSaveIdMap.size());
+        if (o instanceof SQLTable && pm != null) {
+            pm.setProgress(++progress);
         }
-        
-        sqlObjectSaveIdMap.put(o, id);
+
+        StringBuilder element = new StringBuilder(256);
         if(logger.isDebugEnabled()) {
             // use this for debugging duplicate object problems
-            ioo.print(out, "<"+type+" hashCode=\""+o.hashCode()+"\" id=\""+quote(id)+"\" ");
+            element.append("<"+type+" hashCode=\""+o.hashCode()+"\" id=\""+quote(id)+"\" ");
         } else {
-            ioo.print(out, "<"+type+" id="+quote(id)+" "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+            element.append("<").append(type).append(" id=").append(quote(id)).append(" "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
         }
 
         if ( (!getSession().isSavingEntireSource()) && (!o.isPopulated()) ) {
-            ioo.niprint(out, "populated=\"false\" "); //$NON-NLS-1$
+            element.append("populated=\"false\" "); //$NON-NLS-1$
         } else {
-            ioo.niprint(out, "populated=\"true\" "); //$NON-NLS-1$
+            element.append("populated=\"true\" "); //$NON-NLS-1$
         }
 
-        Iterator<String> props = propNames.keySet().iterator();
-        while (props.hasNext()) {
-            Object key = props.next();
-            Object value = propNames.get(key);
-            if (value != null) {
-                ioo.niprint(out, key+"="+quote(value.toString())+" "); //$NON-NLS-1$ //$NON-NLS-2$
-            }
-        }
+        sqlObjectSaveIdMap.put(o, id);
+        descriptor.appendAttributes(element, o, sqlObjectSaveIdMap, dbcsSaveIdMap);
+        ioo.print(out, element.toString());
+
         if (o.allowsChildren()) {
             ioo.niprintln(out, ">"); //$NON-NLS-1$
             Iterator<? extends SQLObject> children;
@@ -50,6 +50,7 @@ import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.DDLExportPanel;
 import ca.sqlpower.architect.swingui.SQLScriptDialog;
 import ca.sqlpower.architect.swingui.critic.CriticSwingUtil;
+import ca.sqlpower.architect.swingui.critic.LiveCriticService;
 import ca.sqlpower.sqlobject.SQLDatabase;
 import ca.sqlpower.sqlobject.SQLObjectException;
 import ca.sqlpower.swingui.DataEntryPanelBuilder;
@@ -101,6 +102,11 @@ public class ExportDDLAction extends AbstractArchitectAction {
              * generateAndDisplayDDL method.
              */
             private void checkErrorsAndGenerateDDL(final DDLGenerator ddlg) {
+                // the live critics share the critics, which keep state during a run
+                LiveCriticService liveCritics = getSession().getLiveCriticService();
+                if (liveCritics != null) {
+                    liveCritics.cancelRun();
+                }
                 List<Criticism> criticisms = getSession().getWorkspace().getCriticManager().
                     criticize(ddlg.getClass());
                 if (criticisms.isEmpty()) {
@@ -205,7 +211,8 @@ public class ExportDDLAction extends AbstractArchitectAction {
              */
             private void generateAndDisplayDDL(final DDLExportPanel ddlPanel, DDLGenerator ddlg) throws SQLException,
             SQLObjectException {
-                ddlg.generateDDLScript(getSession(), getSession().getTargetDatabase().getTables());
+                // the dialog shows the statements, so the script itself is never needed
+                ddlg.generateDDLStatements(getSession(), getSession().getTargetDatabase().getTables());
 
                 SQLDatabase ppdb = new SQLDatabase(ddlPanel.getTargetDB());
                 SQLScriptDialog ssd =
@@ -215,6 +215,7 @@ public class OpenProjectAction extends AbstractArchitectAction {
 
         @Override
         public void doStuff() throws Exception {
+            session.getProjectLoader().setLoadingFile(file);
             session.getProjectLoader().load(in, session.getDataSources(), openingSession);
             session.getProjectLoader().setFile(file);
         }
@@ -29,6 +29,7 @@ import javax.swing.tree.TreePath;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.DeferredSourceDatabase;
 import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.ArchitectFrame;
 import ca.sqlpower.sqlobject.SQLCatalog;
@@ -134,6 +135,7 @@ public class ProfileAction extends AbstractArchitectAction {
                 if ( o instanceof SQLColumn){
                     tables.add(((SQLColumn)o).getParent());
                 } else {
+                    DeferredSourceDatabase.loadIfDeferred(o);
                     tables.addAll(SQLObjectUtils.findDescendentsByClass(o, SQLTable.class, new ArrayList<SQLTable>()));
                 }
             }
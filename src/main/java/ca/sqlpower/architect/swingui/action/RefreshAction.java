@@ -35,6 +35,7 @@ import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 import javax.swing.tree.TreePath;
 
+import ca.sqlpower.architect.DeferredSourceDatabase;
 import ca.sqlpower.architect.swingui.ASUtils;
 import ca.sqlpower.architect.swingui.ArchitectSwingSession;
 import ca.sqlpower.architect.swingui.DBTree;
@@ -87,6 +88,9 @@ public class RefreshAction extends AbstractArchitectAction {
             try {
                 for (SQLDatabase db : databasesToRefresh) {
                     dbBeingRefreshed = db;
+                    // refreshing an unloaded database would merge the live
+                    // contents into an empty one and duplicate them later
+                    DeferredSourceDatabase.loadIfDeferred(db);
                     db.refresh();
                     increaseProgress();
                 }
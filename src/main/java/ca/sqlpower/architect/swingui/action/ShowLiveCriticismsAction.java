@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of SQL Power Architect.
+ *
+ * SQL Power Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * SQL Power Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+package ca.sqlpower.architect.swingui.action;
+
+import java.awt.Dimension;
+import java.awt.event.ActionEvent;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import javax.swing.JDialog;
+import javax.swing.JScrollPane;
+
+import ca.sqlpower.architect.swingui.ArchitectFrame;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.critic.CriticSwingUtil;
+import ca.sqlpower.architect.swingui.critic.LiveCriticService;
+
+/**
+ * Displays the criticisms the {@link LiveCriticService} of the current
+ * session keeps up to date, in a window that can stay open while the user
+ * works. Each session has its own window.
+ */
+public class ShowLiveCriticismsAction extends AbstractArchitectAction {
+
+    private final Map<ArchitectSwingSession, JDialog> dialogs = new WeakHashMap<ArchitectSwingSession, JDialog>();
+
+    public ShowLiveCriticismsAction(ArchitectFrame frame) {
+        super(frame, Messages.getString("ShowLiveCriticismsAction.name"), //$NON-NLS-1$
+                Messages.getString("ShowLiveCriticismsAction.description")); //$NON-NLS-1$
+    }
+
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        ArchitectSwingSession session = getSession();
+        LiveCriticService liveCritics = session.getLiveCriticService();
+        if (liveCritics == null) return;
+        JDialog dialog = dialogs.get(session);
+        if (dialog == null) {
+            dialog = new JDialog(frame, Messages.getString("ShowLiveCriticismsAction.dialogTitle")); //$NON-NLS-1$
+            JScrollPane scrollPane = new JScrollPane(
+                    CriticSwingUtil.createCriticTable(session, liveCritics.getBucket()));
+            scrollPane.setPreferredSize(new Dimension(600, 250));
+            dialog.add(scrollPane);
+            dialog.pack();
+            dialog.setLocationRelativeTo(frame);
+            dialogs.put(session, dialog);
+        }
+        dialog.setVisible(true);
+        dialog.toFront();
+    }
+}
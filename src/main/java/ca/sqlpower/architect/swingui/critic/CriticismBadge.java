@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.critic;
+
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.event.MouseEvent;
+import java.beans.PropertyChangeEvent;
+import java.util.List;
+
+import javax.swing.ImageIcon;
+
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.CriticAndSettings.Severity;
+import ca.sqlpower.architect.swingui.PlayPenComponent;
+import ca.sqlpower.architect.swingui.PlayPenComponentUI;
+import ca.sqlpower.object.AbstractSPListener;
+
+/**
+ * A warning or error icon next to the part of a play pen component that has
+ * criticisms. The badge follows the component it marks around the play pen.
+ */
+public class CriticismBadge extends ModelBadge {
+
+    private final class BadgeUI implements PlayPenComponentUI {
+
+        public boolean contains(Point p) {
+            return getBounds().contains(p);
+        }
+
+        public Point getPointForModelObject(Object modelObject) {
+            return getLocation();
+        }
+
+        public Dimension getPreferredSize() {
+            return new Dimension(getIcon().getIconWidth(), getIcon().getIconHeight());
+        }
+
+        public void installUI(PlayPenComponent c) {
+            // no-op
+        }
+
+        public void paint(Graphics2D g2) {
+            g2.drawImage(getIcon().getImage(), 0, 0, null);
+        }
+
+        public void revalidate() {
+            // no-op
+        }
+
+        public void uninstallUI(PlayPenComponent c) {
+            // no-op
+        }
+    }
+
+    private final Object subject;
+
+    /**
+     * The play pen component the subject is drawn in.
+     */
+    private final PlayPenComponent marked;
+
+    private Severity severity = Severity.WARNING;
+
+    /**
+     * Moves the badge when the marked component moves or changes size.
+     */
+    private final AbstractSPListener markedListener = new AbstractSPListener() {
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            updateLocation();
+        }
+    };
+
+    /**
+     * @param subject
+     *            The object that has criticisms.
+     * @param marked
+     *            The play pen component the subject is drawn in. This is the
+     *            subject's own component or, for parts of a table or
+     *            relationship like columns, the component of the table or
+     *            relationship.
+     */
+    public CriticismBadge(Object subject, PlayPenComponent marked) {
+        super("Criticism badge");
+        this.subject = subject;
+        this.marked = marked;
+        setUI(new BadgeUI());
+        marked.addSPListener(markedListener);
+    }
+
+    @Override
+    public Object getSubject() {
+        return subject;
+    }
+
+    @Override
+    public Object getModel() {
+        return subject;
+    }
+
+    @Override
+    public String getModelName() {
+        return subject.toString();
+    }
+
+    @Override
+    public void handleMouseEvent(MouseEvent evt) {
+        // badges only show the criticisms
+    }
+
+    /**
+     * Shows the most severe of the given criticisms of the subject, and
+     * lists them all in the tool tip.
+     */
+    public void setCriticisms(List<Criticism> criticisms) {
+        Severity newSeverity = Severity.WARNING;
+        StringBuilder tip = new StringBuilder("<html>");
+        for (Criticism c : criticisms) {
+            if (c.getCritic().getSeverity() == Severity.ERROR) {
+                newSeverity = Severity.ERROR;
+            }
+            if (tip.length() > "<html>".length()) {
+                tip.append("<br>");
+            }
+            tip.append(c.getDescription().replace("&", "&amp;").replace("<", "&lt;"));
+        }
+        tip.append("</html>");
+        setToolTipText(tip.toString());
+        if (newSeverity != severity) {
+            severity = newSeverity;
+            repaint();
+        }
+    }
+
+    private ImageIcon getIcon() {
+        return severity == Severity.ERROR ? CriticSwingUtil.ERROR_ICON : CriticSwingUtil.WARNING_ICON;
+    }
+
+    /**
+     * Puts the badge just to the left of the subject in the marked
+     * component.
+     */
+    public void updateLocation() {
+        Point p = marked.getPointForModelObject(subject);
+        Dimension size = getUI().getPreferredSize();
+        Point newLocation = new Point(p.x - size.width, p.y);
+        if (!newLocation.equals(getLocation()) || !size.equals(getSize())) {
+            setBounds(newLocation.x, newLocation.y, size.width, size.height);
+            repaint();
+        }
+    }
+
+    /**
+     * Stops following the marked component.
+     */
+    public void stopFollowing() {
+        marked.removeSPListener(markedListener);
+    }
+}
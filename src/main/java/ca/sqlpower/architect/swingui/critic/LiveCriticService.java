@@ -0,0 +1,510 @@
+/*
+ * Copyright (c) 2010, SQL Power Group Inc.
+ *
+ * This file is part of Power*Architect.
+ *
+ * Power*Architect is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Power*Architect is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package ca.sqlpower.architect.swingui.critic;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.beans.PropertyChangeEvent;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.Timer;
+
+import org.apache.log4j.Logger;
+
+import ca.sqlpower.architect.ddl.critic.CriticManager;
+import ca.sqlpower.architect.ddl.critic.Criticism;
+import ca.sqlpower.architect.ddl.critic.CriticismBucket;
+import ca.sqlpower.architect.ddl.critic.IncrementalCriticizer;
+import ca.sqlpower.architect.ddl.critic.IncrementalCriticizer.Run;
+import ca.sqlpower.architect.ddl.critic.IncrementalCriticizer.Snapshot;
+import ca.sqlpower.architect.swingui.ArchitectStatusBar;
+import ca.sqlpower.architect.swingui.ArchitectSwingSession;
+import ca.sqlpower.architect.swingui.Messages;
+import ca.sqlpower.architect.swingui.PlayPen;
+import ca.sqlpower.architect.swingui.PlayPenComponent;
+import ca.sqlpower.object.AbstractSPListener;
+import ca.sqlpower.object.SPChildEvent;
+import ca.sqlpower.sql.DatabaseListChangeEvent;
+import ca.sqlpower.sql.DatabaseListChangeListener;
+import ca.sqlpower.sqlobject.SQLColumn;
+import ca.sqlpower.sqlobject.SQLIndex;
+import ca.sqlpower.sqlobject.SQLRelationship;
+import ca.sqlpower.sqlobject.SQLTable;
+import ca.sqlpower.sqlobject.SQLRelationship.ColumnMapping;
+import ca.sqlpower.util.SQLPowerUtils;
+import ca.sqlpower.util.TransactionEvent;
+
+/**
+ * Keeps the criticisms of a session's project up to date while the user
+ * works, without making them wait for the critics. Edits are collected until
+ * the model has been left alone for {@link #DEBOUNCE_MILLIS}, then the
+ * changed objects are criticized and the results are shown: in the
+ * {@link #getBucket() bucket}, which criticism tables can show, as badges in
+ * the play pen, and as a message in the status bar with how long it took
+ * from the first edit to the criticisms being shown.
+ * <p>
+ * The work is done by an {@link IncrementalCriticizer}, one
+ * {@link IncrementalCriticizer.Run run} at a time. The critics read the live
+ * model, so they run on the event dispatch thread like everything else
+ * here, for at most {@link #SLICE_MILLIS} at a time before the thread gets
+ * to handle other events. If an edit lands between two slices, the objects
+ * it touched are criticized again on the next run, so criticisms made from
+ * a half-done change do not stay.
+ * <p>
+ * All of the methods have to be called on the event dispatch thread.
+ */
+public class LiveCriticService {
+
+    private static final Logger logger = Logger.getLogger(LiveCriticService.class);
+
+    /**
+     * How long the model has to go without changes before it is criticized.
+     */
+    public static final int DEBOUNCE_MILLIS = 400;
+
+    /**
+     * The longest the critics run before the event dispatch thread gets to
+     * handle other events.
+     */
+    public static final int SLICE_MILLIS = 20;
+
+    /**
+     * The number of objects criticized between checks of the time a slice
+     * has taken.
+     */
+    private static final int SUBJECTS_PER_CHECK = 10;
+
+    private final ArchitectSwingSession session;
+
+    private final CriticismBucket bucket = new CriticismBucket();
+
+    /**
+     * Criticizes the model once it has not changed for a while.
+     */
+    private final Timer debounceTimer;
+
+    /**
+     * Criticizes the next slice of the run in progress.
+     */
+    private final Timer sliceTimer;
+
+    private boolean started;
+
+    /**
+     * Made again whenever the critic settings change, as it only uses the
+     * critics that were enabled when it was made.
+     */
+    private IncrementalCriticizer criticizer;
+
+    /**
+     * The run in progress, or null if there is none.
+     */
+    private Run run;
+
+    /**
+     * The time of the first edit the run in progress criticizes.
+     */
+    private long runEditTime;
+
+    /**
+     * The time of the first edit that has not been criticized yet, or -1 if
+     * there is none.
+     */
+    private long firstEditTime = -1;
+
+    /**
+     * The time from an edit to its criticisms being shown, the last time
+     * criticisms were shown, or -1 if they have not been yet.
+     */
+    private long lastLatency = -1;
+
+    private int transactionCount;
+
+    /**
+     * The badge of each subject with criticisms that has a component in the
+     * play pen.
+     */
+    private final Map<Object, CriticismBadge> badges = new IdentityHashMap<Object, CriticismBadge>();
+
+    /**
+     * Schedules a run after each change to the target database.
+     */
+    private final AbstractSPListener modelListener = new AbstractSPListener() {
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            editHappened();
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            editHappened();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            editHappened();
+        }
+
+        @Override
+        public void transactionStarted(TransactionEvent e) {
+            transactionCount++;
+        }
+
+        @Override
+        public void transactionEnded(TransactionEvent e) {
+            transactionCount--;
+            if (transactionCount < 0) {
+                transactionCount = 0;
+            }
+        }
+
+        @Override
+        public void transactionRollback(TransactionEvent e) {
+            transactionCount = 0;
+        }
+    };
+
+    /**
+     * Makes a new criticizer when the critic settings change.
+     */
+    private final AbstractSPListener criticSettingsListener = new AbstractSPListener() {
+
+        @Override
+        public void propertyChanged(PropertyChangeEvent evt) {
+            criticSettingsChanged();
+        }
+
+        @Override
+        public void childAdded(SPChildEvent e) {
+            SQLPowerUtils.listenToHierarchy(e.getChild(), this);
+            criticSettingsChanged();
+        }
+
+        @Override
+        public void childRemoved(SPChildEvent e) {
+            SQLPowerUtils.unlistenToHierarchy(e.getChild(), this);
+            criticSettingsChanged();
+        }
+    };
+
+    /**
+     * Makes a new criticizer when data sources are added or removed, as a
+     * criticizer only criticizes the ones that were there when it was made.
+     */
+    private final DatabaseListChangeListener dataSourceListener = new DatabaseListChangeListener() {
+
+        public void databaseAdded(DatabaseListChangeEvent e) {
+            criticSettingsChanged();
+        }
+
+        public void databaseRemoved(DatabaseListChangeEvent e) {
+            criticSettingsChanged();
+        }
+    };
+
+    public LiveCriticService(ArchitectSwingSession session) {
+        this.session = session;
+        debounceTimer = new Timer(DEBOUNCE_MILLIS, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                startRun();
+            }
+        });
+        debounceTimer.setRepeats(false);
+        sliceTimer = new Timer(0, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                criticizeSlice();
+            }
+        });
+        sliceTimer.setRepeats(false);
+    }
+
+    /**
+     * Starts following the session's project and criticizes all of it once
+     * it has been left alone for a moment.
+     */
+    public void start() {
+        if (started) return;
+        started = true;
+        SQLPowerUtils.listenToHierarchy(session.getTargetDatabase(), modelListener);
+        SQLPowerUtils.listenToHierarchy(getCriticManager(), criticSettingsListener);
+        session.getDataSources().addDatabaseListChangeListener(dataSourceListener);
+        createCriticizer();
+        editHappened();
+    }
+
+    /**
+     * Stops following the project and removes the badges. The criticisms
+     * stay in the bucket.
+     */
+    public void stop() {
+        if (!started) return;
+        started = false;
+        debounceTimer.stop();
+        sliceTimer.stop();
+        if (run != null) {
+            run.cancel();
+            run = null;
+        }
+        SQLPowerUtils.unlistenToHierarchy(session.getTargetDatabase(), modelListener);
+        SQLPowerUtils.unlistenToHierarchy(getCriticManager(), criticSettingsListener);
+        session.getDataSources().removeDatabaseListChangeListener(dataSourceListener);
+        criticizer.stop();
+        criticizer = null;
+        firstEditTime = -1;
+        for (CriticismBadge badge : new ArrayList<CriticismBadge>(badges.values())) {
+            removeBadge(badge);
+        }
+    }
+
+    /**
+     * Returns the bucket that holds the current criticisms. It is only
+     * changed on the event dispatch thread.
+     */
+    public CriticismBucket getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Stops the run in progress, if any, so the critics can be used by
+     * something else, like the critics run before forward engineering. The
+     * critics keep state while a run is in progress. The edits the run was
+     * criticizing are criticized in the next run.
+     */
+    public void cancelRun() {
+        if (run == null) return;
+        run.cancel();
+        criticizer.restoreChanges(run.getSnapshot());
+        editsNotCriticized(runEditTime);
+        run = null;
+        sliceTimer.stop();
+        debounceTimer.restart();
+    }
+
+    /**
+     * Returns the time in milliseconds from an edit to its criticisms being
+     * shown, the last time criticisms were shown, or -1 if they have not been
+     * yet.
+     */
+    public long getLastLatency() {
+        return lastLatency;
+    }
+
+    private CriticManager getCriticManager() {
+        return session.getWorkspace().getCriticManager();
+    }
+
+    private void createCriticizer() {
+        criticizer = getCriticManager().createIncrementalCriticizer(null, bucket);
+        criticizer.setAutoRefresh(false);
+        criticizer.start();
+    }
+
+    private void criticSettingsChanged() {
+        if (!started) return;
+        if (run != null) {
+            run.cancel();
+            run = null;
+            sliceTimer.stop();
+        }
+        criticizer.stop();
+        createCriticizer();
+        editHappened();
+    }
+
+    private void editHappened() {
+        if (!started) return;
+        if (firstEditTime < 0) {
+            firstEditTime = System.currentTimeMillis();
+        }
+        debounceTimer.restart();
+    }
+
+    /**
+     * Remembers the time of the first edit of a run that did not finish, so
+     * the latency of the next run counts from it.
+     */
+    private void editsNotCriticized(long editTime) {
+        if (firstEditTime < 0 || editTime < firstEditTime) {
+            firstEditTime = editTime;
+        }
+    }
+
+    /**
+     * Takes a snapshot of what changed and starts criticizing it, unless a
+     * run is still in progress or a transaction is open, in which case it
+     * tries again later.
+     */
+    private void startRun() {
+        if (!started) return;
+        if (run != null || transactionCount > 0) {
+            debounceTimer.restart();
+            return;
+        }
+        if (!criticizer.isDirty()) {
+            firstEditTime = -1;
+            return;
+        }
+        Snapshot snapshot = criticizer.takeSnapshot();
+        long editTime = firstEditTime;
+        firstEditTime = -1;
+        try {
+            run = criticizer.startRun(snapshot);
+        } catch (RuntimeException e) {
+            runFailed(snapshot, editTime, e);
+            return;
+        }
+        runEditTime = editTime;
+        criticizeSlice();
+    }
+
+    /**
+     * Criticizes objects of the run in progress until it is done or the
+     * slice has taken {@link #SLICE_MILLIS}, and shows the criticisms once
+     * the run is done. Runs wait while a transaction is open, as the model
+     * may be half changed.
+     */
+    private void criticizeSlice() {
+        if (run == null) return;
+        if (transactionCount > 0) {
+            sliceTimer.restart();
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            while (!run.step(SUBJECTS_PER_CHECK)) {
+                if (System.currentTimeMillis() - start >= SLICE_MILLIS) {
+                    sliceTimer.restart();
+                    return;
+                }
+            }
+        } catch (RuntimeException e) {
+            Snapshot snapshot = run.getSnapshot();
+            run = null;
+            runFailed(snapshot, runEditTime, e);
+            return;
+        }
+        List<Criticism> criticisms = run.getCriticisms();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Criticized " + run.getSnapshot().getSubjectCount() + " objects, " +
+                    (System.currentTimeMillis() - runEditTime) + " ms after the first edit");
+        }
+        run = null;
+        runDone(criticisms);
+    }
+
+    /**
+     * Tries a run that failed again if the model changed while it ran.
+     */
+    private void runFailed(Snapshot snapshot, long editTime, RuntimeException failure) {
+        if (criticizer.isDirty()) {
+            // most likely tripped over an edit made between two slices
+            logger.debug("Criticizing failed while the model changed, trying again", failure);
+            criticizer.restoreChanges(snapshot);
+            editsNotCriticized(editTime);
+            debounceTimer.restart();
+        } else {
+            logger.error("Live criticizing failed", failure);
+        }
+    }
+
+    /**
+     * Shows the criticisms of a run that finished.
+     */
+    private void runDone(List<Criticism> criticisms) {
+        bucket.updateCriticismsToMatch(criticisms);
+        updateBadges();
+        lastLatency = System.currentTimeMillis() - runEditTime;
+        ArchitectStatusBar statusBar = session.getStatusInformation();
+        if (statusBar != null) {
+            statusBar.setMessage(Messages.getString("LiveCriticService.status",
+                    String.valueOf(bucket.getCriticisms().size()), String.valueOf(lastLatency)));
+        }
+        if (criticizer.isDirty()) {
+            debounceTimer.restart();
+        }
+    }
+
+    /**
+     * Makes the badges in the play pen match the criticisms in the bucket.
+     */
+    private void updateBadges() {
+        Map<Object, List<Criticism>> bySubject = new IdentityHashMap<Object, List<Criticism>>();
+        for (Criticism c : bucket.getCriticisms()) {
+            List<Criticism> subjectCriticisms = bySubject.get(c.getSubject());
+            if (subjectCriticisms == null) {
+                subjectCriticisms = new ArrayList<Criticism>();
+                bySubject.put(c.getSubject(), subjectCriticisms);
+            }
+            subjectCriticisms.add(c);
+        }
+
+        for (CriticismBadge badge : new ArrayList<CriticismBadge>(badges.values())) {
+            if (!bySubject.containsKey(badge.getSubject())) {
+                removeBadge(badge);
+            }
+        }
+
+        PlayPen playPen = session.getPlayPen();
+        for (Map.Entry<Object, List<Criticism>> entry : bySubject.entrySet()) {
+            CriticismBadge badge = badges.get(entry.getKey());
+            if (badge == null) {
+                PlayPenComponent marked = findMarkedComponent(playPen, entry.getKey());
+                if (marked == null) continue;
+                badge = new CriticismBadge(entry.getKey(), marked);
+                badges.put(entry.getKey(), badge);
+                playPen.getContentPane().addModelBadge(badge);
+            }
+            badge.setCriticisms(entry.getValue());
+            badge.updateLocation();
+        }
+    }
+
+    private void removeBadge(CriticismBadge badge) {
+        badges.remove(badge.getSubject());
+        badge.stopFollowing();
+        badge.repaint();
+        session.getPlayPen().getContentPane().removeModelBadge(badge);
+    }
+
+    /**
+     * Returns the play pen component the subject is drawn in, or null if it
+     * is not drawn.
+     */
+    private static PlayPenComponent findMarkedComponent(PlayPen playPen, Object subject) {
+        if (subject instanceof SQLTable) {
+            return playPen.findTablePane((SQLTable) subject);
+        } else if (subject instanceof SQLColumn && ((SQLColumn) subject).getParent() != null) {
+            return playPen.findTablePane(((SQLColumn) subject).getParent());
+        } else if (subject instanceof SQLIndex && ((SQLIndex) subject).getParent() != null) {
+            return playPen.findTablePane(((SQLIndex) subject).getParent());
+        } else if (subject instanceof SQLRelationship) {
+            return playPen.findRelationship((SQLRelationship) subject);
+        } else if (subject instanceof ColumnMapping && ((ColumnMapping) subject).getParent() != null) {
+            return playPen.findRelationship(((ColumnMapping) subject).getParent());
+        }
+        return null;
+    }
+}
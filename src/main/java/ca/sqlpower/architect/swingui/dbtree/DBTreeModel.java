@@ -41,6 +41,7 @@ import javax.swing.tree.TreePath;
 
 import org.apache.log4j.Logger;
 
+import ca.sqlpower.architect.DeferredSourceDatabase;
 import ca.sqlpower.object.AbstractSPObject;
 import ca.sqlpower.object.SPChildEvent;
 import ca.sqlpower.object.SPListener;
@@ -350,7 +351,13 @@ public class DBTreeModel implements TreeModel, java.io.Serializable {
         public void treeWillCollapse(TreeExpansionEvent event) {
         }
         public void treeWillExpand(TreeExpansionEvent event) {
-            if (isColumnsFolder(event.getPath().getLastPathComponent())){
+            if (event.getPath().getLastPathComponent() instanceof SQLDatabase) {
+                try {
+                    DeferredSourceDatabase.loadIfDeferred((SQLDatabase) event.getPath().getLastPathComponent());
+                } catch (SQLObjectException e) {
+                    throw new RuntimeException(e);
+                }
+            } else if (isColumnsFolder(event.getPath().getLastPathComponent())){
                 try {
                     ((SQLTable) event.getPath().getPathComponent(event.getPath().getPathCount() -2)).getIndices();
                 } catch (SQLObjectException e) {